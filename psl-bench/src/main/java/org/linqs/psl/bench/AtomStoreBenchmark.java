@@ -0,0 +1,107 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.GroundAtom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and inserts on an AtomStore holding all the atoms of a BenchmarkModel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AtomStoreBenchmark {
+    @Param({"2000"})
+    public int numPeople;
+
+    @Param({"10"})
+    public int degree;
+
+    private BenchmarkModel model;
+    private AtomStore atomStore;
+
+    /**
+     * Copies of the store's atoms, so inserting them does not disturb the original store.
+     */
+    private GroundAtom[] atoms;
+
+    private int nextLookup;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        model = new BenchmarkModel(numPeople, degree);
+
+        Database database = model.getDatabase();
+        atomStore = database.getAtomStore();
+
+        atoms = new GroundAtom[atomStore.size()];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = atomStore.getAtom(i).copy();
+        }
+
+        nextLookup = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        model.close();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int lookup() {
+        GroundAtom atom = atoms[nextLookup];
+        nextLookup = (nextLookup + 1) % atoms.length;
+
+        return atomStore.getAtomIndex(atom);
+    }
+
+    /**
+     * Build a new store from all the atoms.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AtomStore insert() {
+        AtomStore newStore = new AtomStore();
+        for (GroundAtom atom : atoms) {
+            newStore.addAtom(atom);
+        }
+
+        return newStore;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.database.DataStore;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.loading.Inserter;
+import org.linqs.psl.database.rdbms.RDBMSDataStore;
+import org.linqs.psl.database.rdbms.driver.H2DatabaseDriver;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.parser.ModelLoader;
+import org.linqs.psl.util.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A synthetic friendship model stored in an in-memory H2 database, used as the workload for benchmarks.
+ *
+ * There are numPeople people, each of which knows about degree others (Knows is symmetric).
+ * Nice and Knows are observed, and Friends is a target for every pair of people that know each other.
+ * The data is generated from a fixed seed, so all runs see the same workload.
+ */
+public class BenchmarkModel {
+    public static final long DEFAULT_SEED = 4;
+
+    /**
+     * Representative rule shapes, by name.
+     */
+    public static final Map<String, String> RULES;
+    static {
+        RULES = new LinkedHashMap<String, String>();
+        RULES.put("similarity", "5.0: Nice(A) & Knows(A, B) -> Friends(A, B) ^2");
+        RULES.put("symmetry", "10.0: Knows(A, B) & Friends(A, B) -> Friends(B, A) ^2");
+        RULES.put("transitivity", "3.0: Knows(A, B) & Knows(B, C) & Knows(A, C) & Friends(A, B) & Friends(B, C) & (A != C) -> Friends(A, C) ^2");
+        RULES.put("arithmetic", "1.0: Friends(A, +B) <= 2 ^2");
+        RULES.put("prior", "1.0: ~Friends(A, B) ^2");
+    }
+
+    private static int modelCount = 0;
+
+    private final DataStore dataStore;
+    private final Partition observations;
+    private final Partition targets;
+    private final StandardPredicate nice;
+    private final StandardPredicate knows;
+    private final StandardPredicate friends;
+    private final List<Rule> rules;
+    private final List<Database> databases;
+
+    public BenchmarkModel(int numPeople, int degree) {
+        this(numPeople, degree, DEFAULT_SEED);
+    }
+
+    public BenchmarkModel(int numPeople, int degree, long seed) {
+        String dbPath = SystemUtils.getTempDir("psl_bench_" + (modelCount++));
+        dataStore = new RDBMSDataStore(new H2DatabaseDriver(H2DatabaseDriver.Type.Memory, dbPath, true));
+
+        nice = StandardPredicate.get("Nice", ConstantType.UniqueIntID);
+        knows = StandardPredicate.get("Knows", ConstantType.UniqueIntID, ConstantType.UniqueIntID);
+        friends = StandardPredicate.get("Friends", ConstantType.UniqueIntID, ConstantType.UniqueIntID);
+
+        dataStore.registerPredicate(nice);
+        dataStore.registerPredicate(knows);
+        dataStore.registerPredicate(friends);
+
+        observations = dataStore.getPartition("observations");
+        targets = dataStore.getPartition("targets");
+
+        rules = new ArrayList<Rule>();
+        for (String rule : RULES.values()) {
+            rules.add(ModelLoader.loadRule(rule));
+        }
+
+        databases = new ArrayList<Database>();
+
+        loadData(numPeople, degree, seed);
+    }
+
+    private void loadData(int numPeople, int degree, long seed) {
+        Random random = new Random(seed);
+
+        Inserter niceInserter = dataStore.getInserter(nice, observations);
+        for (int person = 0; person < numPeople; person++) {
+            niceInserter.insertValue(random.nextDouble(), new Object[]{Integer.valueOf(person)});
+        }
+
+        Set<Long> pairs = new HashSet<Long>();
+        for (int person = 0; person < numPeople; person++) {
+            for (int i = 0; i < degree; i++) {
+                int other = random.nextInt(numPeople);
+                if (other == person) {
+                    continue;
+                }
+
+                pairs.add(Long.valueOf((long)person * numPeople + other));
+                pairs.add(Long.valueOf((long)other * numPeople + person));
+            }
+        }
+
+        Inserter knowsInserter = dataStore.getInserter(knows, observations);
+        Inserter friendsInserter = dataStore.getInserter(friends, targets);
+        for (Long pair : pairs) {
+            Object[] args = new Object[]{Integer.valueOf((int)(pair.longValue() / numPeople)), Integer.valueOf((int)(pair.longValue() % numPeople))};
+            knowsInserter.insert(args);
+            friendsInserter.insert(args);
+        }
+    }
+
+    /**
+     * Get a new database over the model's data (Nice and Knows are closed).
+     */
+    public Database getDatabase() {
+        Database database = dataStore.getDatabase(targets, new HashSet<StandardPredicate>(Arrays.asList(nice, knows)), observations);
+        databases.add(database);
+        return database;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public Rule getRule(String name) {
+        if (!RULES.containsKey(name)) {
+            throw new IllegalArgumentException("Unknown rule shape: " + name);
+        }
+
+        return rules.get(new ArrayList<String>(RULES.keySet()).indexOf(name));
+    }
+
+    public void close() {
+        for (Database database : databases) {
+            database.close();
+        }
+        databases.clear();
+
+        dataStore.close();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.database.Database;
+import org.linqs.psl.grounding.Grounding;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.sgd.term.SGDTermStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end grounding (query, instantiation, and term generation) of representative rule shapes on H2.
+ * See BenchmarkModel.RULES for the shapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GroundingBenchmark {
+    @Param({"similarity", "symmetry", "transitivity", "arithmetic"})
+    public String rule;
+
+    @Param({"1000"})
+    public int numPeople;
+
+    @Param({"10"})
+    public int degree;
+
+    private BenchmarkModel model;
+    private Database database;
+    private List<Rule> rules;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        model = new BenchmarkModel(numPeople, degree);
+        database = model.getDatabase();
+        rules = Collections.singletonList(model.getRule(rule));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        model.close();
+    }
+
+    @Benchmark
+    public long ground() {
+        SGDTermStore termStore = new SGDTermStore(database.getAtomStore());
+        Grounding.groundAll(rules, termStore, database);
+
+        return termStore.size();
+    }
+}
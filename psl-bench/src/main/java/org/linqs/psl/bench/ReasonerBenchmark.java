@@ -0,0 +1,101 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.application.inference.InferenceApplication;
+import org.linqs.psl.application.inference.mpe.ADMMInference;
+import org.linqs.psl.application.inference.mpe.DualBCDInference;
+import org.linqs.psl.application.inference.mpe.GradientDescentInference;
+import org.linqs.psl.application.inference.mpe.SGDInference;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.database.Database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of a single optimization iteration of each reasoner over an already grounded model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReasonerBenchmark {
+    @Param({"ADMM", "SGD", "DualBCD", "GradientDescent"})
+    public String reasoner;
+
+    @Param({"1000"})
+    public int numPeople;
+
+    @Param({"10"})
+    public int degree;
+
+    private BenchmarkModel model;
+    private InferenceApplication inference;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Options.ADMM_MAX_ITER.set(1);
+        Options.SGD_MAX_ITER.set(1);
+        Options.DUAL_LCQP_MAX_ITER.set(1);
+        Options.GRADIENT_DESCENT_MAX_ITER.set(1);
+
+        model = new BenchmarkModel(numPeople, degree);
+        Database database = model.getDatabase();
+
+        if (reasoner.equals("ADMM")) {
+            inference = new ADMMInference(model.getRules(), database);
+        } else if (reasoner.equals("SGD")) {
+            inference = new SGDInference(model.getRules(), database);
+        } else if (reasoner.equals("DualBCD")) {
+            inference = new DualBCDInference(model.getRules(), database);
+        } else if (reasoner.equals("GradientDescent")) {
+            inference = new GradientDescentInference(model.getRules(), database);
+        } else {
+            throw new IllegalArgumentException("Unknown reasoner: " + reasoner);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        inference.close();
+        model.close();
+        Options.clearAll();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public double iteration() {
+        return inference.getReasoner().optimize(inference.getTermStore());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.reasoner.sgd.term.SGDObjectiveTerm;
+import org.linqs.psl.reasoner.sgd.term.SGDStreamingTermStore;
+import org.linqs.psl.util.SystemUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the term pages of a streaming term store.
+ * Writing is the initial round (which also grounds the terms), reading is any later round.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreamingBenchmark {
+    @Param({"1000"})
+    public int pageSize;
+
+    @Param({"1000"})
+    public int numPeople;
+
+    @Param({"10"})
+    public int degree;
+
+    private BenchmarkModel model;
+    private Database database;
+    private SGDStreamingTermStore readStore;
+
+    private String writePageDir;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Options.STREAMING_TS_PAGE_SIZE.set(pageSize);
+
+        model = new BenchmarkModel(numPeople, degree);
+        database = model.getDatabase();
+
+        Options.STREAMING_TS_PAGE_LOCATION.set(SystemUtils.getTempDir("psl_bench_read_pages"));
+        readStore = new SGDStreamingTermStore(model.getRules(), database);
+        iterate(readStore);
+
+        writePageDir = SystemUtils.getTempDir("psl_bench_write_pages");
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        readStore.close();
+        model.close();
+        Options.clearAll();
+    }
+
+    @Benchmark
+    public long pageWrite() {
+        Options.STREAMING_TS_PAGE_LOCATION.set(writePageDir);
+
+        SGDStreamingTermStore writeStore = new SGDStreamingTermStore(model.getRules(), database);
+        long count = iterate(writeStore);
+        writeStore.close();
+
+        return count;
+    }
+
+    @Benchmark
+    public long pageRead() {
+        return iterate(readStore);
+    }
+
+    private static long iterate(SGDStreamingTermStore termStore) {
+        long count = 0;
+        for (SGDObjectiveTerm term : termStore) {
+            count += term.size();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.bench;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.runtime.Runtime;
+import org.linqs.psl.runtime.RuntimeConfig;
+import org.linqs.psl.runtime.generator.WorkloadGenerator;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.SystemUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runtime inference (loading, grounding, and optimization) over generated workloads.
+ * Scale the workload with the entities and degree parameters (e.g., "-p entities=10000").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class WorkloadBenchmark {
+    @Param({"COLLECTIVE_CLASSIFICATION", "LINK_PREDICTION", "ENTITY_RESOLUTION", "ASSIGNMENT"})
+    public String family;
+
+    @Param({"1000"})
+    public int entities;
+
+    @Param({"10"})
+    public double degree;
+
+    private String workloadDir;
+    private String configPath;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Options.RANDOM_SEED.set(BenchmarkModel.DEFAULT_SEED);
+        RuntimeOptions.GENERATOR_ENTITIES.set(entities);
+        RuntimeOptions.GENERATOR_DEGREE.set(degree);
+
+        RuntimeOptions.INFERENCE.set(true);
+        RuntimeOptions.INFERENCE_OUTPUT_RESULTS.set(false);
+        RuntimeOptions.LOG_LEVEL.set("WARN");
+
+        workloadDir = SystemUtils.getTempDir("psl_bench_workload_" + family);
+        configPath = WorkloadGenerator.getGenerator(family).generate(workloadDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        FileUtils.recursiveDelete(workloadDir);
+        Options.clearAll();
+    }
+
+    @Benchmark
+    public Object inference() {
+        return new Runtime().run(RuntimeConfig.fromFile(configPath), false);
+    }
+}
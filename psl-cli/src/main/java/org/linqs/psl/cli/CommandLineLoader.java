@@ -49,6 +49,7 @@ public class CommandLineLoader {
     public static final String OPTION_CONFIG_LONG = "config";
     public static final String OPTION_DB_H2_PATH = "h2path";
     public static final String OPTION_DB_POSTGRESQL_NAME = "postgres";
+    public static final String OPTION_GENERATE_LONG = "generate";
     public static final String OPTION_INT_IDS = "int";
     public static final String OPTION_INT_IDS_LONG = "int-ids";
     public static final String OPTION_LOG_LONG = "log";
@@ -162,6 +163,18 @@ public class CommandLineLoader {
                 .optionalArg(true)
                 .build());
 
+        newOptions.addOption(Option.builder()
+                .longOpt(OPTION_GENERATE_LONG)
+                .desc("Generate a synthetic workload (rules, data, and config) and use it instead of '--" + OPTION_CONFIG_LONG + "'." +
+                        " You can optionally supply a workload family" +
+                        " (defaults to " + RuntimeOptions.GENERATOR_FAMILY.defaultValue() + ")." +
+                        " Use the runtime.generator.* properties to size the workload." +
+                        " If neither '--" + OPERATION_INFER_LONG + "' nor '--" + OPERATION_LEARN_LONG + "' is given, then only generate.")
+                .hasArg()
+                .argName("family")
+                .optionalArg(true)
+                .build());
+
         newOptions.addOption(Option.builder(OPTION_INT_IDS)
                 .longOpt(OPTION_INT_IDS_LONG)
                 .desc("Use integer identifiers (UniqueIntID) instead of string identifiers (UniqueStringID).")
@@ -20,6 +20,7 @@ package org.linqs.psl.cli;
 import org.linqs.psl.config.RuntimeOptions;
 import org.linqs.psl.runtime.RuntimeConfig;
 import org.linqs.psl.runtime.Runtime;
+import org.linqs.psl.runtime.generator.WorkloadGenerator;
 import org.linqs.psl.util.Logger;
 
 import org.apache.commons.cli.CommandLine;
@@ -41,11 +42,11 @@ public class Launcher {
     /**
      * Convert all compatible options to the PSL runtime.
      */
-    private RuntimeConfig convertRuntimeOptions() {
+    private RuntimeConfig convertRuntimeOptions(String configPath) {
         RuntimeConfig config = null;
 
-        if (parsedOptions.hasOption(CommandLineLoader.OPTION_CONFIG)) {
-            config = RuntimeConfig.fromFile(parsedOptions.getOptionValue(CommandLineLoader.OPTION_CONFIG));
+        if (configPath != null) {
+            config = RuntimeConfig.fromFile(configPath);
         } else {
             config = new RuntimeConfig();
         }
@@ -121,9 +122,35 @@ public class Launcher {
         return config;
     }
 
+    /**
+     * Generate a synthetic workload and return the path to its config.
+     */
+    private String generateWorkload() {
+        String family = parsedOptions.getOptionValue(CommandLineLoader.OPTION_GENERATE_LONG);
+        if (family != null) {
+            RuntimeOptions.GENERATOR_FAMILY.set(family);
+        }
+
+        String configPath = WorkloadGenerator.getGenerator().generate(RuntimeOptions.GENERATOR_OUTPUT_DIR.getString());
+        log.info("Generated workload config: {}", configPath);
+
+        return configPath;
+    }
+
     private void run() {
+        String configPath = parsedOptions.getOptionValue(CommandLineLoader.OPTION_CONFIG);
+
+        if (parsedOptions.hasOption(CommandLineLoader.OPTION_GENERATE_LONG)) {
+            configPath = generateWorkload();
+
+            // Only generate unless we were also asked to run something.
+            if (!parsedOptions.hasOption(CommandLineLoader.OPERATION_INFER) && !parsedOptions.hasOption(CommandLineLoader.OPERATION_LEARN)) {
+                return;
+            }
+        }
+
         Runtime runtime = new Runtime();
-        runtime.run(convertRuntimeOptions());
+        runtime.run(convertRuntimeOptions(configPath));
     }
 
     public static void main(String[] args) {
@@ -20,9 +20,13 @@ package org.linqs.psl.application.inference;
 import org.linqs.psl.application.ModelApplication;
 import org.linqs.psl.application.learning.weight.TrainingMap;
 import org.linqs.psl.config.Options;
+import org.linqs.psl.database.AtomDelta;
+import org.linqs.psl.database.AtomStore;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.grounding.Grounding;
+import org.linqs.psl.grounding.GroundingSnapshot;
+import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.DeepPredicate;
 import org.linqs.psl.model.predicate.Predicate;
@@ -33,10 +37,12 @@ import org.linqs.psl.reasoner.InitialValue;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.admm.ADMMReasoner;
 import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.MemoryAccountant;
 import org.linqs.psl.util.Reflection;
 
 import java.lang.reflect.Constructor;
@@ -51,7 +57,7 @@ import java.util.List;
  * As such, the inference application is the top level authority for these items and methods.
  * For example, inference may set the value of the random variables on construction.
  */
-public abstract class InferenceApplication implements ModelApplication {
+public abstract class InferenceApplication implements ModelApplication, Cloneable {
     private static final Logger log = Logger.getLogger(InferenceApplication.class);
 
     protected List<Rule> rules;
@@ -69,6 +75,12 @@ public abstract class InferenceApplication implements ModelApplication {
 
     private boolean atomsCommitted;
 
+    /**
+     * Set on copies made by copyForConcurrentInference(),
+     * which do not own their term store or database.
+     */
+    private boolean concurrentCopy;
+
     protected InferenceApplication(List<Rule> rules, Database database) {
         this(rules, database, Options.INFERENCE_RELAX.getBoolean());
     }
@@ -77,6 +89,7 @@ public abstract class InferenceApplication implements ModelApplication {
         this.rules = new ArrayList<Rule>(rules);
         this.database = database;
         this.atomsCommitted = false;
+        this.concurrentCopy = false;
 
         this.initialValue = InitialValue.valueOf(Options.INFERENCE_INITIAL_VARIABLE_VALUE.getString());
         this.skipInference = Options.INFERENCE_SKIP_INFERENCE.getBoolean();
@@ -94,6 +107,7 @@ public abstract class InferenceApplication implements ModelApplication {
      */
     protected void initialize() {
         initializeAtoms();
+        MemoryAccountant.log("loading atoms");
 
         if (normalizeWeights) {
             normalizeWeights();
@@ -106,7 +120,17 @@ public abstract class InferenceApplication implements ModelApplication {
         reasoner = createReasoner();
         termStore = createTermStore();
 
+        if (Options.GROUNDING_INCREMENTAL.getBoolean()) {
+            if (termStore instanceof SimpleTermStore) {
+                ((SimpleTermStore)termStore).setTrackTermSupport(true);
+            } else {
+                log.warn("Incremental grounding is not supported by {}, updates will require full re-grounding.",
+                        termStore.getClass().getName());
+            }
+        }
+
         completeInitialize();
+        MemoryAccountant.log("grounding");
     }
 
     protected Reasoner createReasoner() {
@@ -117,18 +141,120 @@ public abstract class InferenceApplication implements ModelApplication {
         return new ADMMTermStore(database.getAtomStore());
     }
 
+    /**
+     * Make a copy of this application that can run inference concurrently with it and other copies,
+     * e.g. from inside a Parallel task (see Parallel.isPoolThread()).
+     * The copy shares the rules, database, and (initially) the term store, but has its own reasoner.
+     * It is expected that the copy will be given its own term store to work on (see setTermStore()),
+     * and resetting a copy only initializes the atoms of its term store (not the database's atoms).
+     * Closing a copy only closes its reasoner.
+     */
+    public InferenceApplication copyForConcurrentInference() {
+        InferenceApplication copy = null;
+        try {
+            copy = (InferenceApplication)clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new RuntimeException("Failed to copy inference application: " + getClass().getName(), ex);
+        }
+
+        copy.rules = new ArrayList<Rule>(rules);
+        copy.reasoner = createReasoner();
+        copy.reasoner.setBudget(reasoner.getBudget());
+        copy.concurrentCopy = true;
+
+        return copy;
+    }
+
     /**
      * Complete the initialization process.
      * Most of the infrastructure will have been constructed.
      * The child is responsible for populating the ground rule store.
      */
     protected void completeInitialize() {
+        String snapshotPath = Options.GROUNDING_SNAPSHOT_PATH.getString();
+        if (snapshotPath != null && supportsGroundingSnapshot()) {
+            SimpleTermStore simpleTermStore = (SimpleTermStore)termStore;
+            String fingerprint = GroundingSnapshot.fingerprint(rules, simpleTermStore, database);
+
+            if (GroundingSnapshot.load(snapshotPath, fingerprint, rules, simpleTermStore, database)) {
+                log.info("Loaded ground model from snapshot: {}.", snapshotPath);
+                log.debug("Loaded {} terms.", termStore.size());
+                return;
+            }
+
+            groundAll();
+            GroundingSnapshot.save(snapshotPath, fingerprint, rules, simpleTermStore);
+            return;
+        }
+
+        groundAll();
+    }
+
+    private void groundAll() {
+        if (Options.MEMORY_ACCOUNTANT_PREFLIGHT.getBoolean()) {
+            List<MemoryAccountant.Estimate> estimates = Grounding.estimateMemory(rules, database);
+            log.info("Estimated grounding memory:{}{}", System.lineSeparator(), MemoryAccountant.toTable(estimates));
+        }
+
         log.info("Grounding out model.");
         long termCount = Grounding.groundAll(rules, termStore, database);
         log.info("Grounding complete.");
         log.debug("Generated {} terms.", termCount);
     }
 
+    private boolean supportsGroundingSnapshot() {
+        if (!(termStore instanceof SimpleTermStore)) {
+            log.warn("Grounding snapshots are not supported by {}, the model will be grounded.", termStore.getClass().getName());
+            return false;
+        }
+
+        if (((SimpleTermStore)termStore).isTrackingTermSupport()) {
+            log.warn("Grounding snapshots cannot be used with incremental grounding, the model will be grounded.");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Bring the grounding up-to-date with changes made to the database
+     * (e.g. new, removed, or modified observations and targets) since the model was grounded,
+     * without re-grounding the entire model.
+     * Requires Options.GROUNDING_INCREMENTAL to be set when this application is constructed.
+     *
+     * Retracted terms are deactivated rather than removed from the term store.
+     * Rebuild the application if the store accumulates too many inactive terms.
+     *
+     * @return the number of terms added.
+     */
+    public long updateGrounding() {
+        if (!(termStore instanceof SimpleTermStore) || !((SimpleTermStore)termStore).isTrackingTermSupport()) {
+            throw new IllegalStateException(
+                    "Incremental grounding requires a SimpleTermStore constructed with incremental grounding enabled"
+                    + " (" + Options.GROUNDING_INCREMENTAL.name() + ").");
+        }
+
+        AtomDelta delta = database.getAtomStore().refresh();
+
+        // New random variables start at the application's initial value.
+        float[] atomValues = database.getAtomStore().getAtomValues();
+        for (GroundAtom atom : delta.getInserted()) {
+            if (atom instanceof RandomVariableAtom) {
+                ((RandomVariableAtom)atom).setValue(initialValue.getVariableValue(atom));
+                atomValues[atom.getIndex()] = atom.getValue();
+            }
+        }
+
+        log.info("Updating grounding ({}).", delta);
+        long termCount = Grounding.groundDelta(rules, (SimpleTermStore)termStore, database, delta);
+        log.info("Grounding update complete.");
+        log.debug("Generated {} terms.", termCount);
+
+        atomsCommitted = false;
+
+        return termCount;
+    }
+
     /**
      * Alias for inference() with committing atoms.
      */
@@ -176,6 +302,8 @@ public abstract class InferenceApplication implements ModelApplication {
         double objective = internalInference(evaluations, trainingMap);
         atomsCommitted = false;
 
+        MemoryAccountant.log("inference", trainingMap);
+
         // Commits the RandomVariableAtoms back to the Database.
         if (commitAtoms) {
             commit();
@@ -221,7 +349,12 @@ public abstract class InferenceApplication implements ModelApplication {
      * Set all the random variable atoms to the initial value for this inference application.
      */
     public void initializeAtoms() {
-        for (RandomVariableAtom atom : database.getAtomStore().getRandomVariableAtoms()) {
+        AtomStore atomStore = database.getAtomStore();
+        if (concurrentCopy) {
+            atomStore = termStore.getAtomStore();
+        }
+
+        for (RandomVariableAtom atom : atomStore.getRandomVariableAtoms()) {
             atom.setValue(initialValue.getVariableValue(atom));
         }
     }
@@ -234,6 +367,10 @@ public abstract class InferenceApplication implements ModelApplication {
      * Commit the results of inference to the database.
      */
     public void commit() {
+        if (concurrentCopy) {
+            throw new IllegalStateException("A copy made for concurrent inference cannot commit to the database.");
+        }
+
         if (atomsCommitted) {
             return;
         }
@@ -247,6 +384,10 @@ public abstract class InferenceApplication implements ModelApplication {
 
     @Override
     public void close() {
+        if (concurrentCopy) {
+            termStore = null;
+        }
+
         if (termStore != null) {
             termStore.close();
             termStore = null;
@@ -265,6 +406,13 @@ public abstract class InferenceApplication implements ModelApplication {
      * Normalize all weights to be in [0, 1].
      */
     protected void normalizeWeights() {
+        normalizeWeights(rules);
+    }
+
+    /**
+     * Normalize the weights of the given rules to be in [0, 1] (see Options.INFERENCE_NORMALIZE_WEIGHTS).
+     */
+    public static void normalizeWeights(List<Rule> rules) {
         float max = 0.0f;
         boolean hasWeightedRule = false;
 
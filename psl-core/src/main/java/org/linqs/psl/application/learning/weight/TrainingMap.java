@@ -25,6 +25,7 @@ import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.FunctionalPredicate;
 import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -53,7 +54,7 @@ import java.util.Set;
  *   (not existent, not existent) - Ignored
  * Missing targts will always log a warning.
  */
-public class TrainingMap {
+public class TrainingMap implements MemoryAccountant.Accountable {
     private static final Logger log = Logger.getLogger(TrainingMap.class);
 
     /**
@@ -255,6 +256,24 @@ public class TrainingMap {
         return (Iterable<Map.Entry<GroundAtom, GroundAtom>>)((Object)temp);
     }
 
+    /**
+     * Estimate the memory held by this map.
+     * The atoms themselves belong to their atom stores, so only the references are counted.
+     */
+    @Override
+    public void estimateMemory(List<MemoryAccountant.Estimate> estimates) {
+        String owner = getClass().getSimpleName();
+
+        estimates.add(new MemoryAccountant.Estimate(owner, "label map", labelMap.size(), MemoryAccountant.hashMapBytes(labelMap.size())));
+        estimates.add(new MemoryAccountant.Estimate(owner, "observed map", observedMap.size(), MemoryAccountant.hashMapBytes(observedMap.size())));
+
+        int size = latentVariables.size() + missingLabels.size() + missingTargets.size();
+        long bytes = MemoryAccountant.arrayListBytes(latentVariables.size())
+                + MemoryAccountant.arrayListBytes(missingLabels.size())
+                + MemoryAccountant.arrayListBytes(missingTargets.size());
+        estimates.add(new MemoryAccountant.Estimate(owner, "unmatched atoms", size, bytes));
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.learning.weight;
+
+import org.linqs.psl.application.inference.InferenceApplication;
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.evaluation.EvaluationInstance;
+import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the training model (terms, atoms, and inference application) that can run inference
+ * for some weight configuration concurrently with other replicas.
+ * The terms of a replica carry their own weights (see SimpleTermStore.setWeightOverrides()),
+ * so the shared rules are never modified.
+ * Note that each replica holds a full copy of the training term and atom stores.
+ */
+public class TrainingReplica {
+    private final SimpleTermStore<? extends ReasonerTerm> termStore;
+    private final InferenceApplication inferenceApplication;
+    private final TrainingMap trainingMap;
+
+    private final List<WeightedRule> rules;
+    private final Map<WeightedRule, Float> weights;
+
+    @SuppressWarnings("unchecked")
+    public TrainingReplica(InferenceApplication trainInferenceApplication, AtomStore truthAtomStore, List<WeightedRule> rules) {
+        termStore = ((SimpleTermStore<? extends ReasonerTerm>)trainInferenceApplication.getTermStore()).copy();
+
+        inferenceApplication = trainInferenceApplication.copyForConcurrentInference();
+        inferenceApplication.setTermStore(termStore);
+
+        trainingMap = new TrainingMap(termStore.getAtomStore(), truthAtomStore);
+
+        this.rules = rules;
+        weights = new HashMap<WeightedRule, Float>(rules.size());
+    }
+
+    public InferenceApplication getInferenceApplication() {
+        return inferenceApplication;
+    }
+
+    public TrainingMap getTrainingMap() {
+        return trainingMap;
+    }
+
+    /**
+     * Set the weights (ordered the same as the rules this replica was constructed with) to use for inference.
+     */
+    public void setWeights(float[] newWeights) {
+        for (int i = 0; i < rules.size(); i++) {
+            weights.put(rules.get(i), Float.valueOf(newWeights[i]));
+        }
+
+        termStore.setWeightOverrides(weights);
+    }
+
+    public void setBudget(double budget) {
+        inferenceApplication.setBudget(budget);
+    }
+
+    /**
+     * Compute the MAP state for the current weights, starting from the initial atom values.
+     */
+    public void computeMAPState() {
+        computeMAPState(true);
+    }
+
+    /**
+     * Compute the MAP state for the current weights.
+     * If resetInitialValues is false, then inference continues from the current state of the replica.
+     */
+    public void computeMAPState(boolean resetInitialValues) {
+        inferenceApplication.inference(false, resetInitialValues);
+    }
+
+    /**
+     * Evaluate the current state and give back the score (lower is better).
+     * The evaluation instance may be shared with other replicas, so it is held while it is computed and read.
+     */
+    public double evaluate(EvaluationInstance evaluation) {
+        synchronized (evaluation) {
+            evaluation.compute(trainingMap);
+            return -1.0 * evaluation.getNormalizedRepMetric();
+        }
+    }
+
+    public void close() {
+        inferenceApplication.close();
+        termStore.close();
+    }
+}
@@ -27,7 +27,10 @@ import org.linqs.psl.model.predicate.DeepPredicate;
 import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.reasoner.InitialValue;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.MemoryAccountant;
 import org.linqs.psl.util.RandUtils;
 import org.linqs.psl.util.Reflection;
 
@@ -74,6 +77,11 @@ public abstract class WeightLearningApplication implements ModelApplication {
 
     protected EvaluationInstance evaluation;
 
+    /**
+     * Copies of the training model for evaluating weights concurrently (see getTrainingReplicas()).
+     */
+    private List<TrainingReplica> trainingReplicas;
+
     private boolean groundModelInit;
 
     /**
@@ -127,6 +135,8 @@ public abstract class WeightLearningApplication implements ModelApplication {
 
         evaluation = null;
 
+        trainingReplicas = null;
+
         timeout = Options.WLA_TIMEOUT.getLong() * 1000;
         if (timeout < 0) {
             timeout = Long.MAX_VALUE;
@@ -164,6 +174,43 @@ public abstract class WeightLearningApplication implements ModelApplication {
         trainInferenceApplication.setBudget(budget);
     }
 
+    /**
+     * Check if the training ground model is left unchanged by learning (other than rule weights),
+     * and can therefore be reused for inference over the same data (see releaseTrainInferenceApplication()).
+     * Children that add their own terms or atoms to the training ground model should return false.
+     */
+    public boolean canShareGroundModel() {
+        return deepPredicates.size() == 0;
+    }
+
+    /**
+     * Hand off the training inference application (and its ground model) after learning.
+     * The reasoner is given back its full budget and the configured initial atom values
+     * (learning may initialize atoms from their current values to warm start),
+     * the learned weights are normalized the same way a new inference application would,
+     * any copies of the training model are closed,
+     * and this application will no longer commit or close the training inference application.
+     * Returns null if the ground model was never initialized.
+     */
+    public InferenceApplication releaseTrainInferenceApplication() {
+        closeTrainingReplicas();
+
+        InferenceApplication inferenceApplication = trainInferenceApplication;
+        trainInferenceApplication = null;
+
+        if (inferenceApplication != null) {
+            inferenceApplication.setBudget(1.0);
+            inferenceApplication.setInitialValue(InitialValue.valueOf(Options.INFERENCE_INITIAL_VARIABLE_VALUE.getString()));
+
+            // The training inference application normalized the weights before they were learned.
+            if (Options.INFERENCE_NORMALIZE_WEIGHTS.getBoolean()) {
+                InferenceApplication.normalizeWeights(allRules);
+            }
+        }
+
+        return inferenceApplication;
+    }
+
     /**
      * Initialize all the infrastructure dealing with the ground model.
      * Children should favor overriding postInitGroundModel() instead of this.
@@ -229,6 +276,8 @@ public abstract class WeightLearningApplication implements ModelApplication {
 
         postInitGroundModel();
 
+        MemoryAccountant.log("learning initialization", trainingMap, validationMap);
+
         groundModelInit = true;
     }
 
@@ -240,6 +289,33 @@ public abstract class WeightLearningApplication implements ModelApplication {
         }
     }
 
+    /**
+     * Get (creating them the first time) copies of the training model that can evaluate weights concurrently.
+     * Every replica holds a full copy of the training term and atom stores.
+     * Returns null if the training model cannot be copied,
+     * i.e. if it is not held in memory or it uses deep predicates.
+     */
+    protected List<TrainingReplica> getTrainingReplicas(int numReplicas) {
+        if (trainingReplicas != null) {
+            return trainingReplicas;
+        }
+
+        if (!(trainInferenceApplication.getTermStore() instanceof SimpleTermStore) || (deepPredicates.size() > 0)) {
+            log.warn("The training model of {} cannot be copied, weights will be evaluated one at a time.",
+                    getClass().getSimpleName());
+            return null;
+        }
+
+        log.debug("Creating {} copies of the training model.", numReplicas);
+
+        trainingReplicas = new ArrayList<TrainingReplica>(numReplicas);
+        for (int i = 0; i < numReplicas; i++) {
+            trainingReplicas.add(new TrainingReplica(trainInferenceApplication, trainTruthDatabase.getAtomStore(), mutableRules));
+        }
+
+        return trainingReplicas;
+    }
+
     /**
      * A convenient place for children to do additional ground model initialization.
      */
@@ -274,8 +350,21 @@ public abstract class WeightLearningApplication implements ModelApplication {
         inferenceApplication.inference(false, true);
     }
 
+    private void closeTrainingReplicas() {
+        if (trainingReplicas == null) {
+            return;
+        }
+
+        for (TrainingReplica trainingReplica : trainingReplicas) {
+            trainingReplica.close();
+        }
+        trainingReplicas = null;
+    }
+
     @Override
     public void close() {
+        closeTrainingReplicas();
+
         if (trainInferenceApplication != null) {
             trainInferenceApplication.commit();
             trainInferenceApplication.close();
@@ -34,6 +34,7 @@ import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.reasoner.term.TermState;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Parallel;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,7 +46,7 @@ import java.util.Map;
  * Learns weights for weighted rules in a model by optimizing an objective via Gradient Descent.
  * Child classes define methods for computing the value and gradient of a loss.
  */
-public abstract class GradientDescent extends WeightLearningApplication {
+public abstract class GradientDescent extends WeightLearningApplication implements Cloneable {
     private static final Logger log = Logger.getLogger(GradientDescent.class);
 
     /**
@@ -66,6 +67,10 @@ public abstract class GradientDescent extends WeightLearningApplication {
     protected Map<WeightedRule, Integer> ruleIndexMap;
 
     protected float[] weightGradient;
+    protected int batchesPerStep;
+    protected boolean parallelBatches;
+    protected List<GradientDescent> batchWorkers;
+    protected float[] batchWorkerWeightGradientSum;
     protected float[] rvGradient;
     protected float[] deepGradient;
     protected float[] MAPRVEnergyGradient;
@@ -135,6 +140,10 @@ public abstract class GradientDescent extends WeightLearningApplication {
         }
 
         weightGradient = new float[mutableRules.size()];
+        batchesPerStep = Options.WLA_GRADIENT_DESCENT_BATCHES_PER_STEP.getInt();
+        parallelBatches = false;
+        batchWorkers = null;
+        batchWorkerWeightGradientSum = null;
         rvGradient = null;
         deepGradient = null;
         MAPRVEnergyGradient = null;
@@ -313,6 +322,18 @@ public abstract class GradientDescent extends WeightLearningApplication {
         bestValidationEvaluationMetric = Double.NEGATIVE_INFINITY;
         lastValidationImprovementEpoch = 0;
 
+        parallelBatches = false;
+        if (batchesPerStep > 1) {
+            if (!supportsParallelBatches()) {
+                log.warn("{} does not support evaluating batches in parallel. Batches will be evaluated one at a time.",
+                        getClass().getSimpleName());
+            } else if (deepPredicates.size() > 0) {
+                log.warn("Batches cannot be evaluated in parallel with deep predicates. Batches will be evaluated one at a time.");
+            } else {
+                parallelBatches = true;
+            }
+        }
+
         trainDeepModelPredicates = trainFullDeepModelPredicates;
         trainMAPTermState = trainFullMAPTermState;
         trainMAPAtomValueState = trainFullMAPAtomValueState;
@@ -359,31 +380,37 @@ public abstract class GradientDescent extends WeightLearningApplication {
             float averageBatchObjective = 0.0f;
             batchGenerator.permuteBatchOrdering();
             int batchId = batchGenerator.epochStart();
-            while (!batchGenerator.isEpochComplete()) {
-                numBatches++;
-
-                setBatch(batchId);
-                DeepPredicate.predictAllDeepPredicates();
+            if (parallelBatches) {
+                List<Integer> stepBatches = new ArrayList<Integer>(batchesPerStep);
+                while (!batchGenerator.isEpochComplete()) {
+                    stepBatches.clear();
+                    while ((!batchGenerator.isEpochComplete()) && (stepBatches.size() < batchesPerStep)) {
+                        stepBatches.add(batchId);
+                        batchId = batchGenerator.nextBatch();
+                    }
+
+                    numBatches += stepBatches.size();
+                    averageBatchObjective += computeParallelBatchGradient(stepBatches);
+
+                    gradientStep(epoch);
+                }
+            } else {
+                while (!batchGenerator.isEpochComplete()) {
+                    numBatches++;
 
-                resetGradients();
+                    setBatch(batchId);
+                    DeepPredicate.predictAllDeepPredicates();
 
-                computeIterationStatistics();
+                    averageBatchObjective += computeBatchGradient();
 
-                addTotalWeightGradient();
-                addTotalAtomGradient();
-                if (clipWeightGradient) {
-                    clipWeightGradient();
-                }
+                    gradientStep(epoch);
 
-                averageBatchObjective += computeTotalLoss();
+                    if (epoch % trainingStopComputePeriod == 0) {
+                        epochDeepAtomValueMovement += DeepPredicate.predictAllDeepPredicates();
+                    }
 
-                gradientStep(epoch);
-
-                if (epoch % trainingStopComputePeriod == 0) {
-                    epochDeepAtomValueMovement += DeepPredicate.predictAllDeepPredicates();
+                    batchId = batchGenerator.nextBatch();
                 }
-
-                batchId = batchGenerator.nextBatch();
             }
             batchGenerator.epochEnd();
 
@@ -455,6 +482,13 @@ public abstract class GradientDescent extends WeightLearningApplication {
         }
     }
 
+    @Override
+    public void close() {
+        closeBatchWorkers();
+
+        super.close();
+    }
+
     protected void epochStart(int epoch) {
         epochDeepAtomValueMovement = 0.0f;
 
@@ -505,6 +539,145 @@ public abstract class GradientDescent extends WeightLearningApplication {
         }
     }
 
+    /**
+     * Compute the loss and gradients of the current batch (see setBatch()).
+     * Returns the total loss of the batch.
+     */
+    protected float computeBatchGradient() {
+        resetGradients();
+
+        computeIterationStatistics();
+
+        addTotalWeightGradient();
+        addTotalAtomGradient();
+        if (clipWeightGradient) {
+            clipWeightGradient();
+        }
+
+        return computeTotalLoss();
+    }
+
+    /**
+     * Compute the loss and gradients of several batches in parallel, each batch worker (see copyForBatchWorker())
+     * running its own inference on the batches assigned to it.
+     * The weight gradient is set to the average of the batch weight gradients,
+     * so a single gradient step can then be taken for all the batches (see Options.WLA_GRADIENT_DESCENT_BATCHES_PER_STEP).
+     * Returns the total loss of the batches.
+     */
+    protected float computeParallelBatchGradient(final List<Integer> batches) {
+        initBatchWorkers();
+
+        final int numWorkers = Math.min(batchWorkers.size(), batches.size());
+        final float[] workerLosses = new float[numWorkers];
+
+        Parallel.count(numWorkers, new Parallel.Worker<Long>() {
+            @Override
+            public void work(long index, Long item) {
+                GradientDescent batchWorker = batchWorkers.get((int)index);
+                Arrays.fill(batchWorker.batchWorkerWeightGradientSum, 0.0f);
+
+                // Each worker takes a fixed stride of the batches so the reduction order is deterministic.
+                for (int i = (int)index; i < batches.size(); i += numWorkers) {
+                    batchWorker.setBatch(batches.get(i).intValue());
+                    workerLosses[(int)index] += batchWorker.computeBatchGradient();
+
+                    for (int j = 0; j < batchWorker.weightGradient.length; j++) {
+                        batchWorker.batchWorkerWeightGradientSum[j] += batchWorker.weightGradient[j];
+                    }
+                }
+            }
+        });
+
+        float totalLoss = 0.0f;
+        Arrays.fill(weightGradient, 0.0f);
+        for (int i = 0; i < numWorkers; i++) {
+            totalLoss += workerLosses[i];
+
+            float[] workerWeightGradientSum = batchWorkers.get(i).batchWorkerWeightGradientSum;
+            for (int j = 0; j < weightGradient.length; j++) {
+                weightGradient[j] += workerWeightGradientSum[j];
+            }
+        }
+
+        for (int j = 0; j < weightGradient.length; j++) {
+            weightGradient[j] /= batches.size();
+        }
+
+        inTrainingMAPState = false;
+
+        return totalLoss;
+    }
+
+    /**
+     * Whether this learner can compute the gradients of several batches in parallel (see copyForBatchWorker()).
+     * Learners that update internal parameters or atoms after every batch should not support this.
+     */
+    protected boolean supportsParallelBatches() {
+        return false;
+    }
+
+    private void initBatchWorkers() {
+        if (batchWorkers != null) {
+            return;
+        }
+
+        int numWorkers = Math.min(batchesPerStep, Parallel.getNumThreads());
+
+        batchWorkers = new ArrayList<GradientDescent>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            batchWorkers.add(copyForBatchWorker());
+        }
+    }
+
+    /**
+     * Make a copy of this learner that can compute batch gradients concurrently with other copies.
+     * The copy shares the model, batches, and warm start states (each batch is only ever used by one worker at a time),
+     * but has its own training inference application (see InferenceApplication.copyForConcurrentInference())
+     * and gradients.
+     */
+    protected GradientDescent copyForBatchWorker() {
+        GradientDescent batchWorker = null;
+        try {
+            batchWorker = (GradientDescent)clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new RuntimeException("Failed to copy weight learning application: " + getClass().getName(), ex);
+        }
+
+        batchWorker.trainInferenceApplication = trainInferenceApplication.copyForConcurrentInference();
+        batchWorker.batchWorkers = null;
+        batchWorker.batchWorkerWeightGradientSum = new float[mutableRules.size()];
+
+        batchWorker.weightGradient = new float[weightGradient.length];
+        batchWorker.rvGradient = new float[rvGradient.length];
+        batchWorker.deepGradient = new float[deepGradient.length];
+        batchWorker.MAPRVEnergyGradient = new float[MAPRVEnergyGradient.length];
+        batchWorker.MAPDeepEnergyGradient = new float[MAPDeepEnergyGradient.length];
+
+        batchWorker.initBatchWorkerState();
+
+        return batchWorker;
+    }
+
+    /**
+     * Give a fresh batch worker (see copyForBatchWorker()) its own copy of any state that is written while computing gradients.
+     * Children that support parallel batches should override this method if they add such state.
+     */
+    protected void initBatchWorkerState() {
+        // Do nothing.
+    }
+
+    private void closeBatchWorkers() {
+        if (batchWorkers == null) {
+            return;
+        }
+
+        for (GradientDescent batchWorker : batchWorkers) {
+            batchWorker.trainInferenceApplication.close();
+        }
+
+        batchWorkers = null;
+    }
+
     protected void resetGradients() {
         Arrays.fill(weightGradient, 0.0f);
         Arrays.fill(rvGradient, 0.0f);
@@ -554,12 +727,16 @@ public abstract class GradientDescent extends WeightLearningApplication {
 
             setBatch(batchId);
             DeepPredicate.predictAllDeepPredicates();
-            DeepPredicate.evalAllDeepPredicates();
+
+            // The deep evaluation does not depend on the MAP state, so let it run alongside inference.
+            DeepPredicate.startEvalAllDeepPredicates();
 
             // Compute the MAP state before evaluating so variables have assigned values.
             log.trace("Running MAP inference for training evaluation.");
             computeMAPStateWithWarmStart(trainInferenceApplication, trainMAPTermState, trainMAPAtomValueState);
 
+            DeepPredicate.finishEvalAllDeepPredicates();
+
             evaluation.compute(trainingMap);
             totalTrainingEvaluation += evaluation.getNormalizedRepMetric();
 
@@ -582,11 +759,13 @@ public abstract class GradientDescent extends WeightLearningApplication {
         setValidationModel();
         DeepPredicate.evalModeAllDeepPredicates();
         DeepPredicate.predictAllDeepPredicates();
-        DeepPredicate.evalAllDeepPredicates();
+        DeepPredicate.startEvalAllDeepPredicates();
 
         log.trace("Running Validation Inference.");
         computeMAPStateWithWarmStart(validationInferenceApplication, validationMAPTermState, validationMAPAtomValueState);
 
+        DeepPredicate.finishEvalAllDeepPredicates();
+
         evaluation.compute(validationMap);
         currentValidationEvaluationMetric = evaluation.getNormalizedRepMetric();
 
@@ -25,75 +25,380 @@ import org.linqs.psl.model.predicate.DeepPredicate;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.SimpleTermStore;
 
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 
 
 /**
  * A BatchGenerator that creates a batch from sets of connected components of the HL-MRF factor graph.
+ *
+ * Components are either grouped by count (COMPONENT_COUNT),
+ * or packed by size (TERM_COUNT/ATOM_COUNT) into batches of about the same size using first-fit decreasing.
+ * When packing, components larger than the target size are split into pieces along a breadth-first traversal
+ * of the component (so that each piece stays as connected as possible).
+ * The batch plan (which terms go into which batch) is computed once and reused when batches are regenerated.
  */
 public class ConnectedComponentBatchGenerator extends BatchGenerator {
+    public static enum BatchStrategy {
+        COMPONENT_COUNT,
+        TERM_COUNT,
+        ATOM_COUNT
+    }
 
     private final int batchSize;
+    private final BatchStrategy batchStrategy;
+    private final int batchTargetSize;
+
+    /**
+     * The groups of terms (whole components or pieces of components) that make up each batch.
+     */
+    private List<List<List<? extends ReasonerTerm>>> batchPlan;
+
+    /**
+     * The full term store's modification count when the plan was made (see SimpleTermStore.getModificationCount()).
+     * A count (instead of the number of terms) catches retractions and additions that leave the size unchanged.
+     */
+    private long batchPlanModificationCount;
+
+    /**
+     * A scratch space indexed by full atom index, used to count and remap atoms.
+     * Entries are always reset to -1 after use.
+     */
+    private int[] atomMarks;
 
     public ConnectedComponentBatchGenerator(InferenceApplication inferenceApplication, SimpleTermStore<? extends ReasonerTerm> fullTermStore,
                                             List<DeepPredicate> deepPredicates, AtomStore fullTruthAtomStore) {
         super(inferenceApplication, fullTermStore, deepPredicates, fullTruthAtomStore);
 
         batchSize = Options.WLA_CONNECTED_COMPONENT_BATCH_SIZE.getInt();
+        batchStrategy = BatchStrategy.valueOf(Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.getString().toUpperCase());
+        batchTargetSize = Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.getInt();
+
+        batchPlan = null;
+        batchPlanModificationCount = -1;
+        atomMarks = null;
     }
 
+    /**
+     * Build batches from the connected components of the full term store.
+     * Batch construction is linear in the size of the batch:
+     * atoms are remapped from the full atom store to the batch atom store with a flat index array (instead of hashing atoms),
+     * and copied terms have their atom indexes rewritten in place.
+     */
     @Override
     public void generateBatchesInternal() {
         AtomStore fullAtomStore = fullTermStore.getAtomStore();
 
-        AtomStore batchAtomStore = new AtomStore();
-        batchTruthAtomStores.add(new AtomStore());
-        SimpleTermStore<? extends ReasonerTerm> batchTermStore = (SimpleTermStore<? extends ReasonerTerm>) inferenceApplication.createTermStore();
-        batchTermStore.setAtomStore(batchAtomStore);
+        if (atomMarks == null || atomMarks.length < fullAtomStore.size()) {
+            atomMarks = new int[fullAtomStore.size()];
+            Arrays.fill(atomMarks, -1);
+        }
 
-        int batchNumComponents = 0;
-        for (List<? extends ReasonerTerm> component : fullTermStore.getConnectedComponents().values()) {
+        long modificationCount = fullTermStore.getModificationCount();
+        if (batchPlan == null || batchPlanModificationCount != modificationCount) {
+            batchPlan = planBatches();
+            batchPlanModificationCount = modificationCount;
+        }
 
-            // If we have reached the batch size, add the current batch to the list of batches and start a new batch.
-            if (batchNumComponents >= batchSize) {
-                batchTermStores.add(batchTermStore);
-                batchNumComponents = 0;
+        // The full indexes of the atoms in the current batch (used to reset atomMarks between batches).
+        int[] fullAtomIndexes = new int[AtomStore.MIN_ALLOCATION];
+        int batchNumAtoms = 0;
 
-                batchAtomStore = new AtomStore();
-                batchTruthAtomStores.add(new AtomStore());
-                batchTermStore = (SimpleTermStore<? extends ReasonerTerm>) inferenceApplication.createTermStore();
-                batchTermStore.setAtomStore(batchAtomStore);
+        for (List<List<? extends ReasonerTerm>> batchParts : batchPlan) {
+            int batchNumTerms = 0;
+            for (List<? extends ReasonerTerm> part : batchParts) {
+                batchNumTerms += part.size();
             }
 
-            for (ReasonerTerm originalTerm : component) {
-                ReasonerTerm batchTerm = originalTerm.copy();
+            AtomStore batchAtomStore = new AtomStore();
+            AtomStore batchTruthAtomStore = new AtomStore();
+            SimpleTermStore<? extends ReasonerTerm> batchTermStore = (SimpleTermStore<? extends ReasonerTerm>) inferenceApplication.createTermStore();
+            batchTermStore.setAtomStore(batchAtomStore);
+            batchTermStore.ensureCapacity(batchNumTerms);
+
+            for (List<? extends ReasonerTerm> part : batchParts) {
+                for (ReasonerTerm originalTerm : part) {
+                    // The copy owns its own atom index array, so it can be remapped in place.
+                    ReasonerTerm batchTerm = originalTerm.copy();
+                    int[] atomIndexes = batchTerm.getAtomIndexes();
+
+                    for (int j = 0; j < batchTerm.size(); j++) {
+                        int fullAtomIndex = atomIndexes[j];
 
-                int[] originalAtomIndexes = originalTerm.getAtomIndexes();
-                int[] newAtomIndexes = new int[originalTerm.getAtomIndexes().length];
-                for (int i = 0; i < batchTerm.size(); i++) {
-                    GroundAtom atom = fullAtomStore.getAtom(originalAtomIndexes[i]);
-                    if (!batchAtomStore.hasAtom(atom)) {
-                        batchAtomStore.addAtom(atom.copy());
+                        if (atomMarks[fullAtomIndex] == -1) {
+                            GroundAtom atom = fullAtomStore.getAtom(fullAtomIndex);
 
-                        // Add the atom to the truth atom store if it has a truth atom.
-                        if (fullTruthAtomStore.hasAtom(atom)) {
-                            batchTruthAtomStores.get(batchTruthAtomStores.size() - 1).addAtom(fullTruthAtomStore.getAtom(fullTruthAtomStore.getAtomIndex(atom)));
+                            atomMarks[fullAtomIndex] = batchAtomStore.size();
+                            batchAtomStore.addAtom(atom.copy());
+
+                            if (batchNumAtoms == fullAtomIndexes.length) {
+                                fullAtomIndexes = Arrays.copyOf(fullAtomIndexes, fullAtomIndexes.length * 2);
+                            }
+                            fullAtomIndexes[batchNumAtoms++] = fullAtomIndex;
+
+                            // Add the atom to the truth atom store if it has a truth atom.
+                            int truthAtomIndex = fullTruthAtomStore.getAtomIndex(atom);
+                            if (truthAtomIndex != -1) {
+                                batchTruthAtomStore.addAtom(fullTruthAtomStore.getAtom(truthAtomIndex));
+                            }
                         }
+
+                        atomIndexes[j] = atomMarks[fullAtomIndex];
                     }
 
-                    newAtomIndexes[i] = batchAtomStore.getAtomIndex(atom);
+                    batchTermStore.add(batchTerm);
                 }
-                batchTerm.setAtomIndexes(newAtomIndexes);
+            }
+
+            batchTermStores.add(batchTermStore);
+            batchTruthAtomStores.add(batchTruthAtomStore);
 
-                batchTermStore.add(batchTerm);
+            // Only reset the entries used by this batch.
+            for (int i = 0; i < batchNumAtoms; i++) {
+                atomMarks[fullAtomIndexes[i]] = -1;
             }
+            batchNumAtoms = 0;
+        }
+    }
+
+    List<List<List<? extends ReasonerTerm>>> getBatchPlan() {
+        return batchPlan;
+    }
 
-            batchNumComponents++;
+    int[] getAtomMarks() {
+        return atomMarks;
+    }
+
+    /**
+     * Decide which terms go into each batch.
+     */
+    private List<List<List<? extends ReasonerTerm>>> planBatches() {
+        List<List<? extends ReasonerTerm>> components = new ArrayList<List<? extends ReasonerTerm>>(fullTermStore.getConnectedComponents().values());
+        List<List<List<? extends ReasonerTerm>>> plan = new ArrayList<List<List<? extends ReasonerTerm>>>();
+
+        if (batchStrategy == BatchStrategy.COMPONENT_COUNT) {
+            for (int batchStart = 0; batchStart < components.size(); batchStart += batchSize) {
+                int batchEnd = Math.min(components.size(), batchStart + batchSize);
+                plan.add(new ArrayList<List<? extends ReasonerTerm>>(components.subList(batchStart, batchEnd)));
+            }
+
+            return plan;
         }
 
-        // Add the last batch if it is not empty.
-        if (batchNumComponents > 0) {
-            batchTermStores.add(batchTermStore);
+        // Split any oversized components, and size everything.
+        List<List<? extends ReasonerTerm>> parts = new ArrayList<List<? extends ReasonerTerm>>(components.size());
+        List<Integer> partSizes = new ArrayList<Integer>(components.size());
+        for (List<? extends ReasonerTerm> component : components) {
+            int componentSize = computeSize(component);
+            if (componentSize <= batchTargetSize) {
+                parts.add(component);
+                partSizes.add(componentSize);
+                continue;
+            }
+
+            for (List<ReasonerTerm> piece : splitComponent(component)) {
+                parts.add(piece);
+                partSizes.add(computeSize(piece));
+            }
         }
+
+        // First-fit decreasing.
+        // Ties are broken on the original order so that plans are stable.
+        Integer[] order = new Integer[parts.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int sizeCompare = Integer.compare(partSizes.get(b.intValue()), partSizes.get(a.intValue()));
+                if (sizeCompare != 0) {
+                    return sizeCompare;
+                }
+
+                return Integer.compare(a.intValue(), b.intValue());
+            }
+        });
+
+        List<Integer> remainingCapacities = new ArrayList<Integer>();
+
+        // All bins before this one are completely full.
+        int firstOpenBin = 0;
+
+        for (Integer partIndex : order) {
+            int partSize = partSizes.get(partIndex.intValue());
+
+            int bin = firstOpenBin;
+            while (bin < plan.size() && remainingCapacities.get(bin) < partSize) {
+                bin++;
+            }
+
+            if (bin == plan.size()) {
+                plan.add(new ArrayList<List<? extends ReasonerTerm>>());
+                remainingCapacities.add(batchTargetSize);
+            }
+
+            plan.get(bin).add(parts.get(partIndex.intValue()));
+            remainingCapacities.set(bin, remainingCapacities.get(bin) - partSize);
+
+            while (firstOpenBin < plan.size() && remainingCapacities.get(firstOpenBin) <= 0) {
+                firstOpenBin++;
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Split a component into pieces of (at most) the target size.
+     * Terms are collected in breadth-first order over shared atoms, so each piece is a (mostly) connected subgraph.
+     */
+    private List<List<ReasonerTerm>> splitComponent(List<? extends ReasonerTerm> component) {
+        // Map each atom to the terms (by position in the component) that it appears in.
+        Map<Integer, List<Integer>> atomTerms = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < component.size(); i++) {
+            ReasonerTerm term = component.get(i);
+            int[] atomIndexes = term.getAtomIndexes();
+            for (int j = 0; j < term.size(); j++) {
+                List<Integer> terms = atomTerms.get(atomIndexes[j]);
+                if (terms == null) {
+                    terms = new ArrayList<Integer>();
+                    atomTerms.put(atomIndexes[j], terms);
+                }
+
+                terms.add(i);
+            }
+        }
+
+        List<ReasonerTerm> orderedTerms = new ArrayList<ReasonerTerm>(component.size());
+        boolean[] visited = new boolean[component.size()];
+        Queue<Integer> queue = new ArrayDeque<Integer>();
+
+        for (int start = 0; start < component.size(); start++) {
+            if (visited[start]) {
+                continue;
+            }
+
+            visited[start] = true;
+            queue.add(start);
+
+            while (!queue.isEmpty()) {
+                ReasonerTerm term = component.get(queue.remove().intValue());
+                orderedTerms.add(term);
+
+                int[] atomIndexes = term.getAtomIndexes();
+                for (int j = 0; j < term.size(); j++) {
+                    // Each atom only needs to be expanded once.
+                    List<Integer> neighbors = atomTerms.remove(atomIndexes[j]);
+                    if (neighbors == null) {
+                        continue;
+                    }
+
+                    for (Integer neighbor : neighbors) {
+                        if (!visited[neighbor.intValue()]) {
+                            visited[neighbor.intValue()] = true;
+                            queue.add(neighbor);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Cut the ordering into pieces.
+        List<List<ReasonerTerm>> pieces = new ArrayList<List<ReasonerTerm>>();
+        List<ReasonerTerm> piece = new ArrayList<ReasonerTerm>();
+        int[] pieceAtoms = new int[AtomStore.MIN_ALLOCATION];
+        int pieceNumAtoms = 0;
+
+        for (ReasonerTerm term : orderedTerms) {
+            int termSize = 1;
+            if (batchStrategy == BatchStrategy.ATOM_COUNT) {
+                termSize = 0;
+                int[] atomIndexes = term.getAtomIndexes();
+                for (int j = 0; j < term.size(); j++) {
+                    if (atomMarks[atomIndexes[j]] == -1) {
+                        termSize++;
+                    }
+                }
+            }
+
+            int pieceSize = (batchStrategy == BatchStrategy.ATOM_COUNT) ? pieceNumAtoms : piece.size();
+            if (!piece.isEmpty() && pieceSize + termSize > batchTargetSize) {
+                pieces.add(piece);
+                piece = new ArrayList<ReasonerTerm>();
+
+                for (int i = 0; i < pieceNumAtoms; i++) {
+                    atomMarks[pieceAtoms[i]] = -1;
+                }
+                pieceNumAtoms = 0;
+            }
+
+            piece.add(term);
+
+            if (batchStrategy == BatchStrategy.ATOM_COUNT) {
+                int[] atomIndexes = term.getAtomIndexes();
+                for (int j = 0; j < term.size(); j++) {
+                    if (atomMarks[atomIndexes[j]] != -1) {
+                        continue;
+                    }
+
+                    atomMarks[atomIndexes[j]] = 0;
+                    if (pieceNumAtoms == pieceAtoms.length) {
+                        pieceAtoms = Arrays.copyOf(pieceAtoms, pieceAtoms.length * 2);
+                    }
+                    pieceAtoms[pieceNumAtoms++] = atomIndexes[j];
+                }
+            }
+        }
+
+        for (int i = 0; i < pieceNumAtoms; i++) {
+            atomMarks[pieceAtoms[i]] = -1;
+        }
+
+        if (!piece.isEmpty()) {
+            pieces.add(piece);
+        }
+
+        return pieces;
+    }
+
+    /**
+     * Get the size of a group of terms according to the batch strategy.
+     */
+    private int computeSize(List<? extends ReasonerTerm> terms) {
+        if (batchStrategy != BatchStrategy.ATOM_COUNT) {
+            return terms.size();
+        }
+
+        int[] seenAtoms = new int[AtomStore.MIN_ALLOCATION];
+        int numAtoms = 0;
+
+        for (ReasonerTerm term : terms) {
+            int[] atomIndexes = term.getAtomIndexes();
+            for (int j = 0; j < term.size(); j++) {
+                if (atomMarks[atomIndexes[j]] != -1) {
+                    continue;
+                }
+
+                atomMarks[atomIndexes[j]] = 0;
+                if (numAtoms == seenAtoms.length) {
+                    seenAtoms = Arrays.copyOf(seenAtoms, seenAtoms.length * 2);
+                }
+                seenAtoms[numAtoms++] = atomIndexes[j];
+            }
+        }
+
+        for (int i = 0; i < numAtoms; i++) {
+            atomMarks[seenAtoms[i]] = -1;
+        }
+
+        return numAtoms;
     }
 }
@@ -174,6 +174,14 @@ public abstract class OnlineMinimizer extends GradientDescent {
         finalConstraintTolerance = Options.MINIMIZER_OBJECTIVE_DIFFERENCE_TOLERANCE.getFloat();
     }
 
+    /**
+     * The proximity terms and atoms added during learning stay in the training ground model.
+     */
+    @Override
+    public boolean canShareGroundModel() {
+        return false;
+    }
+
     @Override
     protected void initForLearning() {
         super.initForLearning();
@@ -36,6 +36,11 @@ public class Energy extends OptimalValue {
         super(rules, trainTargetDatabase, trainTruthDatabase, validationTargetDatabase, validationTruthDatabase, runValidation);
     }
 
+    @Override
+    protected boolean supportsParallelBatches() {
+        return true;
+    }
+
     @Override
     protected float computeLearningLoss() {
         float energy = 0.0f;
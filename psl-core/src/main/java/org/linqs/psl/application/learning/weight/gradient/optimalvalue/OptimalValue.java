@@ -89,6 +89,15 @@ public abstract class OptimalValue extends GradientDescent {
         deepLatentAtomGradient = new float[trainFullMAPAtomValueState.length];
     }
 
+    @Override
+    protected void initBatchWorkerState() {
+        super.initBatchWorkerState();
+
+        latentInferenceIncompatibility = new float[latentInferenceIncompatibility.length];
+        rvLatentAtomGradient = new float[rvLatentAtomGradient.length];
+        deepLatentAtomGradient = new float[deepLatentAtomGradient.length];
+    }
+
     @Override
     protected void setBatch(int batch) {
         super.setBatch(batch);
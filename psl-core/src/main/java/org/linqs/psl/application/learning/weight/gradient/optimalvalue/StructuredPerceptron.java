@@ -40,6 +40,18 @@ public class StructuredPerceptron extends OptimalValue {
         MAPIncompatibility = new float[mutableRules.size()];
     }
 
+    @Override
+    protected boolean supportsParallelBatches() {
+        return true;
+    }
+
+    @Override
+    protected void initBatchWorkerState() {
+        super.initBatchWorkerState();
+
+        MAPIncompatibility = new float[MAPIncompatibility.length];
+    }
+
     @Override
     protected void computeIterationStatistics() {
         computeLatentInferenceIncompatibility();
@@ -17,17 +17,23 @@
  */
 package org.linqs.psl.application.learning.weight.search;
 
+import org.linqs.psl.application.inference.InferenceApplication;
+import org.linqs.psl.application.learning.weight.TrainingReplica;
 import org.linqs.psl.application.learning.weight.WeightLearningApplication;
 import org.linqs.psl.config.Options;
+import org.linqs.psl.database.AtomStore;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.term.TermState;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Parallel;
 import org.linqs.psl.util.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Hyperband.
@@ -41,6 +47,13 @@ import java.util.PriorityQueue;
  * TODO(eriq): Think about inital weights.
  *
  * All extending classes should ensure that values for RVAs are set before evalautions are computed.
+ *
+ * The configurations of a round may be run concurrently (Options.WLA_HB_CONCURRENT_CONFIGS), each on its own training replica.
+ * Once a configuration reaches the best score the evaluator allows, no other configuration can beat it,
+ * so the remaining configurations are not run and the search stops.
+ *
+ * When warm starting (Options.WLA_HB_WARM_START), only the state of the incumbent (the best configuration so far) is kept,
+ * and every configuration starts inference from it.
  */
 public class Hyperband extends WeightLearningApplication {
     private static final Logger log = Logger.getLogger(Hyperband.class);
@@ -55,6 +68,35 @@ public class Hyperband extends WeightLearningApplication {
     private int numBrackets;
     private int baseBracketSize;
 
+    private final boolean warmStart;
+    private final int concurrentConfigs;
+
+    /**
+     * The best objective that the evaluation can give.
+     * A configuration that reaches it cannot be beaten.
+     */
+    private double bestPossibleObjective;
+
+    /**
+     * Set once some configuration has reached bestPossibleObjective.
+     */
+    private volatile boolean reachedBestPossibleObjective;
+
+    /**
+     * The state that inference reached for the incumbent (only kept when warm starting).
+     * Guarded by incumbentLock.
+     */
+    private final Object incumbentLock;
+    private TermState[] incumbentTermState;
+    private float[] incumbentAtomValues;
+    private double incumbentObjective;
+
+    /**
+     * Set when the next MAP state computation of the training inference application
+     * should continue from the current state instead of resetting.
+     */
+    private boolean resumeInference;
+
     public Hyperband(List<Rule> rules, Database trainTargetDatabase, Database trainTruthDatabase,
                      Database validationTargetDatabase, Database validationTruthDatabase, boolean runValidation) {
         super(rules, trainTargetDatabase, trainTruthDatabase, validationTargetDatabase, validationTruthDatabase, runValidation);
@@ -65,6 +107,16 @@ public class Hyperband extends WeightLearningApplication {
         numBrackets = Options.WLA_HB_NUM_BRACKETS.getInt();
         baseBracketSize = Options.WLA_HB_BRACKET_SIZE.getInt();
 
+        warmStart = Options.WLA_HB_WARM_START.getBoolean();
+        concurrentConfigs = Options.WLA_HB_CONCURRENT_CONFIGS.getInt();
+
+        incumbentLock = new Object();
+        incumbentTermState = null;
+        incumbentAtomValues = null;
+        incumbentObjective = Double.POSITIVE_INFINITY;
+
+        resumeInference = false;
+
         if (this.runValidation) {
             throw new IllegalArgumentException("Validation is not supported by the Hyperband weight learning application.");
         }
@@ -78,11 +130,17 @@ public class Hyperband extends WeightLearningApplication {
                     getClass().getName()));
         }
 
+        bestPossibleObjective = -1.0 * evaluation.getNormalizedMaxRepMetric();
+        reachedBestPossibleObjective = false;
+
+        List<TrainingReplica> trainingReplicas = null;
+        if (concurrentConfigs > 1) {
+            trainingReplicas = getTrainingReplicas(concurrentConfigs);
+        }
+
         double bestObjective = -1;
         float[] bestWeights = null;
 
-        String currentLocation = null;
-
         // The total cost used vs one full round of inference.
         double totalCost = 0.0;
         int numEvaluatedConfigs = 0;
@@ -95,11 +153,15 @@ public class Hyperband extends WeightLearningApplication {
                 break;
             }
 
+            if (reachedBestPossibleObjective) {
+                log.debug("Stopping search, a configuration has reached the best possible objective.");
+                break;
+            }
+
             long start = System.currentTimeMillis();
 
             double bracketProportion = Math.pow(survival, bracket) / (bracket + 1);
             int bracketSize = (int)(Math.max(MIN_BRACKET_SIZE, Math.ceil(bracketProportion * baseBracketSize)));
-            numEvaluatedConfigs += bracketSize;
 
             double bracketBudget = Math.pow(survival, -1.0 * bracket);
 
@@ -110,45 +172,46 @@ public class Hyperband extends WeightLearningApplication {
             List<float[]> configs = chooseConfigs(bracketSize);
 
             for (int round = 0; round <= bracket; round++) {
+                if (reachedBestPossibleObjective) {
+                    break;
+                }
+
                 int roundSize = configs.size();
                 double roundBudget = bracketBudget * Math.pow(survival, round);
-                setBudget(Math.max(MIN_BUDGET_PROPORTION, Math.min(1.0, roundBudget)));
+                double budget = Math.max(MIN_BUDGET_PROPORTION, Math.min(1.0, roundBudget));
 
                 log.debug("  Round {} / {} -- Size: {}, Budget: {}", round + 1, bracket + 1, roundSize, roundBudget);
 
-                PriorityQueue<RunResult> results = new PriorityQueue<RunResult>();
-                for (float[] config : configs) {
-                    totalCost += roundBudget;
+                RunResult[] roundResults = null;
+                if (trainingReplicas == null) {
+                    roundResults = runConfigs(configs, budget);
+                } else {
+                    roundResults = runConfigs(configs, budget, trainingReplicas);
+                }
 
-                    // Set the weights for the current round.
-                    for (int i = 0; i < mutableRules.size(); i++) {
-                        mutableRules.get(i).setWeight(config[i]);
+                PriorityQueue<RunResult> results = new PriorityQueue<RunResult>();
+                for (RunResult result : roundResults) {
+                    // Configurations that were cut are not run.
+                    if (result == null) {
+                        continue;
                     }
 
-                    // Set the current location.
-                    currentLocation = StringUtils.join(DELIM, config);
-
-                    log.trace("Weights: {}", config);
-
-                    // The weights have changed, so we are no longer in an MPE state.
-                    inTrainingMAPState = false;
-
-                    double objective = run(config);
-                    RunResult result = new RunResult(config, objective);
+                    totalCost += roundBudget;
+                    numEvaluatedConfigs++;
                     results.add(result);
 
-                    log.debug("Weights: {} -- objective: {}", currentLocation, objective);
+                    String currentLocation = StringUtils.join(DELIM, result.weights);
+                    log.debug("Weights: {} -- objective: {}", currentLocation, result.objective);
 
-                    if (bestWeights == null || objective < bestObjective) {
-                        bestObjective = objective;
-                        bestWeights = config;
+                    if (bestWeights == null || result.objective < bestObjective) {
+                        bestObjective = result.objective;
+                        bestWeights = result.weights;
                     }
-
-                    log.debug("Training Objective: {}, Weights: {}", objective, config);
                 }
 
                 configs.clear();
-                for (int i = 0; i < (int)(Math.floor((float)roundSize / survival)); i++) {
+                int numSurvivors = Math.min(results.size(), (int)(Math.floor((float)roundSize / survival)));
+                for (int i = 0; i < numSurvivors; i++) {
                     configs.add(results.poll().weights);
                 }
             }
@@ -165,9 +228,171 @@ public class Hyperband extends WeightLearningApplication {
         // The weights have changed, so we are no longer in an MPE state.
         inTrainingMAPState = false;
 
+        synchronized (incumbentLock) {
+            incumbentTermState = null;
+            incumbentAtomValues = null;
+            incumbentObjective = Double.POSITIVE_INFINITY;
+        }
+
         log.debug("Hyperband complete. Configurations examined: {}. Total budget: {}",  numEvaluatedConfigs, totalCost);
     }
 
+    /**
+     * Run the configurations of a round one at a time on the training model.
+     * A null result means that the configuration was cut.
+     */
+    private RunResult[] runConfigs(List<float[]> configs, double budget) {
+        RunResult[] results = new RunResult[configs.size()];
+
+        setBudget(budget);
+
+        for (int i = 0; i < configs.size(); i++) {
+            if (reachedBestPossibleObjective) {
+                break;
+            }
+
+            float[] config = configs.get(i);
+
+            // Set the weights for the current round.
+            for (int j = 0; j < mutableRules.size(); j++) {
+                mutableRules.get(j).setWeight(config[j]);
+            }
+
+            log.trace("Weights: {}", config);
+
+            // The weights have changed, so we are no longer in an MPE state.
+            inTrainingMAPState = false;
+
+            resumeInference = loadIncumbent(trainInferenceApplication);
+
+            double objective = 0.0;
+            try {
+                objective = run(config);
+            } finally {
+                resumeInference = false;
+            }
+
+            results[i] = finishConfig(config, objective, trainInferenceApplication);
+        }
+
+        return results;
+    }
+
+    /**
+     * Run the configurations of a round concurrently, each on a training replica.
+     * The rules are not modified.
+     * A null result means that the configuration was cut.
+     */
+    private RunResult[] runConfigs(final List<float[]> configs, final double budget, final List<TrainingReplica> trainingReplicas) {
+        final RunResult[] results = new RunResult[configs.size()];
+        final AtomicInteger nextConfig = new AtomicInteger(0);
+
+        Parallel.count(Math.min(configs.size(), trainingReplicas.size()), new Parallel.Worker<Long>() {
+            @Override
+            public void work(long index, Long item) {
+                TrainingReplica trainingReplica = trainingReplicas.get((int)index);
+                trainingReplica.setBudget(budget);
+
+                while (true) {
+                    int configIndex = nextConfig.getAndIncrement();
+                    if (configIndex >= configs.size() || reachedBestPossibleObjective) {
+                        break;
+                    }
+
+                    float[] config = configs.get(configIndex);
+                    log.trace("Weights: {}", config);
+
+                    boolean resume = loadIncumbent(trainingReplica.getInferenceApplication());
+                    double objective = Hyperband.this.run(config, trainingReplica, resume);
+
+                    results[configIndex] = finishConfig(config, objective, trainingReplica.getInferenceApplication());
+                }
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Note the result of a configuration that was just run on the given inference application.
+     */
+    private RunResult finishConfig(float[] config, double objective, InferenceApplication inferenceApplication) {
+        if (objective <= bestPossibleObjective) {
+            reachedBestPossibleObjective = true;
+        }
+
+        saveIncumbent(objective, inferenceApplication);
+
+        return new RunResult(config, objective);
+    }
+
+    /**
+     * If there is an incumbent state, load it into the inference application and return true.
+     */
+    private boolean loadIncumbent(InferenceApplication inferenceApplication) {
+        if (!warmStart) {
+            return false;
+        }
+
+        synchronized (incumbentLock) {
+            if (incumbentTermState == null) {
+                return false;
+            }
+
+            inferenceApplication.getTermStore().loadState(incumbentTermState);
+
+            AtomStore atomStore = inferenceApplication.getTermStore().getAtomStore();
+            float[] atomValues = atomStore.getAtomValues();
+            for (int i = 0; i < atomStore.size(); i++) {
+                if (atomStore.getAtom(i).isFixed()) {
+                    continue;
+                }
+
+                atomValues[i] = incumbentAtomValues[i];
+            }
+
+            atomStore.sync();
+        }
+
+        return true;
+    }
+
+    /**
+     * If the objective beats the incumbent, keep the state of the inference application as the new incumbent state.
+     */
+    private void saveIncumbent(double objective, InferenceApplication inferenceApplication) {
+        if (!warmStart) {
+            return;
+        }
+
+        synchronized (incumbentLock) {
+            if (objective >= incumbentObjective) {
+                return;
+            }
+
+            incumbentObjective = objective;
+
+            if (incumbentTermState == null) {
+                incumbentTermState = inferenceApplication.getTermStore().saveState();
+            } else {
+                inferenceApplication.getTermStore().saveState(incumbentTermState);
+            }
+
+            AtomStore atomStore = inferenceApplication.getTermStore().getAtomStore();
+            if (incumbentAtomValues == null) {
+                incumbentAtomValues = new float[atomStore.size()];
+            }
+
+            System.arraycopy(atomStore.getAtomValues(), 0, incumbentAtomValues, 0, atomStore.size());
+        }
+    }
+
+    @Override
+    protected void computeMAPState(InferenceApplication inferenceApplication) {
+        // When resuming, keep the (loaded) atom values instead of resetting them.
+        inferenceApplication.inference(false, !resumeInference);
+    }
+
     private List<float[]> chooseConfigs(int bracketSize) {
         List<float[]> configs = new ArrayList<float[]>(bracketSize);
 
@@ -196,6 +421,20 @@ public class Hyperband extends WeightLearningApplication {
         return -1.0 * evaluation.getNormalizedRepMetric();
     }
 
+    /**
+     * Run and eval on the given weights using a training replica (which already has its budget set)
+     * and give back its score (lower is better).
+     * This is the concurrent counterpart of run(float[]),
+     * and may be called at the same time (for different replicas) from several threads.
+     * If resume is true, then inference should continue from the state currently loaded in the replica.
+     */
+    protected double run(float[] weights, TrainingReplica trainingReplica, boolean resume) {
+        trainingReplica.setWeights(weights);
+        trainingReplica.computeMAPState(!resume);
+
+        return trainingReplica.evaluate(evaluation);
+    }
+
     private static class RunResult implements Comparable<RunResult> {
         private final float[] weights;
         private final double objective;
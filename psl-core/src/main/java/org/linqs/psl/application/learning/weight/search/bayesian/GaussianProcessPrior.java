@@ -23,7 +23,6 @@ import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.util.FloatMatrix;
-import org.linqs.psl.util.ListUtils;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.Parallel;
 import org.linqs.psl.util.StringUtils;
@@ -38,6 +37,11 @@ public class GaussianProcessPrior extends WeightLearningApplication {
     public static final int MAX_RAND_INT_VAL = 100000000;
     public static final float SMALL_VALUE = 0.4f;
 
+    /**
+     * The number of candidate configs that a worker scores at a time.
+     */
+    public static final int PREDICTION_BATCH_SIZE = 64;
+
     private int maxIterations;
     private int maxConfigs;
     private float exploration;
@@ -45,6 +49,13 @@ public class GaussianProcessPrior extends WeightLearningApplication {
     private boolean earlyStopping;
 
     private FloatMatrix knownDataStdInv;
+
+    /**
+     * The Cholesky factor of the kernel matrix of the explored configs (extended as configs are explored),
+     * and the solution to (kernel matrix * alpha = explored values).
+     */
+    private IncrementalCholesky knownDataCholesky;
+    private double[] knownDataAlpha;
     private GaussianProcessKernel kernel;
     private GaussianProcessKernel.Space space;
     private List<WeightConfig> configs;
@@ -88,6 +99,8 @@ public class GaussianProcessPrior extends WeightLearningApplication {
     private void reset() {
         configs = getConfigs();
         exploredConfigs = new ArrayList<>();
+        knownDataCholesky = new IncrementalCholesky();
+        knownDataAlpha = null;
     }
 
     /**
@@ -177,29 +190,23 @@ public class GaussianProcessPrior extends WeightLearningApplication {
 
             log.info(String.format("Iteration %d -- Config Picked: %s, Current Best Config: %s.", (iteration + 1), exploredConfigs.get(iteration), bestConfig));
 
+            // Extend the factorization of the kernel matrix with the new config
+            // (instead of rebuilding and inverting the whole matrix).
             int numKnown = exploredFnVal.size();
-            knownDataStdInv = FloatMatrix.zeroes(numKnown, numKnown);
+            float[] kernelRow = new float[numKnown];
             for (int i = 0; i < numKnown; i++) {
-                for (int j = 0; j < numKnown; j++) {
-                    knownDataStdInv.set(i, j, kernel.kernel(exploredConfigs.get(i).config, exploredConfigs.get(j).config));
-                }
+                kernelRow[i] = kernel.kernel(exploredConfigs.get(i).config, config.config);
             }
+            knownDataCholesky.addRow(kernelRow);
 
-            knownDataStdInv = knownDataStdInv.inverse();
-
-            blasYKnown = FloatMatrix.columnVector(ListUtils.toPrimitiveFloatArray(exploredFnVal), false);
-
-            // Re-construct the worker each iteration so the data buffer is sized correctly.
-            ComputePredictionFunctionValueWorker fnValWorker = new ComputePredictionFunctionValueWorker();
-
-            // TODO(eriq): Because most of the time is taken by BLAS methods (multiply and dot),
-            // parallelism will not help here.
-            // Parallel.foreach(configs, fnValWorker);
-            int index = 0;
-            for (WeightConfig weightConfig : configs) {
-                fnValWorker.work(index, weightConfig);
-                index++;
+            knownDataAlpha = new double[numKnown];
+            for (int i = 0; i < numKnown; i++) {
+                knownDataAlpha[i] = exploredFnVal.get(i).floatValue();
             }
+            knownDataCholesky.solve(knownDataAlpha, knownDataAlpha);
+
+            // Re-construct the worker each iteration so the data buffers are sized correctly.
+            Parallel.foreachBatch(configs.iterator(), PREDICTION_BATCH_SIZE, new ComputePredictionFunctionValueWorker());
 
             // Early stopping check.
             allStdSmall = true;
@@ -222,23 +229,19 @@ public class GaussianProcessPrior extends WeightLearningApplication {
         log.info("Best config: " + bestConfig);
     }
 
-    private class ComputePredictionFunctionValueWorker extends Parallel.Worker<WeightConfig> {
-        private float[] xyStdData;
-        private FloatMatrix xyStdMatrixShell;
+    private class ComputePredictionFunctionValueWorker extends Parallel.Worker<List<WeightConfig>> {
+        private double[] kernelVector;
         private float[] kernelBuffer1;
         private float[] kernelBuffer2;
         private FloatMatrix kernelMatrixShell1;
         private FloatMatrix kernelMatrixShell2;
-        private FloatMatrix mulBuffer;
 
         public ComputePredictionFunctionValueWorker() {
-            xyStdData = new float[blasYKnown.size()];
-            xyStdMatrixShell = new FloatMatrix();
+            kernelVector = new double[exploredConfigs.size()];
             kernelBuffer1 = new float[mutableRules.size()];
             kernelBuffer2 = new float[mutableRules.size()];
             kernelMatrixShell1 = new FloatMatrix();
             kernelMatrixShell2 = new FloatMatrix();
-            mulBuffer = FloatMatrix.zeroes(1, blasYKnown.size());
         }
 
         @Override
@@ -247,10 +250,11 @@ public class GaussianProcessPrior extends WeightLearningApplication {
         }
 
         @Override
-        public void work(long index, WeightConfig item) {
-            ValueAndStd valAndStd = predictFnValAndStd(configs.get((int)index).config, exploredConfigs, xyStdData,
-                    kernelBuffer1, kernelBuffer2, kernelMatrixShell1, kernelMatrixShell2, xyStdMatrixShell, mulBuffer);
-            configs.get((int)index).valueAndStd = valAndStd;
+        public void work(long index, List<WeightConfig> items) {
+            for (WeightConfig item : items) {
+                item.valueAndStd = predictFnValAndStd(item.config, exploredConfigs, kernelVector,
+                        kernelBuffer1, kernelBuffer2, kernelMatrixShell1, kernelMatrixShell2);
+            }
         }
     }
 
@@ -339,8 +343,15 @@ public class GaussianProcessPrior extends WeightLearningApplication {
 
     /**
      * predictFnValAndStd, but no memory sharing.
+     * Uses the incremental factorization of the explored configs if it is available (see doLearn()),
+     * and the explicit inverse (knownDataStdInv) otherwise.
      */
     protected ValueAndStd predictFnValAndStd(float[] x, List<WeightConfig> xKnown) {
+        if (knownDataCholesky != null && knownDataCholesky.size() == xKnown.size() && knownDataAlpha != null) {
+            return predictFnValAndStd(x, xKnown, new double[xKnown.size()],
+                    new float[x.length], new float[x.length], new FloatMatrix(), new FloatMatrix());
+        }
+
         return predictFnValAndStd(x, xKnown, new float[blasYKnown.size()],
                 new float[x.length], new float[x.length], new FloatMatrix(), new FloatMatrix(),
                 new FloatMatrix(), FloatMatrix.zeroes(1, x.length));
@@ -372,6 +383,37 @@ public class GaussianProcessPrior extends WeightLearningApplication {
         return fnAndStd;
     }
 
+    /**
+     * Do the prediction using the Cholesky factor of the known kernel matrix (K = L * L^T).
+     * The mean is k^T * alpha and the variance is k(x, x) - |L^-1 * k|^2,
+     * where k is the kernel between x and each known config.
+     *
+     * @param kernelVector A buffer (sized to the number of known configs) to perform computations with.
+     *  Will get modified.
+     */
+    protected ValueAndStd predictFnValAndStd(float[] x, List<WeightConfig> xKnown, double[] kernelVector,
+            float[] kernelBuffer1, float[] kernelBuffer2, FloatMatrix kernelMatrixShell1, FloatMatrix kernelMatrixShell2) {
+        ValueAndStd fnAndStd = new ValueAndStd();
+
+        double value = 0.0;
+        for (int i = 0; i < kernelVector.length; i++) {
+            kernelVector[i] = kernel.kernel(x, xKnown.get(i).config, kernelBuffer1, kernelBuffer2, kernelMatrixShell1, kernelMatrixShell2);
+            value += kernelVector[i] * knownDataAlpha[i];
+        }
+
+        knownDataCholesky.solveLower(kernelVector, kernelVector);
+
+        double explained = 0.0;
+        for (int i = 0; i < kernelVector.length; i++) {
+            explained += kernelVector[i] * kernelVector[i];
+        }
+
+        fnAndStd.value = (float)value;
+        fnAndStd.std = (float)(kernel.kernel(x, x, kernelBuffer1, kernelBuffer2, kernelMatrixShell1, kernelMatrixShell2) - explained);
+
+        return fnAndStd;
+    }
+
     // Get metric value like accuracy.
     protected double getFunctionValue(WeightConfig config) {
         setWeights(config);
@@ -0,0 +1,124 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.learning.weight.search.bayesian;
+
+import java.util.Arrays;
+
+/**
+ * A Cholesky factorization (K = L * L^T) of a symmetric positive definite matrix
+ * that grows by one row (and column) at a time.
+ * Adding a row costs a single forward substitution (O(n^2)),
+ * instead of refactoring (or inverting) the whole matrix (O(n^3)).
+ *
+ * The lower triangle of L is packed by row: row i starts at i * (i + 1) / 2.
+ * All computation is done in double precision.
+ */
+public class IncrementalCholesky {
+    /**
+     * The smallest pivot (squared diagonal entry) allowed.
+     * Nearly duplicate rows (e.g. two very close configurations) would otherwise make the matrix singular.
+     */
+    public static final double MIN_PIVOT = 1e-6;
+
+    private double[] factor;
+    private int size;
+
+    public IncrementalCholesky() {
+        factor = new double[16];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Extend the matrix with a new row.
+     * The row must be of length size() + 1, and hold the new entries (including the diagonal at the end).
+     */
+    public void addRow(float[] row) {
+        if (row.length != size + 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected a row of length %d, got %d.", size + 1, row.length));
+        }
+
+        int rowStart = size * (size + 1) / 2;
+        if (factor.length < rowStart + size + 1) {
+            factor = Arrays.copyOf(factor, Math.max(factor.length * 2, rowStart + size + 1));
+        }
+
+        // Solve L * l = k for the new off-diagonal entries (l).
+        double squaredSum = 0.0;
+        for (int i = 0; i < size; i++) {
+            int iStart = i * (i + 1) / 2;
+
+            double value = row[i];
+            for (int j = 0; j < i; j++) {
+                value -= factor[iStart + j] * factor[rowStart + j];
+            }
+            value /= factor[iStart + i];
+
+            factor[rowStart + i] = value;
+            squaredSum += value * value;
+        }
+
+        factor[rowStart + size] = Math.sqrt(Math.max(MIN_PIVOT, row[size] - squaredSum));
+        size++;
+    }
+
+    /**
+     * Solve L * x = b (forward substitution).
+     * The first size() entries of b are used, and x may be the same array as b.
+     */
+    public void solveLower(double[] b, double[] x) {
+        for (int i = 0; i < size; i++) {
+            int iStart = i * (i + 1) / 2;
+
+            double value = b[i];
+            for (int j = 0; j < i; j++) {
+                value -= factor[iStart + j] * x[j];
+            }
+
+            x[i] = value / factor[iStart + i];
+        }
+    }
+
+    /**
+     * Solve L^T * x = b (backward substitution).
+     * The first size() entries of b are used, and x may be the same array as b.
+     */
+    public void solveUpper(double[] b, double[] x) {
+        for (int i = size - 1; i >= 0; i--) {
+            double value = b[i];
+            for (int j = i + 1; j < size; j++) {
+                value -= factor[j * (j + 1) / 2 + i] * x[j];
+            }
+
+            x[i] = value / factor[i * (i + 1) / 2 + i];
+        }
+    }
+
+    /**
+     * Solve K * x = b.
+     * The first size() entries of b are used, and x may be the same array as b.
+     */
+    public void solve(double[] b, double[] x) {
+        solveLower(b, x);
+        solveUpper(x, x);
+    }
+}
@@ -17,15 +17,20 @@
  */
 package org.linqs.psl.application.learning.weight.search.grid;
 
+import org.linqs.psl.application.learning.weight.TrainingReplica;
 import org.linqs.psl.application.learning.weight.WeightLearningApplication;
+import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.util.Logger;
-import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Parallel;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The base for grid search-like method.
@@ -60,6 +65,16 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
      */
     protected String currentLocation;
 
+    /**
+     * Locations that have been chosen but not yet inspected.
+     * When locations are inspected concurrently (see Options.WLA_GS_CONCURRENT_LOCATIONS),
+     * several locations are chosen before any of them is inspected.
+     * Children should treat pending locations like inspected ones when choosing the next location.
+     */
+    protected Set<String> pendingLocations;
+
+    protected int concurrentLocations;
+
     public BaseGridSearch(List<Rule> rules, Database trainTargetDatabase, Database trainTruthDatabase,
                           Database validationTargetDatabase, Database validationTruthDatabase, boolean runValidation) {
         super(rules, trainTargetDatabase, trainTruthDatabase, validationTargetDatabase, validationTruthDatabase, runValidation);
@@ -71,6 +86,9 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
 
         currentLocation = null;
 
+        pendingLocations = new HashSet<String>();
+        concurrentLocations = Options.WLA_GS_CONCURRENT_LOCATIONS.getInt();
+
         if (this.runValidation) {
             throw new IllegalArgumentException("Validation is not supported by GridSearch weight learning applications.");
         }
@@ -84,14 +102,23 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
                     getClass().getName()));
         }
 
+        List<TrainingReplica> trainingReplicas = null;
+        if (concurrentLocations > 1) {
+            trainingReplicas = getTrainingReplicas(concurrentLocations);
+        }
+
+        int roundSize = (trainingReplicas == null) ? 1 : trainingReplicas.size();
+
         double bestObjective = -1.0;
         float[] bestWeights = new float[mutableRules.size()];
-        float[] weights = new float[mutableRules.size()];
-        float[] unitWeightVector = new float[mutableRules.size()];
 
-        boolean nonZero = false;
+        List<String> roundLocations = new ArrayList<String>(roundSize);
+        List<float[]> roundWeights = new ArrayList<float[]>(roundSize);
+
+        boolean done = false;
+        int iteration = 0;
         long totalTime = 0;
-        for (int iteration = 0; iteration < numLocations; iteration++) {
+        while ((!done) && (iteration < numLocations)) {
             if (totalTime > timeout) {
                 log.debug("Stopping search due to timeout.");
                 break;
@@ -99,53 +126,60 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
 
             long startTime = System.currentTimeMillis();
 
-            if (!chooseNextLocation()) {
-                log.debug("Stopping search.");
-                break;
-            }
-
-            log.debug("Iteration {} / {} ({}) -- Inspecting location {}", iteration, numLocations, maxNumLocations, currentLocation);
-
-            // Set the weights for the current round.
-            nonZero = false;
-            getWeights(weights);
-            System.arraycopy(weights, 0, unitWeightVector, 0, weights.length);
+            // Choose the locations for this round.
+            roundLocations.clear();
+            roundWeights.clear();
+            while ((roundLocations.size() < roundSize) && (iteration + roundLocations.size() < numLocations)) {
+                if ((roundLocations.size() > 0) && (!canChooseWithPendingLocations())) {
+                    break;
+                }
 
-            // Check that there is at least one non-zero weight.
-            for (int i = 0; i < weights.length; i++) {
-                if (weights[i] > 0.0) {
-                    nonZero = true;
+                if (!chooseNextLocation()) {
+                    log.debug("Stopping search.");
+                    done = true;
                     break;
                 }
-            }
 
-            if (nonZero) {
-                MathUtils.toUnit(unitWeightVector);
+                log.debug("Iteration {} / {} ({}) -- Inspecting location {}",
+                        iteration + roundLocations.size(), numLocations, maxNumLocations, currentLocation);
+
+                float[] weights = new float[mutableRules.size()];
+                getWeights(weights);
+
+                roundLocations.add(currentLocation);
+                roundWeights.add(weights);
+                pendingLocations.add(currentLocation);
             }
 
-            for (int i = 0; i < mutableRules.size(); i++) {
-                mutableRules.get(i).setWeight(weights[i]);
+            double[] roundObjectives = null;
+            if (trainingReplicas == null) {
+                roundObjectives = new double[roundLocations.size()];
+                for (int i = 0; i < roundLocations.size(); i++) {
+                    roundObjectives[i] = inspectLocation(roundWeights.get(i));
+                }
+            } else {
+                roundObjectives = inspectLocations(roundWeights, trainingReplicas);
             }
 
-            log.trace("Weights: {}", weights);
+            for (int i = 0; i < roundLocations.size(); i++) {
+                String location = roundLocations.get(i);
+                float[] weights = roundWeights.get(i);
+                double objective = roundObjectives[i];
 
-            // The weights have changed, so we are no longer in an MPE state.
-            inTrainingMAPState = false;
+                // Log this location.
+                pendingLocations.remove(location);
+                objectives.put(location, Double.valueOf(objective));
 
-            double objective = inspectLocation(weights);
+                if (iteration == 0 || objective < bestObjective) {
+                    bestObjective = objective;
+                    System.arraycopy(weights, 0, bestWeights, 0, weights.length);
+                }
 
-            // Log this location.
-            objectives.put(currentLocation, Double.valueOf(objective));
+                log.debug("Weights: {} -- objective: {}", location, objective);
 
-            if (iteration == 0 || objective < bestObjective) {
-                bestObjective = objective;
-                for (int i = 0; i < mutableRules.size(); i++) {
-                    bestWeights[i] = weights[i];
-                }
+                iteration++;
             }
 
-            log.debug("Weights: {} -- objective: {}", currentLocation, objective);
-
             long endTime = System.currentTimeMillis();
             totalTime += endTime - startTime;
         }
@@ -159,15 +193,40 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
         inTrainingMAPState = false;
     }
 
+    /**
+     * Inspect several locations at the same time, each on its own training replica, and give back their scores.
+     * The rules are not modified.
+     */
+    private double[] inspectLocations(final List<float[]> locationWeights, final List<TrainingReplica> trainingReplicas) {
+        final double[] locationObjectives = new double[locationWeights.size()];
+
+        Parallel.count(locationWeights.size(), new Parallel.Worker<Long>() {
+            @Override
+            public void work(long index, Long item) {
+                locationObjectives[(int)index] = inspectLocation(locationWeights.get((int)index), trainingReplicas.get((int)index));
+            }
+        });
+
+        return locationObjectives;
+    }
+
     /**
      * Inspect the location defined by the given weights and give back its score (lower is better).
+     * The rules are set to the given weights before inspecting.
      * This method may modify weights if it wants to store a different set of weights than those initially passed in.
-     * The rules have already been set with the given weights, they are only passed in so the method
-     * has a chance to modify them before the result is stored.
      * This is a prime method for child classes to override.
      * @param weights
      */
     protected double inspectLocation(float[] weights) {
+        for (int i = 0; i < mutableRules.size(); i++) {
+            mutableRules.get(i).setWeight(weights[i]);
+        }
+
+        log.trace("Weights: {}", weights);
+
+        // The weights have changed, so we are no longer in an MPE state.
+        inTrainingMAPState = false;
+
         computeTrainingMAPState();
 
         evaluation.compute(trainingMap);
@@ -175,6 +234,27 @@ public abstract class BaseGridSearch extends WeightLearningApplication {
         return -1.0 * evaluation.getNormalizedRepMetric();
     }
 
+    /**
+     * Inspect the location defined by the given weights on a training replica and give back its score (lower is better).
+     * This is the concurrent counterpart of inspectLocation(float[]),
+     * and may be called at the same time (for different replicas) from several threads.
+     * The replica's terms are given the weights, the rules themselves are not changed.
+     */
+    protected double inspectLocation(float[] weights, TrainingReplica trainingReplica) {
+        trainingReplica.setWeights(weights);
+        trainingReplica.computeMAPState();
+
+        return trainingReplica.evaluate(evaluation);
+    }
+
+    /**
+     * Check if the next location can be chosen while some chosen locations are still pending (not inspected yet).
+     * Children whose choice depends on the objectives of previous locations should override this.
+     */
+    protected boolean canChooseWithPendingLocations() {
+        return true;
+    }
+
     /**
      * Get the weight configuration at the current location.
      * @param weights
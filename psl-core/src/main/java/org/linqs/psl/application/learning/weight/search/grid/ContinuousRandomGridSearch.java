@@ -48,7 +48,7 @@ public class ContinuousRandomGridSearch extends BaseGridSearch {
 
     @Override
     protected boolean chooseNextLocation() {
-        currentLocation = "" + objectives.size();
+        currentLocation = "" + (objectives.size() + pendingLocations.size());
         return true;
     }
 }
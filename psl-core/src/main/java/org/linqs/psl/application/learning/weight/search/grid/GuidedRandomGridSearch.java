@@ -65,16 +65,19 @@ public class GuidedRandomGridSearch extends RandomGridSearch {
 
     @Override
     protected boolean chooseNextLocation() {
-        if (objectives.size() < numSeedLocations) {
+        int numChosenLocations = objectives.size() + pendingLocations.size();
+
+        if (numChosenLocations < numSeedLocations) {
             // Seed phase
             do {
                 currentLocation = randomConfiguration();
-            } while (objectives.containsKey(currentLocation));
+            } while (objectives.containsKey(currentLocation) || pendingLocations.contains(currentLocation));
         } else {
             // Explore phase
 
             // Initialize the locations to explore.
-            if (objectives.size() == numSeedLocations) {
+            // All the seed locations have been inspected at this point (see canChooseWithPendingLocations()).
+            if (numChosenLocations == numSeedLocations) {
                 // We want only the top locations, so first sort by score.
                 List<Map.Entry<String, Double>> locations =
                         new ArrayList<Map.Entry<String, Double>>(objectives.entrySet());
@@ -111,6 +114,14 @@ public class GuidedRandomGridSearch extends RandomGridSearch {
         return true;
     }
 
+    /**
+     * The explore phase needs the objectives of all the seed locations.
+     */
+    @Override
+    protected boolean canChooseWithPendingLocations() {
+        return (objectives.size() + pendingLocations.size()) != numSeedLocations;
+    }
+
     /**
      * Add neightbors to toExplore.
      */
@@ -47,7 +47,7 @@ public class RandomGridSearch extends GridSearch {
     protected boolean chooseNextLocation() {
         do {
             currentLocation = randomConfiguration();
-        } while (objectives.containsKey(currentLocation));
+        } while (objectives.containsKey(currentLocation) || pendingLocations.contains(currentLocation));
 
         return true;
     }
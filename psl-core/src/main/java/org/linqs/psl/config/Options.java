@@ -19,6 +19,7 @@ package org.linqs.psl.config;
 
 import org.linqs.psl.application.inference.mpe.ADMMInference;
 import org.linqs.psl.application.learning.weight.gradient.GradientDescent;
+import org.linqs.psl.application.learning.weight.gradient.batchgenerator.ConnectedComponentBatchGenerator;
 import org.linqs.psl.application.learning.weight.gradient.policygradient.PolicyGradient;
 import org.linqs.psl.application.learning.weight.search.bayesian.GaussianProcessKernel;
 import org.linqs.psl.grounding.collective.CandidateGeneration;
@@ -26,9 +27,11 @@ import org.linqs.psl.evaluation.statistics.ContinuousEvaluator;
 import org.linqs.psl.evaluation.statistics.CategoricalEvaluator;
 import org.linqs.psl.evaluation.statistics.DiscreteEvaluator;
 import org.linqs.psl.evaluation.statistics.AUCEvaluator;
+import org.linqs.psl.model.deep.DeepModel;
 import org.linqs.psl.reasoner.InitialValue;
 import org.linqs.psl.reasoner.gradientdescent.GradientDescentReasoner;
 import org.linqs.psl.reasoner.sgd.SGDReasoner;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.SystemUtils;
 
 import org.json.JSONArray;
@@ -82,6 +85,14 @@ public class Options {
         Option.FLAG_POSITIVE
     );
 
+    public static final Option ATOM_STORE_COMMIT_EPSILON = new Option(
+        "atomstore.commitepsilon",
+        0.0,
+        "When committing, only write random variable atoms whose value has moved more than this"
+        + " since the atom was loaded from (or last committed to) the database.",
+        Option.FLAG_NON_NEGATIVE
+    );
+
     public static final Option ATOM_STORE_OVERALLOCATION_FACTOR = new Option(
         "atomstore.overallocation",
         0.20,
@@ -95,6 +106,22 @@ public class Options {
         "Stop ADMM when the primal dual stopping criterion is satisfied."
     );
 
+    public static final Option ATOM_STORE_LAZY_LOADING = new Option(
+        "atomstore.lazyloading",
+        false,
+        "Only load the atoms of open predicates when an atom store is created."
+        + " Closed predicates are loaded when first referenced (e.g. by the rules being grounded),"
+        + " and closed predicates that are never referenced are never loaded."
+    );
+
+    public static final Option ATOM_STORE_LOAD_THREADS = new Option(
+        "atomstore.loadthreads",
+        Runtime.getRuntime().availableProcessors(),
+        "The number of threads (each with its own database connection) used to load the initial predicates of an atom store."
+        + " Each predicate is streamed by a single thread, and atoms get the same indexes as a sequential (single thread) load.",
+        Option.FLAG_POSITIVE
+    );
+
     public static final Option ATOM_STORE_STORE_ALL_ATOMS = new Option(
         "atomstore.storeallatoms",
         false,
@@ -315,6 +342,16 @@ public class Options {
         "The batch generator to use for gradient descent weight learning. The default is FullBatchGenerator."
     );
 
+    public static final Option WLA_GRADIENT_DESCENT_BATCHES_PER_STEP = new Option(
+        "gradientdescent.batchesperstep",
+        1,
+        "The number of batches whose inference and gradients are computed in parallel (each by its own reasoner)"
+        + " before a single weight update is made with the average of their weight gradients."
+        + " Only supported by learners without per-batch internal parameters (e.g. StructuredPerceptron and Energy)"
+        + " and models without deep predicates, otherwise batches are evaluated one at a time.",
+        Option.FLAG_POSITIVE
+    );
+
     public static final Option WLA_GRADIENT_DESCENT_CLIP_GRADIENT = new Option(
         "gradientdescent.clipweightgradient",
         true,
@@ -408,7 +445,26 @@ public class Options {
     public static final Option WLA_CONNECTED_COMPONENT_BATCH_SIZE = new Option(
         "connectedcomponents.batchsize",
         32,
-        "The number of connected components to include in a batch.",
+        "The number of connected components to include in a batch."
+        + " Only used with the COMPONENT_COUNT batch strategy.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option WLA_CONNECTED_COMPONENT_BATCH_STRATEGY = new Option(
+        "connectedcomponents.batchstrategy",
+        ConnectedComponentBatchGenerator.BatchStrategy.COMPONENT_COUNT.toString(),
+        "How connected components are grouped into batches."
+        + " COMPONENT_COUNT (Default): Put connectedcomponents.batchsize components into each batch."
+        + " TERM_COUNT: Pack components into batches of about connectedcomponents.batchtargetsize terms (first-fit decreasing)."
+        + " ATOM_COUNT: Pack components into batches of about connectedcomponents.batchtargetsize atoms (first-fit decreasing)."
+        + " With TERM_COUNT and ATOM_COUNT, components larger than the target are split into pieces."
+    );
+
+    public static final Option WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE = new Option(
+        "connectedcomponents.batchtargetsize",
+        10000,
+        "The target number of terms (or atoms) in a batch when packing connected components"
+        + " (see connectedcomponents.batchstrategy).",
         Option.FLAG_POSITIVE
     );
 
@@ -484,6 +540,15 @@ public class Options {
         "Break gradient descent weight learning when the validation evaluation stops improving after this many epochs."
     );
 
+    public static final Option WLA_GS_CONCURRENT_LOCATIONS = new Option(
+        "gridsearch.concurrentlocations",
+        1,
+        "The number of search locations to evaluate at the same time."
+        + " Each concurrent location is evaluated on its own copy of the training model,"
+        + " so memory grows with this value. A value of one evaluates locations one at a time.",
+        Option.FLAG_POSITIVE
+    );
+
     public static final Option WLA_GS_POSSIBLE_WEIGHTS = new Option(
         "gridsearch.weights",
         "0.001:0.01:0.1:1:10",
@@ -520,6 +585,21 @@ public class Options {
         "The type of search to use when generating candidates."
     );
 
+    public static final Option GROUNDING_INCREMENTAL = new Option(
+        "grounding.incremental",
+        false,
+        "Track the ground atoms that support each term so that changes to the data can be"
+        + " re-grounded incrementally (see InferenceApplication.updateGrounding())"
+        + " instead of re-grounding the entire model."
+    );
+
+    public static final Option GROUNDING_SNAPSHOT_PATH = new Option(
+        "grounding.snapshot.path",
+        null,
+        "If set, inference will save its ground program to this path after grounding,"
+        + " and will load it (instead of grounding) when the rules, options, and data still match the snapshot."
+    );
+
     public static final Option WLA_GRGS_EXPLORE_LOCATIONS = new Option(
         "guidedrandomgridsearch.explorelocations",
         10,
@@ -541,6 +621,15 @@ public class Options {
         Option.FLAG_POSITIVE
     );
 
+    public static final Option WLA_HB_CONCURRENT_CONFIGS = new Option(
+        "hyperband.concurrentconfigs",
+        1,
+        "The number of configurations in a round to run at the same time."
+        + " Each concurrent configuration runs on its own copy of the training model,"
+        + " so memory grows with this value. A value of one runs configurations one at a time.",
+        Option.FLAG_POSITIVE
+    );
+
     public static final Option WLA_HB_NUM_BRACKETS = new Option(
         "hyperband.numbrackets",
         4,
@@ -555,6 +644,14 @@ public class Options {
         Option.FLAG_POSITIVE
     );
 
+    public static final Option WLA_HB_WARM_START = new Option(
+        "hyperband.warmstart",
+        false,
+        "Keep the inference state of the best configuration found so far (only that one state is kept),"
+        + " and start inference for every following configuration from it instead of from the initial values."
+        + " Each configuration still runs with the full budget of its round."
+    );
+
     public static final Option INFERENCE_INITIAL_VARIABLE_VALUE = new Option(
         "inference.initialvalue",
         InitialValue.RANDOM.toString(),
@@ -593,6 +690,21 @@ public class Options {
         + " Variables will be set to their specified initial values, but no reasoning will take place."
     );
 
+    public static final Option MEMORY_ACCOUNTANT_LOG = new Option(
+        "memoryaccountant.log",
+        false,
+        "Log estimates of the memory used by atom stores, term stores, and other large structures"
+        + " at the end of each major phase (loading atoms, grounding, inference)."
+        + " Estimates are also exposed as metric gauges."
+    );
+
+    public static final Option MEMORY_ACCOUNTANT_PREFLIGHT = new Option(
+        "memoryaccountant.preflight",
+        false,
+        "Before grounding, estimate (and log) the number of ground rules and memory each rule will need."
+        + " Uses the database's query planner when available and predicate row counts otherwise."
+    );
+
     public static final Option MEMORY_TS_INITIAL_SIZE = new Option(
         "memorytermstore.initialsize",
         10000l,
@@ -613,6 +725,18 @@ public class Options {
         "Shuffle the terms before each return of iterator()."
     );
 
+    public static final Option METRICS_OUTPUT_FORMAT = new Option(
+        "metrics.output.format",
+        Metrics.Format.JSON.toString(),
+        "The format to write metrics snapshots in. See Metrics.Format."
+    );
+
+    public static final Option METRICS_OUTPUT_PATH = new Option(
+        "metrics.output.path",
+        null,
+        "If set, write a snapshot of all collected metrics to this path when a runtime finishes."
+    );
+
     public static final Option MINIMIZER_ENERGY_LOSS_COEFFICIENT = new Option(
         "minimizer.energylosscoefficient",
         1.0f,
@@ -764,6 +888,20 @@ public class Options {
         "The Postgres user to connect with (when not explicitly specified)."
     );
 
+    public static final Option PREDICATE_DEEP_CONCURRENT = new Option(
+        "predicate.deep.concurrent",
+        true,
+        "Send requests to the deep models of different predicates at the same time"
+        + " (instead of waiting on each model in turn)."
+    );
+
+    public static final Option PREDICATE_DEEP_PROTOCOL = new Option(
+        "predicate.deep.protocol",
+        DeepModel.Protocol.BINARY.toString(),
+        "How messages to the Python model wrapper server are framed."
+        + " BINARY uses compact fixed-header frames, JSON uses one JSON object per line."
+    );
+
     public static final Option PREDICATE_DEEP_PYTHON_PORT = new Option(
         "predicate.deep.python.port",
         12345,
@@ -781,6 +919,28 @@ public class Options {
         "predicate.deep.sharedmemory.path",
         SystemUtils.getTempDir("deep_shared_memory.bin"),
         "Where the place shared memory."
+        + " Each deep model uses its own file, named by appending the model's port to this path."
+    );
+
+    public static final Option PROFILER_RULES = new Option(
+        "profiler.rules",
+        false,
+        "Profile the cost of each rule (grounding time, query rows, ground rules, terms, and term memory)"
+        + " along with sampled optimization time per term type."
+        + " The report is logged (and optionally written as JSON) when a runtime finishes."
+    );
+
+    public static final Option PROFILER_RULES_OUTPUT_PATH = new Option(
+        "profiler.rules.output.path",
+        null,
+        "If set (and rule profiling is enabled), write the rule profile to this path as JSON."
+    );
+
+    public static final Option PROFILER_RULES_SAMPLE_PERIOD = new Option(
+        "profiler.rules.sampleperiod",
+        10,
+        "When profiling rules, time the optimization of each term every this many reasoner iterations.",
+        Option.FLAG_POSITIVE
     );
 
     public static final Option PROJECT_VERSION = new Option(
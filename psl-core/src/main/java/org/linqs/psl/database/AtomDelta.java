@@ -0,0 +1,79 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.database;
+
+import org.linqs.psl.model.atom.GroundAtom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes made to an AtomStore when it was brought back in sync with its database.
+ * See PersistedAtomStore.refresh().
+ *
+ * Inserted atoms are new to the store.
+ * Deleted atoms have been removed from the store (but still hold their old index and value).
+ * Updated atoms are observed atoms whose value changed in place.
+ */
+public class AtomDelta {
+    private List<GroundAtom> inserted;
+    private List<GroundAtom> deleted;
+    private List<GroundAtom> updated;
+
+    public AtomDelta() {
+        inserted = new ArrayList<GroundAtom>();
+        deleted = new ArrayList<GroundAtom>();
+        updated = new ArrayList<GroundAtom>();
+    }
+
+    public List<GroundAtom> getInserted() {
+        return inserted;
+    }
+
+    public List<GroundAtom> getDeleted() {
+        return deleted;
+    }
+
+    public List<GroundAtom> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Get all the atoms touched by this delta.
+     */
+    public List<GroundAtom> getChanged() {
+        List<GroundAtom> changed = new ArrayList<GroundAtom>(size());
+        changed.addAll(deleted);
+        changed.addAll(updated);
+        changed.addAll(inserted);
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return inserted.size() + deleted.size() + updated.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d inserted, %d deleted, and %d updated", inserted.size(), deleted.size(), updated.size());
+    }
+}
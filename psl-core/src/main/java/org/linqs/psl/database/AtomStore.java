@@ -22,11 +22,16 @@ import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.StringAttribute;
+import org.linqs.psl.model.term.Term;
 import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -35,11 +40,16 @@ import java.util.Map;
 /**
  * The canonical owner of ground atoms.
  */
-public class AtomStore implements Iterable<GroundAtom> {
+public class AtomStore implements Iterable<GroundAtom>, MemoryAccountant.Accountable {
     private static final Logger log = Logger.getLogger(AtomStore.class);
 
     public static final int MIN_ALLOCATION = 100;
 
+    /**
+     * Estimated size of the fields of a ground atom (predicate, arguments, hashcode, index, parent, value, partition, fixed).
+     */
+    private static final long ATOM_FIELD_BYTES = 27;
+
     public static final double overallocationFactor = Options.ATOM_STORE_OVERALLOCATION_FACTOR.getDouble();
 
     protected int numAtoms;
@@ -49,6 +59,20 @@ public class AtomStore implements Iterable<GroundAtom> {
     protected int maxRVAIndex;
     protected Map<Atom, Integer> atomIndexMap;
 
+    /**
+     * Indexes of atoms that have been removed from this store.
+     * Removed atoms keep their slot (so existing indexes stay valid),
+     * but can no longer be looked up and are skipped when iterating.
+     */
+    protected BitSet removedAtoms;
+
+    /**
+     * The value that the backing database is known to hold for each random variable atom (see markCommitted()).
+     * Since RVAs are kept at low indexes, this only covers indexes up to the highest RVA index when it was last set.
+     * NaN (or an index past the end) means that the value is not known to be held (e.g. the atom was never committed).
+     */
+    protected float[] committedValues;
+
     /**
      * The mapping from component indices to an array of atom indices in the component.
      * The component an atom belongs to is found via findAtomRoot.
@@ -69,6 +93,10 @@ public class AtomStore implements Iterable<GroundAtom> {
 
         connectedComponentsAtomIndexes = new HashMap<Integer, List<Integer>>();
         atomIndexMap = new HashMap<Atom, Integer>((int) (allocationSize / 0.75));
+        removedAtoms = new BitSet();
+        committedValues = new float[0];
+
+        MemoryAccountant.register(this);
     }
 
     public AtomStore copy() {
@@ -78,6 +106,10 @@ public class AtomStore implements Iterable<GroundAtom> {
             atomStoreCopy.addAtom(atoms[i].copy());
         }
 
+        for (int i = removedAtoms.nextSetBit(0); i >= 0; i = removedAtoms.nextSetBit(i + 1)) {
+            atomStoreCopy.markRemoved(i);
+        }
+
         return atomStoreCopy;
     }
 
@@ -246,17 +278,43 @@ public class AtomStore implements Iterable<GroundAtom> {
         }
     }
 
+    public boolean isRemoved(int index) {
+        return removedAtoms.get(index);
+    }
+
     @Override
     public Iterator<GroundAtom> iterator() {
-        return Arrays.asList(atoms).subList(0, numAtoms).iterator();
+        return storedAtomIterator();
+    }
+
+    /**
+     * Iterate over the atoms that are currently held by this store.
+     * Child classes that load atoms on demand may load more atoms in iterator(), but not here.
+     */
+    protected Iterator<GroundAtom> storedAtomIterator() {
+        List<GroundAtom> allAtoms = Arrays.asList(atoms).subList(0, numAtoms);
+        if (removedAtoms.isEmpty()) {
+            return allAtoms.iterator();
+        }
+
+        return IteratorUtils.filter(allAtoms, new IteratorUtils.FilterFunction<GroundAtom>() {
+            @Override
+            public boolean keep(GroundAtom atom) {
+                return !removedAtoms.get(atom.getIndex());
+            }
+        }).iterator();
     }
 
+    /**
+     * Get all the random variable atoms.
+     * Random variable atoms are always held by the store (never loaded on demand).
+     */
     public Iterable<RandomVariableAtom> getRandomVariableAtoms() {
-        return IteratorUtils.filterClass(this, RandomVariableAtom.class);
+        return IteratorUtils.filterClass(getStoredAtoms(), RandomVariableAtom.class);
     }
 
     public Iterable<RandomVariableAtom> getRandomVariableAtoms(Predicate predicate) {
-        return IteratorUtils.filter(IteratorUtils.filterClass(this, RandomVariableAtom.class), new IteratorUtils.FilterFunction<RandomVariableAtom>() {
+        return IteratorUtils.filter(getRandomVariableAtoms(), new IteratorUtils.FilterFunction<RandomVariableAtom>() {
             @Override
             public boolean keep(RandomVariableAtom atom) {
                 return atom.getPredicate().equals(predicate);
@@ -292,12 +350,224 @@ public class AtomStore implements Iterable<GroundAtom> {
         numAtoms++;
     }
 
+    /**
+     * Reserve the next count atom slots so that they can be filled with placeAtom() (possibly from several threads).
+     * Returns the index of the first reserved slot.
+     * Every reserved slot must be filled and then indexed with indexPlacedAtoms() before this store is used.
+     */
+    protected synchronized int reserveAtoms(int count) {
+        while (atoms.length < numAtoms + count) {
+            reallocate();
+        }
+
+        int start = numAtoms;
+        numAtoms += count;
+
+        return start;
+    }
+
+    /**
+     * Put an atom into a slot from reserveAtoms().
+     * Different threads may place atoms into different slots at the same time.
+     */
+    protected void placeAtom(int index, GroundAtom atom) {
+        atom.setIndex(index);
+        atom.setParent(index);
+
+        atoms[index] = atom;
+        atomValues[index] = atom.getValue();
+    }
+
+    /**
+     * Finish adding placed atoms (in [start, end)) by adding them to the lookup index and connected components.
+     * The lookup index for these atoms (which may have been built concurrently) is passed in.
+     */
+    protected synchronized void indexPlacedAtoms(int start, int end, Map<Atom, Integer> index) {
+        atomIndexMap.putAll(index);
+
+        for (int i = start; i < end; i++) {
+            List<Integer> component = new ArrayList<Integer>();
+            component.add(i);
+            connectedComponentsAtomIndexes.put(i, component);
+
+            if (atoms[i] instanceof RandomVariableAtom) {
+                maxRVAIndex = Math.max(maxRVAIndex, i);
+                numRVAtoms++;
+            }
+        }
+    }
+
+    /**
+     * Record the current value of every random variable atom as the value held by the backing database.
+     */
+    public synchronized void markCommitted() {
+        committedValues = new float[maxRVAIndex + 1];
+        Arrays.fill(committedValues, Float.NaN);
+
+        for (int i = 0; i <= maxRVAIndex; i++) {
+            if (atoms[i] instanceof RandomVariableAtom && !removedAtoms.get(i)) {
+                committedValues[i] = atoms[i].getValue();
+            }
+        }
+    }
+
+    /**
+     * Record the current value of the given atoms (by index) as the value held by the backing database.
+     */
+    public synchronized void markCommitted(BitSet atomIndexes) {
+        if (committedValues.length < maxRVAIndex + 1) {
+            int oldLength = committedValues.length;
+            committedValues = Arrays.copyOf(committedValues, maxRVAIndex + 1);
+            Arrays.fill(committedValues, oldLength, committedValues.length, Float.NaN);
+        }
+
+        for (int i = atomIndexes.nextSetBit(0); i >= 0; i = atomIndexes.nextSetBit(i + 1)) {
+            committedValues[i] = atoms[i].getValue();
+        }
+    }
+
+    /**
+     * Get the indexes of the random variable atoms whose value has moved more than epsilon
+     * since it was last committed (or that were never committed).
+     */
+    public synchronized BitSet getChangedAtoms(float epsilon) {
+        BitSet changedAtoms = new BitSet(maxRVAIndex + 1);
+
+        for (int i = 0; i <= maxRVAIndex; i++) {
+            if (!(atoms[i] instanceof RandomVariableAtom) || removedAtoms.get(i)) {
+                continue;
+            }
+
+            if (i >= committedValues.length || Float.isNaN(committedValues[i])
+                    || Math.abs(atoms[i].getValue() - committedValues[i]) > epsilon) {
+                changedAtoms.set(i);
+            }
+        }
+
+        return changedAtoms;
+    }
+
+    private Iterable<GroundAtom> getStoredAtoms() {
+        return new Iterable<GroundAtom>() {
+            @Override
+            public Iterator<GroundAtom> iterator() {
+                return storedAtomIterator();
+            }
+        };
+    }
+
+    /**
+     * Remove an atom from this store.
+     * The atom keeps its index (and value) so that existing references (e.g. from terms) are still valid,
+     * but it will no longer be found by lookups or iteration.
+     * Callers are responsible for retracting anything that depends on the atom.
+     * Returns false if the atom was not managed by this store.
+     */
+    public synchronized boolean removeAtom(GroundAtom atom) {
+        Integer index = atomIndexMap.get(atom);
+        if (index == null) {
+            return false;
+        }
+
+        markRemoved(index.intValue());
+        return true;
+    }
+
+    private void markRemoved(int index) {
+        // A removed atom may have been re-added later (at a new index), only drop the lookup if it is still ours.
+        Integer mappedIndex = atomIndexMap.get(atoms[index]);
+        if (mappedIndex != null && mappedIndex.intValue() == index) {
+            atomIndexMap.remove(atoms[index]);
+        }
+
+        removedAtoms.set(index);
+
+        if (atoms[index] instanceof RandomVariableAtom) {
+            numRVAtoms--;
+        }
+    }
+
+    /**
+     * Estimate the memory held by this store.
+     * Per-atom sizes are sampled from the first atoms (see MemoryAccountant.SAMPLE_SIZE).
+     * Slack is the space allocated past the current atoms (see Options.ATOM_STORE_OVERALLOCATION_FACTOR).
+     */
+    @Override
+    public synchronized void estimateMemory(List<MemoryAccountant.Estimate> estimates) {
+        if (atoms == null) {
+            return;
+        }
+
+        String owner = getClass().getSimpleName();
+
+        int sampleSize = Math.min(numAtoms, MemoryAccountant.SAMPLE_SIZE);
+        long sampledBytes = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            sampledBytes += estimateAtomBytes(atoms[i]);
+        }
+
+        long slackBytes = (long)(atoms.length - numAtoms) * (MemoryAccountant.REFERENCE_BYTES + Float.BYTES);
+        long atomBytes = MemoryAccountant.extrapolate(sampledBytes, sampleSize, numAtoms)
+                + MemoryAccountant.arrayBytes(atoms.length, MemoryAccountant.REFERENCE_BYTES)
+                + MemoryAccountant.arrayBytes(atomValues.length, Float.BYTES);
+        estimates.add(new MemoryAccountant.Estimate(owner, "atoms", numAtoms, atomBytes, slackBytes));
+
+        long indexBytes = MemoryAccountant.hashMapBytes(atomIndexMap.size())
+                + atomIndexMap.size() * MemoryAccountant.BOXED_INTEGER_BYTES;
+        estimates.add(new MemoryAccountant.Estimate(owner, "atom index", atomIndexMap.size(), indexBytes));
+
+        if (committedValues != null && committedValues.length > 0) {
+            estimates.add(new MemoryAccountant.Estimate(owner, "committed values", committedValues.length,
+                    MemoryAccountant.arrayBytes(committedValues.length, Float.BYTES)));
+        }
+
+        if (connectedComponentsAtomIndexes != null) {
+            long componentBytes = MemoryAccountant.hashMapBytes(connectedComponentsAtomIndexes.size())
+                    + connectedComponentsAtomIndexes.size() * MemoryAccountant.BOXED_INTEGER_BYTES;
+            for (List<Integer> component : connectedComponentsAtomIndexes.values()) {
+                // Component members are boxed (but small indexes are cached by the JVM).
+                componentBytes += MemoryAccountant.arrayListBytes(component.size())
+                        + component.size() * MemoryAccountant.BOXED_INTEGER_BYTES;
+            }
+
+            estimates.add(new MemoryAccountant.Estimate(owner, "connected components", connectedComponentsAtomIndexes.size(), componentBytes));
+        }
+    }
+
+    private static long estimateAtomBytes(GroundAtom atom) {
+        if (atom == null) {
+            return 0;
+        }
+
+        Term[] arguments = atom.getArguments();
+
+        long bytes = MemoryAccountant.objectBytes(ATOM_FIELD_BYTES);
+        bytes += MemoryAccountant.arrayBytes(arguments.length, MemoryAccountant.REFERENCE_BYTES);
+
+        for (Term argument : arguments) {
+            if (argument instanceof StringAttribute) {
+                // The attribute, the string, and the string's backing array.
+                bytes += MemoryAccountant.objectBytes(MemoryAccountant.REFERENCE_BYTES)
+                        + MemoryAccountant.objectBytes(MemoryAccountant.REFERENCE_BYTES + 6)
+                        + MemoryAccountant.arrayBytes(((StringAttribute)argument).getValue().length(), 1);
+            } else if (argument instanceof Constant) {
+                bytes += MemoryAccountant.objectBytes(Long.BYTES);
+            }
+        }
+
+        return bytes;
+    }
+
     public void close() {
+        MemoryAccountant.unregister(this);
+
         numAtoms = 0;
         numRVAtoms = 0;
         atomValues = null;
         atoms = null;
         maxRVAIndex = -1;
+        removedAtoms = null;
+        committedValues = null;
 
         if (atomIndexMap != null) {
             atomIndexMap.clear();
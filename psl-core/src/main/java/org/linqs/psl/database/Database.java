@@ -127,6 +127,15 @@ public abstract class Database {
      */
     public abstract void commit(Iterable<? extends GroundAtom> atoms);
 
+    /**
+     * Delete the specified atoms from the database.
+     * Each atom is only deleted from its own partition.
+     * Atom stores are not updated (see PersistedAtomStore.refresh()).
+     *
+     * @return the number of atoms deleted.
+     */
+    public abstract int delete(Iterable<? extends GroundAtom> atoms);
+
     /**
      * Like executeQuery(), but specifically for grounding queries.
      * This will use extra optimizations.
@@ -161,6 +170,14 @@ public abstract class Database {
      */
     public abstract List<GroundAtom> getAllGroundAtoms(StandardPredicate predicate, List<Short> partitions);
 
+    /**
+     * Stream all the ground atoms for a predicate (see getAllGroundAtoms()) into a callback,
+     * without collecting them first.
+     * Atoms are passed to the callback in the same order that getAllGroundAtoms() would return them.
+     * Different predicates may be streamed from different threads at the same time.
+     */
+    public abstract void streamAllGroundAtoms(StandardPredicate predicate, List<Short> partitions, GroundAtomCallback callback);
+
     public int countAllGroundAtoms(StandardPredicate predicate) {
         return countAllGroundAtoms(predicate, allPartitionIDs);
     }
@@ -169,6 +186,10 @@ public abstract class Database {
         return getAllGroundAtoms(predicate, allPartitionIDs);
     }
 
+    public void streamAllGroundAtoms(StandardPredicate predicate, GroundAtomCallback callback) {
+        streamAllGroundAtoms(predicate, allPartitionIDs, callback);
+    }
+
     public PersistedAtomStore getAtomStore() {
         if (closed) {
             throw new IllegalStateException("Cannot get an AtomStore from a closed database.");
@@ -263,4 +284,11 @@ public abstract class Database {
         log.debug("Initializing AtomStore.");
         atomStore = new PersistedAtomStore(this);
     }
+
+    /**
+     * A callback for each ground atom streamed out of the database.
+     */
+    public static interface GroundAtomCallback {
+        public void call(GroundAtom atom);
+    }
 }
@@ -20,7 +20,9 @@ package org.linqs.psl.database;
 import org.linqs.psl.config.Options;
 import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.atom.UnmanagedObservedAtom;
 import org.linqs.psl.model.atom.UnmanagedRandomVariableAtom;
 import org.linqs.psl.model.predicate.FunctionalPredicate;
@@ -29,9 +31,24 @@ import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.Term;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The canonical owner of all ground atoms for a Database.
@@ -53,6 +70,13 @@ import java.util.HashMap;
  *
  * When initializing, the AtomStore will attempt to put RVA at lower indexes and will track the highest index of an RVA.
  * This is to allow downstream processes to potentially optimize storage requirements.
+ *
+ * With more than one Options.ATOM_STORE_LOAD_THREADS, the initial predicates are streamed from the database concurrently
+ * (see loadPredicatesParallel()).
+ *
+ * With Options.ATOM_STORE_LAZY_LOADING, only open predicates are loaded on initialization.
+ * A closed predicate is loaded the first time one of its atoms is looked up (or the store is fully iterated),
+ * so closed predicates that are never referenced are never read from the database.
  */
 public class PersistedAtomStore extends AtomStore {
     private static final Logger log = Logger.getLogger(PersistedAtomStore.class);
@@ -62,16 +86,50 @@ public class PersistedAtomStore extends AtomStore {
     private String threadKey;
     private boolean storeAllAtoms;
 
+    private float commitEpsilon;
+
+    private boolean lazyLoading;
+    private Set<StandardPredicate> loadedPredicates;
+    private StandardPredicate loadingPredicate;
+
     public PersistedAtomStore(Database database) {
         super();
 
+        long start = System.nanoTime();
         this.database = database;
 
         threadKey = this.getClass().getName();
 
         storeAllAtoms = false;
+        commitEpsilon = (float)Options.ATOM_STORE_COMMIT_EPSILON.getDouble();
+        lazyLoading = Options.ATOM_STORE_LAZY_LOADING.getBoolean();
+        loadedPredicates = ConcurrentHashMap.newKeySet();
+        loadingPredicate = null;
+
+        // Load open predicates first (to get RVAs at a lower index).
+        List<StandardPredicate> initialPredicates = new ArrayList<StandardPredicate>();
+        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
+            if (!database.isClosed(predicate)) {
+                initialPredicates.add(predicate);
+            }
+        }
+
+        // Now load closed predicates.
+        if (!lazyLoading) {
+            for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
+                if (database.isClosed(predicate)) {
+                    initialPredicates.add(predicate);
+                }
+            }
+        }
+
+        int[] counts = new int[initialPredicates.size()];
+        int databaseAtomCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = database.countAllGroundAtoms(initialPredicates.get(i));
+            databaseAtomCount += counts[i];
+        }
 
-        int databaseAtomCount = getDatabaseAtomCount();
         double overallocationFactor = Options.ATOM_STORE_OVERALLOCATION_FACTOR.getDouble();
         int allocationSize = (int)(Math.max(MIN_ALLOCATION, databaseAtomCount) * (1.0 + overallocationFactor));
         storeAllAtoms = Options.ATOM_STORE_STORE_ALL_ATOMS.getBoolean();
@@ -80,27 +138,150 @@ public class PersistedAtomStore extends AtomStore {
         atoms = new GroundAtom[atomValues.length];
         atomIndexMap = new HashMap<Atom, Integer>((int)(atomValues.length / 0.75));
 
-        // Load open predicates first (to get RVAs at a lower index).
-        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
-            if (database.isClosed(predicate)) {
-                continue;
+        int numThreads = Math.min(Options.ATOM_STORE_LOAD_THREADS.getInt(), initialPredicates.size());
+        if (numThreads > 1) {
+            loadPredicatesParallel(initialPredicates, counts, numThreads);
+        } else {
+            for (StandardPredicate predicate : initialPredicates) {
+                loadPredicate(predicate);
             }
+        }
+
+        // Everything was just loaded from the database.
+        markCommitted();
+
+        Metrics.timer("atom_store_build_seconds").observeSince(start);
+        Metrics.gauge("atom_store_atoms").set(size());
+        Metrics.gauge("atom_store_random_variable_atoms").set(numRVAtoms);
+    }
 
-            for (GroundAtom atom : database.getAllGroundAtoms(predicate)) {
-                addAtom(atom);
+    /**
+     * Make sure that all the atoms for the given predicates are loaded.
+     * This is a no-op unless lazy loading (Options.ATOM_STORE_LAZY_LOADING) is enabled.
+     * Since loading is a write, callers should prefer to load everything they need before doing parallel reads
+     * (e.g. Grounding loads all the predicates used by the rules before grounding).
+     */
+    public void loadPredicates(Collection<? extends Predicate> predicates) {
+        for (Predicate predicate : predicates) {
+            ensureLoaded(predicate);
+        }
+    }
+
+    private void ensureLoaded(Predicate predicate) {
+        if (!lazyLoading || !(predicate instanceof StandardPredicate) || loadedPredicates.contains(predicate)) {
+            return;
+        }
+
+        synchronized (this) {
+            // Loading a predicate adds atoms to this store, which will come back here while the load is in progress.
+            if (loadedPredicates.contains(predicate) || predicate == loadingPredicate) {
+                return;
             }
+
+            log.debug("Loading atoms for {}.", predicate);
+            loadPredicate((StandardPredicate)predicate);
         }
+    }
 
-        // Now load closed predicates.
-        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
-            if (!database.isClosed(predicate)) {
-                continue;
+    private void ensureAllLoaded() {
+        if (!lazyLoading) {
+            return;
+        }
+
+        loadPredicates(database.getDataStore().getRegisteredPredicates());
+    }
+
+    private synchronized void loadPredicate(StandardPredicate predicate) {
+        loadingPredicate = predicate;
+
+        try {
+            database.streamAllGroundAtoms(predicate, new Database.GroundAtomCallback() {
+                @Override
+                public void call(GroundAtom atom) {
+                    addAtom(atom);
+                }
+            });
+        } finally {
+            loadingPredicate = null;
+        }
+
+        loadedPredicates.add(predicate);
+    }
+
+    /**
+     * Load several predicates at once, each predicate streamed on its own thread (and database connection).
+     * Each predicate gets a reserved block of slots (in order) sized by its count,
+     * so atoms end up at the same indexes as a sequential load (keeping RVAs first).
+     * If the database changes while loading (so the counts are wrong), then this falls back to a sequential load.
+     */
+    private synchronized void loadPredicatesParallel(List<StandardPredicate> predicates, int[] counts, int numThreads) {
+        int start = numAtoms;
+
+        List<PredicateLoader> loaders = new ArrayList<PredicateLoader>(predicates.size());
+        for (int i = 0; i < predicates.size(); i++) {
+            loaders.add(new PredicateLoader(predicates.get(i), reserveAtoms(counts[i]), counts[i]));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Integer>> results = executor.invokeAll(loaders);
+            for (Future<Integer> result : results) {
+                result.get();
             }
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while loading atoms.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+
+            throw new RuntimeException("Failed to load atoms.", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (PredicateLoader loader : loaders) {
+            if (loader.numLoaded != loader.count) {
+                log.warn("Number of atoms for {} changed while loading ({} -> {}), falling back to a sequential load.",
+                        loader.predicate, loader.count, loader.numLoaded);
+
+                Arrays.fill(atoms, start, numAtoms, null);
+                numAtoms = start;
+
+                for (StandardPredicate predicate : predicates) {
+                    loadPredicate(predicate);
+                }
 
-            for (GroundAtom atom : database.getAllGroundAtoms(predicate)) {
-                addAtom(atom);
+                return;
             }
         }
+
+        for (PredicateLoader loader : loaders) {
+            indexPlacedAtoms(loader.start, loader.start + loader.count, loader.index);
+            loadedPredicates.add(loader.predicate);
+        }
+    }
+
+    @Override
+    public int getAtomIndex(Atom query) {
+        ensureLoaded(query.getPredicate());
+        return super.getAtomIndex(query);
+    }
+
+    @Override
+    public boolean hasAtom(Atom query) {
+        ensureLoaded(query.getPredicate());
+        return super.hasAtom(query);
+    }
+
+    /**
+     * Iterate over all the atoms.
+     * When lazy loading, this will load any predicates that have not yet been loaded.
+     */
+    @Override
+    public Iterator<GroundAtom> iterator() {
+        ensureAllLoaded();
+        return super.iterator();
     }
 
     /**
@@ -108,6 +289,8 @@ public class PersistedAtomStore extends AtomStore {
      * A GroundAtom will always be returned, but it may be unmanaged (not persisted in this store).
      */
     public GroundAtom getAtom(Atom query) {
+        ensureLoaded(query.getPredicate());
+
         Integer index = atomIndexMap.get(query);
         if (index != null) {
             return atoms[index.intValue()];
@@ -177,13 +360,35 @@ public class PersistedAtomStore extends AtomStore {
 
     /**
      * Commit atoms to the database.
+     * Only random variable atoms whose value has moved more than Options.ATOM_STORE_COMMIT_EPSILON
+     * since they were loaded (or last committed) are written.
+     * When including observed atoms, everything is written.
      */
     public void commit(boolean includeObs) {
+        long start = System.nanoTime();
+
         if (includeObs) {
             database.commit(this);
-        } else {
-            database.commit(getRandomVariableAtoms());
+            markCommitted();
+
+            Metrics.timer("commit_seconds").observeSince(start);
+            Metrics.counter("commit_atoms_total").add(size());
+            return;
+        }
+
+        BitSet changedAtoms = getChangedAtoms(commitEpsilon);
+        log.debug("Committing {} of {} random variable atoms.", changedAtoms.cardinality(), numRVAtoms);
+
+        List<GroundAtom> commitAtoms = new ArrayList<GroundAtom>(changedAtoms.cardinality());
+        for (int i = changedAtoms.nextSetBit(0); i >= 0; i = changedAtoms.nextSetBit(i + 1)) {
+            commitAtoms.add(atoms[i]);
         }
+
+        database.commit(commitAtoms);
+        markCommitted(changedAtoms);
+
+        Metrics.timer("commit_seconds").observeSince(start);
+        Metrics.counter("commit_atoms_total").add(commitAtoms.size());
     }
 
     @Override
@@ -196,17 +401,110 @@ public class PersistedAtomStore extends AtomStore {
                 return;
             }
 
-            throw new IllegalStateException(String.format(
-                    "Two identical atoms found in the same database." +
-                            " First Instance: (Atom: %s, Type: %s, Partition: %d)," +
-                            " Second Instance: (Atom: %s, Type: %s, Partition: %d).",
-                    otherAtom, otherAtom.getClass(), otherAtom.getPartition(),
-                    atom, atom.getClass(), atom.getPartition()));
+            throw duplicateAtomException(otherAtom, atom);
         }
 
         addAtomInternal(atom);
     }
 
+    private static IllegalStateException duplicateAtomException(GroundAtom otherAtom, GroundAtom atom) {
+        return new IllegalStateException(String.format(
+                "Two identical atoms found in the same database." +
+                        " First Instance: (Atom: %s, Type: %s, Partition: %d)," +
+                        " Second Instance: (Atom: %s, Type: %s, Partition: %d).",
+                otherAtom, otherAtom.getClass(), otherAtom.getPartition(),
+                atom, atom.getClass(), atom.getPartition()));
+    }
+
+    /**
+     * Bring this store back in sync with the database and report what changed.
+     * New atoms are added, atoms that are no longer in the database are removed,
+     * and observed atoms with a new value are updated in place.
+     * The values of random variable atoms are owned by inference and are not read back.
+     *
+     * Note that this reads every atom from the database,
+     * it is only meant to be cheap relative to re-grounding a model.
+     */
+    public synchronized AtomDelta refresh() {
+        AtomDelta delta = new AtomDelta();
+        BitSet seenAtoms = new BitSet(numAtoms);
+
+        // Keep the same (open, then closed) order as initialization.
+        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
+            if (!database.isClosed(predicate)) {
+                refreshPredicate(predicate, delta, seenAtoms);
+            }
+        }
+
+        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
+            if (database.isClosed(predicate)) {
+                refreshPredicate(predicate, delta, seenAtoms);
+            }
+        }
+
+        int oldNumAtoms = numAtoms;
+        for (int i = 0; i < oldNumAtoms; i++) {
+            if (seenAtoms.get(i) || removedAtoms.get(i)) {
+                continue;
+            }
+
+            GroundAtom atom = atoms[i];
+            if (!atom.isManaged() || !(atom.getPredicate() instanceof StandardPredicate)) {
+                continue;
+            }
+
+            removeAtom(atom);
+            delta.getDeleted().add(atom);
+        }
+
+        // New random variable atoms hold the same value as the database.
+        BitSet insertedAtoms = new BitSet();
+        for (GroundAtom atom : delta.getInserted()) {
+            if (atom instanceof RandomVariableAtom) {
+                insertedAtoms.set(atom.getIndex());
+            }
+        }
+        markCommitted(insertedAtoms);
+
+        log.debug("Refreshed atom store: {}.", delta);
+        return delta;
+    }
+
+    private void refreshPredicate(StandardPredicate predicate, AtomDelta delta, BitSet seenAtoms) {
+        // Predicates that have not been loaded yet will be read fresh when they are needed.
+        if (!loadedPredicates.contains(predicate)) {
+            return;
+        }
+
+        for (GroundAtom atom : database.getAllGroundAtoms(predicate)) {
+            Integer index = atomIndexMap.get(atom);
+
+            if (index != null) {
+                GroundAtom oldAtom = atoms[index.intValue()];
+
+                if (oldAtom.isManaged() && oldAtom.getClass() == atom.getClass() && oldAtom.getPartition() == atom.getPartition()) {
+                    seenAtoms.set(index.intValue());
+
+                    if ((oldAtom instanceof ObservedAtom) && (oldAtom.getValue() != atom.getValue())) {
+                        ((ObservedAtom)oldAtom)._assumeValue(atom.getValue());
+                        atomValues[index.intValue()] = atom.getValue();
+                        delta.getUpdated().add(oldAtom);
+                    }
+
+                    continue;
+                }
+
+                // The atom was unmanaged or changed type/partition, replace it.
+                removeAtom(oldAtom);
+                delta.getDeleted().add(oldAtom);
+            }
+
+            addAtomInternal(atom);
+            seenAtoms.set(atom.getIndex());
+            delta.getInserted().add(atom);
+        }
+    }
+
     /**
      * Get a threadsafe query buffer.
      * The returned QueryAtom should be released for reuse through releaseQuery().
@@ -243,14 +541,49 @@ public class PersistedAtomStore extends AtomStore {
         resources.queryInUse = false;
     }
 
-    protected int getDatabaseAtomCount() {
-        int count = 0;
+    /**
+     * Stream all the atoms of a single predicate into a block of reserved slots.
+     * Any atoms beyond the reserved count are only counted (the caller will fall back to a sequential load).
+     */
+    private class PredicateLoader implements Callable<Integer> {
+        public final StandardPredicate predicate;
+        public final int start;
+        public final int count;
+
+        public final Map<Atom, Integer> index;
+        public int numLoaded;
 
-        for (StandardPredicate predicate : database.getDataStore().getRegisteredPredicates()) {
-            count += database.countAllGroundAtoms(predicate);
+        public PredicateLoader(StandardPredicate predicate, int start, int count) {
+            this.predicate = predicate;
+            this.start = start;
+            this.count = count;
+
+            index = new HashMap<Atom, Integer>((int)(count / 0.75) + 1);
+            numLoaded = 0;
         }
 
-        return count;
+        @Override
+        public Integer call() {
+            database.streamAllGroundAtoms(predicate, new Database.GroundAtomCallback() {
+                @Override
+                public void call(GroundAtom atom) {
+                    if (numLoaded < count) {
+                        int atomIndex = start + numLoaded;
+
+                        Integer otherIndex = index.put(atom, atomIndex);
+                        if (otherIndex != null) {
+                            throw duplicateAtomException(atoms[otherIndex.intValue()], atom);
+                        }
+
+                        placeAtom(atomIndex, atom);
+                    }
+
+                    numLoaded++;
+                }
+            });
+
+            return numLoaded;
+        }
     }
 
     protected static class ThreadResources {
@@ -29,6 +29,11 @@ public interface QueryResultIterable extends Iterable<Constant[]>, AutoCloseable
      */
     public Map<Variable, Integer> getVariableMap();
 
+    /**
+     * Get a textual form of the query (e.g. the SQL) that produced these results.
+     */
+    public String getQueryString();
+
     /**
      * Close the associated iterator and any open queries.
      */
@@ -21,9 +21,10 @@ import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
 import org.linqs.psl.database.Partition;
+import org.linqs.psl.database.QueryResultIterable;
 import org.linqs.psl.database.RawQuery;
 import org.linqs.psl.database.ResultList;
-import org.linqs.psl.database.QueryResultIterable;
+import org.linqs.psl.database.rdbms.driver.DatabaseDriver;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
@@ -41,6 +42,7 @@ import org.linqs.psl.model.term.UniqueIntID;
 import org.linqs.psl.model.term.UniqueStringID;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.model.term.VariableTypeMap;
+import org.linqs.psl.util.FlightRecorder;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.StringUtils;
 
@@ -100,9 +102,24 @@ public class RDBMSDatabase extends Database {
             atomsByPredicate.get(atom.getPredicate()).add(atom);
         }
 
+        DatabaseDriver driver = ((RDBMSDataStore)parentDataStore).getDriver();
+
         try (Connection connection = getConnection()) {
             // Upsert each predicate batch.
             for (Map.Entry<Predicate, List<GroundAtom>> entry : atomsByPredicate.entrySet()) {
+                // Large commits skip the row-by-row upserts if the database has a faster way.
+                if (driver.supportsBulkUpsert() && entry.getValue().size() > RDBMSInserter.DEFAULT_PAGE_SIZE) {
+                    try {
+                        Object event = FlightRecorder.beginCommitBatch();
+                        driver.bulkUpsert(connection, ((RDBMSDataStore)parentDataStore).getPredicateInfo(entry.getKey()), entry.getValue());
+                        FlightRecorder.endCommitBatch(event, entry.getKey().getName(), entry.getValue().size(), true);
+                    } catch (SQLException ex) {
+                        throw new RuntimeException("Error doing bulk commit for: " + entry.getKey(), ex);
+                    }
+
+                    continue;
+                }
+
                 try (PreparedStatement statement = getAtomUpsert(connection, ((RDBMSDataStore)parentDataStore).getPredicateInfo(entry.getKey()))) {
                     int batchSize = 0;
 
@@ -124,15 +141,13 @@ public class RDBMSDatabase extends Database {
                         batchSize++;
 
                         if (batchSize >= RDBMSInserter.DEFAULT_PAGE_SIZE) {
-                            statement.executeBatch();
-                            statement.clearBatch();
+                            executeCommitBatch(statement, entry.getKey(), batchSize);
                             batchSize = 0;
                         }
                     }
 
                     if (batchSize > 0) {
-                        statement.executeBatch();
-                        statement.clearBatch();
+                        executeCommitBatch(statement, entry.getKey(), batchSize);
                     }
                     statement.clearParameters();
                 } catch (SQLException ex) {
@@ -144,6 +159,46 @@ public class RDBMSDatabase extends Database {
         }
     }
 
+    @Override
+    public int delete(Iterable<? extends GroundAtom> atoms) {
+        if (closed) {
+            throw new IllegalStateException("Cannot delete on a closed database.");
+        }
+
+        int count = 0;
+
+        try (Connection connection = getConnection()) {
+            for (GroundAtom atom : atoms) {
+                if (!(atom.getPredicate() instanceof StandardPredicate)) {
+                    continue;
+                }
+
+                PredicateInfo predicateInfo = ((RDBMSDataStore)parentDataStore).getPredicateInfo(atom.getPredicate());
+                try (PreparedStatement statement = predicateInfo.createDeleteStatement(connection, Collections.singletonList(Short.valueOf(atom.getPartition())))) {
+                    Term[] arguments = atom.getArguments();
+                    for (int i = 0; i < arguments.length; i++) {
+                        setAtomArgument(statement, arguments[i], i + 1);
+                    }
+
+                    count += statement.executeUpdate();
+                }
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException("Error deleting atoms.", ex);
+        }
+
+        return count;
+    }
+
+    private void executeCommitBatch(PreparedStatement statement, Predicate predicate, int batchSize) throws SQLException {
+        Object event = FlightRecorder.beginCommitBatch();
+
+        statement.executeBatch();
+        statement.clearBatch();
+
+        FlightRecorder.endCommitBatch(event, predicate.getName(), batchSize, false);
+    }
+
     @Override
     public QueryResultIterable executeGroundingQuery(Formula formula) {
         return executeQueryIterator(formula, false);
@@ -204,7 +259,20 @@ public class RDBMSDatabase extends Database {
 
     @Override
     public List<GroundAtom> getAllGroundAtoms(StandardPredicate predicate, List<Short> partitions) {
-        List<GroundAtom> atoms = new ArrayList<GroundAtom>();
+        final List<GroundAtom> atoms = new ArrayList<GroundAtom>();
+
+        streamAllGroundAtoms(predicate, partitions, new GroundAtomCallback() {
+            @Override
+            public void call(GroundAtom atom) {
+                atoms.add(atom);
+            }
+        });
+
+        return atoms;
+    }
+
+    @Override
+    public void streamAllGroundAtoms(StandardPredicate predicate, List<Short> partitions, GroundAtomCallback callback) {
         PredicateInfo predicateInfo = ((RDBMSDataStore)parentDataStore).getPredicateInfo(predicate);
 
         // Columns for each argument to the predicate.
@@ -222,13 +290,11 @@ public class RDBMSDatabase extends Database {
                     arguments[i] = extractConstantFromResult(results, i + 2, predicate.getArgumentType(i));
                 }
 
-                atoms.add(extractGroundAtomFromResult(results, predicate, arguments));
+                callback.call(extractGroundAtomFromResult(results, predicate, arguments));
             }
         } catch (SQLException ex) {
             throw new RuntimeException("Error fetching all ground atoms for: " + predicate, ex);
         }
-
-        return atoms;
     }
 
     private ResultList executeQuery(Formula formula, boolean isDistinct, Set<Variable> ignoreVariables) {
@@ -405,14 +471,21 @@ public class RDBMSDatabase extends Database {
     }
 
     private class RDBMSQueryResultIterable implements QueryResultIterable {
+        private String queryString;
         private Map<Variable, Integer> projectionMap;
         private RDBMSQueryResultIterator iterator;
 
         public RDBMSQueryResultIterable(String queryString, Map<Variable, Integer> projectionMap, int[] orderedIndexes, ConstantType[] orderedTypes) {
+            this.queryString = queryString;
             this.projectionMap = Collections.unmodifiableMap(projectionMap);
             this.iterator = new RDBMSQueryResultIterator(queryString, orderedIndexes, orderedTypes);
         }
 
+        @Override
+        public String getQueryString() {
+            return queryString;
+        }
+
         @Override
         public void reuse(Collection<Constant[]> reuseConstants) {
             iterator.reuse(reuseConstants);
@@ -63,6 +63,12 @@ public class RDBMSResultList implements ResultList {
         return Collections.unmodifiableMap(varMap);
     }
 
+    @Override
+    public String getQueryString() {
+        // Results are materialized after the query is done.
+        return null;
+    }
+
     public int getPos(Variable var) {
         return varMap.get(var);
     }
@@ -19,6 +19,7 @@ package org.linqs.psl.database.rdbms.driver;
 
 import org.linqs.psl.database.Partition;
 import org.linqs.psl.database.rdbms.PredicateInfo;
+import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.term.ConstantType;
 import org.linqs.psl.util.Parallel;
 
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 /**
  * An abstract class  for a specific RDBMS backend.
@@ -105,6 +107,23 @@ public abstract class DatabaseDriver {
         throw new UnsupportedOperationException(this.getClass() + " does not support bulk copy.");
     }
 
+    /**
+     * Returns whether the underline database supports bulk upserts (see bulkUpsert()).
+     */
+    public boolean supportsBulkUpsert() {
+        return false;
+    }
+
+    /**
+     * Upsert (insert or update the value of) many atoms of the same predicate at once.
+     * This is a faster alternative to batches of individual upserts for large commits.
+     * May not be supported by all backends.
+     */
+    public void bulkUpsert(Connection connection, PredicateInfo predicateInfo, List<? extends GroundAtom> atoms)
+            throws SQLException {
+        throw new UnsupportedOperationException(this.getClass() + " does not support bulk upsert.");
+    }
+
     /**
      * Clear the context database of any existing tables/data.
      */
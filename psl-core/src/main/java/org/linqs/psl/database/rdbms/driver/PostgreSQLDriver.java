@@ -20,7 +20,10 @@ package org.linqs.psl.database.rdbms.driver;
 import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Partition;
 import org.linqs.psl.database.rdbms.PredicateInfo;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.Term;
 import org.linqs.psl.util.ListUtils;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.StringUtils;
@@ -29,11 +32,13 @@ import com.healthmarketscience.sqlbuilder.CreateTableQuery;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -47,6 +52,7 @@ import java.util.List;
  */
 public class PostgreSQLDriver extends DatabaseDriver {
     private static final String ENCODING = "UTF-8";
+    private static final int COPY_PAGE_SIZE = 10000;
 
     private static final Logger log = Logger.getLogger(PostgreSQLDriver.class);
 
@@ -132,6 +138,95 @@ public class PostgreSQLDriver extends DatabaseDriver {
         }
     }
 
+    @Override
+    public boolean supportsBulkUpsert() {
+        return true;
+    }
+
+    /**
+     * COPY the atoms into a temporary table, and then upsert them all into the predicate's table with a single statement.
+     */
+    @Override
+    public void bulkUpsert(Connection connection, PredicateInfo predicateInfo, List<? extends GroundAtom> atoms)
+            throws SQLException {
+        String tempTableName = "commit_" + predicateInfo.tableName();
+
+        List<String> columns = new ArrayList<String>();
+        columns.add(PredicateInfo.PARTITION_COLUMN_NAME);
+        columns.add(PredicateInfo.VALUE_COLUMN_NAME);
+        columns.addAll(predicateInfo.argumentColumns());
+
+        List<String> keyColumns = new ArrayList<String>(columns);
+        keyColumns.remove(PredicateInfo.VALUE_COLUMN_NAME);
+
+        String columnList = ListUtils.join(", ", columns);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(String.format("CREATE TEMPORARY TABLE %s AS SELECT %s FROM %s WITH NO DATA",
+                    tempTableName, columnList, predicateInfo.tableName()));
+
+            try {
+                copyAtoms(connection, String.format("COPY %s(%s) FROM STDIN WITH (FORMAT csv)", tempTableName, columnList), atoms);
+
+                statement.executeUpdate(String.format(
+                        "INSERT INTO %s (%s) SELECT %s FROM %s ON CONFLICT (%s) DO UPDATE SET %s = EXCLUDED.%s",
+                        predicateInfo.tableName(), columnList, columnList, tempTableName,
+                        ListUtils.join(", ", keyColumns),
+                        PredicateInfo.VALUE_COLUMN_NAME, PredicateInfo.VALUE_COLUMN_NAME));
+            } finally {
+                statement.executeUpdate("DROP TABLE " + tempTableName);
+            }
+        }
+    }
+
+    /**
+     * Stream atoms (as CSV rows of partition, value, and arguments) into a COPY.
+     */
+    private void copyAtoms(Connection connection, String sql, List<? extends GroundAtom> atoms) throws SQLException {
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+
+        try {
+            StringBuilder rows = new StringBuilder();
+            int numRows = 0;
+
+            for (GroundAtom atom : atoms) {
+                rows.append(atom.getPartition());
+                rows.append(',');
+                rows.append((double)atom.getValue());
+
+                for (Term argument : atom.getArguments()) {
+                    rows.append(",\"");
+                    rows.append(((Constant)argument).rawToString().replace("\"", "\"\""));
+                    rows.append('"');
+                }
+
+                rows.append('\n');
+                numRows++;
+
+                if (numRows >= COPY_PAGE_SIZE) {
+                    writeToCopy(copy, rows);
+                    numRows = 0;
+                }
+            }
+
+            if (numRows > 0) {
+                writeToCopy(copy, rows);
+            }
+
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private void writeToCopy(CopyIn copy, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
     /**
      * Set a default value for a column.
      * The passed in default should already be prepped to be put in the query
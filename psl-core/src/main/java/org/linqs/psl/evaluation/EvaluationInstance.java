@@ -22,6 +22,7 @@ import org.linqs.psl.database.Database;
 import org.linqs.psl.evaluation.statistics.Evaluator;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.util.Metrics;
 
 import java.util.Set;
 
@@ -56,15 +57,21 @@ public class EvaluationInstance {
     }
 
     public void compute(TrainingMap trainingMap) {
+        long start = System.nanoTime();
         evaluator.compute(trainingMap, predicate);
+        recordEvaluation(start);
     }
 
     public void compute(Database targets, Database truth) {
+        long start = System.nanoTime();
         evaluator.compute(targets, truth, predicate);
+        recordEvaluation(start);
     }
 
     public void compute(TrainingMap trainingMap, Set<GroundAtom> truthSubset) {
+        long start = System.nanoTime();
         evaluator.compute(trainingMap, predicate, truthSubset);
+        recordEvaluation(start);
     }
 
     public double getNormalizedRepMetric() {
@@ -75,6 +82,15 @@ public class EvaluationInstance {
         return evaluator.getNormalizedMaxRepMetric();
     }
 
+    private void recordEvaluation(long start) {
+        String evaluatorName = evaluator.getClass().getSimpleName();
+        String predicateName = predicate.getName();
+
+        Metrics.timer("evaluation_seconds", "evaluator", evaluatorName, "predicate", predicateName).observeSince(start);
+        Metrics.gauge("evaluation_representative_metric", "evaluator", evaluatorName, "predicate", predicateName)
+                .set(evaluator.getRepMetric());
+    }
+
     public String getOutput() {
         return String.format("Evaluator: %s, Predicate: %s, Results -- %s",
                 evaluator.getClass().getSimpleName(), predicate.getName(), evaluator.getAllStats());
@@ -18,23 +18,40 @@
 package org.linqs.psl.grounding;
 
 import org.linqs.psl.config.Options;
+import org.linqs.psl.database.AtomDelta;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.QueryResultIterable;
+import org.linqs.psl.database.rdbms.Formula2SQL;
 import org.linqs.psl.grounding.collective.CandidateGeneration;
 import org.linqs.psl.grounding.collective.CandidateQuery;
 import org.linqs.psl.grounding.collective.Containment;
 import org.linqs.psl.grounding.collective.Coverage;
+import org.linqs.psl.model.atom.Atom;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.formula.Conjunction;
 import org.linqs.psl.model.formula.Formula;
 import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.RuleProfiler;
+import org.linqs.psl.model.rule.arithmetic.AbstractArithmeticRule;
 import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.Term;
 import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.model.term.VariableTypeMap;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.reasoner.term.TermStore;
+import org.linqs.psl.util.FlightRecorder;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.MemoryAccountant;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -59,12 +76,283 @@ public class Grounding {
     }
 
     public static long groundAll(List<Rule> rules, TermStore termStore, Database database) {
+        long start = System.nanoTime();
+        loadPredicates(rules, database);
+
+        long termCount = 0;
         boolean collective = Options.GROUNDING_COLLECTIVE.getBoolean();
         if (collective) {
-            return groundCollective(rules, termStore, database);
+            termCount = groundCollective(rules, termStore, database);
+        } else {
+            termCount = groundIndependent(rules, termStore, database);
         }
 
-        return groundIndependent(rules, termStore, database);
+        // Grounding and term generation are fused (ground rules are turned into terms as they are made).
+        Metrics.timer("term_generation_seconds").observeSince(start);
+        Metrics.counter("terms_generated_total").add(termCount);
+
+        return termCount;
+    }
+
+    /**
+     * Estimate (before grounding) the number of terms and the memory that each rule will need (see Options.MEMORY_ACCOUNTANT_PREFLIGHT).
+     * When the database can EXPLAIN queries, the planner's row estimate for the rule's grounding query is used.
+     * Otherwise, the estimate falls back to the largest row count of the predicates in the rule's core atoms
+     * (which assumes that joins are on keys, and will underestimate rules that produce cross products).
+     * Term sizes only include the base term (see ReasonerTerm.estimateBaseMemory()).
+     */
+    public static List<MemoryAccountant.Estimate> estimateMemory(List<Rule> rules, Database database) {
+        List<MemoryAccountant.Estimate> estimates = new ArrayList<MemoryAccountant.Estimate>(rules.size());
+        boolean canExplain = database.getDataStore().canExplain();
+
+        Map<StandardPredicate, Integer> rowCounts = new HashMap<StandardPredicate, Integer>();
+        Set<Atom> atoms = new HashSet<Atom>();
+
+        for (Rule rule : rules) {
+            atoms.clear();
+            rule.getCoreAtoms(atoms);
+
+            long rows = 0;
+            if (canExplain && rule.supportsGroundingQueryRewriting()) {
+                String sql = Formula2SQL.getQuery(rule.getRewritableGroundingFormula(), database, false);
+                rows = database.getDataStore().explain(sql).rows;
+            } else {
+                for (Atom atom : atoms) {
+                    if (!(atom.getPredicate() instanceof StandardPredicate)) {
+                        continue;
+                    }
+
+                    StandardPredicate predicate = (StandardPredicate)atom.getPredicate();
+                    if (!rowCounts.containsKey(predicate)) {
+                        rowCounts.put(predicate, Integer.valueOf(database.countAllGroundAtoms(predicate)));
+                    }
+
+                    rows = Math.max(rows, rowCounts.get(predicate).intValue());
+                }
+            }
+
+            long bytes = rows * ReasonerTerm.estimateBaseMemory(atoms.size());
+            estimates.add(new MemoryAccountant.Estimate(getRuleLabel(rule), "estimated terms", rows, bytes));
+        }
+
+        return estimates;
+    }
+
+    /**
+     * Get the label used to identify a rule in metrics.
+     */
+    public static String getRuleLabel(Rule rule) {
+        if (rule.getName() != null) {
+            return rule.getName();
+        }
+
+        return rule.toString();
+    }
+
+    /**
+     * Update an existing grounding to reflect a change in the atoms (see PersistedAtomStore.refresh()).
+     * Every term supported by a changed atom is retracted,
+     * and then only the groundings that involve a changed atom are re-instantiated.
+     * The term store must have been tracking support since it was first populated
+     * (see Options.GROUNDING_INCREMENTAL).
+     *
+     * Rules that do not support query rewriting (e.g. arithmetic rules with summations)
+     * cannot be targeted this way, and are fully retracted and re-grounded.
+     *
+     * Returns the number of terms added.
+     */
+    public static long groundDelta(List<Rule> rules, SimpleTermStore<?> termStore, Database database, AtomDelta delta) {
+        if (!termStore.isTrackingTermSupport()) {
+            throw new IllegalStateException("Incremental grounding requires a term store that is tracking term support.");
+        }
+
+        if (delta.isEmpty()) {
+            return 0;
+        }
+
+        long initialSize = termStore.size();
+        List<GroundAtom> changedAtoms = delta.getChanged();
+
+        long retractedCount = 0;
+        for (GroundAtom atom : changedAtoms) {
+            retractedCount += termStore.retractTerms(atom);
+        }
+
+        loadPredicates(rules, database);
+
+        for (Rule rule : rules) {
+            if (!rule.supportsGroundingQueryRewriting()) {
+                retractedCount += termStore.retractTerms(rule);
+                rule.groundAll(termStore, database, groundRuleCallback);
+                continue;
+            }
+
+            groundDelta(rule, changedAtoms, termStore, database);
+        }
+
+        long termCount = termStore.size() - initialSize;
+        log.debug("Incremental grounding ({}) retracted {} terms and added {} terms.", delta, retractedCount, termCount);
+
+        return termCount;
+    }
+
+    /**
+     * Make sure the atom store has loaded every predicate used by the rules (see Options.ATOM_STORE_LAZY_LOADING).
+     * This is done before grounding so that atoms are not loaded (written into the store) while grounding in parallel.
+     */
+    private static void loadPredicates(List<Rule> rules, Database database) {
+        Set<Predicate> predicates = new HashSet<Predicate>();
+        Set<Atom> atoms = new HashSet<Atom>();
+
+        for (Rule rule : rules) {
+            atoms.clear();
+            rule.getCoreAtoms(atoms);
+            for (Atom atom : atoms) {
+                predicates.add(atom.getPredicate());
+            }
+
+            if (rule instanceof AbstractArithmeticRule) {
+                AbstractArithmeticRule arithmeticRule = (AbstractArithmeticRule)rule;
+                predicates.addAll(arithmeticRule.getBodyPredicates());
+
+                for (Formula filter : arithmeticRule.getFilters().values()) {
+                    atoms.clear();
+                    filter.getAtoms(atoms);
+                    for (Atom atom : atoms) {
+                        predicates.add(atom.getPredicate());
+                    }
+                }
+            }
+        }
+
+        database.getAtomStore().loadPredicates(predicates);
+    }
+
+    private static void groundDelta(Rule rule, List<GroundAtom> changedAtoms, TermStore termStore, Database database) {
+        Formula formula = rule.getRewritableGroundingFormula();
+
+        Set<Atom> ruleAtoms = new HashSet<Atom>();
+        rule.getCoreAtoms(ruleAtoms);
+
+        // A consistent ordering of the rule's variables used to identify full groundings.
+        VariableTypeMap variableTypes = formula.collectVariables(new VariableTypeMap());
+        Variable[] variables = variableTypes.getVariables().toArray(new Variable[0]);
+        Arrays.sort(variables);
+
+        // A grounding that contains multiple changed atoms should only be instantiated once.
+        Set<List<Constant>> seenGroundings = new HashSet<List<Constant>>();
+        List<GroundRule> groundRules = new ArrayList<GroundRule>();
+
+        for (GroundAtom changedAtom : changedAtoms) {
+            for (Atom ruleAtom : ruleAtoms) {
+                Map<Variable, Constant> substitution = unify(ruleAtom, changedAtom);
+                if (substitution == null) {
+                    continue;
+                }
+
+                Formula boundFormula = substitute(formula, substitution);
+
+                try (QueryResultIterable queryResults = database.executeGroundingQuery(boundFormula)) {
+                    Map<Variable, Integer> variableMap = new HashMap<Variable, Integer>(queryResults.getVariableMap());
+                    int queryWidth = variableMap.size();
+
+                    Constant[] boundConstants = new Constant[substitution.size()];
+                    for (Map.Entry<Variable, Constant> entry : substitution.entrySet()) {
+                        int index = variableMap.size();
+                        variableMap.put(entry.getKey(), index);
+                        boundConstants[index - queryWidth] = entry.getValue();
+                    }
+
+                    for (Constant[] row : queryResults) {
+                        Constant[] constants = Arrays.copyOf(row, queryWidth + boundConstants.length);
+                        System.arraycopy(boundConstants, 0, constants, queryWidth, boundConstants.length);
+
+                        Constant[] key = new Constant[variables.length];
+                        for (int i = 0; i < variables.length; i++) {
+                            key[i] = constants[variableMap.get(variables[i]).intValue()];
+                        }
+
+                        if (!seenGroundings.add(Arrays.asList(key))) {
+                            continue;
+                        }
+
+                        rule.ground(constants, variableMap, database, groundRules);
+                        for (GroundRule groundRule : groundRules) {
+                            if (groundRule == null) {
+                                continue;
+                            }
+
+                            termStore.add(groundRule);
+
+                            if (groundRuleCallback != null) {
+                                groundRuleCallback.call(groundRule);
+                            }
+                        }
+                        groundRules.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the variable substitution that makes the rule atom match the ground atom,
+     * or null if they cannot match.
+     */
+    private static Map<Variable, Constant> unify(Atom ruleAtom, GroundAtom groundAtom) {
+        if (!ruleAtom.getPredicate().equals(groundAtom.getPredicate())) {
+            return null;
+        }
+
+        Term[] ruleArgs = ruleAtom.getArguments();
+        Constant[] groundArgs = groundAtom.getArguments();
+
+        Map<Variable, Constant> substitution = new HashMap<Variable, Constant>();
+        for (int i = 0; i < ruleArgs.length; i++) {
+            if (ruleArgs[i] instanceof Variable) {
+                Constant previous = substitution.put((Variable)ruleArgs[i], groundArgs[i]);
+                if (previous != null && !previous.equals(groundArgs[i])) {
+                    return null;
+                }
+            } else if (!ruleArgs[i].equals(groundArgs[i])) {
+                return null;
+            }
+        }
+
+        return substitution;
+    }
+
+    /**
+     * Replace variables in a grounding formula (a conjunction of atoms or a single atom) with constants.
+     */
+    private static Formula substitute(Formula formula, Map<Variable, Constant> substitution) {
+        if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction)formula;
+
+            Formula[] components = new Formula[conjunction.length()];
+            for (int i = 0; i < components.length; i++) {
+                components[i] = substitute(conjunction.get(i), substitution);
+            }
+
+            return new Conjunction(components);
+        }
+
+        if (formula instanceof Atom) {
+            Atom atom = (Atom)formula;
+            Term[] args = atom.getArguments();
+
+            Term[] newArgs = new Term[args.length];
+            for (int i = 0; i < args.length; i++) {
+                newArgs[i] = args[i];
+                if ((args[i] instanceof Variable) && substitution.containsKey((Variable)args[i])) {
+                    newArgs[i] = substitution.get((Variable)args[i]);
+                }
+            }
+
+            return new QueryAtom(atom.getPredicate(), newArgs);
+        }
+
+        throw new IllegalArgumentException("Unsupported grounding formula: " + formula);
     }
 
     /**
@@ -73,7 +361,18 @@ public class Grounding {
     private static long groundIndependent(List<Rule> rules, TermStore termStore, Database database) {
         long termCount = 0;
         for (Rule rule : rules) {
-            termCount += rule.groundAll(termStore, database, groundRuleCallback);
+            long start = System.nanoTime();
+            long ruleTermCount = rule.groundAll(termStore, database, groundRuleCallback);
+
+            if (RuleProfiler.isEnabled()) {
+                RuleProfiler.addGroundingTime(rule, System.nanoTime() - start);
+            }
+
+            String label = getRuleLabel(rule);
+            Metrics.timer("grounding_rule_seconds", "rule", label).observeSince(start);
+            Metrics.counter("grounding_rule_terms_total", "rule", label).add(ruleTermCount);
+
+            termCount += ruleTermCount;
         }
 
         return termCount;
@@ -147,7 +446,12 @@ public class Grounding {
         Parallel.RunTimings timings = Parallel.foreach(collectiveRules, new Parallel.Worker<Rule>() {
             @Override
             public void work(long index, Rule rule) {
+                long start = System.nanoTime();
                 candidateGeneration.generateCandidates(rule, finalDatabase, candiatesPerRule, finalCandidates);
+
+                if (RuleProfiler.isEnabled()) {
+                    RuleProfiler.addPlanningTime(rule, System.nanoTime() - start);
+                }
             }
         });
 
@@ -169,8 +473,17 @@ public class Grounding {
         Parallel.RunTimings timings = null;
         long termCount = -1;
 
+        // Collective queries are attributed to the rule they were generated from.
+        String label = getRuleLabel(candidate.getBaseRule());
+        Metrics.Counter rowCounter = Metrics.counter("grounding_query_rows_total", "rule", label);
+        long start = System.nanoTime();
+        Object event = FlightRecorder.beginGroundingQuery();
+        String query = null;
+
         // Run the query.
         try (QueryResultIterable queryResults = database.executeGroundingQuery(candidate.getFormula())) {
+            query = queryResults.getQueryString();
+
             // Build a per-rule variable mapping.
             Map<Rule, Map<Variable, Integer>> variableMaps = new HashMap<Rule, Map<Variable, Integer>>();
             Map<Variable, Integer> baseVariableMap = queryResults.getVariableMap();
@@ -191,10 +504,20 @@ public class Grounding {
             }
 
             long initialCount = termStore.size();
-            timings = Parallel.foreachBatch(queryResults, batchSize, new GroundWorker(termStore, database, variableMaps, rules));
+            timings = Parallel.foreachBatch(queryResults, batchSize, new GroundWorker(termStore, database, variableMaps, rules, rowCounter));
             termCount = termStore.size() - initialCount;
         }
 
+        FlightRecorder.endGroundingQuery(event, label, query, timings.iterations, termCount);
+
+        if (RuleProfiler.isEnabled()) {
+            RuleProfiler.addGroundingTime(candidate.getBaseRule(), System.nanoTime() - start);
+            RuleProfiler.addRows(candidate.getBaseRule(), timings.iterations);
+        }
+
+        Metrics.timer("grounding_query_seconds", "rule", label).observeSince(start);
+        Metrics.counter("grounding_query_terms_total", "rule", label).add(termCount);
+
         log.debug("Generated {} terms from {} query results.", termCount, timings.iterations);
         log.trace("   " + timings);
 
@@ -207,23 +530,27 @@ public class Grounding {
         private Map<Rule, Map<Variable, Integer>> variableMaps;
         private Set<Rule> rules;
         private List<GroundRule> groundRules;
+        private Metrics.Counter rowCounter;
 
-        public GroundWorker(TermStore termStore, Database database, Map<Rule, Map<Variable, Integer>> variableMaps, Set<Rule> rules) {
+        public GroundWorker(TermStore termStore, Database database, Map<Rule, Map<Variable, Integer>> variableMaps,
+                Set<Rule> rules, Metrics.Counter rowCounter) {
             this.termStore = termStore;
             this.database = database;
             this.variableMaps = variableMaps;
             this.rules = rules;
             this.groundRules = new ArrayList<GroundRule>();
+            this.rowCounter = rowCounter;
         }
 
         @Override
         public Object clone() {
-            return new GroundWorker(termStore, database, variableMaps, rules);
+            return new GroundWorker(termStore, database, variableMaps, rules, rowCounter);
         }
 
         @Override
         public void work(long size, List<Constant[]> batch) {
             GroundRule groundRule = null;
+            rowCounter.add(size);
 
             for (Rule rule : rules) {
                 for (int rowIndex = 0; rowIndex < size; rowIndex++) {
@@ -237,6 +564,8 @@ public class Grounding {
                             if (groundRuleCallback != null) {
                                 groundRuleCallback.call(groundRule);
                             }
+                        } else if (RuleProfiler.isEnabled()) {
+                            RuleProfiler.addPrunedGroundRule(rule);
                         }
                     }
 
@@ -0,0 +1,324 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.grounding;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.database.PersistedAtomStore;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
+import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.reasoner.term.Hyperplane;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
+import org.linqs.psl.reasoner.term.TermGenerator;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.Hash;
+import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Version;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Save and load a ground program (the terms of a SimpleTermStore) to/from a binary snapshot file.
+ *
+ * A snapshot is only valid for the same rules, grounding-related options, term store type, and data.
+ * This is checked with a fingerprint (see fingerprint()) that is stored in the snapshot's header.
+ *
+ * Terms reference atoms by their predicate and arguments (not by AtomStore index),
+ * so a snapshot can be loaded into a fresh AtomStore that was filled from the same data.
+ * Connected components are rebuilt as the terms are added back into the term store.
+ * Note that no ground rules are instantiated on a load,
+ * so ground rule callbacks and term support tracking (incremental grounding) are not available.
+ */
+public class GroundingSnapshot {
+    private static final Logger log = Logger.getLogger(GroundingSnapshot.class);
+
+    public static final int MAGIC = 0x50534C47;
+    public static final int VERSION = 1;
+
+    private static final byte FLAG_SQUARED = 1 << 0;
+    private static final byte FLAG_HINGE = 1 << 1;
+    private static final byte FLAG_ACTIVE = 1 << 2;
+
+    // Static only.
+    private GroundingSnapshot() {}
+
+    /**
+     * Compute a fingerprint for the ground program that the given rules, term store, and database would create.
+     * This should be called before grounding, since grounding may add (unmanaged) atoms to the atom store.
+     */
+    public static String fingerprint(List<Rule> rules, SimpleTermStore<?> termStore, Database database) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("version: ").append(Version.get()).append("\n");
+        builder.append("snapshot: ").append(VERSION).append("\n");
+        builder.append("termstore: ").append(termStore.getClass().getName()).append("\n");
+        builder.append("mergeConstants: ").append(termStore.getTermGenerator().getMergeConstants()).append("\n");
+        builder.append("storeAllAtoms: ").append(Options.ATOM_STORE_STORE_ALL_ATOMS.getBoolean()).append("\n");
+
+        for (int i = 0; i < rules.size(); i++) {
+            builder.append("rule[").append(i).append("]: ").append(rules.get(i)).append("\n");
+        }
+
+        // Checksum each predicate's data (order independent).
+        Map<Predicate, long[]> checksums = new HashMap<Predicate, long[]>();
+        for (GroundAtom atom : database.getAtomStore()) {
+            if (!atom.isManaged() || !(atom.getPredicate() instanceof StandardPredicate)) {
+                continue;
+            }
+
+            long[] checksum = checksums.get(atom.getPredicate());
+            if (checksum == null) {
+                checksum = new long[2];
+                checksums.put(atom.getPredicate(), checksum);
+            }
+
+            // The values of random variables are not part of the ground program.
+            long atomHash = atom.toString().hashCode();
+            if (atom instanceof ObservedAtom) {
+                atomHash = 31 * atomHash + Float.floatToIntBits(atom.getValue());
+            }
+            atomHash = 31 * atomHash + atom.getPartition();
+            atomHash = 31 * atomHash + atom.getClass().getName().hashCode();
+
+            checksum[0]++;
+            checksum[1] += atomHash * 0x9E3779B97F4A7C15L;
+        }
+
+        List<StandardPredicate> predicates = new ArrayList<StandardPredicate>(database.getDataStore().getRegisteredPredicates());
+        Collections.sort(predicates, new Comparator<StandardPredicate>() {
+            @Override
+            public int compare(StandardPredicate a, StandardPredicate b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        for (StandardPredicate predicate : predicates) {
+            long[] checksum = checksums.get(predicate);
+            if (checksum == null) {
+                checksum = new long[2];
+            }
+
+            builder.append(String.format("predicate: %s, closed: %s, count: %d, checksum: %d%n",
+                    predicate.getName(), database.isClosed(predicate), checksum[0], checksum[1]));
+        }
+
+        return Hash.sha256(builder.toString());
+    }
+
+    /**
+     * Write all the terms in the term store to a snapshot.
+     * The snapshot is first written to a temp file and then moved into place.
+     */
+    public static void save(String path, String fingerprint, List<Rule> rules, SimpleTermStore<?> termStore) {
+        Map<Rule, Integer> ruleIndexes = new HashMap<Rule, Integer>();
+        for (int i = 0; i < rules.size(); i++) {
+            ruleIndexes.put(rules.get(i), i);
+        }
+
+        // Only the atoms that are referenced by terms are written.
+        int[] snapshotAtomIds = new int[termStore.getNumVariables()];
+        Arrays.fill(snapshotAtomIds, -1);
+        List<GroundAtom> snapshotAtoms = new ArrayList<GroundAtom>();
+
+        for (ReasonerTerm term : termStore) {
+            int[] atomIndexes = term.getAtomIndexes();
+            for (int i = 0; i < term.size(); i++) {
+                if (snapshotAtomIds[atomIndexes[i]] == -1) {
+                    snapshotAtomIds[atomIndexes[i]] = snapshotAtoms.size();
+                    snapshotAtoms.add(termStore.getAtomStore().getAtom(atomIndexes[i]));
+                }
+            }
+        }
+
+        File outFile = new File(path);
+        File tempFile = new File(path + ".tmp");
+
+        if (outFile.getAbsoluteFile().getParentFile() != null) {
+            FileUtils.mkdir(outFile.getAbsoluteFile().getParentFile());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+
+            out.writeInt(snapshotAtoms.size());
+            for (GroundAtom atom : snapshotAtoms) {
+                out.writeUTF(atom.getPredicate().getName());
+
+                Constant[] args = atom.getArguments();
+                out.writeByte(args.length);
+                for (Constant arg : args) {
+                    out.writeByte(ConstantType.getType(arg).ordinal());
+                    out.writeUTF(arg.rawToString());
+                }
+            }
+
+            out.writeLong(termStore.size());
+            for (ReasonerTerm term : termStore) {
+                Integer ruleIndex = ruleIndexes.get(term.getRule());
+                if (ruleIndex == null) {
+                    throw new IllegalStateException("Cannot snapshot a term from an unknown rule: " + term.getRule());
+                }
+
+                byte flags = 0;
+                flags |= (term.isSquared() ? FLAG_SQUARED : 0);
+                flags |= (term.isHinge() ? FLAG_HINGE : 0);
+                flags |= (term.isActive() ? FLAG_ACTIVE : 0);
+
+                out.writeInt(ruleIndex.intValue());
+                out.writeByte(flags);
+                out.writeByte((term.getComparator() == null) ? -1 : term.getComparator().ordinal());
+                out.writeFloat(term.getConstant());
+
+                int[] atomIndexes = term.getAtomIndexes();
+                float[] coefficients = term.getCoefficients();
+
+                out.writeShort(term.size());
+                for (int i = 0; i < term.size(); i++) {
+                    out.writeInt(snapshotAtomIds[atomIndexes[i]]);
+                    out.writeFloat(coefficients[i]);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write grounding snapshot: " + path, ex);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to move grounding snapshot into place: " + path, ex);
+        }
+
+        log.debug("Wrote {} terms over {} atoms to grounding snapshot: {}.", termStore.size(), snapshotAtoms.size(), path);
+    }
+
+    /**
+     * Load the terms from a snapshot into an empty term store.
+     * Returns false (and leaves the term store empty) if the snapshot does not exist or is not valid
+     * for the given fingerprint, in which case the caller should ground normally.
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean load(String path, String fingerprint, List<Rule> rules, SimpleTermStore<?> termStore, Database database) {
+        if (!FileUtils.isFile(path)) {
+            return false;
+        }
+
+        PersistedAtomStore atomStore = database.getAtomStore();
+        TermGenerator<ReasonerTerm> termGenerator = (TermGenerator<ReasonerTerm>)termStore.getTermGenerator();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("Ignoring grounding snapshot with an unknown format: {}.", path);
+                return false;
+            }
+
+            if (!fingerprint.equals(in.readUTF())) {
+                log.info("Ignoring out-of-date grounding snapshot: {}.", path);
+                return false;
+            }
+
+            ConstantType[] constantTypes = ConstantType.values();
+
+            GroundAtom[] atoms = new GroundAtom[in.readInt()];
+            for (int i = 0; i < atoms.length; i++) {
+                String predicateName = in.readUTF();
+                Predicate predicate = Predicate.get(predicateName);
+                if (predicate == null) {
+                    throw new IllegalStateException("Unknown predicate: " + predicateName);
+                }
+
+                Constant[] args = new Constant[in.readByte()];
+                for (int j = 0; j < args.length; j++) {
+                    ConstantType type = constantTypes[in.readByte()];
+                    args[j] = ConstantType.getConstant(in.readUTF(), type);
+                }
+
+                // Make sure that atoms (even unmanaged ones) are in the store, so they have an index.
+                atoms[i] = atomStore.getAtom(predicate, args);
+                if (atomStore.getAtomIndex(atoms[i]) == -1) {
+                    atomStore.addAtom(atoms[i]);
+                }
+            }
+
+            FunctionComparator[] comparators = FunctionComparator.values();
+            List<ReasonerTerm> newTerms = new ArrayList<ReasonerTerm>(1);
+
+            long numTerms = in.readLong();
+            termStore.ensureCapacity(numTerms);
+
+            for (long termIndex = 0; termIndex < numTerms; termIndex++) {
+                Rule rule = rules.get(in.readInt());
+                byte flags = in.readByte();
+                byte comparatorIndex = in.readByte();
+                float constant = in.readFloat();
+
+                int size = in.readShort();
+                GroundAtom[] variables = new GroundAtom[size];
+                float[] coefficients = new float[size];
+                for (int i = 0; i < size; i++) {
+                    variables[i] = atoms[in.readInt()];
+                    coefficients[i] = in.readFloat();
+                }
+
+                Hyperplane hyperplane = new Hyperplane(variables, coefficients, constant, size);
+                if (comparatorIndex < 0) {
+                    termGenerator.createLossTerm(newTerms, (flags & FLAG_HINGE) != 0, (flags & FLAG_SQUARED) != 0, rule, hyperplane);
+                } else {
+                    termGenerator.createLinearConstraintTerm(newTerms, rule, hyperplane, comparators[comparatorIndex]);
+                }
+
+                for (ReasonerTerm term : newTerms) {
+                    term.setActive((flags & FLAG_ACTIVE) != 0);
+                    termStore.add(term);
+                }
+                newTerms.clear();
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Failed to load grounding snapshot ({}), grounding will be performed instead.", path, ex);
+            termStore.clear();
+            return false;
+        }
+
+        log.debug("Loaded {} terms from grounding snapshot: {}.", termStore.size(), path);
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.model.deep;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary framing used to talk to the Python deep model server (pslpython.deeppsl.server).
+ * All values are big-endian.
+ *
+ * Request: magic (int), opcode (byte), sequence (int), buffer offset (int, -1 for none), payload length (int), payload.
+ * Response: magic (int), status (byte), opcode (byte), sequence (int), payload length (int), payload.
+ *
+ * Request payloads are only sent with init (the JSON init message), the server remembers the options after that.
+ * Response payloads are the JSON encoding of the result on success, and the error message on failure.
+ */
+public final class BinaryProtocol {
+    /**
+     * "PSLB", which cannot start a JSON message.
+     */
+    public static final int MAGIC = 0x50534C42;
+
+    public static final byte STATUS_SUCCESS = 0;
+    public static final byte STATUS_FAILURE = 1;
+
+    /**
+     * Tasks, indexed by opcode.
+     */
+    private static final String[] TASKS = {
+        null,
+        "init",
+        "train_mode",
+        "eval_mode",
+        "fit",
+        "next_batch",
+        "epoch_start",
+        "epoch_end",
+        "is_epoch_complete",
+        "predict",
+        "eval",
+        "save",
+        "close",
+    };
+
+    // Static only.
+    private BinaryProtocol() {}
+
+    public static byte getOpcode(String task) {
+        for (int i = 1; i < TASKS.length; i++) {
+            if (TASKS[i].equals(task)) {
+                return (byte)i;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown deep model task: " + task);
+    }
+
+    public static String getTask(byte opcode) {
+        if (opcode <= 0 || opcode >= TASKS.length) {
+            throw new IllegalArgumentException("Unknown deep model opcode: " + opcode);
+        }
+
+        return TASKS[opcode];
+    }
+
+    /**
+     * Write (and flush) a request.
+     * The payload may be null.
+     */
+    public static void writeRequest(DataOutputStream output, String task, int sequence, int bufferOffset, String payload) throws IOException {
+        byte[] payloadBytes = new byte[0];
+        if (payload != null) {
+            payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        }
+
+        output.writeInt(MAGIC);
+        output.writeByte(getOpcode(task));
+        output.writeInt(sequence);
+        output.writeInt(bufferOffset);
+        output.writeInt(payloadBytes.length);
+        output.write(payloadBytes);
+        output.flush();
+    }
+
+    /**
+     * Write (and flush) a response.
+     * This is the server's side of the protocol, and is here for completeness and testing.
+     */
+    public static void writeResponse(DataOutputStream output, byte status, String task, int sequence, String payload) throws IOException {
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        output.writeInt(MAGIC);
+        output.writeByte(status);
+        output.writeByte(getOpcode(task));
+        output.writeInt(sequence);
+        output.writeInt(payloadBytes.length);
+        output.write(payloadBytes);
+        output.flush();
+    }
+
+    /**
+     * Read a response to the request with the given sequence number.
+     * The response is returned in the same shape as a JSON protocol response (status, task, and result or message).
+     */
+    public static JSONObject readResponse(DataInputStream input, int expectedSequence) throws IOException {
+        int magic = input.readInt();
+        if (magic != MAGIC) {
+            throw new IllegalStateException(String.format(
+                    "Bad magic number in deep model server response: %08x.", magic));
+        }
+
+        byte status = input.readByte();
+        String task = getTask(input.readByte());
+
+        int sequence = input.readInt();
+        if (sequence != expectedSequence) {
+            throw new IllegalStateException(String.format(
+                    "Deep model server responded out of order (expected sequence %d, got %d).",
+                    expectedSequence, sequence));
+        }
+
+        byte[] payloadBytes = new byte[input.readInt()];
+        input.readFully(payloadBytes);
+        String payload = new String(payloadBytes, StandardCharsets.UTF_8);
+
+        JSONObject response = new JSONObject();
+        response.put("task", task);
+
+        if (status == STATUS_SUCCESS) {
+            response.put("status", "success");
+            if (payload.isEmpty()) {
+                response.put("result", JSONObject.NULL);
+            } else {
+                response.put("result", new JSONTokener(payload).nextValue());
+            }
+        } else {
+            response.put("status", "failed");
+            response.put("message", payload);
+        }
+
+        return response;
+    }
+}
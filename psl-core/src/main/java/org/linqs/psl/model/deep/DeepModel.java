@@ -27,14 +27,28 @@ import java.io.*;
 import java.net.Socket;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * Abstract class for deep models.
  * Contains socket communication with python server, and shared memory.
  * Extending classes only need to implement read/write methods for shared memory.
+ *
+ * Requests may be pipelined: a request can be sent (start*()) and its response collected later (finish*()),
+ * so the Python server can work while PSL does something else.
+ * Responses must be collected in the order the requests were sent.
+ * Each model has its own shared memory file, which is split into regions that consecutive data requests alternate between.
+ * So a new request can be written while the results of an outstanding one are still unread.
+ *
+ * Requests are sent as either compact binary frames (see BinaryProtocol) or JSON lines.
+ * Every region of the shared memory starts with the sequence number of the request that last wrote it,
+ * which the reader checks instead of flushing the mapping to disk.
  */
 public abstract class DeepModel {
     private static final Logger log = Logger.getLogger(DeepModel.class);
@@ -43,6 +57,9 @@ public abstract class DeepModel {
     protected static final String CONFIG_RELATIVE_DIR = "relative-dir";
 
     private static final long SERVER_SLEEP_TIME_MS = (long)(0.5 * 1000);
+    private static final int NUM_BUFFER_REGIONS = 2;
+    private static final int SEQUENCE_BYTES = Integer.BYTES;
+    private static final AtomicInteger nextSequence = new AtomicInteger(0);
     private static final int startingPort = Options.PREDICATE_DEEP_PYTHON_PORT.getInt();
     private static final Map<Integer, DeepModel> usedPorts = new HashMap<Integer, DeepModel>();
 
@@ -55,10 +72,16 @@ public abstract class DeepModel {
     protected static final String sharedMemoryPath = Options.PREDICATE_DEEP_SHARED_MEMORY_PATH.getString();
     protected Process pythonServerProcess;
     protected RandomAccessFile sharedFile;
+    protected String sharedFilePath;
     protected MappedByteBuffer sharedBuffer;
+    protected int bufferRegionLength;
+    protected Deque<PendingRequest> pendingRequests;
+    protected Protocol protocol;
     protected Socket socket;
     protected BufferedReader socketInput;
     protected PrintWriter socketOutput;
+    protected DataInputStream binaryInput;
+    protected DataOutputStream binaryOutput;
     protected boolean serverOpen;
 
     protected DeepModel(String deepModel) {
@@ -70,10 +93,16 @@ public abstract class DeepModel {
         port = getOpenPort(this);
         pythonServerProcess = null;
         sharedFile = null;
+        sharedFilePath = null;
         sharedBuffer = null;
+        bufferRegionLength = 0;
+        pendingRequests = new ArrayDeque<PendingRequest>();
+        protocol = Protocol.valueOf(Options.PREDICATE_DEEP_PROTOCOL.getString().toUpperCase());
         socket = null;
         socketInput = null;
         socketOutput = null;
+        binaryInput = null;
+        binaryOutput = null;
         serverOpen = false;
     }
 
@@ -124,7 +153,7 @@ public abstract class DeepModel {
         JSONObject message = new JSONObject();
         message.put("task", "init");
         message.put("deep_model", deepModel);
-        message.put("shared_memory_path", sharedMemoryPath);
+        message.put("shared_memory_path", sharedFilePath);
         message.put("application", application);
         message.put("options", pythonOptions);
 
@@ -168,16 +197,15 @@ public abstract class DeepModel {
     public void fitDeepModel() {
         log.debug("Fit deep model {}.", this);
 
-        sharedBuffer.clear();
+        int bufferOffset = claimBufferRegion();
         writeFitData();
-        sharedBuffer.force();
 
         JSONObject message = new JSONObject();
         message.put("task", "fit");
         message.put("deep_model", deepModel);
         message.put("options", pythonOptions);
 
-        JSONObject response = sendSocketMessage(message);
+        JSONObject response = sendSocketMessage(message, bufferOffset);
 
         String resultString = getResultString(response);
         log.debug("Fit deep model results for {} : {}", this, resultString);
@@ -242,46 +270,90 @@ public abstract class DeepModel {
      * Return the average movement of the atoms. The movement is the sum of the squared differences.
      */
     public float predictDeepModel() {
+        startPredictDeepModel();
+        return finishPredictDeepModel();
+    }
+
+    /**
+     * Send a predict request without waiting for the response.
+     * The predictions are not applied until finishPredictDeepModel() is called.
+     */
+    public void startPredictDeepModel() {
         log.debug("Predict deep model {}.", this);
 
-        sharedBuffer.clear();
+        int bufferOffset = claimBufferRegion();
         writePredictData();
-        sharedBuffer.force();
 
         JSONObject message = new JSONObject();
         message.put("task", "predict");
         message.put("deep_model", deepModel);
         message.put("options", pythonOptions);
 
-        JSONObject response = sendSocketMessage(message);
+        sendRequest(message, bufferOffset);
+    }
+
+    /**
+     * Wait for an outstanding predict request (see startPredictDeepModel()) and apply the predictions.
+     * Return the average movement of the atoms.
+     */
+    public float finishPredictDeepModel() {
+        PendingRequest request = receiveResponse("predict");
+        if (request == null) {
+            return 0.0f;
+        }
+
+        int writtenSequence = sharedBuffer.getInt(request.bufferOffset);
+        if (writtenSequence != request.sequence) {
+            throw new RuntimeException(String.format(
+                    "Deep model %s found stale predictions in shared memory (expected sequence %d, found %d).",
+                    this, request.sequence, writtenSequence));
+        }
 
         sharedBuffer.clear();
+        sharedBuffer.position(request.bufferOffset + SEQUENCE_BYTES);
         float movement = readPredictData();
 
-        String resultString = getResultString(response);
+        String resultString = getResultString(request.response);
         log.debug("Predict deep model result for {} : {}", this, resultString);
 
         return movement;
     }
 
     public float evalDeepModel() {
+        startEvalDeepModel();
+        return finishEvalDeepModel();
+    }
+
+    /**
+     * Send an eval request without waiting for the response.
+     */
+    public void startEvalDeepModel() {
         log.debug("Eval deep model {}.", this);
 
-        sharedBuffer.clear();
+        int bufferOffset = claimBufferRegion();
         writeEvalData();
-        sharedBuffer.force();
 
         JSONObject message = new JSONObject();
         message.put("task", "eval");
         message.put("deep_model", deepModel);
         message.put("options", pythonOptions);
 
-        JSONObject response = sendSocketMessage(message);
+        sendRequest(message, bufferOffset);
+    }
 
-        String resultString = getResultString(response);
+    /**
+     * Wait for an outstanding eval request (see startEvalDeepModel()) and return its result.
+     */
+    public float finishEvalDeepModel() {
+        PendingRequest request = receiveResponse("eval");
+        if (request == null) {
+            return 0.0f;
+        }
+
+        String resultString = getResultString(request.response);
         log.debug("Eval deep model result for {} : {}", this, resultString);
-        
-        return response.getFloat("result");
+
+        return request.response.getFloat("result");
     }
 
     public void saveDeepModel() {
@@ -304,7 +376,9 @@ public abstract class DeepModel {
             pythonOptions.clear();
         }
 
-        if ((socketOutput != null) && (!socket.isClosed())) {
+        if (!pendingRequests.isEmpty()) {
+            log.warn("Closing deep model {} with {} outstanding request(s).", this, pendingRequests.size());
+        } else if ((socket != null) && (!socket.isClosed())) {
             JSONObject message = new JSONObject();
             message.put("task", "close");
             JSONObject response = sendSocketMessage(message);
@@ -335,14 +409,18 @@ public abstract class DeepModel {
             }
         });
 
+        // Each model gets its own file, so multiple models can be used at the same time.
+        sharedFilePath = sharedMemoryPath + "." + port;
+        bufferRegionLength = SEQUENCE_BYTES + bufferLength;
+
         try {
-            sharedFile = new RandomAccessFile(sharedMemoryPath, "rw");
+            sharedFile = new RandomAccessFile(sharedFilePath, "rw");
         } catch (FileNotFoundException ex) {
-            throw new RuntimeException("Could not open random access file: " + sharedMemoryPath, ex);
+            throw new RuntimeException("Could not open random access file: " + sharedFilePath, ex);
         }
 
         try {
-            sharedBuffer = sharedFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bufferLength);
+            sharedBuffer = sharedFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long)NUM_BUFFER_REGIONS * bufferRegionLength);
             sharedBuffer.clear();
 
             ProcessBuilder builder = new ProcessBuilder("python3", "-m", pythonModule, "" + port);
@@ -353,31 +431,50 @@ public abstract class DeepModel {
             serverOpen = true;
 
             socket = new Socket("127.0.0.1", port);
-            socketInput = new BufferedReader(new InputStreamReader(socket.getInputStream(), FileUtils.DEFAULT_CHARSET));
-            socketOutput = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), FileUtils.DEFAULT_CHARSET), true);
+            socket.setTcpNoDelay(true);
+
+            if (protocol == Protocol.BINARY) {
+                binaryInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                binaryOutput = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            } else {
+                socketInput = new BufferedReader(new InputStreamReader(socket.getInputStream(), FileUtils.DEFAULT_CHARSET));
+                socketOutput = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), FileUtils.DEFAULT_CHARSET), true);
+            }
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
     }
 
     private void closeServer() {
-        if (socketOutput != null) {
+        if ((socketOutput != null) || (binaryOutput != null)) {
             serverOpen = false;
             sleepForServer();
             freePort(port);
+        }
 
+        if (socketOutput != null) {
             socketOutput.close();
         }
         socketOutput = null;
 
-        if (socketInput != null) {
-            try {
+        try {
+            if (binaryOutput != null) {
+                binaryOutput.close();
+            }
+
+            if (socketInput != null) {
                 socketInput.close();
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
             }
+
+            if (binaryInput != null) {
+                binaryInput.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
         }
+        binaryOutput = null;
         socketInput = null;
+        binaryInput = null;
 
         if (socket != null) {
             if (!socket.isClosed()) {
@@ -391,13 +488,14 @@ public abstract class DeepModel {
         socket = null;
 
         sharedBuffer = null;
+        pendingRequests.clear();
 
         if (sharedFile != null) {
             try {
                 sharedFile.close();
-                FileUtils.delete(sharedMemoryPath);
+                FileUtils.delete(sharedFilePath);
             } catch (IOException ex) {
-                throw new RuntimeException("Failed to clean up shared file: " + sharedMemoryPath, ex);
+                throw new RuntimeException("Failed to clean up shared file: " + sharedFilePath, ex);
             }
         }
         sharedFile = null;
@@ -421,26 +519,168 @@ public abstract class DeepModel {
         }
     }
 
+    /**
+     * Position the shared buffer at the start of a region that is not used by an outstanding request,
+     * and return the offset of that region.
+     * Consecutive data requests alternate regions.
+     */
+    private int claimBufferRegion() {
+        int bufferOffset = 0;
+
+        Iterator<PendingRequest> newestFirst = pendingRequests.descendingIterator();
+        while (newestFirst.hasNext()) {
+            PendingRequest request = newestFirst.next();
+            if (request.bufferOffset >= 0) {
+                bufferOffset = (request.bufferOffset + bufferRegionLength) % (NUM_BUFFER_REGIONS * bufferRegionLength);
+                break;
+            }
+        }
+
+        for (PendingRequest request : pendingRequests) {
+            if (request.bufferOffset == bufferOffset) {
+                throw new IllegalStateException(String.format(
+                        "Deep model %s has too many outstanding requests using shared memory (max %d).",
+                        this, NUM_BUFFER_REGIONS));
+            }
+        }
+
+        sharedBuffer.clear();
+        sharedBuffer.position(bufferOffset + SEQUENCE_BYTES);
+
+        return bufferOffset;
+    }
+
     private JSONObject sendSocketMessage(JSONObject message) {
+        return sendSocketMessage(message, -1);
+    }
+
+    /**
+     * Send a message and wait for its response.
+     * There cannot be any outstanding requests, since their responses would come first.
+     */
+    private JSONObject sendSocketMessage(JSONObject message, int bufferOffset) {
+        if (!pendingRequests.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                    "Deep model %s cannot send a '%s' request while %d request(s) are outstanding.",
+                    this, message.optString("task"), pendingRequests.size()));
+        }
+
+        sendRequest(message, bufferOffset);
+
+        PendingRequest request = receiveResponse(message.optString("task"));
+        if (request == null) {
+            return null;
+        }
+
+        return request.response;
+    }
+
+    /**
+     * Send a message without waiting for its response.
+     * A non-negative buffer offset marks the request as using that region of the shared buffer
+     * (which must already hold the request's data).
+     */
+    private void sendRequest(JSONObject message, int bufferOffset) {
         if (!serverOpen) {
             // This should only happen when trying to close the server.
-            return null;
+            return;
         }
 
-        String rawResponse = null;
+        String task = message.optString("task");
+        int sequence = nextSequence.incrementAndGet();
 
-        log.trace(String.format("Sending server message: '%s'.", message.toString()));
+        if (bufferOffset >= 0) {
+            // The data is in place, mark it as belonging to this request.
+            sharedBuffer.putInt(bufferOffset, sequence);
+
+            if (protocol == Protocol.JSON) {
+                sharedBuffer.force();
+            }
+        }
+
+        if (protocol == Protocol.BINARY) {
+            // Only init carries a payload, the server remembers the options.
+            String payload = null;
+            if (task.equals("init")) {
+                payload = message.toString();
+            }
+
+            log.trace("Sending server request: '{}' (sequence {}).", task, sequence);
+
+            try {
+                BinaryProtocol.writeRequest(binaryOutput, task, sequence, bufferOffset, payload);
+            } catch (IOException ex) {
+                throw new RuntimeException(String.format("Failed to send message to deep model server for %s.", this), ex);
+            }
+        } else {
+            message.put("sequence", sequence);
+            if (bufferOffset >= 0) {
+                message.put("buffer_offset", bufferOffset);
+            }
+
+            log.trace(String.format("Sending server message: '%s'.", message.toString()));
 
-        try {
             socketOutput.println(message.toString());
-            rawResponse = socketInput.readLine();
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
+            if (socketOutput.checkError()) {
+                throw new RuntimeException(String.format("Failed to send message to deep model server for %s.", this));
+            }
         }
 
-        log.trace(String.format("Received server message: '%s'.", rawResponse));
+        pendingRequests.addLast(new PendingRequest(task, sequence, bufferOffset));
+    }
 
-        JSONObject response = new JSONObject(rawResponse);
+    /**
+     * Wait for the response to the oldest outstanding request, which must be for the given task.
+     */
+    private PendingRequest receiveResponse(String task) {
+        if (!serverOpen) {
+            // This should only happen when trying to close the server.
+            return null;
+        }
+
+        PendingRequest request = pendingRequests.pollFirst();
+        if (request == null) {
+            throw new IllegalStateException(String.format(
+                    "Deep model %s has no outstanding '%s' request.", this, task));
+        }
+
+        if (!request.task.equals(task)) {
+            throw new IllegalStateException(String.format(
+                    "Deep model %s expected a response to a '%s' request, but the oldest outstanding request is '%s'.",
+                    this, task, request.task));
+        }
+
+        JSONObject response = null;
+
+        if (protocol == Protocol.BINARY) {
+            try {
+                response = BinaryProtocol.readResponse(binaryInput, request.sequence);
+            } catch (EOFException ex) {
+                serverOpen = false;
+                throw new RuntimeException(String.format("Deep model server for %s closed the connection.", this), ex);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            log.trace("Received server response for: '{}' (sequence {}).", task, request.sequence);
+        } else {
+            String rawResponse = null;
+
+            try {
+                rawResponse = socketInput.readLine();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            log.trace(String.format("Received server message: '%s'.", rawResponse));
+
+            if (rawResponse == null) {
+                serverOpen = false;
+                throw new RuntimeException(String.format("Deep model server for %s closed the connection.", this));
+            }
+
+            response = new JSONObject(rawResponse);
+        }
 
         String status = response.optString("status", "<UNKNOWN>");
         if (!status.equals("success")) {
@@ -451,7 +691,8 @@ public abstract class DeepModel {
             throw new RuntimeException(String.format("Server sent a failure status (%s): '%s'.", status, failureMessage));
         }
 
-        return response;
+        request.response = response;
+        return request;
     }
 
     private static synchronized int getOpenPort(DeepModel model) {
@@ -468,4 +709,29 @@ public abstract class DeepModel {
     protected static synchronized void freePort(int port) {
         usedPorts.remove(Integer.valueOf(port));
     }
-}
\ No newline at end of file
+
+    /**
+     * A request that has been sent to the server, but whose response has not been read.
+     */
+    protected static class PendingRequest {
+        public final String task;
+        public final int sequence;
+        public final int bufferOffset;
+        public JSONObject response;
+
+        public PendingRequest(String task, int sequence, int bufferOffset) {
+            this.task = task;
+            this.sequence = sequence;
+            this.bufferOffset = bufferOffset;
+            this.response = null;
+        }
+    }
+
+    /**
+     * How requests are framed on the socket.
+     */
+    public static enum Protocol {
+        BINARY,
+        JSON
+    }
+}
@@ -93,10 +93,17 @@ public class DeepModelPredicate extends DeepModel {
 
         copy.pythonServerProcess = pythonServerProcess;
         copy.sharedFile = sharedFile;
+        copy.sharedFilePath = sharedFilePath;
         copy.sharedBuffer = sharedBuffer;
+        copy.bufferRegionLength = bufferRegionLength;
+        // Copies share a connection, so they must also share its outstanding requests.
+        copy.pendingRequests = pendingRequests;
         copy.socket = socket;
         copy.socketInput = socketInput;
         copy.socketOutput = socketOutput;
+        copy.binaryInput = binaryInput;
+        copy.binaryOutput = binaryOutput;
+        copy.protocol = protocol;
         copy.serverOpen = serverOpen;
 
         copy.atomStore = atomStore;
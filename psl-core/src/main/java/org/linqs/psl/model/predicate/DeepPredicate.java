@@ -17,16 +17,20 @@
  */
 package org.linqs.psl.model.predicate;
 
+import org.linqs.psl.config.Options;
 import org.linqs.psl.database.AtomStore;
 import org.linqs.psl.model.deep.DeepModelPredicate;
 import org.linqs.psl.model.term.ConstantType;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Parallel;
 
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A predicate that is backed by some deep model.
@@ -109,10 +113,26 @@ public class DeepPredicate extends StandardPredicate {
         return deepModel.predictDeepModel();
     }
 
+    public void startPredictDeepModel() {
+        deepModel.startPredictDeepModel();
+    }
+
+    public float finishPredictDeepModel() {
+        return deepModel.finishPredictDeepModel();
+    }
+
     public float evalDeepModel() {
         return deepModel.evalDeepModel();
     }
 
+    public void startEvalDeepModel() {
+        deepModel.startEvalDeepModel();
+    }
+
+    public float finishEvalDeepModel() {
+        return deepModel.finishEvalDeepModel();
+    }
+
     public void saveDeepModel() {
         deepModel.saveDeepModel();
     }
@@ -169,81 +189,80 @@ public class DeepPredicate extends StandardPredicate {
      * Put all DeepPredicates in training mode.
      */
     public static void trainModeAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).trainMode();
-            }
-        }
+        runAllDeepPredicates(Task.TRAIN_MODE);
     }
 
     /**
      * Put all DeepPredicates in eval mode.
      */
     public static void evalModeAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).evalMode();
-            }
-        }
+        runAllDeepPredicates(Task.EVAL_MODE);
     }
 
     /**
      * Let all DeepPredicates know that an epoch is starting.
      */
     public static void epochStartAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).epochStart();
-            }
-        }
+        runAllDeepPredicates(Task.EPOCH_START);
     }
 
     /**
      * Let all DeepPredicates know that an epoch has ended.
      */
     public static void epochEndAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).epochEnd();
-            }
-        }
+        runAllDeepPredicates(Task.EPOCH_END);
     }
 
     /**
      * Predict with all DeepPredicates.
      */
     public static float predictAllDeepPredicates() {
-        float movement = 0.0f;
+        return sum(runAllDeepPredicates(Task.PREDICT));
+    }
 
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                movement += ((DeepPredicate) predicate).predictDeepModel();
-            }
-        }
+    /**
+     * Send predict requests to all DeepPredicates without waiting for the results.
+     * The predictions are applied by finishPredictAllDeepPredicates(),
+     * so they can be computed while PSL does other work (that does not touch the deep atoms).
+     */
+    public static void startPredictAllDeepPredicates() {
+        runAllDeepPredicates(Task.START_PREDICT);
+    }
 
-        return movement;
+    /**
+     * Wait for the requests sent by startPredictAllDeepPredicates() and apply the predictions.
+     */
+    public static float finishPredictAllDeepPredicates() {
+        return sum(runAllDeepPredicates(Task.FINISH_PREDICT));
     }
 
     /**
      * Evaluate all DeepPredicates.
      */
     public static void evalAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).evalDeepModel();
-            }
-        }
+        runAllDeepPredicates(Task.EVAL);
+    }
+
+    /**
+     * Send eval requests to all DeepPredicates without waiting for the results.
+     * Must be followed by finishEvalAllDeepPredicates().
+     */
+    public static void startEvalAllDeepPredicates() {
+        runAllDeepPredicates(Task.START_EVAL);
+    }
+
+    /**
+     * Wait for the requests sent by startEvalAllDeepPredicates().
+     */
+    public static void finishEvalAllDeepPredicates() {
+        runAllDeepPredicates(Task.FINISH_EVAL);
     }
 
     /**
      * Ready the next batch for all DeepPredicates.
      */
     public static void nextBatchAllDeepPredicates() {
-        for (Predicate predicate : Predicate.getAll()) {
-            if (predicate instanceof DeepPredicate) {
-                ((DeepPredicate) predicate).nextBatch();
-            }
-        }
+        runAllDeepPredicates(Task.NEXT_BATCH);
     }
 
     /**
@@ -251,22 +270,133 @@ public class DeepPredicate extends StandardPredicate {
      * If the epoch is complete for one DeepPredicate, it is complete for all.
      */
     public static boolean isEpochCompleteAllDeepPredicates() {
-        boolean isEpochComplete = false;
-        boolean deepPredicates = false;
+        float[] results = runAllDeepPredicates(Task.IS_EPOCH_COMPLETE);
+        if (results.length == 0) {
+            return true;
+        }
+
+        for (float result : results) {
+            if (result != 0.0f) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 
+    private static List<DeepPredicate> getAllDeepPredicates() {
+        List<DeepPredicate> deepPredicates = new ArrayList<DeepPredicate>();
         for (Predicate predicate : Predicate.getAll()) {
             if (predicate instanceof DeepPredicate) {
-                deepPredicates = true;
+                deepPredicates.add((DeepPredicate)predicate);
+            }
+        }
 
-                isEpochComplete = (((DeepPredicate) predicate).isEpochComplete());
+        return deepPredicates;
+    }
 
-                if (isEpochComplete) {
-                    break;
-                }
+    /**
+     * Run a task on all DeepPredicates and return each one's result.
+     * Each DeepPredicate talks to its own server over its own shared memory,
+     * so (if enabled) the requests are sent at the same time instead of waiting on each server in turn.
+     */
+    private static float[] runAllDeepPredicates(Task task) {
+        List<DeepPredicate> deepPredicates = getAllDeepPredicates();
+        float[] results = new float[deepPredicates.size()];
+
+        if (deepPredicates.size() <= 1 || !Options.PREDICATE_DEEP_CONCURRENT.getBoolean()) {
+            for (int i = 0; i < deepPredicates.size(); i++) {
+                results[i] = runTask(deepPredicates.get(i), task);
             }
+        } else {
+            Parallel.count(deepPredicates.size(), new TaskWorker(deepPredicates, task, results));
+        }
+
+        return results;
+    }
+
+    private static float runTask(DeepPredicate deepPredicate, Task task) {
+        switch (task) {
+            case TRAIN_MODE:
+                deepPredicate.trainMode();
+                return 0.0f;
+            case EVAL_MODE:
+                deepPredicate.evalMode();
+                return 0.0f;
+            case EPOCH_START:
+                deepPredicate.epochStart();
+                return 0.0f;
+            case EPOCH_END:
+                deepPredicate.epochEnd();
+                return 0.0f;
+            case NEXT_BATCH:
+                deepPredicate.nextBatch();
+                return 0.0f;
+            case IS_EPOCH_COMPLETE:
+                return deepPredicate.isEpochComplete() ? 1.0f : 0.0f;
+            case PREDICT:
+                return deepPredicate.predictDeepModel();
+            case START_PREDICT:
+                deepPredicate.startPredictDeepModel();
+                return 0.0f;
+            case FINISH_PREDICT:
+                return deepPredicate.finishPredictDeepModel();
+            case EVAL:
+                return deepPredicate.evalDeepModel();
+            case START_EVAL:
+                deepPredicate.startEvalDeepModel();
+                return 0.0f;
+            case FINISH_EVAL:
+                return deepPredicate.finishEvalDeepModel();
+            default:
+                throw new IllegalStateException("Unknown deep predicate task: " + task);
         }
+    }
 
-        return (!deepPredicates) || isEpochComplete;
+    private static float sum(float[] values) {
+        float total = 0.0f;
+        for (float value : values) {
+            total += value;
+        }
+
+        return total;
+    }
+
+    private static enum Task {
+        TRAIN_MODE,
+        EVAL_MODE,
+        EPOCH_START,
+        EPOCH_END,
+        NEXT_BATCH,
+        IS_EPOCH_COMPLETE,
+        PREDICT,
+        START_PREDICT,
+        FINISH_PREDICT,
+        EVAL,
+        START_EVAL,
+        FINISH_EVAL
+    }
+
+    private static class TaskWorker extends Parallel.Worker<Long> {
+        private final List<DeepPredicate> deepPredicates;
+        private final Task task;
+        private final float[] results;
+
+        public TaskWorker(List<DeepPredicate> deepPredicates, Task task, float[] results) {
+            this.deepPredicates = deepPredicates;
+            this.task = task;
+            this.results = results;
+        }
+
+        @Override
+        public Object clone() {
+            return new TaskWorker(deepPredicates, task, results);
+        }
+
+        @Override
+        public void work(long index, Long item) {
+            results[(int)index] = runTask(deepPredicates.get((int)index), task);
+        }
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -0,0 +1,378 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.model.rule;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An opt-in (see Options.PROFILER_RULES) profiler that attributes costs to individual rules.
+ *
+ * For each rule, this tracks the time spent planning (generating candidate queries) and grounding,
+ * the number of query rows, ground rules generated and pruned (grounded to nothing or to no terms),
+ * terms created, and an estimate of the memory used by those terms.
+ *
+ * Reasoners sample the time to optimize each term every Options.PROFILER_RULES_SAMPLE_PERIOD iterations.
+ * Sampled times are attributed to both the term's rule and the term's type.
+ */
+public final class RuleProfiler {
+    private static final Logger log = Logger.getLogger(RuleProfiler.class);
+
+    private static final int MAX_TABLE_LABEL_LENGTH = 60;
+
+    private static volatile boolean enabled = false;
+    private static int samplePeriod = 1;
+
+    private static final Map<Rule, RuleProfile> profiles = new ConcurrentHashMap<Rule, RuleProfile>();
+
+    private static final LongAdder sampledIterations = new LongAdder();
+    private static final LongAdder[] termTypeNanos = new LongAdder[ReasonerTerm.TermType.values().length];
+    private static final LongAdder[] termTypeCounts = new LongAdder[ReasonerTerm.TermType.values().length];
+
+    static {
+        for (int i = 0; i < termTypeNanos.length; i++) {
+            termTypeNanos[i] = new LongAdder();
+            termTypeCounts[i] = new LongAdder();
+        }
+
+        init();
+    }
+
+    // Static only.
+    private RuleProfiler() {}
+
+    /**
+     * Drop any collected profiles and (re)read the profiler options.
+     */
+    public static synchronized void init() {
+        profiles.clear();
+
+        sampledIterations.reset();
+        for (int i = 0; i < termTypeNanos.length; i++) {
+            termTypeNanos[i].reset();
+            termTypeCounts[i].reset();
+        }
+
+        samplePeriod = Options.PROFILER_RULES_SAMPLE_PERIOD.getInt();
+        enabled = Options.PROFILER_RULES.getBoolean();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if term optimization should be timed on this (1-indexed) reasoner iteration.
+     * If so, the iteration is counted as sampled.
+     */
+    public static boolean sampleIteration(int iteration) {
+        if (!isSampledIteration(iteration)) {
+            return false;
+        }
+
+        sampledIterations.increment();
+        return true;
+    }
+
+    /**
+     * Like sampleIteration(), but the iteration is not counted.
+     * For reasoners that run the same iterations several times in a pass (e.g. once for each connected component),
+     * which count their sampled iterations once per pass (see countSampledIterations()).
+     */
+    public static boolean isSampledIteration(int iteration) {
+        return enabled && ((iteration - 1) % samplePeriod == 0);
+    }
+
+    /**
+     * Count the sampled iterations among the first |iterations| (1-indexed) iterations of a pass.
+     */
+    public static void countSampledIterations(int iterations) {
+        if (!enabled || iterations <= 0) {
+            return;
+        }
+
+        sampledIterations.add((iterations - 1) / samplePeriod + 1);
+    }
+
+    public static void addPlanningTime(Rule rule, long nanos) {
+        getProfile(rule).planningNanos.add(nanos);
+    }
+
+    public static void addGroundingTime(Rule rule, long nanos) {
+        getProfile(rule).groundingNanos.add(nanos);
+    }
+
+    public static void addRows(Rule rule, long rows) {
+        getProfile(rule).rows.add(rows);
+    }
+
+    /**
+     * Note a query result that did not produce a ground rule (e.g. it was trivially satisfied).
+     */
+    public static void addPrunedGroundRule(Rule rule) {
+        getProfile(rule).prunedGroundRules.increment();
+    }
+
+    /**
+     * Note a ground rule and the terms that were made from it.
+     * A ground rule that did not make any terms is also counted as pruned.
+     */
+    public static void addGroundRule(Rule rule, List<? extends ReasonerTerm> terms) {
+        RuleProfile profile = getProfile(rule);
+
+        profile.groundRules.increment();
+        if (terms.isEmpty()) {
+            profile.prunedGroundRules.increment();
+            return;
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            bytes += terms.get(i).estimateMemory();
+        }
+
+        profile.terms.add(terms.size());
+        profile.termBytes.add(bytes);
+    }
+
+    public static void addOptimizationTime(ReasonerTerm term, long nanos) {
+        termTypeNanos[term.termType.ordinal()].add(nanos);
+        termTypeCounts[term.termType.ordinal()].increment();
+
+        if (term.getRule() != null) {
+            getProfile(term.getRule()).optimizationNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Get all the rule profiles, most expensive (grounding, planning, and sampled optimization time) first.
+     */
+    public static List<RuleProfile> getProfiles() {
+        List<RuleProfile> sortedProfiles = new ArrayList<RuleProfile>(profiles.values());
+        Collections.sort(sortedProfiles, new Comparator<RuleProfile>() {
+            @Override
+            public int compare(RuleProfile a, RuleProfile b) {
+                int result = Long.compare(b.getTotalNanos(), a.getTotalNanos());
+                if (result != 0) {
+                    return result;
+                }
+
+                return a.label.compareTo(b.label);
+            }
+        });
+
+        return sortedProfiles;
+    }
+
+    public static String toTable() {
+        StringBuilder builder = new StringBuilder();
+
+        String rowFormat = "%-" + MAX_TABLE_LABEL_LENGTH + "s %12s %12s %12s %12s %12s %12s %12s %14s%n";
+        builder.append(String.format(rowFormat,
+                "Rule", "Plan (ms)", "Ground (ms)", "Rows", "Ground Rules", "Pruned", "Terms", "Term KB", "Opt (ms, smp)"));
+
+        for (RuleProfile profile : getProfiles()) {
+            String label = profile.label;
+            if (label.length() > MAX_TABLE_LABEL_LENGTH) {
+                label = label.substring(0, MAX_TABLE_LABEL_LENGTH - 3) + "...";
+            }
+
+            builder.append(String.format(rowFormat,
+                    label,
+                    profile.planningNanos.sum() / 1000000,
+                    profile.groundingNanos.sum() / 1000000,
+                    profile.rows.sum(),
+                    profile.groundRules.sum(),
+                    profile.prunedGroundRules.sum(),
+                    profile.terms.sum(),
+                    profile.termBytes.sum() / 1024,
+                    profile.optimizationNanos.sum() / 1000000));
+        }
+
+        builder.append(String.format("%nSampled Iterations: %d%n", sampledIterations.sum()));
+        builder.append(String.format("%-" + MAX_TABLE_LABEL_LENGTH + "s %12s %12s %14s%n",
+                "Term Type", "Terms", "Opt (ms)", "Mean (ns/term)"));
+        for (ReasonerTerm.TermType termType : ReasonerTerm.TermType.values()) {
+            long count = termTypeCounts[termType.ordinal()].sum();
+            if (count == 0) {
+                continue;
+            }
+
+            long nanos = termTypeNanos[termType.ordinal()].sum();
+            builder.append(String.format("%-" + MAX_TABLE_LABEL_LENGTH + "s %12d %12d %14d%n",
+                    termType, count, nanos / 1000000, nanos / count));
+        }
+
+        return builder.toString();
+    }
+
+    public static JSONObject toJSON() {
+        JSONArray rules = new JSONArray();
+        for (RuleProfile profile : getProfiles()) {
+            JSONObject rule = new JSONObject();
+            rule.put("rule", profile.label);
+            rule.put("planningNanos", profile.planningNanos.sum());
+            rule.put("groundingNanos", profile.groundingNanos.sum());
+            rule.put("rows", profile.rows.sum());
+            rule.put("groundRules", profile.groundRules.sum());
+            rule.put("prunedGroundRules", profile.prunedGroundRules.sum());
+            rule.put("terms", profile.terms.sum());
+            rule.put("termBytes", profile.termBytes.sum());
+            rule.put("sampledOptimizationNanos", profile.optimizationNanos.sum());
+            rules.put(rule);
+        }
+
+        JSONArray termTypes = new JSONArray();
+        for (ReasonerTerm.TermType termType : ReasonerTerm.TermType.values()) {
+            JSONObject type = new JSONObject();
+            type.put("termType", termType.toString());
+            type.put("sampledTerms", termTypeCounts[termType.ordinal()].sum());
+            type.put("sampledOptimizationNanos", termTypeNanos[termType.ordinal()].sum());
+            termTypes.put(type);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("samplePeriod", samplePeriod);
+        json.put("sampledIterations", sampledIterations.sum());
+        json.put("rules", rules);
+        json.put("termTypes", termTypes);
+
+        return json;
+    }
+
+    /**
+     * If profiling is enabled, log the profile as a table
+     * and write it as JSON to Options.PROFILER_RULES_OUTPUT_PATH (if set).
+     */
+    public static void output() {
+        if (!enabled) {
+            return;
+        }
+
+        log.info("Rule Profile:" + System.lineSeparator() + toTable());
+
+        String path = Options.PROFILER_RULES_OUTPUT_PATH.getString();
+        if (path == null) {
+            return;
+        }
+
+        try (BufferedWriter writer = FileUtils.getBufferedWriter(path)) {
+            writer.write(toJSON().toString(4));
+            writer.newLine();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write rule profile to: " + path, ex);
+        }
+    }
+
+    private static RuleProfile getProfile(Rule rule) {
+        RuleProfile profile = profiles.get(rule);
+        if (profile != null) {
+            return profile;
+        }
+
+        profile = new RuleProfile(rule);
+        RuleProfile oldProfile = profiles.putIfAbsent(rule, profile);
+        if (oldProfile != null) {
+            return oldProfile;
+        }
+
+        return profile;
+    }
+
+    /**
+     * The accumulated costs of a single rule.
+     */
+    public static class RuleProfile {
+        public final Rule rule;
+        public final String label;
+
+        private final LongAdder planningNanos;
+        private final LongAdder groundingNanos;
+        private final LongAdder rows;
+        private final LongAdder groundRules;
+        private final LongAdder prunedGroundRules;
+        private final LongAdder terms;
+        private final LongAdder termBytes;
+        private final LongAdder optimizationNanos;
+
+        private RuleProfile(Rule rule) {
+            this.rule = rule;
+            this.label = (rule.getName() != null) ? rule.getName() : rule.toString();
+
+            planningNanos = new LongAdder();
+            groundingNanos = new LongAdder();
+            rows = new LongAdder();
+            groundRules = new LongAdder();
+            prunedGroundRules = new LongAdder();
+            terms = new LongAdder();
+            termBytes = new LongAdder();
+            optimizationNanos = new LongAdder();
+        }
+
+        public long getPlanningNanos() {
+            return planningNanos.sum();
+        }
+
+        public long getGroundingNanos() {
+            return groundingNanos.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getGroundRules() {
+            return groundRules.sum();
+        }
+
+        public long getPrunedGroundRules() {
+            return prunedGroundRules.sum();
+        }
+
+        public long getTerms() {
+            return terms.sum();
+        }
+
+        public long getTermBytes() {
+            return termBytes.sum();
+        }
+
+        public long getOptimizationNanos() {
+            return optimizationNanos.sum();
+        }
+
+        public long getTotalNanos() {
+            return getPlanningNanos() + getGroundingNanos() + getOptimizationNanos();
+        }
+    }
+}
@@ -18,8 +18,8 @@
 package org.linqs.psl.model.rule.arithmetic;
 
 import org.linqs.psl.database.Database;
-import org.linqs.psl.database.DatabaseQuery;
 import org.linqs.psl.database.PersistedAtomManagementException;
+import org.linqs.psl.database.QueryResultIterable;
 import org.linqs.psl.database.ResultList;
 import org.linqs.psl.database.RawQuery;
 import org.linqs.psl.database.rdbms.Formula2SQL;
@@ -39,6 +39,7 @@ import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.rule.AbstractRule;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.model.rule.arithmetic.expression.ArithmeticRuleExpression;
 import org.linqs.psl.model.rule.arithmetic.expression.SummationAtom;
 import org.linqs.psl.model.rule.arithmetic.expression.SummationAtomOrAtom;
@@ -53,17 +54,21 @@ import org.linqs.psl.reasoner.function.FunctionComparator;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
 import com.healthmarketscience.sqlbuilder.SelectQuery;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base class for all (first order, i.e., not ground) arithmetic rules.
@@ -73,6 +78,8 @@ import java.util.Set;
 public abstract class AbstractArithmeticRule extends AbstractRule {
     private static final Logger log = Logger.getLogger(AbstractArithmeticRule.class);
 
+    private static final int GROUNDING_BATCH_SIZE = 100;
+
     protected final ArithmeticRuleExpression expression;
     protected final Map<SummationVariable, Formula> filters;
 
@@ -83,6 +90,12 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 
     private volatile boolean validatedByDatabase;
 
+    /**
+     * The data-dependent parts of grounding a summation rule (see SummationData).
+     * Rebuilt by every full grounding of this rule.
+     */
+    private volatile SummationData summationData;
+
     public AbstractArithmeticRule(ArithmeticRuleExpression expression, Map<SummationVariable, Formula> filterClauses, String name) {
         super(name, expression.hashCode());
         this.expression = expression;
@@ -96,6 +109,7 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         }
 
         validatedByDatabase = false;
+        summationData = null;
         validateRule();
     }
 
@@ -107,6 +121,10 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         return expression;
     }
 
+    public Map<SummationVariable, Formula> getFilters() {
+        return Collections.unmodifiableMap(filters);
+    }
+
     @Override
     public boolean requiresSplit() {
         // Arithmetic rules will need to split if there is a filter with a disjunction.
@@ -281,10 +299,10 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 
     private void groundForSummation(Constant[] constants, Map<Variable, Integer> variableMap, Database database,
             List<GroundRule> results) {
-        GroundingResources resources = prepSummationGroundingResources(database);
+        GroundingResources resources = prepSummationGroundingResources(getSummationData(database, false));
 
         // Bail if there are no groundings.
-        if (resources.flatExpression == null) {
+        if (resources.summationData.flatExpression == null) {
             return;
         }
 
@@ -313,28 +331,79 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
     }
 
     private long groundAllNonSummationRule(TermStore termStore, Database database, Grounding.GroundRuleCallback groundRuleCallback) {
-        GroundingResources resources = getGroundingResources(expression);
+        try (QueryResultIterable results = database.executeGroundingQuery(expression.getQueryFormula())) {
+            return groundAllResults(results, null, termStore, database, groundRuleCallback);
+        }
+    }
 
-        try (ResultList results = database.executeQuery(new DatabaseQuery(expression.getQueryFormula(), false))) {
-            Map<Variable, Integer> variableMap = results.getVariableMap();
+    /**
+     * Ground every query result in parallel (in batches), and add the ground rules to the term store as they are made.
+     * Summation data is only passed for summation rules.
+     */
+    private long groundAllResults(QueryResultIterable queryResults, SummationData data,
+            TermStore termStore, Database database, Grounding.GroundRuleCallback groundRuleCallback) {
+        long initialCount = termStore.size();
+        final Map<Variable, Integer> variableMap = queryResults.getVariableMap();
+        final Metrics.Counter rowCounter = Metrics.counter("grounding_rule_rows_total", "rule", Grounding.getRuleLabel(this));
+
+        try {
+            Parallel.foreachBatch(queryResults, GROUNDING_BATCH_SIZE, new Parallel.Worker<List<Constant[]>>() {
+                @Override
+                public void work(long size, List<Constant[]> rows) {
+                    rowCounter.add(size);
+
+                    boolean profile = RuleProfiler.isEnabled();
+                    if (profile) {
+                        RuleProfiler.addRows(AbstractArithmeticRule.this, size);
+                    }
 
-            for (int groundingIndex = 0; groundingIndex < results.size(); groundingIndex++) {
-                groundSingleNonSummationRule(results.get(groundingIndex), variableMap, database, resources);
-            }
-        }
+                    GroundingResources resources = null;
+                    if (data == null) {
+                        resources = getGroundingResources(expression);
+                    } else {
+                        resources = prepSummationGroundingResources(data);
+                    }
 
-        long count = resources.groundRules.size();
-        for (GroundRule groundRule : resources.groundRules) {
-            termStore.add(groundRule);
+                    // Drop anything left over from a grounding that failed.
+                    resources.groundRules.clear();
+                    resources.accessExceptionAtoms.clear();
 
-            if (groundRuleCallback != null) {
-                groundRuleCallback.call(groundRule);
+                    for (int i = 0; i < size; i++) {
+                        if (data == null) {
+                            groundSingleNonSummationRule(rows.get(i), variableMap, database, resources);
+                        } else {
+                            groundSingleSummationRule(rows.get(i), variableMap, database, resources);
+                        }
+
+                        if (profile && resources.groundRules.isEmpty()) {
+                            RuleProfiler.addPrunedGroundRule(AbstractArithmeticRule.this);
+                        }
+
+                        for (GroundRule groundRule : resources.groundRules) {
+                            termStore.add(groundRule);
+
+                            if (groundRuleCallback != null) {
+                                groundRuleCallback.call(groundRule);
+                            }
+                        }
+
+                        resources.groundRules.clear();
+                        resources.accessExceptionAtoms.clear();
+                    }
+
+                    queryResults.reuse(rows);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // Surface grounding errors (e.g. a coefficient that divides by zero) as-is instead of wrapped by the worker.
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
             }
+
+            throw ex;
         }
-        resources.groundRules.clear();
-        resources.accessExceptionAtoms.clear();
 
-        return count;
+        return termStore.size() - initialCount;
     }
 
     private void groundSingleNonSummationRule(
@@ -393,56 +462,45 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
      * Ground by first expanding summation atoms into normal ones and then calling the non-summation grounding.
      */
     private long groundAllSummationRule(TermStore termStore, Database database, Grounding.GroundRuleCallback groundRuleCallback) {
-        GroundingResources resources = prepSummationGroundingResources(database);
+        // The data may have changed since the last grounding, so always rebuild.
+        SummationData data = getSummationData(database, true);
 
         // Bail if there are no groundings.
-        if (resources.flatExpression == null) {
+        if (data.flatExpression == null) {
             return 0;
         }
 
-        RawQuery rawQuery = getSummationRawQuery(database);
-
-        try (ResultList results = database.executeSQL(rawQuery)) {
-            Map<Variable, Integer> variableMap = results.getVariableMap();
-
-            for (int groundingIndex = 0; groundingIndex < results.size(); groundingIndex++) {
-                groundSingleSummationRule(results.get(groundingIndex), variableMap, database, resources);
-            }
-        }
-
-        long count = resources.groundRules.size();
-        for (GroundRule groundRule : resources.groundRules) {
-            termStore.add(groundRule);
-
-            if (groundRuleCallback != null) {
-                groundRuleCallback.call(groundRule);
-            }
+        try (QueryResultIterable results = database.executeQueryIterator(getSummationRawQuery(database))) {
+            return groundAllResults(results, data, termStore, database, groundRuleCallback);
         }
-        resources.groundRules.clear();
-        resources.accessExceptionAtoms.clear();
-
-        return count;
     }
 
     private void groundSingleSummationRule(
             Constant[] queryRow, Map<Variable, Integer> variableMap,
             Database database, GroundingResources resources) {
         // First reset the summation counts.
-        for (Map.Entry<SummationVariable, Integer> entry : resources.totalSummationCounts.entrySet()) {
+        SummationData data = resources.summationData;
+        for (Map.Entry<SummationVariable, Integer> entry : data.totalSummationCounts.entrySet()) {
             resources.summationCounts.put(entry.getKey(), entry.getValue());
         }
 
+        // Look up (or compute) the results of the filters that are keyed by rule variables.
+        for (Map.Entry<SummationVariable, Variable[]> entry : data.filterJoinVariables.entrySet()) {
+            resources.filterResults.put(entry.getKey(),
+                    getFilterResults(data, entry.getKey(), entry.getValue(), database, queryRow, variableMap));
+        }
+
         int skippedAtoms = 0;
         for (int atomIndex = 0; atomIndex < resources.groundAtoms.length; atomIndex++) {
             resources.groundAtoms[atomIndex] = null;
 
             // We will need to check the database for existance if we have an open summation atom.
             boolean checkDatabase =
-                    resources.flatSummationAtoms[atomIndex] &&
+                    data.flatSummationAtoms[atomIndex] &&
                     !database.isClosed(resources.queryAtoms.get(atomIndex).getPredicate());
 
             boolean skip = false;
-            SummationVariable[] variables = resources.flatSummationVariables.get(atomIndex);
+            SummationVariable[] variables = data.flatSummationVariables.get(atomIndex);
 
             // Check the DB cache for summation atoms.
             GroundAtom groundAtom = resources.queryAtoms.get(atomIndex).ground(
@@ -459,14 +517,22 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                 for (int variableIndex = 0; variableIndex < variables.length; variableIndex++) {
                     SummationVariable variable = variables[variableIndex];
 
-                    if (variable == null || !filters.containsKey(variable)) {
+                    if (variable == null || !filters.containsKey(variable) || data.prefilteredVariables.contains(variable)) {
                         continue;
                     }
 
-                    if (!evalFilter(
-                            filters.get(variable), variable,
-                            groundAtom.getArguments()[variableIndex],
-                            database, queryRow, variableMap)) {
+                    Constant constant = groundAtom.getArguments()[variableIndex];
+
+                    boolean keep = false;
+                    BitSet passingConstants = resources.filterResults.get(variable);
+                    Integer domainPosition = (passingConstants == null) ? null : data.domainPositions.get(variable).get(constant);
+                    if (domainPosition != null) {
+                        keep = passingConstants.get(domainPosition.intValue());
+                    } else {
+                        keep = evalFilter(filters.get(variable), variable, constant, database, queryRow, variableMap);
+                    }
+
+                    if (!keep) {
                         skip = true;
                         break;
                     }
@@ -479,7 +545,7 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                 skippedAtoms++;
 
                 // If this is a summation atom, then subtract this from the counts.
-                if (resources.flatSummationAtoms[atomIndex]) {
+                if (data.flatSummationAtoms[atomIndex]) {
                     for (SummationVariable variable : variables) {
                         if (variable == null) {
                             continue;
@@ -499,14 +565,14 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         // Compute the coefficients.
         // and we don't need to pass any substitution information.
         for (int i = 0; i < resources.coefficients.length; i++) {
-            resources.coefficients[i] = resources.flatExpression.getAtomCoefficients().get(i).getValue(resources.summationCounts);
+            resources.coefficients[i] = data.flatExpression.getAtomCoefficients().get(i).getValue(resources.summationCounts);
         }
-        resources.finalCoefficient = resources.flatExpression.getFinalCoefficient().getValue(resources.summationCounts);
+        resources.finalCoefficient = data.flatExpression.getFinalCoefficient().getValue(resources.summationCounts);
 
         // Note that unweighed rules will ground an equality, while weighted rules will instead
         // ground a largerThan and lessThan.
         GroundRule groundRule = null;
-        if (isWeighted() && FunctionComparator.EQ.equals(resources.flatExpression.getComparator())) {
+        if (isWeighted() && FunctionComparator.EQ.equals(data.flatExpression.getComparator())) {
             groundRule = makeGroundRule(resources.coefficients, resources.groundAtoms, FunctionComparator.GTE, resources.finalCoefficient);
             if (verifyGroundRule(groundRule, database, resources)) {
                 resources.groundRules.add(groundRule);
@@ -517,13 +583,48 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                 resources.groundRules.add(groundRule);
             }
         } else {
-            groundRule = makeGroundRule(resources.coefficients, resources.groundAtoms, resources.flatExpression.getComparator(), resources.finalCoefficient);
+            groundRule = makeGroundRule(resources.coefficients, resources.groundAtoms, data.flatExpression.getComparator(), resources.finalCoefficient);
             if (verifyGroundRule(groundRule, database, resources)) {
                 resources.groundRules.add(groundRule);
             }
         }
     }
 
+    /**
+     * Get the positions in the summation variable's domain that pass its filter for the join key of this query row
+     * (the values of the rule variables that the filter uses).
+     * Results are computed the first time a join key is seen and then shared by all the rows with that key.
+     */
+    private BitSet getFilterResults(SummationData data, SummationVariable variable, Variable[] joinVariables,
+            Database database, Constant[] queryRow, Map<Variable, Integer> variableMap) {
+        Constant[] joinKey = new Constant[joinVariables.length];
+        for (int i = 0; i < joinVariables.length; i++) {
+            joinKey[i] = queryRow[variableMap.get(joinVariables[i]).intValue()];
+        }
+
+        Map<List<Constant>, BitSet> results = data.filterResults.get(variable);
+        List<Constant> key = Arrays.asList(joinKey);
+
+        BitSet passingConstants = results.get(key);
+        if (passingConstants != null) {
+            return passingConstants;
+        }
+
+        Formula filter = filters.get(variable);
+        Constant[] domain = data.summationDomains.get(variable);
+
+        passingConstants = new BitSet(domain.length);
+        for (int i = 0; i < domain.length; i++) {
+            if (evalFilter(filter, variable, domain[i], database, queryRow, variableMap)) {
+                passingConstants.set(i);
+            }
+        }
+
+        // Another thread may have gotten here first, but it will have computed the same results.
+        results.put(key, passingConstants);
+        return passingConstants;
+    }
+
     /**
      * Evaluate a filter statement.
      * Return true if the filter expression is true (and thus keep the grounding).
@@ -750,22 +851,34 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         return new RawQuery(queryString,  projectionMap, variableTypes);
     }
 
-    private GroundingResources prepSummationGroundingResources(Database database) {
-        GroundingResources resources = getGroundingResources(null);
-        if (resources.summationDataLoaded) {
-            return resources;
+    /**
+     * Get the summation data for this rule, building it if it does not exist or a rebuild is requested.
+     */
+    private synchronized SummationData getSummationData(Database database, boolean rebuild) {
+        if (summationData == null || rebuild) {
+            summationData = buildSummationData(database);
         }
 
+        return summationData;
+    }
+
+    private SummationData buildSummationData(Database database) {
+        SummationData data = new SummationData();
+
         List<SummationAtomOrAtom> flatAtoms = new ArrayList<SummationAtomOrAtom>();
         List<Coefficient> flatCoefficients = new ArrayList<Coefficient>();
         List<SummationVariable[]> flatSummationVariables = new ArrayList<SummationVariable[]>();
 
-        flattenAtoms(database, flatAtoms, flatCoefficients, flatSummationVariables);
+        // All the summation variables mapped to their possible constants.
+        Set<SummationVariable> prefilteredVariables = new HashSet<SummationVariable>();
+        Map<SummationVariable, Constant[]> summationDomains = fetchSummationDomains(
+                expression.getSummationMapping(), database, prefilteredVariables);
+
+        flattenAtoms(summationDomains, flatAtoms, flatCoefficients, flatSummationVariables);
 
         if (flatAtoms.size() == 0) {
             // There are no atoms, this rule has no groundings.
-            resources.summationDataLoaded = true;
-            return resources;
+            return data;
         }
 
         // Count all the appearences of a summation variable so we can correctly compute coefficients.
@@ -792,50 +905,132 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
             }
         }
 
-        ArithmeticRuleExpression flatExpression = new ArithmeticRuleExpression(
+        data.flatExpression = new ArithmeticRuleExpression(
                 flatCoefficients, flatAtoms,
                 expression.getComparator(), expression.getFinalCoefficient(),
                 true);
+        data.totalSummationCounts = summationCounts;
+        data.flatSummationVariables = flatSummationVariables;
+        data.flatSummationAtoms = flatSummationAtoms;
+        data.prefilteredVariables = prefilteredVariables;
+        data.summationDomains = summationDomains;
+
+        // Filters that also use rule variables are cached by the values of those variables (their join key).
+        // If a filter uses every rule variable, then each query row has its own key and there is nothing to share.
+        int numRuleVariables = expression.getVariables().size();
+        for (Map.Entry<SummationVariable, Formula> entry : filters.entrySet()) {
+            SummationVariable variable = entry.getKey();
+            if (prefilteredVariables.contains(variable) || !summationDomains.containsKey(variable)) {
+                continue;
+            }
 
+            Variable[] joinVariables = getFilterJoinVariables(entry.getValue(), variable);
+            if (joinVariables.length >= numRuleVariables) {
+                continue;
+            }
 
-        resources.parseExpression(flatExpression, false);
+            Constant[] domain = summationDomains.get(variable);
+            Map<Constant, Integer> positions = new HashMap<Constant, Integer>(domain.length);
+            for (int i = 0; i < domain.length; i++) {
+                positions.put(domain[i], Integer.valueOf(i));
+            }
 
-        resources.summationDataLoaded = true;
-        resources.flatExpression = flatExpression;
-        resources.totalSummationCounts = summationCounts;
-        resources.summationCounts = new HashMap<SummationVariable, Integer>(summationCounts);
-        resources.flatSummationVariables = flatSummationVariables;
-        resources.flatSummationAtoms = flatSummationAtoms;
+            data.domainPositions.put(variable, positions);
+            data.filterJoinVariables.put(variable, joinVariables);
+            data.filterResults.put(variable, new ConcurrentHashMap<List<Constant>, BitSet>());
+        }
+
+        return data;
+    }
+
+    /**
+     * Get this thread's grounding resources, and make sure they are set up for the given summation data.
+     */
+    private GroundingResources prepSummationGroundingResources(SummationData data) {
+        GroundingResources resources = getGroundingResources(null);
+        if (resources.summationData == data) {
+            return resources;
+        }
+
+        resources.summationData = data;
+
+        if (data.flatExpression != null) {
+            resources.parseExpression(data.flatExpression, false);
+            resources.summationCounts = new HashMap<SummationVariable, Integer>(data.totalSummationCounts);
+            resources.filterResults = new HashMap<SummationVariable, BitSet>(data.filterJoinVariables.size());
+        }
 
         return resources;
     }
 
     /**
      * Query the database for the possible replacements for summation variables.
+     * Filters that only depend on the summation variable (e.g. {B: Nice(B)}) are evaluated here (once per constant),
+     * and those summation variables are added to prefilteredVariables.
+     * Constants that do not pass these filters are left out of the returned domain.
      */
-    private Map<SummationVariable, ResultList> fetchSummationConstants(
-            Map<SummationVariable, SummationAtom> summationMapping, Database database) {
-        Map<SummationVariable, ResultList> summationConstants = new HashMap<SummationVariable, ResultList>();
+    private Map<SummationVariable, Constant[]> fetchSummationDomains(
+            Map<SummationVariable, SummationAtom> summationMapping, Database database,
+            Set<SummationVariable> prefilteredVariables) {
+        Map<SummationVariable, Constant[]> domains = new HashMap<SummationVariable, Constant[]>();
+
+        Constant[] emptyRow = new Constant[0];
+        Map<Variable, Integer> emptyVariableMap = Collections.emptyMap();
 
         for (Map.Entry<SummationVariable, SummationAtom> entry : summationMapping.entrySet()) {
-            ResultList results = fetchSummationValues(database, entry.getKey(), entry.getValue());
-            summationConstants.put(entry.getKey(), results);
+            SummationVariable variable = entry.getKey();
+
+            Formula filter = filters.get(variable);
+            boolean prefilter = (filter != null && getFilterJoinVariables(filter, variable).length == 0);
+            if (prefilter) {
+                prefilteredVariables.add(variable);
+            }
+
+            List<Constant> domain = new ArrayList<Constant>();
+            try (ResultList results = fetchSummationValues(database, variable, entry.getValue())) {
+                for (int i = 0; i < results.size(); i++) {
+                    Constant constant = results.get(i)[0];
+
+                    if (prefilter && !evalFilter(filter, variable, constant, database, emptyRow, emptyVariableMap)) {
+                        continue;
+                    }
+
+                    domain.add(constant);
+                }
+            }
+
+            domains.put(variable, domain.toArray(new Constant[0]));
+        }
+
+        return domains;
+    }
+
+    /**
+     * Get the variables from the rest of the rule that a filter uses (everything except its own summation variable).
+     * A filter with no join variables only depends on its summation variable.
+     */
+    private Variable[] getFilterJoinVariables(Formula filter, SummationVariable variable) {
+        VariableTypeMap filterVariables = new VariableTypeMap();
+        filter.collectVariables(filterVariables);
+
+        List<Variable> joinVariables = new ArrayList<Variable>();
+        for (Variable filterVariable : filterVariables.getVariables()) {
+            if (!filterVariable.equals(variable.getVariable())) {
+                joinVariables.add(filterVariable);
+            }
         }
 
-        return summationConstants;
+        return joinVariables.toArray(new Variable[0]);
     }
 
     /**
      * Take the context expression and flatten out any summation atoms into non-summation atoms by expanding the summation variables.
      * The three output lists will all be the same size and indexes will match up.
      */
-    private void flattenAtoms(Database database,
+    private void flattenAtoms(Map<SummationVariable, Constant[]> summationDomains,
             List<SummationAtomOrAtom> flatAtoms,
             List<Coefficient> flatCoefficients,
             List<SummationVariable[]> flatSummationVariables) {
-        // All the summation variables mapped to their possible constants.
-        Map<SummationVariable, ResultList> summationConstants = fetchSummationConstants(expression.getSummationMapping(), database);
-
         flatAtoms.clear();
         flatCoefficients.clear();
         flatSummationVariables.clear();
@@ -888,8 +1083,8 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                     }
 
                     // Replace this atom using the constants for this summation variable.
-                    ResultList replacements = summationConstants.get((SummationVariable)argument);
-                    for (int resultIndex = 0; resultIndex < replacements.size(); resultIndex++) {
+                    Constant[] replacements = summationDomains.get((SummationVariable)argument);
+                    for (int resultIndex = 0; resultIndex < replacements.length; resultIndex++) {
                         flatCoefficients.add(coefficient);
                         flatSummationVariables.add(variables);
 
@@ -897,7 +1092,7 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                             Term[] newArgs = new Term[atom.getArity()];
                             for (int i = 0; i < atom.getArity(); i++) {
                                 if (i == argumentIndex) {
-                                    newArgs[i] = replacements.get(resultIndex)[0];
+                                    newArgs[i] = replacements[resultIndex];
                                 } else {
                                     newArgs[i] = (Term)atom.getArguments()[i];
                                 }
@@ -906,7 +1101,7 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                             flatAtoms.add(new QueryAtom(atom.getPredicate(), newArgs));
                         } else {
                             SummationVariableOrTerm[] newArgs = Arrays.copyOf(atom.getArguments(), atom.getArity());
-                            newArgs[argumentIndex] = replacements.get(resultIndex)[0];
+                            newArgs[argumentIndex] = replacements[resultIndex];
                             flatAtoms.add(new SummationAtom(atom.getPredicate(), newArgs));
                         }
                     }
@@ -916,10 +1111,6 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
                 }
             }
         }
-
-        for (ResultList results : summationConstants.values()) {
-            results.close();
-        }
     }
 
     private ResultList fetchSummationValues(Database database, SummationVariable variable, SummationAtom atom) {
@@ -956,6 +1147,51 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
         return resources;
     }
 
+    /**
+     * Everything needed to ground a summation rule that depends on the data, but not on a specific grounding.
+     * This is built once (on a single thread) and then shared (read-only) by all the grounding threads.
+     * The only exception is the filter results cache, which is filled in (concurrently) as join keys are seen.
+     */
+    private static class SummationData {
+        // The context expression with all summation variables expanded.
+        // Null if there are no groundings.
+        public ArithmeticRuleExpression flatExpression;
+
+        // The maximum counts of all summation variable replacements.
+        public Map<SummationVariable, Integer> totalSummationCounts;
+
+        // A marker for every variables that shows which are summation variables.
+        public List<SummationVariable[]> flatSummationVariables;
+
+        // True for each summation atom.
+        public boolean[] flatSummationAtoms;
+
+        // Summation variables whose filter was already applied when flattening (see fetchSummationDomains()).
+        public Set<SummationVariable> prefilteredVariables;
+
+        // The possible constants for each summation variable (after prefiltering).
+        public Map<SummationVariable, Constant[]> summationDomains;
+
+        // For filters that are cached by join key (see getFilterResults()):
+        // the rule variables in the join key, each constant's position in the domain,
+        // and the positions that pass the filter for each join key seen so far.
+        public Map<SummationVariable, Variable[]> filterJoinVariables;
+        public Map<SummationVariable, Map<Constant, Integer>> domainPositions;
+        public Map<SummationVariable, Map<List<Constant>, BitSet>> filterResults;
+
+        public SummationData() {
+            flatExpression = null;
+            totalSummationCounts = null;
+            flatSummationVariables = null;
+            flatSummationAtoms = null;
+            prefilteredVariables = null;
+            summationDomains = null;
+            filterJoinVariables = new HashMap<SummationVariable, Variable[]>();
+            domainPositions = new HashMap<SummationVariable, Map<Constant, Integer>>();
+            filterResults = new HashMap<SummationVariable, Map<List<Constant>, BitSet>>();
+        }
+    }
+
     /**
      * Resources that every grounding thread will use and reuse.
      */
@@ -977,24 +1213,16 @@ public abstract class AbstractArithmeticRule extends AbstractRule {
 
         // More resources necessary for summations.
 
-        public boolean summationDataLoaded;
-
-        // The constext expression with all summation variables expanded.
-        public ArithmeticRuleExpression flatExpression;
-
-        // The maximum counts of all summation variable replacements.
-        public Map<SummationVariable, Integer> totalSummationCounts;
+        // The summation data these resources were last set up for.
+        public SummationData summationData;
 
         // A buffer for counting actual replacements.
         // If we filter out an atom, we can mark it here.
         // This will allow us to make accurate coefficient computations.
         public Map<SummationVariable, Integer> summationCounts;
 
-        // A marker for every variables that shows which are summation variables.
-        public List<SummationVariable[]> flatSummationVariables;
-
-        // True for each summation atom.
-        boolean[] flatSummationAtoms;
+        // The cached filter results for the current query row (see getFilterResults()).
+        public Map<SummationVariable, BitSet> filterResults;
 
         public GroundingResources() {
             groundRules = new ArrayList<GroundRule>();
@@ -19,8 +19,8 @@ package org.linqs.psl.model.rule.logical;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.PersistedAtomManagementException;
-import org.linqs.psl.database.RawQuery;
 import org.linqs.psl.database.QueryResultIterable;
+import org.linqs.psl.database.RawQuery;
 import org.linqs.psl.grounding.Grounding;
 import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.GroundAtom;
@@ -30,18 +30,21 @@ import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.atom.UnmanagedRandomVariableAtom;
 import org.linqs.psl.model.formula.Formula;
 import org.linqs.psl.model.formula.FormulaAnalysis;
-import org.linqs.psl.model.formula.Negation;
 import org.linqs.psl.model.formula.FormulaAnalysis.DNFClause;
+import org.linqs.psl.model.formula.Negation;
 import org.linqs.psl.model.predicate.GroundingOnlyPredicate;
 import org.linqs.psl.model.rule.AbstractRule;
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.Term;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.reasoner.term.TermStore;
+import org.linqs.psl.util.FlightRecorder;
 import org.linqs.psl.util.HashCode;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 import org.linqs.psl.util.StringUtils;
 
@@ -179,10 +182,14 @@ public abstract class AbstractLogicalRule extends AbstractRule {
         final Database finalDatabase = database;
         final TermStore finalTermStore = termStore;
         final Map<Variable, Integer> variableMap = groundVariables.getVariableMap();
+        final Metrics.Counter rowCounter = Metrics.counter("grounding_rule_rows_total", "rule", Grounding.getRuleLabel(this));
+        Object event = FlightRecorder.beginGroundingQuery();
 
-        Parallel.foreachBatch(groundVariables, 100, new Parallel.Worker<List<Constant[]>>() {
+        Parallel.RunTimings timings = Parallel.foreachBatch(groundVariables, 100, new Parallel.Worker<List<Constant[]>>() {
             @Override
             public void work(long size, List<Constant[]> rows) {
+                rowCounter.add(size);
+
                 for (int i = 0; i < size; i++) {
                     GroundRule groundRule = ground(rows.get(i), variableMap, finalDatabase);
                     if (groundRule != null) {
@@ -191,6 +198,8 @@ public abstract class AbstractLogicalRule extends AbstractRule {
                         if (groundRuleCallback != null) {
                             groundRuleCallback.call(groundRule);
                         }
+                    } else if (RuleProfiler.isEnabled()) {
+                        RuleProfiler.addPrunedGroundRule(AbstractLogicalRule.this);
                     }
                 }
 
@@ -200,6 +209,12 @@ public abstract class AbstractLogicalRule extends AbstractRule {
 
         long termCount = termStore.size() - initialCount;
 
+        if (RuleProfiler.isEnabled()) {
+            RuleProfiler.addRows(this, timings.iterations);
+        }
+
+        FlightRecorder.endGroundingQuery(event, Grounding.getRuleLabel(this), groundVariables.getQueryString(), timings.iterations, termCount);
+
         log.debug("Grounded {} terms from rule {}", termCount, this);
         return termCount;
     }
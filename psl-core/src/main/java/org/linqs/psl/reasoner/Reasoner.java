@@ -23,12 +23,15 @@ import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.predicate.DeepPredicate;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.reasoner.term.streaming.StreamingTermStore;
+import org.linqs.psl.util.FlightRecorder;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
 import java.util.Arrays;
@@ -56,11 +59,19 @@ public abstract class Reasoner<T extends ReasonerTerm> {
 
     protected float[] prevVariableValues;
 
+    // The variable movement seen on the last iteration, NaN if it was not computed.
+    protected double lastVariableMovement;
+
+    // Time the optimization of each term in parallelComputeGradient() (see RuleProfiler).
+    protected boolean profileTerms;
+
     protected float[][] workerRVAtomGradients;
     protected float[][] workerDeepGradients;
 
     public Reasoner() {
         budget = 1.0;
+        lastVariableMovement = Double.NaN;
+        profileTerms = false;
 
         evaluate = Options.REASONER_EVALUATE.getBoolean();
 
@@ -98,6 +109,7 @@ public abstract class Reasoner<T extends ReasonerTerm> {
 
     public void clear() {
         prevVariableValues = null;
+        lastVariableMovement = Double.NaN;
 
         workerRVAtomGradients = null;
         workerDeepGradients = null;
@@ -110,6 +122,10 @@ public abstract class Reasoner<T extends ReasonerTerm> {
         this.budget = budget;
     }
 
+    public double getBudget() {
+        return budget;
+    }
+
     protected void initForOptimization(TermStore<T> termStore) {
         log.debug("Performing optimization with {} variables and {} terms.",
                 termStore.getVariableCounts(), termStore.size());
@@ -130,6 +146,12 @@ public abstract class Reasoner<T extends ReasonerTerm> {
     protected void optimizationComplete(TermStore<T> termStore, ObjectiveResult finalObjective, long totalTime) {
         float change = (float)termStore.sync();
 
+        String name = getClass().getSimpleName();
+        Metrics.timer("reasoner_optimization_seconds", "reasoner", name).observeMillis(totalTime);
+        Metrics.gauge("reasoner_objective", "reasoner", name).set(finalObjective.objective);
+        Metrics.gauge("reasoner_violated_constraints", "reasoner", name).set(finalObjective.violatedConstraints);
+        Metrics.gauge("reasoner_variable_movement", "reasoner", name).set(change);
+
         log.debug("Final Objective: {}, Violated Constraints: {}, Total Optimization Time: {}",
                 finalObjective.objective, finalObjective.violatedConstraints, totalTime);
         log.debug("Movement of variables from initial state: {}", change);
@@ -137,6 +159,35 @@ public abstract class Reasoner<T extends ReasonerTerm> {
         clear();
     }
 
+    /**
+     * Record the metrics for a single optimization iteration.
+     * The objective may be null if it was not computed on this iteration.
+     */
+    protected void recordIteration(int iteration, long iterationTimeMS, ObjectiveResult objective) {
+        recordIteration(iteration, iterationTimeMS, objective, lastVariableMovement);
+    }
+
+    /**
+     * Record the metrics for a single optimization iteration with its own variable movement,
+     * for reasoners that do not track lastVariableMovement (e.g. ones that aggregate over connected components).
+     * The variable movement may be NaN if it was not computed.
+     */
+    protected void recordIteration(int iteration, long iterationTimeMS, ObjectiveResult objective, double variableMovement) {
+        String name = getClass().getSimpleName();
+
+        Metrics.timer("reasoner_iteration_seconds", "reasoner", name).observeMillis(iterationTimeMS);
+
+        if (objective != null) {
+            Metrics.gauge("reasoner_iteration_objective", "reasoner", name).set(objective.objective);
+            Metrics.gauge("reasoner_iteration_violated_constraints", "reasoner", name).set(objective.violatedConstraints);
+        }
+
+        FlightRecorder.reasonerIteration(name, iteration, iterationTimeMS,
+                (objective == null) ? Double.NaN : objective.objective,
+                (objective == null) ? -1 : objective.violatedConstraints,
+                variableMovement);
+    }
+
     /**
      * Determine if the stopping criterion has been met and optimization should be stopped.
      */
@@ -177,6 +228,7 @@ public abstract class Reasoner<T extends ReasonerTerm> {
                 }
 
                 float distance = MathUtils.pNorm(movement, variableMovementNorm);
+                lastVariableMovement = distance;
                 if (distance < variableMovementTolerance) {
                     log.trace("Breaking optimization. Movement of variables: {} below tolerance: {}.",
                             distance, variableMovementTolerance);
@@ -222,7 +274,7 @@ public abstract class Reasoner<T extends ReasonerTerm> {
             }
         }
 
-        Parallel.count(numTermBlocks, new GradientWorker(termStore, workerRVAtomGradients, workerDeepGradients, blockSize));
+        Parallel.count(numTermBlocks, new GradientWorker(termStore, workerRVAtomGradients, workerDeepGradients, blockSize, profileTerms));
 
         Arrays.fill(rvAtomGradient, 0.0f);
         Arrays.fill(deepAtomGradient, 0.0f);
@@ -399,9 +451,10 @@ public abstract class Reasoner<T extends ReasonerTerm> {
         private final GroundAtom[] variableAtoms;
         private final float[][] rvAtomGradients;
         private final float[][] deepAtomGradients;
+        private final boolean profile;
 
         public GradientWorker(TermStore termStore,
-                              float[][] rvAtomGradients, float[][] deepAtomGradients, int blockSize) {
+                              float[][] rvAtomGradients, float[][] deepAtomGradients, int blockSize, boolean profile) {
             super();
 
             this.termStore = termStore;
@@ -410,11 +463,12 @@ public abstract class Reasoner<T extends ReasonerTerm> {
             this.rvAtomGradients = rvAtomGradients;
             this.deepAtomGradients = deepAtomGradients;
             this.blockSize = blockSize;
+            this.profile = profile;
         }
 
         @Override
         public Object clone() {
-            return new GradientWorker(termStore, rvAtomGradients, deepAtomGradients, blockSize);
+            return new GradientWorker(termStore, rvAtomGradients, deepAtomGradients, blockSize, profile);
         }
 
         @Override
@@ -440,6 +494,8 @@ public abstract class Reasoner<T extends ReasonerTerm> {
                     continue;
                 }
 
+                long termStart = profile ? System.nanoTime() : 0;
+
                 int[] atomIndexes = term.getAtomIndexes();
                 float innerPotential = term.computeInnerPotential(variableValues);
 
@@ -455,6 +511,10 @@ public abstract class Reasoner<T extends ReasonerTerm> {
 
                     rvAtomGradients[(int)blockIndex][atomIndexes[i]] += term.computeVariablePartial(i, innerPotential);
                 }
+
+                if (profile) {
+                    RuleProfiler.addOptimizationTime(term, System.nanoTime() - termStart);
+                }
             }
         }
     }
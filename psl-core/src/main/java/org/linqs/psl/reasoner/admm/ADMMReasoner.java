@@ -21,11 +21,13 @@ import org.linqs.psl.application.learning.weight.TrainingMap;
 import org.linqs.psl.config.Options;
 import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.admm.term.ADMMObjectiveTerm;
 import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
 import java.util.List;
@@ -111,7 +113,7 @@ public class ADMMReasoner extends Reasoner<ADMMObjectiveTerm> {
             BzNorm = 0.0f;
 
             // Minimize all the terms.
-            Parallel.count(numTermBlocks, new TermWorker(termStore, termBlockSize));
+            Parallel.count(numTermBlocks, new TermWorker(termStore, termBlockSize, RuleProfiler.sampleIteration(iteration)));
 
             // Compute new consensus values and residuals.
             Parallel.count(numVariableBlocks, new VariableWorker(termStore, variableBlockSize, numVariables));
@@ -127,6 +129,9 @@ public class ADMMReasoner extends Reasoner<ADMMObjectiveTerm> {
 
             breakADMM = breakOptimization(iteration, termStore, objective, oldObjective);
 
+            Metrics.gauge("reasoner_primal_residual", "reasoner", getClass().getSimpleName()).set(primalRes);
+            Metrics.gauge("reasoner_dual_residual", "reasoner", getClass().getSimpleName()).set(dualRes);
+
             if ((iteration % computePeriod == 0) || breakADMM) {
                 oldObjective = objective;
                 objective = parallelComputeObjective(termStore);
@@ -140,7 +145,11 @@ public class ADMMReasoner extends Reasoner<ADMMObjectiveTerm> {
                         iteration, objective.objective, objective.violatedConstraints,
                         primalRes, dualRes, epsilonPrimal, epsilonDual, (end - start), totalTime);
 
+                recordIteration(iteration, end - start, objective);
+
                 evaluate(termStore, iteration, evaluations, trainingMap);
+            } else {
+                recordIteration(iteration, end - start, null);
             }
 
             iteration++;
@@ -191,19 +200,21 @@ public class ADMMReasoner extends Reasoner<ADMMObjectiveTerm> {
         private final ADMMTermStore termStore;
         private final long blockSize;
         private final float[] consensusValues;
+        private final boolean profile;
 
-        public TermWorker(ADMMTermStore termStore, long blockSize) {
+        public TermWorker(ADMMTermStore termStore, long blockSize, boolean profile) {
             super();
 
             this.termStore = termStore;
             this.blockSize = blockSize;
+            this.profile = profile;
 
             this.consensusValues = termStore.getVariableValues();
         }
 
         @Override
         public Object clone() {
-            return new TermWorker(termStore, blockSize);
+            return new TermWorker(termStore, blockSize, profile);
         }
 
         @Override
@@ -223,8 +234,14 @@ public class ADMMReasoner extends Reasoner<ADMMObjectiveTerm> {
                     continue;
                 }
 
+                long termStart = profile ? System.nanoTime() : 0;
+
                 term.updateLagrange(stepSize, consensusValues);
                 term.minimize(stepSize, consensusValues);
+
+                if (profile) {
+                    RuleProfiler.addOptimizationTime(term, System.nanoTime() - termStart);
+                }
             }
         }
     }
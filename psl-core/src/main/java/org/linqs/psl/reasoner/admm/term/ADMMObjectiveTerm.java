@@ -25,6 +25,7 @@ import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.TermState;
 import org.linqs.psl.util.FloatMatrix;
 import org.linqs.psl.util.HashCode;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -116,6 +117,23 @@ public class ADMMObjectiveTerm extends ReasonerTerm {
                 rule, squared, hinge, comparator, variableValues, variableLagranges);
     }
 
+    @Override
+    public long estimateMemory() {
+        long bytes = super.estimateMemory() + 4 * MemoryAccountant.REFERENCE_BYTES;
+        bytes += MemoryAccountant.arrayBytes(variableValues.length, Float.BYTES);
+        bytes += MemoryAccountant.arrayBytes(variableLagranges.length, Float.BYTES);
+
+        if (consensusOptimizer != null) {
+            bytes += MemoryAccountant.arrayBytes(consensusOptimizer.length, Float.BYTES);
+        }
+
+        if (unitNormal != null) {
+            bytes += MemoryAccountant.arrayBytes(unitNormal.length, Float.BYTES);
+        }
+
+        return bytes;
+    }
+
     public static ADMMObjectiveTerm createLinearConstraintTerm(Hyperplane hyperplane, Rule rule, FunctionComparator comparator) {
         return new ADMMObjectiveTerm(hyperplane, rule, false, false, comparator);
     }
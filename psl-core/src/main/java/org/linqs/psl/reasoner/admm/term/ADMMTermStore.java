@@ -20,6 +20,7 @@ package org.linqs.psl.reasoner.admm.term;
 import org.linqs.psl.database.AtomStore;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.SimpleTermStore;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -105,6 +106,25 @@ public class ADMMTermStore extends SimpleTermStore<ADMMObjectiveTerm> {
         numLocalVariables = 0;
     }
 
+    @Override
+    public synchronized void estimateMemory(List<MemoryAccountant.Estimate> estimates) {
+        super.estimateMemory(estimates);
+
+        if (localRecords == null) {
+            return;
+        }
+
+        long bytes = MemoryAccountant.arrayBytes(localRecords.length, MemoryAccountant.REFERENCE_BYTES);
+        for (int i = 0; i < localRecords.length; i++) {
+            if (localRecords[i] != null) {
+                bytes += MemoryAccountant.arrayListBytes(localRecords[i].size());
+            }
+        }
+        bytes += numLocalVariables * MemoryAccountant.objectBytes(Long.BYTES + Short.BYTES);
+
+        estimates.add(new MemoryAccountant.Estimate(getClass().getSimpleName(), "local records", numLocalVariables, bytes));
+    }
+
     @Override
     public void close() {
         super.close();
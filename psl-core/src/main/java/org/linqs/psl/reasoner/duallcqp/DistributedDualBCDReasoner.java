@@ -19,10 +19,12 @@ package org.linqs.psl.reasoner.duallcqp;
 
 import org.linqs.psl.application.learning.weight.TrainingMap;
 import org.linqs.psl.evaluation.EvaluationInstance;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.duallcqp.term.DualLCQPObjectiveTerm;
 import org.linqs.psl.reasoner.duallcqp.term.DualLCQPTermStore;
 import org.linqs.psl.reasoner.term.TermStore;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 
 import java.util.List;
@@ -58,12 +60,13 @@ public class DistributedDualBCDReasoner extends DualBCDReasoner {
         int iteration = 1;
         while(!breakDualBCD) {
             long start = System.currentTimeMillis();
-            Parallel.count(numTermBlocks, new BlockUpdateWorker(termStore, blockSize));
+            Parallel.count(numTermBlocks, new BlockUpdateWorker(termStore, blockSize, RuleProfiler.sampleIteration(iteration)));
             long end = System.currentTimeMillis();
             totalTime += end - start;
 
             if ((iteration - 1) % computePeriod == 0) {
                 float variableMovement = primalVariableUpdate(termStore);
+                lastVariableMovement = variableMovement;
 
                 oldPrimalObjectiveResult = primalObjectiveResult;
                 primalObjectiveResult = parallelComputeObjective(termStore);
@@ -79,7 +82,13 @@ public class DistributedDualBCDReasoner extends DualBCDReasoner {
                         dualObjectiveResult.objective, primalObjectiveResult.objective - dualObjectiveResult.objective,
                         (end - start), totalTime);
 
+                recordIteration(iteration, end - start, primalObjectiveResult);
+                Metrics.gauge("reasoner_primal_dual_gap", "reasoner", getClass().getSimpleName())
+                        .set(primalObjectiveResult.objective - dualObjectiveResult.objective);
+
                 evaluate(termStore, iteration, evaluations, trainingMap);
+            } else {
+                recordIteration(iteration, end - start, null);
             }
 
             iteration++;
@@ -99,17 +108,19 @@ public class DistributedDualBCDReasoner extends DualBCDReasoner {
     private static class BlockUpdateWorker extends Parallel.Worker<Long> {
         private final DualLCQPTermStore termStore;
         private final int blockSize;
+        private final boolean profile;
 
-        public BlockUpdateWorker(DualLCQPTermStore termStore, int blockSize) {
+        public BlockUpdateWorker(DualLCQPTermStore termStore, int blockSize, boolean profile) {
             super();
 
             this.termStore = termStore;
             this.blockSize = blockSize;
+            this.profile = profile;
         }
 
         @Override
         public Object clone() {
-            return new BlockUpdateWorker(termStore, blockSize);
+            return new BlockUpdateWorker(termStore, blockSize, profile);
         }
 
         @Override
@@ -129,7 +140,13 @@ public class DistributedDualBCDReasoner extends DualBCDReasoner {
                     continue;
                 }
 
+                long termStart = profile ? System.nanoTime() : 0;
+
                 dualBlockUpdate(term, termStore);
+
+                if (profile) {
+                    RuleProfiler.addOptimizationTime(term, System.nanoTime() - termStart);
+                }
             }
         }
     }
@@ -24,6 +24,7 @@ import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.predicate.DeepPredicate;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.duallcqp.term.DualLCQPAtom;
 import org.linqs.psl.reasoner.duallcqp.term.DualLCQPObjectiveTerm;
@@ -53,6 +54,10 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
 
     protected final int computePeriod;
 
+    // The longest component optimization and largest final component movement of the current pass (see componentComplete()).
+    private int maxComponentIterations;
+    private float maxComponentMovement;
+
     public DualBCDReasoner() {
         super();
 
@@ -85,6 +90,9 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
     protected long internalOptimize(DualLCQPTermStore termStore, List<EvaluationInstance> evaluations, TrainingMap trainingMap) {
         log.trace("Starting optimization. Number of connected components: {}.", termStore.getConnectedComponents().size());
 
+        maxComponentIterations = 0;
+        maxComponentMovement = 0.0f;
+
         long start = System.currentTimeMillis();
         int blockSize = (int)(termStore.getConnectedComponents().size() / (Parallel.getNumThreads() * 4) + 1);
         int numComponentBlocks = (int)Math.ceil(termStore.getConnectedComponents().size() / (double)blockSize);
@@ -92,6 +100,11 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
         long end = System.currentTimeMillis();
         long totalTime = end - start;
 
+        // Components are optimized independently, so the whole pass is recorded as a single iteration
+        // with the iterations of the longest component and the objective of the full model.
+        recordIteration(maxComponentIterations, totalTime, parallelComputeObjective(termStore), maxComponentMovement);
+        RuleProfiler.countSampledIterations(maxComponentIterations);
+
         evaluate(termStore, 1, evaluations, trainingMap);
 
         return totalTime;
@@ -608,6 +621,17 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
         return new ObjectiveResult((float)(-0.5 * objectiveValue), 0);
     }
 
+    /**
+     * Note the iterations and final variable movement of a component that finished optimizing.
+     */
+    private synchronized void componentComplete(int iterations, float variableMovement) {
+        maxComponentIterations = Math.max(maxComponentIterations, iterations);
+
+        if (variableMovement > maxComponentMovement) {
+            maxComponentMovement = variableMovement;
+        }
+    }
+
     private class ComponentOptimizer extends Parallel.Worker<Long> {
         private final DualLCQPTermStore termStore;
         private final List<Integer> componentIds;
@@ -643,19 +667,29 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
 
                 ObjectiveResult primalObjectiveResult = null;
                 ObjectiveResult oldPrimalObjectiveResult = null;
+                float variableMovement = Float.NaN;
                 int iteration = 1;
                 boolean breakDualBCD = false;
                 while (!breakDualBCD) {
+                    // Sampled iterations are counted once for the whole pass (see internalOptimize()).
+                    boolean profile = RuleProfiler.isSampledIteration(iteration);
+
                     for (DualLCQPObjectiveTerm term : component) {
                         if (!term.isActive()) {
                             continue;
                         }
 
+                        long termStart = profile ? System.nanoTime() : 0;
+
                         dualBlockUpdate(term, termStore);
+
+                        if (profile) {
+                            RuleProfiler.addOptimizationTime(term, System.nanoTime() - termStart);
+                        }
                     }
 
                     if ((iteration - 1) % computePeriod == 0) {
-                        float variableMovement = primalVariableComponentUpdate(termStore, compenentId);
+                        variableMovement = primalVariableComponentUpdate(termStore, compenentId);
 
                         oldPrimalObjectiveResult = primalObjectiveResult;
                         primalObjectiveResult = DualBCDReasoner.computeComponentObjective(termStore, compenentId);
@@ -669,6 +703,8 @@ public class DualBCDReasoner extends Reasoner<DualLCQPObjectiveTerm> {
 
                     iteration++;
                 }
+
+                componentComplete(iteration - 1, variableMovement);
             }
         }
     }
@@ -100,6 +100,12 @@ public class DualLCQPObjectiveTerm extends ReasonerTerm {
      * The regularization of the loss term is equivalent to adding a squared hinge-loss term
      * with the same coefficients and constants but with a weight equal to the regularization parameter.
      */
+    @Override
+    public long estimateMemory() {
+        // The two dual variables and the equality flag.
+        return super.estimateMemory() + 2 * Double.BYTES + 1;
+    }
+
     @Override
     public float evaluate(float[] variableValues) {
         float incompatibility = evaluateIncompatibility(variableValues);
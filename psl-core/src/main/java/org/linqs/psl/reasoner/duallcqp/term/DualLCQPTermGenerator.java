@@ -17,7 +17,7 @@
  */
 package org.linqs.psl.reasoner.duallcqp.term;
 
-import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.reasoner.function.FunctionComparator;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.TermGenerator;
@@ -38,17 +38,17 @@ public class DualLCQPTermGenerator extends TermGenerator<DualLCQPObjectiveTerm>
 
     @Override
     public int createLossTerm(Collection<DualLCQPObjectiveTerm> newTerms,
-                              boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane hyperplane) {
+                              boolean isHinge, boolean isSquared, Rule rule, Hyperplane hyperplane) {
         // Interpret all loss terms as hinges.
         // This is safe for Lukasiewicz interpretation of logical rules and the current semantics for arithmetic rules.
-        newTerms.add(new DualLCQPObjectiveTerm(hyperplane, groundRule.getRule(), isSquared, true, null));
+        newTerms.add(new DualLCQPObjectiveTerm(hyperplane, rule, isSquared, true, null));
         return 1;
     }
 
     @Override
     public int createLinearConstraintTerm(Collection<DualLCQPObjectiveTerm> newTerms,
-                                          GroundRule groundRule, Hyperplane hyperplane, FunctionComparator comparator) {
-        newTerms.add(new DualLCQPObjectiveTerm(hyperplane, groundRule.getRule(), false, true, comparator));
+                                          Rule rule, Hyperplane hyperplane, FunctionComparator comparator) {
+        newTerms.add(new DualLCQPObjectiveTerm(hyperplane, rule, false, true, comparator));
         return 1;
     }
 }
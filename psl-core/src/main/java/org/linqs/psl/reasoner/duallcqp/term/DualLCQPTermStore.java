@@ -21,6 +21,9 @@ import org.linqs.psl.database.AtomStore;
 import org.linqs.psl.reasoner.term.ReasonerTerm;
 import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.reasoner.term.TermState;
+import org.linqs.psl.util.MemoryAccountant;
+
+import java.util.List;
 
 /**
  * A term store that manages both DualLCQPObjectiveTerms and DualLCQPAtoms.
@@ -107,6 +110,19 @@ public class DualLCQPTermStore extends SimpleTermStore<DualLCQPObjectiveTerm> {
         }
     }
 
+    @Override
+    public synchronized void estimateMemory(List<MemoryAccountant.Estimate> estimates) {
+        super.estimateMemory(estimates);
+
+        if (dualLCQPAtoms == null) {
+            return;
+        }
+
+        long bytes = MemoryAccountant.arrayBytes(dualLCQPAtoms.length, MemoryAccountant.REFERENCE_BYTES)
+                + dualLCQPAtoms.length * MemoryAccountant.objectBytes(3 * Double.BYTES);
+        estimates.add(new MemoryAccountant.Estimate(getClass().getSimpleName(), "dual atoms", dualLCQPAtoms.length, bytes));
+    }
+
     @Override
     public void loadState(TermState[] termStates) {
         for (int i = 0; i < size(); i++) {
@@ -21,6 +21,7 @@ import org.linqs.psl.application.learning.weight.TrainingMap;
 import org.linqs.psl.config.Options;
 import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.gradientdescent.term.GradientDescentObjectiveTerm;
 import org.linqs.psl.reasoner.term.TermStore;
@@ -131,7 +132,9 @@ public class GradientDescentReasoner extends Reasoner<GradientDescentObjectiveTe
                 }
             }
 
+            profileTerms = RuleProfiler.sampleIteration(iteration);
             parallelComputeGradient(termStore, gradient, deepAtomGradients);
+            profileTerms = false;
             clipGradientMagnitude(gradient, 1.0f);
 
             for (int i = 0; i < gradient.length; i++) {
@@ -165,6 +168,8 @@ public class GradientDescentReasoner extends Reasoner<GradientDescentObjectiveTe
             log.trace("Iteration {} -- Objective: {}, Iteration Time: {}, Total Optimization Time: {}.",
                     iteration, objectiveResult.objective, (endTime - startTime), totalTime);
 
+            recordIteration(iteration, endTime - startTime, objectiveResult);
+
             evaluate(termStore, iteration, evaluations, trainingMap);
 
             iteration++;
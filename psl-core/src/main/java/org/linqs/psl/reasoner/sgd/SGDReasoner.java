@@ -21,6 +21,7 @@ import org.linqs.psl.application.learning.weight.TrainingMap;
 import org.linqs.psl.config.Options;
 import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.reasoner.Reasoner;
 import org.linqs.psl.reasoner.sgd.term.SGDObjectiveTerm;
 import org.linqs.psl.reasoner.term.TermStore;
@@ -124,17 +125,24 @@ public class SGDReasoner extends Reasoner<SGDObjectiveTerm> {
                 Arrays.fill(prevGradient, 0.0f);
             }
 
+            boolean profile = RuleProfiler.sampleIteration(iteration);
             for (SGDObjectiveTerm term : termStore) {
                 if (!term.isActive()) {
                     continue;
                 }
 
+                long termStart = profile ? System.nanoTime() : 0;
+
                 if (iteration > 1) {
                     objective += term.evaluate(prevVariableValues);
                     addTermGradient(term, prevGradient, prevVariableValues, termStore.getVariableAtoms());
                 }
 
                 variableUpdate(term, termStore, iteration, learningRate);
+
+                if (profile) {
+                    RuleProfiler.addOptimizationTime(term, System.nanoTime() - termStart);
+                }
             }
 
             evaluate(termStore, iteration, evaluations, trainingMap);
@@ -167,6 +175,11 @@ public class SGDReasoner extends Reasoner<SGDObjectiveTerm> {
             if (iteration > 1) {
                 log.trace("Iteration {} -- Objective: {}, Violated Constraints: 0, Gradient Norm: {}, Iteration Time: {}, Total Optimization Time: {}",
                         iteration - 1, objective, MathUtils.pNorm(prevGradient, firstOrderNorm), (end - start), totalTime);
+
+                // The objective computed during an iteration is for the previous iteration's variable values.
+                recordIteration(iteration, end - start, new ObjectiveResult(objective, 0));
+            } else {
+                recordIteration(iteration, end - start, null);
             }
 
             iteration++;
@@ -17,8 +17,8 @@
  */
 package org.linqs.psl.reasoner.sgd.term;
 
-import org.linqs.psl.model.rule.GroundRule;
-import org.linqs.psl.model.rule.WeightedGroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.reasoner.function.FunctionComparator;
 import org.linqs.psl.reasoner.term.Hyperplane;
 import org.linqs.psl.reasoner.term.TermGenerator;
@@ -49,16 +49,16 @@ public class SGDTermGenerator extends TermGenerator<SGDObjectiveTerm> {
 
     @Override
     public int createLossTerm(Collection<SGDObjectiveTerm> newTerms,
-            boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane hyperplane) {
-        newTerms.add(new SGDObjectiveTerm(((WeightedGroundRule)groundRule).getRule(), isSquared, isHinge, hyperplane));
+            boolean isHinge, boolean isSquared, Rule rule, Hyperplane hyperplane) {
+        newTerms.add(new SGDObjectiveTerm((WeightedRule)rule, isSquared, isHinge, hyperplane));
         return 1;
     }
 
     @Override
     public int createLinearConstraintTerm(Collection<SGDObjectiveTerm> newTerms,
-            GroundRule groundRule, Hyperplane hyperplane, FunctionComparator comparator) {
+            Rule rule, Hyperplane hyperplane, FunctionComparator comparator) {
         if (warnOnConstraint) {
-            log.warn("SGD does not support hard constraints, i.e. " + groundRule);
+            log.warn("SGD does not support hard constraints, i.e. " + rule);
             warnOnConstraint = false;
         }
 
@@ -24,12 +24,18 @@ import org.linqs.psl.model.rule.WeightedRule;
 import org.linqs.psl.reasoner.function.FunctionComparator;
 import org.linqs.psl.util.Logger;
 import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.Arrays;
 
 public abstract class ReasonerTerm {
     private static final Logger log = Logger.getLogger(ReasonerTerm.class);
 
+    /**
+     * Estimated size of the fields of this base class (see estimateMemory()).
+     */
+    protected static final long FIELD_BYTES = 33;
+
     /**
      * The specific type of term represented by this instance.
      */
@@ -60,6 +66,11 @@ public abstract class ReasonerTerm {
     protected Rule rule;
     protected int[] atomIndexes;
 
+    /**
+     * If not NaN, then this weight is used instead of the rule's weight (see setWeightOverride()).
+     */
+    protected float weightOverride;
+
     protected short size;
     protected float[] coefficients;
     protected float constant;
@@ -72,6 +83,7 @@ public abstract class ReasonerTerm {
         this.active = true;
 
         this.rule = rule;
+        this.weightOverride = Float.NaN;
         this.comparator = comparator;
         this.squared = squared;
         this.hinge = hinge;
@@ -93,6 +105,7 @@ public abstract class ReasonerTerm {
         this.active = true;
 
         this.rule = rule;
+        this.weightOverride = Float.NaN;
         this.comparator = comparator;
         this.squared = squared;
         this.hinge = hinge;
@@ -106,6 +119,23 @@ public abstract class ReasonerTerm {
 
     public abstract ReasonerTerm copy();
 
+    /**
+     * A rough estimate of the heap used by this term (see MemoryAccountant).
+     * Subclasses that keep additional state should add it.
+     */
+    public long estimateMemory() {
+        return estimateBaseMemory(size);
+    }
+
+    /**
+     * A rough estimate of the heap used by the base portion of a term with the given number of atoms.
+     */
+    public static long estimateBaseMemory(int size) {
+        return MemoryAccountant.objectBytes(FIELD_BYTES)
+                + MemoryAccountant.arrayBytes(size, Integer.BYTES)
+                + MemoryAccountant.arrayBytes(size, Float.BYTES);
+    }
+
     /**
      * Get the specific type of term this instance represents.
      */
@@ -152,9 +182,13 @@ public abstract class ReasonerTerm {
     }
 
     /**
-     * Get the weight of the rule this term was generated from.
+     * Get the weight of the rule this term was generated from (unless it has been overridden).
      */
     public float getWeight() {
+        if (!Float.isNaN(weightOverride)) {
+            return weightOverride;
+        }
+
         if (rule != null && rule.isWeighted()) {
             return ((WeightedRule)rule).getWeight();
         }
@@ -162,6 +196,16 @@ public abstract class ReasonerTerm {
         return Float.POSITIVE_INFINITY;
     }
 
+    /**
+     * Use the given weight for this term instead of the weight of its rule,
+     * e.g. so that copies of a term store can be optimized under different weights at the same time.
+     * Pass Float.NaN to go back to using the rule's weight.
+     * Overrides are not carried over by copy().
+     */
+    public void setWeightOverride(float weight) {
+        weightOverride = weight;
+    }
+
     /**
      * Get the active state of the term.
      */
@@ -17,8 +17,12 @@
  */
 package org.linqs.psl.reasoner.term;
 
+import org.linqs.psl.model.atom.Atom;
 import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.util.MemoryAccountant;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,7 +33,7 @@ import java.util.Map;
 /**
  * A straightforward term store.
  */
-public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<T> {
+public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<T> implements MemoryAccountant.Accountable {
     protected ArrayList<T> allTerms;
 
     /**
@@ -38,10 +42,28 @@ public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<
      */
     protected Map<Integer, List<T>> connectedComponents;
 
+    /**
+     * If support is being tracked, a map from each ground atom to the terms
+     * created from ground rules that atom participates in.
+     * Observed atoms are included, even when their values were merged into term constants.
+     * See Options.GROUNDING_INCREMENTAL.
+     */
+    protected Map<Atom, List<T>> termSupport;
+
+    /**
+     * Bumped on every change to the set of (active) terms.
+     * Lets callers that cache structures over the terms (e.g. batch plans) tell when they are stale.
+     */
+    protected long modificationCount;
+
     public SimpleTermStore(AtomStore atomStore, TermGenerator<T> termGenerator) {
         super(atomStore, termGenerator);
         allTerms = new ArrayList<T>();
         connectedComponents = new HashMap<Integer, List<T>>();
+        termSupport = null;
+        modificationCount = 0;
+
+        MemoryAccountant.register(this);
     }
 
     /**
@@ -57,6 +79,7 @@ public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<
         T newTerm = (T) term;
 
         allTerms.add(newTerm);
+        modificationCount++;
 
         // Add to the connected component map.
         int termRootIndex = atomStore.findAtomRoot(atomStore.getAtom(newTerm.atomIndexes[0]));
@@ -95,6 +118,89 @@ public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<
         return 1;
     }
 
+    @Override
+    protected synchronized void addedGroundRule(GroundRule groundRule, List<T> newTerms) {
+        if (termSupport == null || newTerms.isEmpty()) {
+            return;
+        }
+
+        for (GroundAtom atom : groundRule.getAtoms()) {
+            List<T> supportedTerms = termSupport.get(atom);
+            if (supportedTerms == null) {
+                supportedTerms = new ArrayList<T>(newTerms.size());
+                termSupport.put(atom, supportedTerms);
+            }
+
+            supportedTerms.addAll(newTerms);
+        }
+    }
+
+    /**
+     * Start (or stop) tracking which atoms support each term.
+     * Tracking only applies to terms added after it is turned on.
+     */
+    public synchronized void setTrackTermSupport(boolean trackTermSupport) {
+        if (!trackTermSupport) {
+            termSupport = null;
+        } else if (termSupport == null) {
+            termSupport = new HashMap<Atom, List<T>>();
+        }
+    }
+
+    public boolean isTrackingTermSupport() {
+        return termSupport != null;
+    }
+
+    /**
+     * Retract (deactivate) all the terms that the given atom supports.
+     * Retracted terms stay in the store (so term indexes remain stable), but are skipped by reasoners.
+     * Requires support to be tracked (see setTrackTermSupport()).
+     * Returns the number of terms that were retracted (which may include terms already retracted by another atom).
+     */
+    public synchronized int retractTerms(Atom atom) {
+        if (termSupport == null) {
+            throw new IllegalStateException("Cannot retract terms by atom without tracking term support.");
+        }
+
+        List<T> supportedTerms = termSupport.remove(atom);
+        if (supportedTerms == null) {
+            return 0;
+        }
+
+        for (T term : supportedTerms) {
+            term.setActive(false);
+        }
+        modificationCount++;
+
+        return supportedTerms.size();
+    }
+
+    /**
+     * Retract (deactivate) all the terms that came from the given rule.
+     * Returns the number of terms that were retracted.
+     */
+    public synchronized int retractTerms(Rule rule) {
+        int count = 0;
+        for (T term : getTerms(rule)) {
+            term.setActive(false);
+            count++;
+        }
+        modificationCount++;
+
+        return count;
+    }
+
+    /**
+     * Override the weights of the terms from the given rules (see ReasonerTerm.setWeightOverride()).
+     * Terms from rules not in the map go back to using their rule's weight.
+     */
+    public synchronized void setWeightOverrides(Map<? extends Rule, Float> weights) {
+        for (T term : allTerms) {
+            Float weight = weights.get(term.getRule());
+            term.setWeightOverride((weight == null) ? Float.NaN : weight.floatValue());
+        }
+    }
+
     /**
      * Remove any existing terms and prepare for a new set.
      */
@@ -102,13 +208,60 @@ public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<
     public void clear() {
         allTerms.clear();
         connectedComponents.clear();
+        modificationCount++;
+
+        if (termSupport != null) {
+            termSupport.clear();
+        }
+    }
+
+    /**
+     * Estimate the memory held by this store.
+     * Per-term sizes are sampled from the first terms (see MemoryAccountant.SAMPLE_SIZE).
+     * Child classes with additional structures should add their own estimates.
+     */
+    @Override
+    public synchronized void estimateMemory(List<MemoryAccountant.Estimate> estimates) {
+        if (allTerms == null) {
+            return;
+        }
+
+        String owner = getClass().getSimpleName();
+
+        int sampleSize = Math.min(allTerms.size(), MemoryAccountant.SAMPLE_SIZE);
+        long sampledBytes = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            sampledBytes += allTerms.get(i).estimateMemory();
+        }
+
+        long termBytes = MemoryAccountant.extrapolate(sampledBytes, sampleSize, allTerms.size())
+                + MemoryAccountant.arrayListBytes(allTerms.size());
+        estimates.add(new MemoryAccountant.Estimate(owner, "terms", allTerms.size(), termBytes));
+
+        long componentBytes = MemoryAccountant.hashMapBytes(connectedComponents.size())
+                + connectedComponents.size() * MemoryAccountant.BOXED_INTEGER_BYTES;
+        for (List<T> component : connectedComponents.values()) {
+            componentBytes += MemoryAccountant.arrayListBytes(component.size());
+        }
+        estimates.add(new MemoryAccountant.Estimate(owner, "connected components", connectedComponents.size(), componentBytes));
+
+        if (termSupport != null) {
+            long supportBytes = MemoryAccountant.hashMapBytes(termSupport.size());
+            for (List<T> supportedTerms : termSupport.values()) {
+                supportBytes += MemoryAccountant.arrayListBytes(supportedTerms.size());
+            }
+            estimates.add(new MemoryAccountant.Estimate(owner, "term support", termSupport.size(), supportBytes));
+        }
     }
 
     @Override
     public void close() {
+        MemoryAccountant.unregister(this);
+
         super.close();
         allTerms = null;
         connectedComponents = null;
+        termSupport = null;
     }
 
     @Override
@@ -123,6 +276,13 @@ public abstract class SimpleTermStore<T extends ReasonerTerm> extends TermStore<
         return allTerms.get((int)index);
     }
 
+    /**
+     * A counter that changes whenever terms are added, retracted, or cleared.
+     */
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
     public List<T> getAllTerms() {
     	return allTerms;
     }
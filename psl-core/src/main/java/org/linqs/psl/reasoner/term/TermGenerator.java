@@ -21,6 +21,7 @@ import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
 import org.linqs.psl.model.rule.UnweightedGroundRule;
 import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.reasoner.function.ConstraintTerm;
@@ -79,7 +80,7 @@ public abstract class TermGenerator<T extends ReasonerTerm> {
             }
 
             // Non-negative functions have a hinge.
-            count = createLossTerm(newTerms, function.isNonNegative(), function.isSquared(), groundRule, hyperplane);
+            count = createLossTerm(newTerms, function.isNonNegative(), function.isSquared(), groundRule.getRule(), hyperplane);
         } else if (groundRule instanceof UnweightedGroundRule) {
             ConstraintTerm constraint = ((UnweightedGroundRule)groundRule).getConstraintDefinition(mergeConstants);
             GeneralFunction function = constraint.getFunction();
@@ -89,7 +90,7 @@ public abstract class TermGenerator<T extends ReasonerTerm> {
             }
 
             hyperplane.setConstant((float)(constraint.getValue() + hyperplane.getConstant()));
-            count = createLinearConstraintTerm(newTerms, groundRule, hyperplane, constraint.getComparator());
+            count = createLinearConstraintTerm(newTerms, groundRule.getRule(), hyperplane, constraint.getComparator());
         } else {
             throw new IllegalArgumentException("Unsupported ground rule: " + groundRule);
         }
@@ -154,14 +155,14 @@ public abstract class TermGenerator<T extends ReasonerTerm> {
     }
 
     /**
-     * Create a term from a ground rule and hyperplane, and add it to the collection of new terms.
+     * Create a term from a rule and hyperplane, and add it to the collection of new terms.
      * Non-hinge terms are linear combinations (ala arithmetic rules).
      * Non-squared terms are linear.
      *
      * @return the number of terms added to the supplied collection.
      */
     public abstract int createLossTerm(Collection<T> newTerms,
-            boolean isHinge, boolean isSquared, GroundRule groundRule, Hyperplane hyperplane);
+            boolean isHinge, boolean isSquared, Rule rule, Hyperplane hyperplane);
 
     /**
      * Create a hard constraint term, and add it to the collection of new terms.
@@ -169,5 +170,5 @@ public abstract class TermGenerator<T extends ReasonerTerm> {
      * @return the number of terms added to the supplied collection.
      */
     public abstract int createLinearConstraintTerm(Collection<T> newTerms,
-            GroundRule groundRule, Hyperplane hyperplane, FunctionComparator comparator);
+            Rule rule, Hyperplane hyperplane, FunctionComparator comparator);
 }
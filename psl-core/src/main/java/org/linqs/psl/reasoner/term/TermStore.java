@@ -22,6 +22,7 @@ import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.util.IteratorUtils;
 import org.linqs.psl.util.Parallel;
 
@@ -115,12 +116,25 @@ public abstract class TermStore<T extends ReasonerTerm> implements Iterable<T> {
             count += add(resources.newTerms.get(i));
         }
 
+        if (RuleProfiler.isEnabled()) {
+            RuleProfiler.addGroundRule(groundRule.getRule(), resources.newTerms);
+        }
+
+        addedGroundRule(groundRule, resources.newTerms);
+
         resources.newTerms.clear();
         resources.newHyperplane.clear();
 
         return count;
     }
 
+    /**
+     * A notification that a ground rule was converted into the given (already added) terms.
+     * Note that this may be called in parallel.
+     */
+    protected void addedGroundRule(GroundRule groundRule, List<T> newTerms) {
+    }
+
     /**
      * Reset all atoms and terms.
      * Atom values are used to reset variables.
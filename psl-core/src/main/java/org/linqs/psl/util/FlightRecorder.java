@@ -0,0 +1,262 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Custom Java Flight Recorder (JFR) events for PSL's hot paths.
+ *
+ * Events are only allocated and filled when a recording has them enabled,
+ * so the cost when JFR is off is a single check.
+ * On JVMs without JFR, all of these methods are no-ops.
+ *
+ * Durations come from begin*() calls that return an opaque token (null when the event is disabled)
+ * that must be passed to the matching end*() call.
+ * Each event type is only ever referenced through its own type (and never as a jdk.jfr.Event)
+ * so that this class still verifies on JVMs that do not have JFR.
+ */
+public final class FlightRecorder {
+    public static final String CATEGORY = "PSL";
+
+    private static final boolean AVAILABLE = checkAvailable();
+
+    // Static only.
+    private FlightRecorder() {}
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static Object beginGroundingQuery() {
+        if (!AVAILABLE) {
+            return null;
+        }
+
+        GroundingQueryEvent event = new GroundingQueryEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public static void endGroundingQuery(Object token, String rule, String query, long rows, long terms) {
+        if (token == null) {
+            return;
+        }
+
+        GroundingQueryEvent event = (GroundingQueryEvent)token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.rule = rule;
+            event.query = query;
+            event.rows = rows;
+            event.terms = terms;
+            event.commit();
+        }
+    }
+
+    public static Object beginParallelRegion() {
+        if (!AVAILABLE) {
+            return null;
+        }
+
+        ParallelRegionEvent event = new ParallelRegionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public static void endParallelRegion(Object token, String method, int threads, Parallel.RunTimings timings) {
+        if (token == null) {
+            return;
+        }
+
+        ParallelRegionEvent event = (ParallelRegionEvent)token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.threads = threads;
+            event.iterations = timings.iterations;
+            event.parentWaitTime = timings.parentWaitTimeMS;
+            event.workerWaitTime = timings.workerWaitTimeMS;
+            event.workerWorkTime = timings.workerWorkTimeMS;
+            event.commit();
+        }
+    }
+
+    public static Object beginCommitBatch() {
+        if (!AVAILABLE) {
+            return null;
+        }
+
+        CommitBatchEvent event = new CommitBatchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    public static void endCommitBatch(Object token, String predicate, long atoms, boolean bulk) {
+        if (token == null) {
+            return;
+        }
+
+        CommitBatchEvent event = (CommitBatchEvent)token;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.predicate = predicate;
+            event.atoms = atoms;
+            event.bulk = bulk;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reasoner iterations are reported after the fact, so the iteration time is a field instead of the event duration.
+     * NaN is used for values that were not computed on this iteration.
+     */
+    public static void reasonerIteration(String reasoner, int iteration, long iterationTimeMS,
+            double objective, long violatedConstraints, double movement) {
+        if (!AVAILABLE) {
+            return;
+        }
+
+        ReasonerIterationEvent event = new ReasonerIterationEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.reasoner = reasoner;
+        event.iteration = iteration;
+        event.iterationTime = iterationTimeMS;
+        event.objective = objective;
+        event.violatedConstraints = violatedConstraints;
+        event.movement = movement;
+        event.commit();
+    }
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @Name("org.linqs.psl.GroundingQuery")
+    @Label("Grounding Query")
+    @Category({CATEGORY, "Grounding"})
+    @Description("A single grounding query and the terms generated from its results.")
+    public static class GroundingQueryEvent extends Event {
+        @Label("Rule")
+        public String rule;
+
+        @Label("Query")
+        public String query;
+
+        @Label("Rows")
+        public long rows;
+
+        @Label("Terms")
+        public long terms;
+    }
+
+    @Name("org.linqs.psl.ParallelRegion")
+    @Label("Parallel Region")
+    @Category({CATEGORY, "Parallel"})
+    @Description("A single call to Parallel.count(), Parallel.foreach(), or Parallel.foreachBatch().")
+    public static class ParallelRegionEvent extends Event {
+        @Label("Method")
+        public String method;
+
+        @Label("Threads")
+        public int threads;
+
+        @Label("Iterations")
+        public long iterations;
+
+        @Label("Parent Wait Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long parentWaitTime;
+
+        @Label("Worker Wait Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long workerWaitTime;
+
+        @Label("Worker Work Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long workerWorkTime;
+    }
+
+    @Name("org.linqs.psl.ReasonerIteration")
+    @Label("Reasoner Iteration")
+    @Category({CATEGORY, "Reasoner"})
+    @Description("A single optimization iteration of a reasoner.")
+    public static class ReasonerIterationEvent extends Event {
+        @Label("Reasoner")
+        public String reasoner;
+
+        @Label("Iteration")
+        public int iteration;
+
+        @Label("Iteration Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long iterationTime;
+
+        @Label("Objective")
+        public double objective;
+
+        @Label("Violated Constraints")
+        public long violatedConstraints;
+
+        @Label("Variable Movement")
+        public double movement;
+    }
+
+    @Name("org.linqs.psl.CommitBatch")
+    @Label("Commit Batch")
+    @Category({CATEGORY, "Database"})
+    @Description("A single batch of atoms written to the database.")
+    public static class CommitBatchEvent extends Event {
+        @Label("Predicate")
+        public String predicate;
+
+        @Label("Atoms")
+        public long atoms;
+
+        @Label("Bulk")
+        public boolean bulk;
+    }
+}
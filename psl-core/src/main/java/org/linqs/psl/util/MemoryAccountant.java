@@ -0,0 +1,252 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.util;
+
+import org.linqs.psl.config.Options;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A static accountant for the estimated memory used by PSL's major structures
+ * (atom stores, term stores, training maps, etc).
+ *
+ * Structures register themselves (see Accountable) and are only weakly held.
+ * Estimates are only computed when asked for (snapshot()) or when logging (see Options.MEMORY_ACCOUNTANT_LOG),
+ * so there is no cost when the accountant is not used.
+ *
+ * All sizes are rough estimates for a 64-bit JVM with compressed references.
+ * Large collections are sampled and extrapolated.
+ */
+public final class MemoryAccountant {
+    private static final Logger log = Logger.getLogger(MemoryAccountant.class);
+
+    public static final long OBJECT_HEADER_BYTES = 12;
+    public static final long ARRAY_HEADER_BYTES = 16;
+    public static final long REFERENCE_BYTES = 4;
+    public static final long BOXED_INTEGER_BYTES = 16;
+    public static final long HASH_MAP_NODE_BYTES = 32;
+    public static final long HASH_MAP_BYTES = 48;
+    public static final long ARRAY_LIST_BYTES = 24;
+
+    /**
+     * The maximum number of items to look at when estimating the size of a large collection.
+     */
+    public static final int SAMPLE_SIZE = 1000;
+
+    private static final int MAX_TABLE_LABEL_LENGTH = 40;
+
+    private static final Set<Accountable> sources = Collections.newSetFromMap(new WeakHashMap<Accountable, Boolean>());
+
+    // Static only.
+    private MemoryAccountant() {}
+
+    /**
+     * Something that can estimate the memory it is using.
+     */
+    public static interface Accountable {
+        /**
+         * Add estimates for each of the structures this object holds.
+         */
+        public void estimateMemory(List<Estimate> estimates);
+    }
+
+    public static synchronized void register(Accountable source) {
+        sources.add(source);
+    }
+
+    public static synchronized void unregister(Accountable source) {
+        sources.remove(source);
+    }
+
+    /**
+     * Get estimates from all live registered structures.
+     */
+    public static List<Estimate> snapshot() {
+        List<Accountable> liveSources = null;
+        synchronized (MemoryAccountant.class) {
+            liveSources = new ArrayList<Accountable>(sources);
+        }
+
+        List<Estimate> estimates = new ArrayList<Estimate>();
+        for (Accountable source : liveSources) {
+            source.estimateMemory(estimates);
+        }
+
+        return estimates;
+    }
+
+    public static long getTotalBytes(List<Estimate> estimates) {
+        long total = 0;
+        for (Estimate estimate : estimates) {
+            total += estimate.bytes;
+        }
+
+        return total;
+    }
+
+    /**
+     * If enabled (Options.MEMORY_ACCOUNTANT_LOG), log the estimates from all registered structures
+     * (and any additional unregistered ones) at the end of some phase (e.g. "grounding").
+     */
+    public static void log(String phase, Accountable... additionalSources) {
+        if (!Options.MEMORY_ACCOUNTANT_LOG.getBoolean()) {
+            return;
+        }
+
+        List<Estimate> estimates = snapshot();
+        for (Accountable source : additionalSources) {
+            if (source != null) {
+                source.estimateMemory(estimates);
+            }
+        }
+
+        log(phase, estimates);
+    }
+
+    /**
+     * If enabled (Options.MEMORY_ACCOUNTANT_LOG), log the given estimates
+     * and also make them available as gauges in Metrics.
+     */
+    public static void log(String phase, List<Estimate> estimates) {
+        if (!Options.MEMORY_ACCOUNTANT_LOG.getBoolean()) {
+            return;
+        }
+
+        for (Estimate estimate : estimates) {
+            Metrics.gauge("memory_estimated_bytes", "phase", phase, "owner", estimate.owner, "structure", estimate.structure).set(estimate.bytes);
+        }
+
+        log.info("Estimated memory after {}:{}{}", phase, System.lineSeparator(), toTable(estimates));
+    }
+
+    public static String toTable(List<Estimate> estimates) {
+        StringBuilder builder = new StringBuilder();
+
+        String rowFormat = "%-" + MAX_TABLE_LABEL_LENGTH + "s %-24s %14s %14s %14s %14s%n";
+        builder.append(String.format(rowFormat, "Owner", "Structure", "Items", "Bytes", "Bytes/Item", "Slack Bytes"));
+
+        for (Estimate estimate : estimates) {
+            String owner = estimate.owner;
+            if (owner.length() > MAX_TABLE_LABEL_LENGTH) {
+                owner = owner.substring(0, MAX_TABLE_LABEL_LENGTH - 3) + "...";
+            }
+
+            builder.append(String.format(rowFormat,
+                    owner, estimate.structure, estimate.items, estimate.bytes,
+                    String.format("%.1f", estimate.getBytesPerItem()), estimate.slackBytes));
+        }
+
+        builder.append(String.format("Total: %d bytes (%.1f MB)%n", getTotalBytes(estimates), getTotalBytes(estimates) / (1024.0 * 1024.0)));
+
+        return builder.toString();
+    }
+
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * The size of an object with the given bytes of fields.
+     */
+    public static long objectBytes(long fieldBytes) {
+        return align(OBJECT_HEADER_BYTES + fieldBytes);
+    }
+
+    public static long arrayBytes(long length, long elementBytes) {
+        return align(ARRAY_HEADER_BYTES + length * elementBytes);
+    }
+
+    /**
+     * The size of an ArrayList (but not its elements).
+     */
+    public static long arrayListBytes(long size) {
+        return ARRAY_LIST_BYTES + arrayBytes(size, REFERENCE_BYTES);
+    }
+
+    /**
+     * The size of a HashMap (but not its keys or values).
+     */
+    public static long hashMapBytes(long size) {
+        long tableSize = 16;
+        while (tableSize * 0.75 < size) {
+            tableSize *= 2;
+        }
+
+        return HASH_MAP_BYTES + arrayBytes(tableSize, REFERENCE_BYTES) + size * HASH_MAP_NODE_BYTES;
+    }
+
+    /**
+     * Extrapolate the size of a full collection from a sample of it.
+     */
+    public static long extrapolate(long sampledBytes, long sampledCount, long totalCount) {
+        if (sampledCount == 0) {
+            return 0;
+        }
+
+        return (long)((double)sampledBytes / sampledCount * totalCount);
+    }
+
+    /**
+     * The estimated size of a single structure.
+     */
+    public static class Estimate {
+        /**
+         * The name of the object that holds the structure (usually its class).
+         */
+        public final String owner;
+        public final String structure;
+        public final long items;
+        public final long bytes;
+
+        /**
+         * Bytes that are allocated, but not currently used (e.g. from over-allocation).
+         * These are included in bytes.
+         */
+        public final long slackBytes;
+
+        public Estimate(String owner, String structure, long items, long bytes) {
+            this(owner, structure, items, bytes, 0);
+        }
+
+        public Estimate(String owner, String structure, long items, long bytes, long slackBytes) {
+            this.owner = owner;
+            this.structure = structure;
+            this.items = items;
+            this.bytes = bytes;
+            this.slackBytes = slackBytes;
+        }
+
+        public double getBytesPerItem() {
+            if (items == 0) {
+                return 0.0;
+            }
+
+            return (double)bytes / items;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s -- Items: %d, Bytes: %d, Bytes/Item: %.1f, Slack Bytes: %d",
+                    owner, structure, items, bytes, getBytesPerItem(), slackBytes);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.util;
+
+import org.linqs.psl.config.Options;
+
+import org.json.JSONArray;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A static registry of named metrics (counters, gauges, and histograms) that describe what a PSL run did.
+ * Metrics are identified by a name and an optional set of labels (given as alternating keys and values),
+ * and are created on first use.
+ *
+ * Metrics are meant to be updated at the granularity of phases and iterations (not per term or atom),
+ * so updates are cheap but not free.
+ *
+ * Snapshots can be exported as JSON or in the Prometheus text exposition format.
+ * The registry is process-wide, and the runtime clears it at the start of every run.
+ */
+public final class Metrics {
+    private static final Logger log = Logger.getLogger(Metrics.class);
+
+    public static final String PREFIX = "psl_";
+
+    /**
+     * Bucket upper bounds for timers (in seconds).
+     */
+    public static final double[] TIME_BUCKETS = {0.0001, 0.001, 0.01, 0.1, 1.0, 10.0, 100.0, 1000.0};
+
+    /**
+     * Bucket upper bounds for general values (e.g., row and term counts).
+     */
+    public static final double[] VALUE_BUCKETS = {1.0, 10.0, 100.0, 1000.0, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8, 1.0e9};
+
+    public static enum Format {
+        JSON,
+        PROMETHEUS
+    }
+
+    public static enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+    private static final Map<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    // Static only.
+    private Metrics() {}
+
+    public static Counter counter(String name, String... labels) {
+        return (Counter)getMetric(Type.COUNTER, name, labels, null);
+    }
+
+    public static Gauge gauge(String name, String... labels) {
+        return (Gauge)getMetric(Type.GAUGE, name, labels, null);
+    }
+
+    public static Histogram histogram(String name, String... labels) {
+        return (Histogram)getMetric(Type.HISTOGRAM, name, labels, VALUE_BUCKETS);
+    }
+
+    /**
+     * Get a histogram of durations (in seconds).
+     * By convention, timer names end in "_seconds".
+     */
+    public static Histogram timer(String name, String... labels) {
+        return (Histogram)getMetric(Type.HISTOGRAM, name, labels, TIME_BUCKETS);
+    }
+
+    /**
+     * Remove all metrics.
+     */
+    public static void clear() {
+        metrics.clear();
+    }
+
+    /**
+     * Get a point-in-time copy of every metric, sorted by name and then labels.
+     * Each metric is a map with a name, type, labels, and either a value or histogram statistics.
+     */
+    public static List<Map<String, Object>> snapshot() {
+        List<Metric> sortedMetrics = getSortedMetrics();
+
+        List<Map<String, Object>> snapshot = new ArrayList<Map<String, Object>>(sortedMetrics.size());
+        for (Metric metric : sortedMetrics) {
+            snapshot.add(metric.snapshot());
+        }
+
+        return snapshot;
+    }
+
+    public static String toJSON() {
+        return new JSONArray(snapshot()).toString(4);
+    }
+
+    /**
+     * Get all metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public static String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+
+        String lastName = null;
+        for (Metric metric : getSortedMetrics()) {
+            if (!metric.name.equals(lastName)) {
+                builder.append("# TYPE ").append(metric.name).append(" ").append(metric.type.toString().toLowerCase()).append("\n");
+                lastName = metric.name;
+            }
+
+            metric.appendPrometheus(builder);
+        }
+
+        return builder.toString();
+    }
+
+    public static String format(Format format) {
+        switch (format) {
+            case JSON:
+                return toJSON();
+            case PROMETHEUS:
+                return toPrometheus();
+            default:
+                throw new IllegalStateException("Unknown metrics format: " + format);
+        }
+    }
+
+    /**
+     * Write a snapshot to the path in Options.METRICS_OUTPUT_PATH (if set) in Options.METRICS_OUTPUT_FORMAT.
+     */
+    public static void output() {
+        String path = Options.METRICS_OUTPUT_PATH.getString();
+        if (path == null) {
+            return;
+        }
+
+        output(path, Format.valueOf(Options.METRICS_OUTPUT_FORMAT.getString().toUpperCase()));
+    }
+
+    public static void output(String path, Format format) {
+        try (BufferedWriter writer = FileUtils.getBufferedWriter(path)) {
+            writer.write(format(format));
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write metrics to: " + path, ex);
+        }
+
+        log.debug("Wrote {} metrics to {}.", metrics.size(), path);
+    }
+
+    private static Metric getMetric(Type type, String name, String[] labels, double[] buckets) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Metric labels must be given as key/value pairs, found: " + Arrays.toString(labels));
+        }
+
+        String fullName = PREFIX + name;
+        String key = fullName + formatLabels(labels);
+
+        Metric metric = metrics.get(key);
+        if (metric == null) {
+            Metric newMetric = null;
+            switch (type) {
+                case COUNTER:
+                    newMetric = new Counter(fullName, labels);
+                    break;
+                case GAUGE:
+                    newMetric = new Gauge(fullName, labels);
+                    break;
+                case HISTOGRAM:
+                    newMetric = new Histogram(fullName, labels, buckets);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown metric type: " + type);
+            }
+
+            metric = metrics.putIfAbsent(key, newMetric);
+            if (metric == null) {
+                metric = newMetric;
+            }
+        }
+
+        if (metric.type != type) {
+            throw new IllegalStateException(String.format(
+                    "Metric %s was already registered as a %s, but was requested as a %s.", key, metric.type, type));
+        }
+
+        return metric;
+    }
+
+    private static List<Metric> getSortedMetrics() {
+        // Sort on the name first so all series of a metric stay together.
+        List<Metric> sortedMetrics = new ArrayList<Metric>(metrics.values());
+        Collections.sort(sortedMetrics, new Comparator<Metric>() {
+            @Override
+            public int compare(Metric a, Metric b) {
+                int result = a.name.compareTo(b.name);
+                if (result != 0) {
+                    return result;
+                }
+
+                return formatLabels(a.labels).compareTo(formatLabels(b.labels));
+            }
+        });
+
+        return sortedMetrics;
+    }
+
+    /**
+     * Format labels (and optionally an extra label) as Prometheus does: {key="value",...}.
+     */
+    private static String formatLabels(String[] labels, String... extraLabels) {
+        if (labels.length == 0 && extraLabels.length == 0) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("{");
+
+        for (String[] pairs : new String[][]{labels, extraLabels}) {
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (builder.length() > 1) {
+                    builder.append(",");
+                }
+
+                builder.append(pairs[i]).append("=\"");
+                builder.append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+                builder.append("\"");
+            }
+        }
+
+        builder.append("}");
+        return builder.toString();
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+
+        if (Double.isInfinite(value)) {
+            return (value > 0) ? "+Inf" : "-Inf";
+        }
+
+        if (value == Math.rint(value) && Math.abs(value) < 1.0e15) {
+            return Long.toString((long)value);
+        }
+
+        return Double.toString(value);
+    }
+
+    /**
+     * JSON does not allow non-finite numbers, so those are reported as strings.
+     */
+    private static Object snapshotValue(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return formatValue(value);
+        }
+
+        return Double.valueOf(value);
+    }
+
+    public static abstract class Metric {
+        public final String name;
+        public final Type type;
+        protected final String[] labels;
+
+        protected Metric(String name, Type type, String[] labels) {
+            this.name = name;
+            this.type = type;
+            this.labels = labels;
+        }
+
+        protected Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+            snapshot.put("name", name);
+            snapshot.put("type", type.toString().toLowerCase());
+
+            Map<String, String> labelMap = new LinkedHashMap<String, String>();
+            for (int i = 0; i < labels.length; i += 2) {
+                labelMap.put(labels[i], labels[i + 1]);
+            }
+            snapshot.put("labels", labelMap);
+
+            return snapshot;
+        }
+
+        protected abstract void appendPrometheus(StringBuilder builder);
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter extends Metric {
+        private final LongAdder count;
+
+        private Counter(String name, String[] labels) {
+            super(name, Type.COUNTER, labels);
+            count = new LongAdder();
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long value) {
+            count.add(value);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        protected Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = super.snapshot();
+            snapshot.put("value", Long.valueOf(get()));
+            return snapshot;
+        }
+
+        @Override
+        protected void appendPrometheus(StringBuilder builder) {
+            builder.append(name).append(formatLabels(labels)).append(" ").append(get()).append("\n");
+        }
+    }
+
+    /**
+     * A value that can go up and down (the last set value wins).
+     */
+    public static class Gauge extends Metric {
+        private final AtomicLong bits;
+
+        private Gauge(String name, String[] labels) {
+            super(name, Type.GAUGE, labels);
+            bits = new AtomicLong(Double.doubleToLongBits(0.0));
+        }
+
+        public void set(double value) {
+            bits.set(Double.doubleToLongBits(value));
+        }
+
+        public double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        @Override
+        protected Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = super.snapshot();
+            snapshot.put("value", snapshotValue(get()));
+            return snapshot;
+        }
+
+        @Override
+        protected void appendPrometheus(StringBuilder builder) {
+            builder.append(name).append(formatLabels(labels)).append(" ").append(formatValue(get())).append("\n");
+        }
+    }
+
+    /**
+     * A distribution of observed values with fixed buckets.
+     * Also tracks the count, sum, min, and max of all observations.
+     */
+    public static class Histogram extends Metric {
+        private final double[] buckets;
+        private final long[] bucketCounts;
+
+        private long count;
+        private double sum;
+        private double min;
+        private double max;
+
+        private Histogram(String name, String[] labels, double[] buckets) {
+            super(name, Type.HISTOGRAM, labels);
+
+            this.buckets = buckets;
+            bucketCounts = new long[buckets.length];
+
+            count = 0;
+            sum = 0.0;
+            min = 0.0;
+            max = 0.0;
+        }
+
+        public synchronized void observe(double value) {
+            if (count == 0 || value < min) {
+                min = value;
+            }
+
+            if (count == 0 || value > max) {
+                max = value;
+            }
+
+            count++;
+            sum += value;
+
+            for (int i = 0; i < buckets.length; i++) {
+                if (value <= buckets[i]) {
+                    bucketCounts[i]++;
+                    break;
+                }
+            }
+        }
+
+        public void observeMillis(long milliseconds) {
+            observe(milliseconds / 1000.0);
+        }
+
+        /**
+         * Observe the time (in seconds) since a previous call to System.nanoTime().
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1.0e9);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getSum() {
+            return sum;
+        }
+
+        @Override
+        protected synchronized Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = super.snapshot();
+            snapshot.put("count", Long.valueOf(count));
+            snapshot.put("sum", snapshotValue(sum));
+            snapshot.put("min", snapshotValue(min));
+            snapshot.put("max", snapshotValue(max));
+            snapshot.put("mean", snapshotValue((count == 0) ? 0.0 : (sum / count)));
+
+            Map<String, Long> bucketMap = new LinkedHashMap<String, Long>();
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += bucketCounts[i];
+                bucketMap.put(formatValue(buckets[i]), Long.valueOf(cumulative));
+            }
+            bucketMap.put("+Inf", Long.valueOf(count));
+            snapshot.put("buckets", bucketMap);
+
+            return snapshot;
+        }
+
+        @Override
+        protected synchronized void appendPrometheus(StringBuilder builder) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += bucketCounts[i];
+                builder.append(name).append("_bucket").append(formatLabels(labels, "le", formatValue(buckets[i])));
+                builder.append(" ").append(cumulative).append("\n");
+            }
+
+            builder.append(name).append("_bucket").append(formatLabels(labels, "le", "+Inf")).append(" ").append(count).append("\n");
+            builder.append(name).append("_sum").append(formatLabels(labels)).append(" ").append(formatValue(sum)).append("\n");
+            builder.append(name).append("_count").append(formatLabels(labels)).append(" ").append(count).append("\n");
+        }
+    }
+}
@@ -37,6 +37,11 @@ import java.util.concurrent.TimeUnit;
  * Utilities to run operations in parallel.
  * The threads will be started up on the first call, and not shut down until the JVM shuts down.
  * Since the thread pool (and CPU) is shared, only one task may be run in parallel at a time.
+ *
+ * Parallel calls made from inside a worker (e.g. a reasoner running inside a parallel task)
+ * are run inline on the calling thread instead of going through the pool.
+ * This lets coarse-grained work (like several independent inference runs) be spread over the pool,
+ * with each task's own parallel calls running sequentially.
  */
 public final class Parallel {
     private static final Logger log = Logger.getLogger(Parallel.class);
@@ -44,7 +49,10 @@ public final class Parallel {
     private static boolean initialized = false;
 
     // Defer assignment until a request is actually made to let the config get initialized.
-    private static int numThreads = -1;
+    private static volatile int numThreads = -1;
+
+    // Set on the pool's threads, so that nested parallel calls can be run inline.
+    private static final ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>();
 
     // Block putting work in to the pool until there are workers ready.
     private static BlockingQueue<Worker<?>> workerQueue;
@@ -66,7 +74,18 @@ public final class Parallel {
         shutdown();
     }
 
-    public synchronized static int getNumThreads() {
+    public static int getNumThreads() {
+        // Workers may ask for the number of threads while the parent holds the lock,
+        // so only lock when the value has not yet been set.
+        int threads = numThreads;
+        if (threads == -1) {
+            threads = initNumThreads();
+        }
+
+        return threads;
+    }
+
+    private synchronized static int initNumThreads() {
         if (numThreads == -1) {
             numThreads = Options.PARALLEL_NUM_THREADS.getInt();
         }
@@ -74,6 +93,14 @@ public final class Parallel {
         return numThreads;
     }
 
+    /**
+     * Check if the calling thread is one of the pool's threads,
+     * in which case parallel calls made on it are run inline.
+     */
+    public static boolean isPoolThread() {
+        return Boolean.TRUE.equals(poolThread.get());
+    }
+
     public static boolean hasThreadObject(String key) {
         if (!threadObjects.containsKey(Thread.currentThread())) {
             threadObjects.put(Thread.currentThread(), new HashMap<String, Object>());
@@ -104,11 +131,23 @@ public final class Parallel {
      * The caller is trusted to provide appropriate numbers.
      * The long value provided to the worker will be the number also passed as a Long.
      */
-    public synchronized static RunTimings count(long start, long end, long increment, Worker<Long> baseWorker) {
+    public static RunTimings count(long start, long end, long increment, Worker<Long> baseWorker) {
+        if (isPoolThread()) {
+            return countInline(start, end, increment, baseWorker);
+        }
+
+        return countPooled(start, end, increment, baseWorker);
+    }
+
+    private synchronized static RunTimings countPooled(long start, long end, long increment, Worker<Long> baseWorker) {
+        Object event = FlightRecorder.beginParallelRegion();
+
         initWorkers(baseWorker, null);
         RunTimings timings = countInternal(start, end, increment);
         cleanupWorkers();
 
+        FlightRecorder.endParallelRegion(event, "count", numThreads, timings);
+
         return timings;
     }
 
@@ -126,6 +165,23 @@ public final class Parallel {
         return count(0, end, 1, baseWorker);
     }
 
+    private static RunTimings countInline(long start, long end, long increment, Worker<Long> baseWorker) {
+        long iterations = 0;
+        long time = System.currentTimeMillis();
+
+        baseWorker.init(0, null);
+        try {
+            for (long i = start; i < end; i += increment) {
+                baseWorker.work(i, Long.valueOf(i));
+                iterations++;
+            }
+        } finally {
+            baseWorker.close();
+        }
+
+        return new RunTimings(iterations, 0, 0, System.currentTimeMillis() - time);
+    }
+
     private static RunTimings countInternal(long start, long end, long increment) {
         long iterations = 0;
         long parentWaitTimeMS = 0;
@@ -178,11 +234,23 @@ public final class Parallel {
      * Invoke a worker once for each item.
      * The long value provided to the worker will be the index of the piece of work.
      */
-    public synchronized static <T> RunTimings foreach(Iterable<T> work, Worker<T> baseWorker) {
+    public static <T> RunTimings foreach(Iterable<T> work, Worker<T> baseWorker) {
+        if (isPoolThread()) {
+            return foreachInline(work, baseWorker);
+        }
+
+        return foreachPooled(work, baseWorker);
+    }
+
+    private synchronized static <T> RunTimings foreachPooled(Iterable<T> work, Worker<T> baseWorker) {
+        Object event = FlightRecorder.beginParallelRegion();
+
         initWorkers(baseWorker, work);
         RunTimings timings = foreachInternal(work);
         cleanupWorkers();
 
+        FlightRecorder.endParallelRegion(event, "foreach", numThreads, timings);
+
         return timings;
     }
 
@@ -190,6 +258,23 @@ public final class Parallel {
         return foreach(IteratorUtils.newIterable(work), baseWorker);
     }
 
+    private static <T> RunTimings foreachInline(Iterable<T> work, Worker<T> baseWorker) {
+        long count = 0;
+        long time = System.currentTimeMillis();
+
+        baseWorker.init(0, work);
+        try {
+            for (T job : work) {
+                baseWorker.work(count, job);
+                count++;
+            }
+        } finally {
+            baseWorker.close();
+        }
+
+        return new RunTimings(count, 0, 0, System.currentTimeMillis() - time);
+    }
+
     private static <T> RunTimings foreachInternal(Iterable<T> work) {
         long iterations = 0;
         long parentWaitTimeMS = 0;
@@ -251,17 +336,53 @@ public final class Parallel {
      * The long value passed to the worker will be the number of items in the batch.
      */
     public static <T> RunTimings foreachBatch(Iterator<T> work, int batchSize, Worker<List<T>> baseWorker) {
+        if (isPoolThread()) {
+            return foreachBatchInline(work, batchSize, baseWorker);
+        }
+
+        return foreachBatchPooled(work, batchSize, baseWorker);
+    }
+
+    private synchronized static <T> RunTimings foreachBatchPooled(Iterator<T> work, int batchSize, Worker<List<T>> baseWorker) {
+        Object event = FlightRecorder.beginParallelRegion();
+
         initWorkers(baseWorker, work);
         RunTimings timings = foreachBatchInternal(work, batchSize);
         cleanupWorkers();
 
+        FlightRecorder.endParallelRegion(event, "foreachBatch", numThreads, timings);
+
         return timings;
     }
 
-    public synchronized static <T> RunTimings foreachBatch(Iterable<T> work, int batchSize, Worker<List<T>> baseWorker) {
+    public static <T> RunTimings foreachBatch(Iterable<T> work, int batchSize, Worker<List<T>> baseWorker) {
         return foreachBatch(work.iterator(), batchSize, baseWorker);
     }
 
+    private static <T> RunTimings foreachBatchInline(Iterator<T> work, int batchSize, Worker<List<T>> baseWorker) {
+        long count = 0;
+        long time = System.currentTimeMillis();
+
+        List<T> batch = new ArrayList<T>(batchSize);
+
+        baseWorker.init(0, work);
+        try {
+            while (work.hasNext()) {
+                batch.clear();
+                while (work.hasNext() && batch.size() < batchSize) {
+                    batch.add(work.next());
+                }
+
+                count += batch.size();
+                baseWorker.work(batch.size(), batch);
+            }
+        } finally {
+            baseWorker.close();
+        }
+
+        return new RunTimings(count, 0, 0, System.currentTimeMillis() - time);
+    }
+
     private static <T> RunTimings foreachBatchInternal(Iterator<T> work, int batchSize) {
         long iterations = 0;
         long parentWaitTimeMS = 0;
@@ -552,8 +673,14 @@ public final class Parallel {
         }
 
         @Override
-        public Thread newThread(Runnable r) {
-            Thread thread = defaultThreadFactory.newThread(r);
+        public Thread newThread(final Runnable r) {
+            Thread thread = defaultThreadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    poolThread.set(Boolean.TRUE);
+                    r.run();
+                }
+            });
             thread.setDaemon(true);
             return thread;
         }
@@ -92,6 +92,7 @@ public final class RuntimeStats {
      */
     public static synchronized void logDiskRead(long bytes) {
         reads.add(bytes);
+        Metrics.counter("disk_read_bytes_total").add(bytes);
     }
 
     /**
@@ -100,6 +101,7 @@ public final class RuntimeStats {
      */
     public static synchronized void logDiskWrite(long bytes) {
         writes.add(bytes);
+        Metrics.counter("disk_write_bytes_total").add(bytes);
     }
 
     /**
@@ -137,6 +139,10 @@ public final class RuntimeStats {
             freeMemory.add(freeMemoryValue);
             usedMemory.add(usedMemoryValue);
             maxMemory.add(maxMemoryValue);
+
+            Metrics.gauge("jvm_memory_total_bytes").set(totalMemoryValue);
+            Metrics.gauge("jvm_memory_used_bytes").set(usedMemoryValue);
+            Metrics.gauge("jvm_memory_max_bytes").set(maxMemoryValue);
         }
     }
 
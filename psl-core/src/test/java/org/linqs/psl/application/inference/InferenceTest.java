@@ -19,7 +19,9 @@ package org.linqs.psl.application.inference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
 
 import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Database;
@@ -29,6 +31,8 @@ import org.linqs.psl.evaluation.statistics.ContinuousEvaluator;
 import org.linqs.psl.evaluation.EvaluationInstance;
 import org.linqs.psl.grounding.Grounding;
 import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
 import org.linqs.psl.model.atom.QueryAtom;
 import org.linqs.psl.model.atom.RandomVariableAtom;
 import org.linqs.psl.model.formula.Conjunction;
@@ -47,19 +51,27 @@ import org.linqs.psl.model.rule.arithmetic.expression.SummationVariableOrTerm;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Coefficient;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.ConstantNumber;
 import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
+import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.model.term.UniqueStringID;
 import org.linqs.psl.reasoner.InitialValue;
 import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
 import org.linqs.psl.test.PSLBaseTest;
 import org.linqs.psl.test.TestModel;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.MemoryAccountant;
+import org.linqs.psl.util.Metrics;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -86,6 +98,10 @@ public abstract class InferenceTest extends PSLBaseTest {
     @After
     public void cleanup() {
         Options.INFERENCE_INITIAL_VARIABLE_VALUE.clear();
+        Options.GROUNDING_INCREMENTAL.clear();
+        Options.MEMORY_ACCOUNTANT_LOG.clear();
+        Options.MEMORY_ACCOUNTANT_PREFLIGHT.clear();
+        Options.ATOM_STORE_LAZY_LOADING.clear();
 
         if (info != null) {
             info.close();
@@ -114,6 +130,89 @@ public abstract class InferenceTest extends PSLBaseTest {
         inferDB.close();
     }
 
+    /**
+     * Make sure that the core phases of inference report metrics.
+     */
+    @Test
+    public void testMetrics() {
+        Metrics.clear();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+
+        inference.inference();
+
+        String reasoner = inference.getReasoner().getClass().getSimpleName();
+        assertEquals(1, Metrics.timer("atom_store_build_seconds").getCount());
+        assertEquals(1, Metrics.timer("reasoner_optimization_seconds", "reasoner", reasoner).getCount());
+        assertEquals(1, Metrics.timer("commit_seconds").getCount());
+
+        inference.close();
+        inferDB.close();
+
+        Metrics.clear();
+    }
+
+    @Test
+    public void testMemoryAccounting() {
+        Options.MEMORY_ACCOUNTANT_LOG.set(true);
+        Options.MEMORY_ACCOUNTANT_PREFLIGHT.set(true);
+        Metrics.clear();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+
+        List<MemoryAccountant.Estimate> estimates = new ArrayList<MemoryAccountant.Estimate>();
+        inferDB.getAtomStore().estimateMemory(estimates);
+
+        MemoryAccountant.Estimate atoms = getEstimate(estimates, "atoms");
+        assertEquals(inferDB.getAtomStore().size(), atoms.items);
+        assertTrue(atoms.bytes > 0);
+        assertTrue(atoms.slackBytes >= 0);
+        assertTrue(atoms.slackBytes < atoms.bytes);
+
+        if (inference.getTermStore() instanceof SimpleTermStore) {
+            ((SimpleTermStore<?>)inference.getTermStore()).estimateMemory(estimates);
+
+            MemoryAccountant.Estimate terms = getEstimate(estimates, "terms");
+            assertEquals(inference.getTermStore().size(), terms.items);
+            assertTrue(terms.getBytesPerItem() > 0.0);
+        }
+
+        assertTrue(Metrics.toJSON().contains("memory_estimated_bytes"));
+
+        // Both stores are registered while they are open.
+        long total = MemoryAccountant.getTotalBytes(estimates);
+        assertTrue(MemoryAccountant.getTotalBytes(MemoryAccountant.snapshot()) >= total);
+
+        List<MemoryAccountant.Estimate> preflight = Grounding.estimateMemory(info.model.getRules(), inferDB);
+        assertEquals(info.model.getRules().size(), preflight.size());
+        for (MemoryAccountant.Estimate estimate : preflight) {
+            assertTrue(estimate.items > 0);
+            assertTrue(estimate.bytes > 0);
+        }
+
+        inference.close();
+        inferDB.close();
+
+        Metrics.clear();
+    }
+
+    private MemoryAccountant.Estimate getEstimate(List<MemoryAccountant.Estimate> estimates, String structure) {
+        for (MemoryAccountant.Estimate estimate : estimates) {
+            if (estimate.structure.equals(structure)) {
+                return estimate;
+            }
+        }
+
+        throw new AssertionError("No estimate for: " + structure);
+    }
+
     /**
      * Same as baseTest(), but explicitly using postgres.
      */
@@ -206,6 +305,188 @@ public abstract class InferenceTest extends PSLBaseTest {
         inferDB.close();
     }
 
+    /**
+     * Change the data after grounding and make sure that an incremental update
+     * gives the same ground program (and results) as grounding from scratch.
+     */
+    @Test
+    public void testIncrementalGrounding() {
+        Options.GROUNDING_INCREMENTAL.set(true);
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+        assumeTrue(inference.getTermStore() instanceof SimpleTermStore);
+
+        inference.inference(false, true);
+
+        StandardPredicate nice = info.predicates.get("Nice");
+        StandardPredicate person = info.predicates.get("Person");
+        StandardPredicate friends = info.predicates.get("Friends");
+
+        UniqueStringID alice = new UniqueStringID("Alice");
+        UniqueStringID eugene = new UniqueStringID("Eugene");
+        UniqueStringID frank = new UniqueStringID("Frank");
+
+        short observationID = info.observationPartition.getID();
+        short targetID = info.targetPartition.getID();
+
+        // Change an existing observation, and add a new person with friendships.
+        List<GroundAtom> changes = new ArrayList<GroundAtom>();
+        changes.add(new ObservedAtom(nice, new Constant[]{eugene}, 0.9f, observationID));
+        changes.add(new ObservedAtom(person, new Constant[]{frank}, 1.0f, observationID));
+        changes.add(new RandomVariableAtom(friends, new Constant[]{alice, frank}, 0.0f, targetID));
+        changes.add(new RandomVariableAtom(friends, new Constant[]{frank, alice}, 0.0f, targetID));
+        inferDB.commit(changes);
+
+        assertTrue(inference.updateGrounding() > 0);
+        List<String> incrementalTerms = getActiveTerms(inference);
+
+        inference.close();
+        inferDB.close();
+
+        // Ground the changed data from scratch.
+        Options.GROUNDING_INCREMENTAL.set(false);
+
+        inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        inference = getInference(info.model.getRules(), inferDB);
+
+        assertEquals(getActiveTerms(inference), incrementalTerms);
+
+        inference.inference(false, true);
+
+        inference.close();
+        inferDB.close();
+    }
+
+    /**
+     * Make sure that a model loaded from a grounding snapshot matches the original grounding,
+     * and that the snapshot is not used once the data changes.
+     */
+    @Test
+    public void testGroundingSnapshot() {
+        String snapshotPath = Paths.get(System.getProperty("java.io.tmpdir"),
+                String.format("psl_grounding_snapshot_%s_%d.bin", getClass().getSimpleName(), info.id)).toString();
+        FileUtils.delete(snapshotPath);
+        Options.GROUNDING_SNAPSHOT_PATH.set(snapshotPath);
+
+        final List<GroundRule> groundRules = new ArrayList<GroundRule>();
+        Grounding.setGroundRuleCallback(new Grounding.GroundRuleCallback() {
+            public synchronized void call(GroundRule groundRule) {
+                groundRules.add(groundRule);
+            }
+        });
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        try {
+            // Ground and save.
+            Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+            assumeTrue(inference.getTermStore() instanceof SimpleTermStore);
+
+            List<String> groundedTerms = getActiveTerms(inference);
+            assertTrue(groundRules.size() > 0);
+            assertTrue(FileUtils.isFile(snapshotPath));
+
+            inference.close();
+            inferDB.close();
+
+            // Load (no grounding).
+            groundRules.clear();
+            inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            inference = getInference(info.model.getRules(), inferDB);
+
+            assertEquals(0, groundRules.size());
+            assertEquals(groundedTerms, getActiveTerms(inference));
+            inference.inference(false, true);
+
+            // Change the data, the snapshot should no longer be used.
+            List<GroundAtom> changes = new ArrayList<GroundAtom>();
+            changes.add(new ObservedAtom(info.predicates.get("Nice"), new Constant[]{new UniqueStringID("Eugene")},
+                    0.9f, info.observationPartition.getID()));
+            inferDB.commit(changes);
+
+            inference.close();
+            inferDB.close();
+
+            groundRules.clear();
+            inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+            inference = getInference(info.model.getRules(), inferDB);
+
+            assertTrue(groundRules.size() > 0);
+
+            inference.close();
+            inferDB.close();
+        } finally {
+            Grounding.setGroundRuleCallback(null);
+            FileUtils.delete(snapshotPath);
+        }
+    }
+
+    /**
+     * Make sure that lazily loading closed predicates gives the same ground program as loading everything up front.
+     */
+    @Test
+    public void testLazyAtomLoading() {
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        int eagerSize = inferDB.getAtomStore().size();
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+        List<String> eagerTerms = getActiveTerms(inference);
+
+        inference.close();
+        inferDB.close();
+
+        Options.ATOM_STORE_LAZY_LOADING.set(true);
+
+        inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        assertTrue(inferDB.getAtomStore().size() < eagerSize);
+
+        inference = getInference(info.model.getRules(), inferDB);
+        assertEquals(eagerTerms, getActiveTerms(inference));
+        assertEquals(eagerSize, inferDB.getAtomStore().size());
+
+        inference.inference(false, true);
+
+        inference.close();
+        inferDB.close();
+    }
+
+    /**
+     * Get a sorted description of all the active terms (rule, atoms, coefficients, and constant).
+     */
+    private List<String> getActiveTerms(InferenceApplication inference) {
+        GroundAtom[] atoms = inference.getTermStore().getVariableAtoms();
+
+        List<String> terms = new ArrayList<String>();
+        for (Object rawTerm : inference.getTermStore()) {
+            ReasonerTerm term = (ReasonerTerm)rawTerm;
+            if (!term.isActive()) {
+                continue;
+            }
+
+            List<String> parts = new ArrayList<String>();
+            for (int i = 0; i < term.size(); i++) {
+                parts.add(String.format("%.4f * %s", term.getCoefficients()[i], atoms[term.getAtomIndexes()[i]]));
+            }
+            Collections.sort(parts);
+
+            terms.add(String.format("%s: %s (%.4f)", term.getRule(), parts, term.getConstant()));
+        }
+        Collections.sort(terms);
+
+        return terms;
+    }
+
     /**
      * Make sure that we remove terms that cause a tautology from logical rules.
      */
@@ -19,14 +19,136 @@ package org.linqs.psl.application.inference.mpe;
 
 import org.linqs.psl.application.inference.InferenceApplication;
 import org.linqs.psl.application.inference.InferenceTest;
+import org.linqs.psl.config.Options;
 import org.linqs.psl.database.Database;
+import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.RuleProfiler;
+import org.linqs.psl.util.FlightRecorder;
+import org.linqs.psl.util.Metrics;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class DualBCDInferenceTest extends InferenceTest {
     @Override
     protected InferenceApplication getInference(List<Rule> rules, Database db) {
         return new DualBCDInference(rules, db);
     }
+
+    /**
+     * Components are optimized on their own, but each pass over them should still be recorded as an iteration.
+     */
+    @Test
+    public void testComponentIterationMetrics() {
+        Metrics.clear();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+
+        inference.inference();
+
+        // Each optimization pass over all the components is recorded once, with the objective of the full model.
+        assertEquals(1, Metrics.timer("reasoner_iteration_seconds", "reasoner", "DualBCDReasoner").getCount());
+        assertFalse(Double.isNaN(Metrics.gauge("reasoner_iteration_objective", "reasoner", "DualBCDReasoner").get()));
+
+        inference.close();
+        inferDB.close();
+
+        Metrics.clear();
+    }
+
+    /**
+     * Each pass over the components should also be sent to the flight recorder.
+     */
+    @Test
+    public void testComponentIterationEvents() throws IOException {
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+
+        List<RecordedEvent> events = null;
+        Path path = Files.createTempFile("psl-dual-bcd-test", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightRecorder.ReasonerIterationEvent.class);
+            recording.start();
+
+            inference.inference();
+
+            recording.stop();
+            recording.dump(path);
+
+            events = RecordingFile.readAllEvents(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+
+        inference.close();
+        inferDB.close();
+
+        int numEvents = 0;
+        for (RecordedEvent event : events) {
+            if (!"org.linqs.psl.ReasonerIteration".equals(event.getEventType().getName())
+                    || !"DualBCDReasoner".equals(event.getString("reasoner"))) {
+                continue;
+            }
+
+            numEvents++;
+
+            // The iterations of the longest component and the largest movement of any component.
+            assertTrue(event.getInt("iteration") > 0);
+            assertFalse(Double.isNaN(event.getDouble("movement")));
+            assertFalse(Double.isNaN(event.getDouble("objective")));
+        }
+
+        assertEquals(1, numEvents);
+    }
+
+    /**
+     * Components run the same iterations, so a pass should only count its sampled iterations once.
+     */
+    @Test
+    public void testProfilerSampledIterations() {
+        Options.PROFILER_RULES.set(true);
+        Options.PROFILER_RULES_SAMPLE_PERIOD.set(1);
+        Options.REASONER_RUN_FULL_ITERATIONS.set(true);
+        Options.DUAL_LCQP_MAX_ITER.set(10);
+        Options.DUAL_LCQP_COMPUTE_PERIOD.set(1);
+        RuleProfiler.init();
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        Database inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        InferenceApplication inference = getInference(info.model.getRules(), inferDB);
+
+        inference.inference();
+
+        inference.close();
+        inferDB.close();
+
+        // Every component runs through the maximum iterations (and then one more that triggers the break).
+        assertEquals(11, RuleProfiler.toJSON().getLong("sampledIterations"));
+
+        Options.PROFILER_RULES.set(false);
+        RuleProfiler.init();
+    }
 }
@@ -0,0 +1,350 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.learning.weight.gradient.batchgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.linqs.psl.application.inference.InferenceApplication;
+import org.linqs.psl.application.inference.mpe.DualBCDInference;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.model.atom.QueryAtom;
+import org.linqs.psl.model.formula.Conjunction;
+import org.linqs.psl.model.formula.Implication;
+import org.linqs.psl.model.predicate.DeepPredicate;
+import org.linqs.psl.model.predicate.GroundingOnlyPredicate;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
+import org.linqs.psl.model.term.Variable;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
+import org.linqs.psl.test.PSLBaseTest;
+import org.linqs.psl.test.TestModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConnectedComponentBatchGeneratorTest extends PSLBaseTest {
+    private TestModel.ModelInformation info;
+    private Database inferDB;
+    private Database truthDB;
+    private InferenceApplication inference;
+    private ConnectedComponentBatchGenerator batchGenerator;
+
+    @Before
+    public void setup() {
+        info = TestModel.getModel();
+        inferDB = null;
+        truthDB = null;
+        inference = null;
+        batchGenerator = null;
+    }
+
+    @After
+    public void cleanup() {
+        if (batchGenerator != null) {
+            batchGenerator.close();
+            batchGenerator = null;
+        }
+
+        if (inference != null) {
+            inference.close();
+            inference = null;
+        }
+
+        if (inferDB != null) {
+            inferDB.close();
+            inferDB = null;
+        }
+
+        if (truthDB != null) {
+            truthDB.close();
+            truthDB = null;
+        }
+
+        info = null;
+    }
+
+    /**
+     * Small components should be packed whole into bins that stay at or under the target number of terms.
+     */
+    @Test
+    public void testPackComponentsTermCount() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.TERM_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.set(13);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(false);
+
+        // Nothing is over the target, so no component should be split.
+        Set<List<? extends ReasonerTerm>> components = Collections.newSetFromMap(new IdentityHashMap<List<? extends ReasonerTerm>, Boolean>());
+        for (List<? extends ReasonerTerm> component : fullTermStore.getConnectedComponents().values()) {
+            assertTrue(component.size() <= 13);
+            components.add(component);
+        }
+
+        batchGenerator.generateBatches();
+
+        assertTrue(batchGenerator.numBatches() > 1);
+        assertTrue(batchGenerator.numBatches() < components.size());
+        assertPlanCoversTerms(fullTermStore);
+
+        for (List<List<? extends ReasonerTerm>> batchParts : batchGenerator.getBatchPlan()) {
+            for (List<? extends ReasonerTerm> part : batchParts) {
+                assertTrue(components.contains(part));
+            }
+        }
+
+        for (SimpleTermStore<? extends ReasonerTerm> batchTermStore : batchGenerator.getBatchTermStores()) {
+            assertTrue(batchTermStore.size() <= 13);
+        }
+    }
+
+    /**
+     * A component with more terms than the target should be split, and every bin should stay at or under the target.
+     */
+    @Test
+    public void testSplitComponentTermCount() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.TERM_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.set(10);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(true);
+
+        assertEquals(1, fullTermStore.getConnectedComponents().size());
+        assertTrue(fullTermStore.size() > 10);
+
+        batchGenerator.generateBatches();
+
+        assertTrue(batchGenerator.numBatches() > 1);
+        assertPlanCoversTerms(fullTermStore);
+
+        for (SimpleTermStore<? extends ReasonerTerm> batchTermStore : batchGenerator.getBatchTermStores()) {
+            assertTrue(batchTermStore.size() <= 10);
+        }
+    }
+
+    /**
+     * A component with more atoms than the target should be split, and every bin should stay at or under the target.
+     */
+    @Test
+    public void testSplitComponentAtomCount() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.ATOM_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.set(6);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(true);
+
+        assertEquals(1, fullTermStore.getConnectedComponents().size());
+        assertTrue(fullTermStore.getAtomStore().size() > 6);
+
+        batchGenerator.generateBatches();
+
+        assertTrue(batchGenerator.numBatches() > 1);
+        assertPlanCoversTerms(fullTermStore);
+
+        for (SimpleTermStore<? extends ReasonerTerm> batchTermStore : batchGenerator.getBatchTermStores()) {
+            assertTrue(batchTermStore.getAtomStore().size() <= 6);
+        }
+    }
+
+    /**
+     * The plan should be reused when batches are regenerated,
+     * and remade whenever the full term store changes (even if the number of terms does not).
+     */
+    @Test
+    public void testPlanReuse() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.TERM_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.set(10);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(true);
+
+        batchGenerator.generateBatches();
+        List<List<List<? extends ReasonerTerm>>> plan = batchGenerator.getBatchPlan();
+        int numBatches = batchGenerator.numBatches();
+
+        batchGenerator.generateBatches();
+        assertSame(plan, batchGenerator.getBatchPlan());
+        assertEquals(numBatches, batchGenerator.numBatches());
+
+        // Retracting terms keeps them in the store.
+        long numTerms = fullTermStore.size();
+        Rule rule = info.model.getRules().get(0);
+        assertTrue(fullTermStore.retractTerms(rule) > 0);
+        assertEquals(numTerms, fullTermStore.size());
+
+        batchGenerator.generateBatches();
+        assertNotSame(plan, batchGenerator.getBatchPlan());
+        assertPlanCoversTerms(fullTermStore);
+    }
+
+    /**
+     * Each batch term should point at (copies of) the same atoms as the term it was copied from.
+     */
+    @Test
+    public void testRemapAtomsComponentCount() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.COMPONENT_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_SIZE.set(3);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(false);
+
+        batchGenerator.generateBatches();
+
+        assertTrue(batchGenerator.numBatches() > 1);
+        assertBatchAtoms(fullTermStore);
+    }
+
+    /**
+     * Pieces of the same component share atoms, so atoms must be remapped correctly across pieces and batches.
+     */
+    @Test
+    public void testRemapAtomsSplitComponent() {
+        Options.WLA_CONNECTED_COMPONENT_BATCH_STRATEGY.set(ConnectedComponentBatchGenerator.BatchStrategy.ATOM_COUNT.toString());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_TARGET_SIZE.set(6);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = initBatchGenerator(true);
+
+        batchGenerator.generateBatches();
+        assertBatchAtoms(fullTermStore);
+
+        // Regenerating reuses the scratch space.
+        batchGenerator.generateBatches();
+        assertBatchAtoms(fullTermStore);
+    }
+
+    /**
+     * Ground the model and build a batch generator over its term store.
+     * If specified, a transitivity rule is added to join all the friendships into one component.
+     */
+    private SimpleTermStore<? extends ReasonerTerm> initBatchGenerator(boolean transitive) {
+        if (transitive) {
+            info.model.addRule(new WeightedLogicalRule(
+                    new Implication(
+                        new Conjunction(
+                            new QueryAtom(info.predicates.get("Friends"), new Variable("A"), new Variable("B")),
+                            new QueryAtom(info.predicates.get("Friends"), new Variable("B"), new Variable("C")),
+                            new QueryAtom(GroundingOnlyPredicate.NotEqual, new Variable("A"), new Variable("C"))
+                        ),
+                        new QueryAtom(info.predicates.get("Friends"), new Variable("A"), new Variable("C"))
+                    ),
+                    1.0f,
+                    true));
+        }
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(info.predicates.get("Nice"));
+        toClose.add(info.predicates.get("Person"));
+
+        inferDB = info.dataStore.getDatabase(info.targetPartition, toClose, info.observationPartition);
+        truthDB = info.dataStore.getDatabase(info.truthPartition, info.dataStore.getRegisteredPredicates());
+        inference = new DualBCDInference(info.model.getRules(), inferDB);
+
+        SimpleTermStore<? extends ReasonerTerm> fullTermStore = (SimpleTermStore<? extends ReasonerTerm>)inference.getTermStore();
+
+        batchGenerator = new ConnectedComponentBatchGenerator(inference, fullTermStore,
+                new ArrayList<DeepPredicate>(), truthDB.getAtomStore());
+
+        return fullTermStore;
+    }
+
+    /**
+     * Check that every term of the full store is in exactly one batch of the plan,
+     * and that each batch term store holds exactly the terms planned for it.
+     */
+    private void assertPlanCoversTerms(SimpleTermStore<? extends ReasonerTerm> fullTermStore) {
+        List<List<List<? extends ReasonerTerm>>> plan = batchGenerator.getBatchPlan();
+        assertEquals(plan.size(), batchGenerator.numBatches());
+
+        Map<ReasonerTerm, Integer> termBatches = new IdentityHashMap<ReasonerTerm, Integer>();
+        for (int i = 0; i < plan.size(); i++) {
+            int batchNumTerms = 0;
+            for (List<? extends ReasonerTerm> part : plan.get(i)) {
+                for (ReasonerTerm term : part) {
+                    assertNull(termBatches.put(term, Integer.valueOf(i)));
+                    batchNumTerms++;
+                }
+            }
+
+            assertEquals(batchNumTerms, batchGenerator.getBatchTermStore(i).size());
+        }
+
+        assertEquals(fullTermStore.size(), termBatches.size());
+        for (ReasonerTerm term : fullTermStore) {
+            assertTrue(termBatches.containsKey(term));
+        }
+    }
+
+    /**
+     * Check that every atom index of every batch term points to an atom equal to the one in the original term,
+     * that each batch only holds the atoms of its own terms,
+     * and that the scratch atom marks were all reset.
+     */
+    private void assertBatchAtoms(SimpleTermStore<? extends ReasonerTerm> fullTermStore) {
+        AtomStore fullAtomStore = fullTermStore.getAtomStore();
+        List<List<List<? extends ReasonerTerm>>> plan = batchGenerator.getBatchPlan();
+
+        for (int i = 0; i < plan.size(); i++) {
+            SimpleTermStore<? extends ReasonerTerm> batchTermStore = batchGenerator.getBatchTermStore(i);
+            AtomStore batchAtomStore = batchTermStore.getAtomStore();
+
+            // Batch terms are added in plan order.
+            List<ReasonerTerm> originalTerms = new ArrayList<ReasonerTerm>();
+            for (List<? extends ReasonerTerm> part : plan.get(i)) {
+                originalTerms.addAll(part);
+            }
+            assertEquals(originalTerms.size(), batchTermStore.size());
+
+            Set<Integer> batchFullAtomIndexes = new HashSet<Integer>();
+            for (int j = 0; j < originalTerms.size(); j++) {
+                ReasonerTerm originalTerm = originalTerms.get(j);
+                ReasonerTerm batchTerm = batchTermStore.get(j);
+
+                assertEquals(originalTerm.size(), batchTerm.size());
+                for (int k = 0; k < originalTerm.size(); k++) {
+                    int fullAtomIndex = originalTerm.getAtomIndexes()[k];
+                    int batchAtomIndex = batchTerm.getAtomIndexes()[k];
+
+                    assertTrue(batchAtomIndex >= 0);
+                    assertTrue(batchAtomIndex < batchAtomStore.size());
+                    assertEquals(fullAtomStore.getAtom(fullAtomIndex), batchAtomStore.getAtom(batchAtomIndex));
+
+                    batchFullAtomIndexes.add(Integer.valueOf(fullAtomIndex));
+                }
+            }
+
+            // Atoms marked by an earlier batch would not have been added to this one.
+            assertEquals(batchFullAtomIndexes.size(), batchAtomStore.size());
+        }
+
+        for (int mark : batchGenerator.getAtomMarks()) {
+            assertEquals(-1, mark);
+        }
+    }
+}
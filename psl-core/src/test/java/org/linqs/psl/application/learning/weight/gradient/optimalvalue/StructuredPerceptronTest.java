@@ -17,8 +17,23 @@
  */
 package org.linqs.psl.application.learning.weight.gradient.optimalvalue;
 
+import org.linqs.psl.application.inference.mpe.DualBCDInference;
 import org.linqs.psl.application.learning.weight.WeightLearningApplication;
 import org.linqs.psl.application.learning.weight.WeightLearningTest;
+import org.linqs.psl.application.learning.weight.gradient.batchgenerator.ConnectedComponentBatchGenerator;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.reasoner.term.ReasonerTerm;
+import org.linqs.psl.reasoner.term.SimpleTermStore;
+import org.linqs.psl.reasoner.term.TermState;
+import org.linqs.psl.util.MathUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StructuredPerceptronTest extends WeightLearningTest {
     @Override
@@ -26,4 +41,122 @@ public class StructuredPerceptronTest extends WeightLearningTest {
         return new StructuredPerceptron(info.model.getRules(), trainTargetDatabase, trainTruthDatabase,
                 validationTargetDatabase, validationTruthDatabase, false);
     }
+
+    /**
+     * Computing the gradients of several batches in parallel should give the same (averaged) weight gradient
+     * as computing them one at a time.
+     */
+    @Test
+    public void testParallelBatchGradient() {
+        Options.WLA_INFERENCE.set(DualBCDInference.class.getName());
+        Options.WLA_GRADIENT_DESCENT_BATCH_GENERATOR.set(ConnectedComponentBatchGenerator.class.getName());
+        Options.WLA_CONNECTED_COMPONENT_BATCH_SIZE.set(1);
+        Options.WLA_GRADIENT_DESCENT_BATCHES_PER_STEP.set(4);
+        Options.PARALLEL_NUM_THREADS.set(4);
+
+        BatchGradientStructuredPerceptron weightLearner = new BatchGradientStructuredPerceptron(info.model.getRules(),
+                trainTargetDatabase, trainTruthDatabase, validationTargetDatabase, validationTruthDatabase);
+        weightLearner.initBatches();
+
+        List<Integer> batches = weightLearner.getBatches();
+        assertTrue(batches.size() > 1);
+
+        // Both computations should start from the same warm starts.
+        weightLearner.saveWarmStarts();
+        float[] parallelGradient = weightLearner.computeParallelGradient(batches);
+        weightLearner.restoreWarmStarts();
+        float[] serialGradient = weightLearner.computeSerialGradient(batches);
+
+        weightLearner.close();
+
+        assertEquals(serialGradient.length, parallelGradient.length);
+        for (int i = 0; i < serialGradient.length; i++) {
+            assertEquals(serialGradient[i], parallelGradient[i], MathUtils.EPSILON);
+        }
+    }
+
+    /**
+     * Expose the batch gradient computations.
+     */
+    private static class BatchGradientStructuredPerceptron extends StructuredPerceptron {
+        private List<TermState[]> savedMAPTermStates;
+        private List<float[]> savedMAPAtomValueStates;
+        private List<TermState[]> savedLatentInferenceTermStates;
+        private List<float[]> savedLatentInferenceAtomValueStates;
+
+        public BatchGradientStructuredPerceptron(List<Rule> rules, Database trainTargetDatabase, Database trainTruthDatabase,
+                                                 Database validationTargetDatabase, Database validationTruthDatabase) {
+            super(rules, trainTargetDatabase, trainTruthDatabase, validationTargetDatabase, validationTruthDatabase, false);
+        }
+
+        public void initBatches() {
+            initGroundModel();
+            initForLearning();
+        }
+
+        public List<Integer> getBatches() {
+            List<Integer> batches = new ArrayList<Integer>();
+            for (int i = 0; i < batchGenerator.numBatches(); i++) {
+                batches.add(i);
+            }
+
+            return batches;
+        }
+
+        public void saveWarmStarts() {
+            savedMAPTermStates = copyTermStates(batchMAPTermStates);
+            savedMAPAtomValueStates = copyAtomValueStates(batchMAPAtomValueStates);
+            savedLatentInferenceTermStates = copyTermStates(batchLatentInferenceTermStates);
+            savedLatentInferenceAtomValueStates = copyAtomValueStates(batchLatentInferenceAtomValueStates);
+        }
+
+        public void restoreWarmStarts() {
+            batchMAPTermStates = copyTermStates(savedMAPTermStates);
+            batchMAPAtomValueStates = copyAtomValueStates(savedMAPAtomValueStates);
+            batchLatentInferenceTermStates = copyTermStates(savedLatentInferenceTermStates);
+            batchLatentInferenceAtomValueStates = copyAtomValueStates(savedLatentInferenceAtomValueStates);
+        }
+
+        private List<TermState[]> copyTermStates(List<TermState[]> termStates) {
+            List<TermState[]> copies = new ArrayList<TermState[]>(termStates.size());
+            for (int i = 0; i < termStates.size(); i++) {
+                SimpleTermStore<? extends ReasonerTerm> batchTermStore = batchGenerator.getBatchTermStore(i);
+                batchTermStore.loadState(termStates.get(i));
+                copies.add(batchTermStore.saveState());
+            }
+
+            return copies;
+        }
+
+        private List<float[]> copyAtomValueStates(List<float[]> atomValueStates) {
+            List<float[]> copies = new ArrayList<float[]>(atomValueStates.size());
+            for (float[] atomValueState : atomValueStates) {
+                copies.add(Arrays.copyOf(atomValueState, atomValueState.length));
+            }
+
+            return copies;
+        }
+
+        public float[] computeParallelGradient(List<Integer> batches) {
+            computeParallelBatchGradient(batches);
+            return Arrays.copyOf(weightGradient, weightGradient.length);
+        }
+
+        public float[] computeSerialGradient(List<Integer> batches) {
+            float[] gradient = new float[weightGradient.length];
+
+            for (int batch : batches) {
+                setBatch(batch);
+                computeBatchGradient();
+
+                for (int i = 0; i < gradient.length; i++) {
+                    gradient[i] += weightGradient[i] / batches.size();
+                }
+            }
+
+            setFullModel();
+
+            return gradient;
+        }
+    }
 }
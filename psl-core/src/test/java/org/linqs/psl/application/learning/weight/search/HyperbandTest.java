@@ -19,6 +19,17 @@ package org.linqs.psl.application.learning.weight.search;
 
 import org.linqs.psl.application.learning.weight.WeightLearningApplication;
 import org.linqs.psl.application.learning.weight.WeightLearningTest;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.WeightedRule;
+import org.linqs.psl.reasoner.InitialValue;
+import org.linqs.psl.util.MathUtils;
+import org.linqs.psl.util.RandUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class HyperbandTest extends WeightLearningTest {
     public HyperbandTest() {
@@ -34,4 +45,50 @@ public class HyperbandTest extends WeightLearningTest {
         return new Hyperband(info.model.getRules(), trainTargetDatabase, trainTruthDatabase,
                 validationTargetDatabase, validationTruthDatabase, false);
     }
+
+    @Test
+    public void testWarmStart() {
+        Options.WLA_HB_WARM_START.set(true);
+
+        baseTest();
+    }
+
+    /**
+     * Running the configurations of a round concurrently should learn the same weights as running them one at a time.
+     */
+    @Test
+    public void testConcurrentConfigs() {
+        // Start every inference from the same place.
+        Options.INFERENCE_INITIAL_VARIABLE_VALUE.set(InitialValue.ZERO.toString());
+
+        RandUtils.seed(4);
+        WeightLearningApplication weightLearner = getWLA();
+        weightLearner.learn();
+        List<Float> serialWeights = getWeights();
+        weightLearner.close();
+
+        Options.WLA_HB_CONCURRENT_CONFIGS.set(4);
+
+        RandUtils.seed(4);
+        weightLearner = getWLA();
+        weightLearner.learn();
+        List<Float> concurrentWeights = getWeights();
+        weightLearner.close();
+
+        assertEquals(serialWeights.size(), concurrentWeights.size());
+        for (int i = 0; i < serialWeights.size(); i++) {
+            assertEquals(serialWeights.get(i).floatValue(), concurrentWeights.get(i).floatValue(), MathUtils.EPSILON);
+        }
+    }
+
+    private List<Float> getWeights() {
+        List<Float> weights = new ArrayList<Float>();
+        for (Rule rule : info.model.getRules()) {
+            if (rule instanceof WeightedRule) {
+                weights.add(Float.valueOf(((WeightedRule)rule).getWeight()));
+            }
+        }
+
+        return weights;
+    }
 }
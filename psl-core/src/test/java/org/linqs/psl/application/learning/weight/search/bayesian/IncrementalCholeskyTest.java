@@ -0,0 +1,82 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.application.learning.weight.search.bayesian;
+
+import org.linqs.psl.test.PSLBaseTest;
+import org.linqs.psl.util.FloatMatrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IncrementalCholeskyTest extends PSLBaseTest {
+    public static final double EPSILON = 1e-5;
+
+    @Test
+    public void testSolveAgainstInverse() {
+        float[][] matrix = {
+            {4.0f, 2.0f, 0.4f, 0.1f},
+            {2.0f, 3.0f, 0.5f, 0.2f},
+            {0.4f, 0.5f, 2.0f, 0.3f},
+            {0.1f, 0.2f, 0.3f, 1.0f},
+        };
+        double[] b = {1.0, -2.0, 0.5, 3.0};
+
+        IncrementalCholesky cholesky = new IncrementalCholesky();
+
+        for (int size = 1; size <= matrix.length; size++) {
+            float[] row = new float[size];
+            System.arraycopy(matrix[size - 1], 0, row, 0, size);
+            cholesky.addRow(row);
+            Assert.assertEquals(size, cholesky.size());
+
+            FloatMatrix inverse = FloatMatrix.zeroes(size, size);
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    inverse.set(i, j, matrix[i][j]);
+                }
+            }
+            inverse = inverse.inverse();
+
+            double[] x = new double[size];
+            System.arraycopy(b, 0, x, 0, size);
+            cholesky.solve(x, x);
+
+            for (int i = 0; i < size; i++) {
+                double expected = 0.0;
+                for (int j = 0; j < size; j++) {
+                    expected += inverse.get(i, j) * b[j];
+                }
+
+                Assert.assertEquals(expected, x[i], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testBadRowLength() {
+        IncrementalCholesky cholesky = new IncrementalCholesky();
+        cholesky.addRow(new float[]{1.0f});
+
+        try {
+            cholesky.addRow(new float[]{1.0f});
+            Assert.fail("Expected an IllegalArgumentException.");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+}
@@ -20,6 +20,13 @@ package org.linqs.psl.application.learning.weight.search.grid;
 import org.linqs.psl.application.learning.weight.WeightLearningApplication;
 import org.linqs.psl.application.learning.weight.WeightLearningTest;
 import org.linqs.psl.config.Options;
+import org.linqs.psl.reasoner.InitialValue;
+import org.linqs.psl.util.MathUtils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
 
 public class GridSearchTest extends WeightLearningTest {
     public GridSearchTest() {
@@ -36,4 +43,31 @@ public class GridSearchTest extends WeightLearningTest {
         return new GridSearch(info.model.getRules(), trainTargetDatabase, trainTruthDatabase,
                 validationTargetDatabase, validationTruthDatabase, false);
     }
+
+    /**
+     * Inspecting locations concurrently should give the same objectives as inspecting them one at a time.
+     */
+    @Test
+    public void testConcurrentLocations() {
+        // Start every inference from the same place.
+        Options.INFERENCE_INITIAL_VARIABLE_VALUE.set(InitialValue.ZERO.toString());
+
+        GridSearch weightLearner = (GridSearch)getWLA();
+        weightLearner.learn();
+        Map<String, Double> serialObjectives = new HashMap<String, Double>(weightLearner.objectives);
+        weightLearner.close();
+
+        Options.WLA_GS_CONCURRENT_LOCATIONS.set(4);
+
+        weightLearner = (GridSearch)getWLA();
+        weightLearner.learn();
+        Map<String, Double> concurrentObjectives = new HashMap<String, Double>(weightLearner.objectives);
+        weightLearner.close();
+
+        assertEquals(27, serialObjectives.size());
+        assertEquals(serialObjectives.keySet(), concurrentObjectives.keySet());
+        for (Map.Entry<String, Double> entry : serialObjectives.entrySet()) {
+            assertEquals(entry.getValue().doubleValue(), concurrentObjectives.get(entry.getKey()).doubleValue(), MathUtils.EPSILON);
+        }
+    }
 }
@@ -17,6 +17,7 @@
  */
 package org.linqs.psl.database;
 
+import org.linqs.psl.config.Options;
 import org.linqs.psl.database.DataStore;
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.DatabaseQuery;
@@ -48,7 +49,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -648,6 +651,40 @@ public abstract class DataStoreTest extends PSLBaseTest {
         }
     }
 
+    @Test
+    public void testDelete() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+
+        UniqueIntID a = new UniqueIntID(0);
+        UniqueIntID b = new UniqueIntID(1);
+        UniqueIntID c = new UniqueIntID(2);
+        UniqueIntID d = new UniqueIntID(3);
+
+        Inserter inserter = datastore.getInserter(p1, datastore.getPartition("0"));
+        inserter.insertRaw(a, b);
+        inserter.insertRaw(b, c);
+
+        inserter = datastore.getInserter(p1, datastore.getPartition("1"));
+        inserter.insertRaw(c, d);
+
+        Database db = datastore.getDatabase(datastore.getPartition("2"), datastore.getPartition("0"), datastore.getPartition("1"));
+        dbs.add(db);
+
+        short partition = datastore.getPartition("0").getID();
+
+        // Atoms are only deleted from their own partition, so (c, d) stays.
+        List<GroundAtom> toDelete = new ArrayList<GroundAtom>();
+        toDelete.add(new ObservedAtom(p1, new Constant[]{a, b}, 1.0f, partition));
+        toDelete.add(new ObservedAtom(p1, new Constant[]{c, d}, 1.0f, partition));
+
+        assertEquals(1, db.delete(toDelete));
+        assertEquals(2, db.countAllGroundAtoms(p1));
+    }
+
     @Test
     public void testSharedReadPartition() {
         if (datastore == null) {
@@ -1016,6 +1053,103 @@ public abstract class DataStoreTest extends PSLBaseTest {
         }
     }
 
+    /**
+     * Make sure that only atoms whose value changed (beyond the commit epsilon) are committed.
+     */
+    @Test
+    public void testCommitChangedAtoms() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+        Partition write = datastore.getPartition("0");
+
+        for (int i = 0; i < 10; i++) {
+            datastore.getInserter(p1, write).insertValueRaw(0.5, new UniqueIntID(i), new UniqueIntID(i + 1));
+        }
+
+        Options.ATOM_STORE_COMMIT_EPSILON.set(0.01);
+
+        Database db = datastore.getDatabase(write);
+        PersistedAtomStore atomStore = db.getAtomStore();
+        assertEquals(0, atomStore.getChangedAtoms(0.0f).cardinality());
+
+        RandomVariableAtom changedAtom = (RandomVariableAtom)atomStore.getAtom(p1, new UniqueIntID(0), new UniqueIntID(1));
+        changedAtom.setValue(0.9f);
+
+        RandomVariableAtom nudgedAtom = (RandomVariableAtom)atomStore.getAtom(p1, new UniqueIntID(1), new UniqueIntID(2));
+        nudgedAtom.setValue(0.505f);
+
+        BitSet changedAtoms = atomStore.getChangedAtoms(0.01f);
+        assertEquals(1, changedAtoms.cardinality());
+        assertTrue(changedAtoms.get(changedAtom.getIndex()));
+
+        atomStore.commit();
+        assertEquals(0, atomStore.getChangedAtoms(0.01f).cardinality());
+        assertEquals(1, atomStore.getChangedAtoms(0.0f).cardinality());
+        db.close();
+
+        db = datastore.getDatabase(write);
+        assertEquals(0.9f, db.getAtomStore().getAtom(p1, new UniqueIntID(0), new UniqueIntID(1)).getValue(), 1e-6f);
+        assertEquals(0.5f, db.getAtomStore().getAtom(p1, new UniqueIntID(1), new UniqueIntID(2)).getValue(), 1e-6f);
+        db.close();
+    }
+
+    /**
+     * Make sure that loading an atom store in parallel gives the same atoms at the same indexes as a sequential load.
+     */
+    @Test
+    public void testParallelAtomLoading() {
+        if (datastore == null) {
+            return;
+        }
+
+        datastore.registerPredicate(p1);
+        datastore.registerPredicate(p2);
+        datastore.registerPredicate(p4);
+
+        Partition write = datastore.getPartition("0");
+        Partition read = datastore.getPartition("1");
+
+        for (int i = 0; i < 20; i++) {
+            datastore.getInserter(p1, write).insertValueRaw(i / 20.0, new UniqueIntID(i), new UniqueIntID(i + 1));
+            datastore.getInserter(p2, read).insertRaw("" + i, "" + (i * 2));
+            datastore.getInserter(p4, read).insertValueRaw(i / 40.0, new UniqueIntID(i), i * 0.5);
+        }
+
+        Set<StandardPredicate> toClose = new HashSet<StandardPredicate>();
+        toClose.add(p2);
+
+        Options.ATOM_STORE_LOAD_THREADS.set(1);
+        List<String> sequentialAtoms = getStoredAtoms(write, toClose, read);
+
+        Options.ATOM_STORE_LOAD_THREADS.set(3);
+        List<String> parallelAtoms = getStoredAtoms(write, toClose, read);
+
+        assertEquals(60, sequentialAtoms.size());
+        assertEquals(sequentialAtoms, parallelAtoms);
+    }
+
+    private List<String> getStoredAtoms(Partition write, Set<StandardPredicate> toClose, Partition read) {
+        Database db = datastore.getDatabase(write, toClose, read);
+        AtomStore atomStore = db.getAtomStore();
+
+        List<String> atoms = new ArrayList<String>();
+        for (GroundAtom atom : atomStore) {
+            assertEquals(atom.getIndex(), atomStore.getAtomIndex(atom));
+            assertEquals(atom.getValue(), atomStore.getAtomValues()[atom.getIndex()], 0.0f);
+            atoms.add(String.format("%d: %s (%s, %f)", atom.getIndex(), atom, atom.getClass().getSimpleName(), atom.getValue()));
+        }
+
+        assertEquals(20, atomStore.getNumRVAtoms());
+        assertEquals(19, atomStore.getMaxRVAIndex());
+
+        db.close();
+
+        return atoms;
+    }
+
     @Test
     public void testLoadFile() {
         if (datastore == null) {
@@ -0,0 +1,99 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.model.deep;
+
+import org.linqs.psl.test.PSLBaseTest;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class BinaryProtocolTest extends PSLBaseTest {
+    @Test
+    public void testRequestLayout() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryProtocol.writeRequest(new DataOutputStream(bytes), "predict", 12, 64, null);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals(BinaryProtocol.MAGIC, input.readInt());
+        Assert.assertEquals("predict", BinaryProtocol.getTask(input.readByte()));
+        Assert.assertEquals(12, input.readInt());
+        Assert.assertEquals(64, input.readInt());
+        Assert.assertEquals(0, input.readInt());
+        Assert.assertEquals(-1, input.read());
+    }
+
+    @Test
+    public void testResponses() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        BinaryProtocol.writeResponse(output, BinaryProtocol.STATUS_SUCCESS, "is_epoch_complete", 1, "true");
+        BinaryProtocol.writeResponse(output, BinaryProtocol.STATUS_SUCCESS, "eval", 2, "0.25");
+        BinaryProtocol.writeResponse(output, BinaryProtocol.STATUS_SUCCESS, "next_batch", 3, "null");
+        BinaryProtocol.writeResponse(output, BinaryProtocol.STATUS_FAILURE, "fit", 4, "Bad things.");
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        JSONObject response = BinaryProtocol.readResponse(input, 1);
+        Assert.assertEquals("success", response.getString("status"));
+        Assert.assertEquals("is_epoch_complete", response.getString("task"));
+        Assert.assertTrue(response.getBoolean("result"));
+
+        response = BinaryProtocol.readResponse(input, 2);
+        Assert.assertEquals(0.25f, response.getFloat("result"), 1e-6f);
+
+        response = BinaryProtocol.readResponse(input, 3);
+        Assert.assertNull(response.optJSONObject("result"));
+
+        response = BinaryProtocol.readResponse(input, 4);
+        Assert.assertEquals("failed", response.getString("status"));
+        Assert.assertEquals("Bad things.", response.getString("message"));
+    }
+
+    @Test
+    public void testOutOfOrderResponse() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryProtocol.writeResponse(new DataOutputStream(bytes), BinaryProtocol.STATUS_SUCCESS, "save", 5, "null");
+
+        try {
+            BinaryProtocol.readResponse(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 6);
+            Assert.fail("Expected an IllegalStateException.");
+        } catch (IllegalStateException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testOpcodes() {
+        Assert.assertEquals("init", BinaryProtocol.getTask(BinaryProtocol.getOpcode("init")));
+        Assert.assertEquals("close", BinaryProtocol.getTask(BinaryProtocol.getOpcode("close")));
+
+        try {
+            BinaryProtocol.getOpcode("not_a_task");
+            Assert.fail("Expected an IllegalArgumentException.");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+}
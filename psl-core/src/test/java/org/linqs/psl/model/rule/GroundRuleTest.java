@@ -19,6 +19,8 @@ package org.linqs.psl.model.rule;
 
 import org.linqs.psl.database.Database;
 import org.linqs.psl.database.loading.Inserter;
+import org.linqs.psl.grounding.Grounding;
+import org.linqs.psl.model.atom.GroundAtom;
 import org.linqs.psl.model.atom.QueryAtom;
 import org.linqs.psl.model.formula.Conjunction;
 import org.linqs.psl.model.formula.Disjunction;
@@ -46,6 +48,7 @@ import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Min;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Multiply;
 import org.linqs.psl.model.rule.arithmetic.expression.coefficient.Subtract;
 import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
+import org.linqs.psl.model.term.Constant;
 import org.linqs.psl.model.term.UniqueStringID;
 import org.linqs.psl.model.term.Variable;
 import org.linqs.psl.reasoner.function.FunctionComparator;
@@ -1738,6 +1741,162 @@ public class GroundRuleTest extends PSLBaseTest {
         groundAndCompare(expected, rule, store, database);
     }
 
+    @Test
+    // Everyone except Eugene has non-zero niceness.
+    // Friends(A, +B) >= 1 {B: Nice(B)}
+    public void testPrefilteredConstantsNotGrounded() {
+        initModel(false);
+
+        List<Coefficient> coefficients = Arrays.asList(
+            (Coefficient)(new ConstantNumber(1))
+        );
+
+        List<SummationAtomOrAtom> atoms = Arrays.asList(
+            (SummationAtomOrAtom)(new SummationAtom(
+                model.predicates.get("Friends"),
+                new SummationVariableOrTerm[]{new Variable("A"), new SummationVariable("B")}
+            ))
+        );
+
+        // The filter only uses B, so it is applied once per constant before grounding.
+        Map<SummationVariable, Formula> filters = new HashMap<SummationVariable, Formula>();
+        filters.put(new SummationVariable("B"), new QueryAtom(model.predicates.get("Nice"), new Variable("B")));
+
+        Rule rule = new WeightedArithmeticRule(
+                new ArithmeticRuleExpression(coefficients, atoms, FunctionComparator.GTE, new ConstantNumber(1)),
+                filters,
+                1.0f,
+                true
+        );
+
+        List<GroundRule> groundRules = groundAll(rule);
+        assertEquals(5, groundRules.size());
+
+        UniqueStringID eugene = new UniqueStringID("Eugene");
+        for (GroundRule groundRule : groundRules) {
+            for (GroundAtom atom : groundRule.getAtoms()) {
+                assertNotEquals(eugene, atom.getArguments()[1]);
+            }
+        }
+    }
+
+    @Test
+    // Everyone except Eugene has non-zero niceness.
+    // Friends(A, +B) + Person(C) >= 1 {B: Nice(B) & (B != C)}
+    // Friends(A, +B) >= 1 {B: Nice(B) & (B != A)}
+    public void testMixedFilter() {
+        initModel(false, true);
+
+        UniqueStringID eugene = new UniqueStringID("Eugene");
+
+        List<Coefficient> coefficients = Arrays.asList(
+            (Coefficient)(new ConstantNumber(1)),
+            (Coefficient)(new ConstantNumber(1))
+        );
+
+        List<SummationAtomOrAtom> atoms = Arrays.asList(
+            (SummationAtomOrAtom)(new SummationAtom(
+                model.predicates.get("Friends"),
+                new SummationVariableOrTerm[]{new Variable("A"), new SummationVariable("B")}
+            )),
+            (SummationAtomOrAtom)(new QueryAtom(model.predicates.get("Person"), new Variable("C")))
+        );
+
+        // The filter uses C (but not A), so its results are shared by every row with the same C.
+        Map<SummationVariable, Formula> filters = new HashMap<SummationVariable, Formula>();
+        filters.put(
+            new SummationVariable("B"),
+            new Conjunction(
+                new QueryAtom(model.predicates.get("Nice"), new Variable("B")),
+                new QueryAtom(GroundingOnlyPredicate.NotEqual, new Variable("B"), new Variable("C"))
+            )
+        );
+
+        Rule rule = new WeightedArithmeticRule(
+                new ArithmeticRuleExpression(coefficients, atoms, FunctionComparator.GTE, new ConstantNumber(1)),
+                filters,
+                1.0f,
+                true
+        );
+
+        List<GroundRule> groundRules = groundAll(rule);
+        assertEquals(25, groundRules.size());
+
+        for (GroundRule groundRule : groundRules) {
+            Constant person = null;
+            Set<Constant> friendees = new HashSet<Constant>();
+
+            for (GroundAtom atom : groundRule.getAtoms()) {
+                if (atom.getPredicate().equals(model.predicates.get("Person"))) {
+                    person = atom.getArguments()[0];
+                } else {
+                    friendees.add(atom.getArguments()[1]);
+                }
+            }
+
+            // Everyone (including the friender) except Eugene and the person.
+            Set<Constant> expected = new HashSet<Constant>();
+            for (String name : new String[]{"Alice", "Bob", "Charlie", "Derek"}) {
+                expected.add(new UniqueStringID(name));
+            }
+            expected.remove(person);
+
+            assertEquals(expected, friendees);
+        }
+
+        // The filter uses every rule variable (A), so it is evaluated for each row.
+        atoms = Arrays.asList(
+            (SummationAtomOrAtom)(new SummationAtom(
+                model.predicates.get("Friends"),
+                new SummationVariableOrTerm[]{new Variable("A"), new SummationVariable("B")}
+            ))
+        );
+
+        filters = new HashMap<SummationVariable, Formula>();
+        filters.put(
+            new SummationVariable("B"),
+            new Conjunction(
+                new QueryAtom(model.predicates.get("Nice"), new Variable("B")),
+                new QueryAtom(GroundingOnlyPredicate.NotEqual, new Variable("B"), new Variable("A"))
+            )
+        );
+
+        rule = new WeightedArithmeticRule(
+                new ArithmeticRuleExpression(Arrays.asList((Coefficient)(new ConstantNumber(1))), atoms, FunctionComparator.GTE, new ConstantNumber(1)),
+                filters,
+                1.0f,
+                true
+        );
+
+        groundRules = groundAll(rule);
+        assertEquals(5, groundRules.size());
+
+        for (GroundRule groundRule : groundRules) {
+            Constant friender = null;
+            for (GroundAtom atom : groundRule.getAtoms()) {
+                friender = atom.getArguments()[0];
+
+                assertNotEquals(eugene, atom.getArguments()[1]);
+                assertNotEquals(friender, atom.getArguments()[1]);
+            }
+
+            // Everyone except Eugene and the friender.
+            int expectedSize = (eugene.equals(friender)) ? 4 : 3;
+            assertEquals(expectedSize, groundRule.getAtoms().size());
+        }
+    }
+
+    private List<GroundRule> groundAll(Rule rule) {
+        final List<GroundRule> groundRules = new ArrayList<GroundRule>();
+        rule.groundAll(new DummyTermStore(database.getAtomStore()), database, new Grounding.GroundRuleCallback() {
+            public synchronized void call(GroundRule groundRule) {
+                groundRules.add(groundRule);
+            }
+        });
+
+        return groundRules;
+    }
+
     /**
      * Ensure a PAM exception is thrown for a logical rule.
      */
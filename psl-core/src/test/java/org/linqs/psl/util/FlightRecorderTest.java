@@ -0,0 +1,113 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.util;
+
+import org.linqs.psl.test.PSLBaseTest;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FlightRecorderTest extends PSLBaseTest {
+    @Test
+    public void testEvents() throws IOException {
+        assertTrue(FlightRecorder.isAvailable());
+
+        List<RecordedEvent> events = null;
+        Path path = Files.createTempFile("psl-flight-recorder-test", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightRecorder.GroundingQueryEvent.class);
+            recording.enable(FlightRecorder.ParallelRegionEvent.class);
+            recording.enable(FlightRecorder.ReasonerIterationEvent.class);
+            recording.enable(FlightRecorder.CommitBatchEvent.class);
+            recording.start();
+
+            Parallel.count(10, new Parallel.Worker<Long>() {
+                @Override
+                public void work(long index, Long item) {
+                    // Do nothing.
+                }
+            });
+
+            Object event = FlightRecorder.beginGroundingQuery();
+            FlightRecorder.endGroundingQuery(event, "rule", "SELECT 1", 2, 3);
+
+            event = FlightRecorder.beginCommitBatch();
+            FlightRecorder.endCommitBatch(event, "Predicate", 4, false);
+
+            FlightRecorder.reasonerIteration("Reasoner", 5, 6, 7.0, 0, Double.NaN);
+
+            recording.stop();
+            recording.dump(path);
+
+            events = RecordingFile.readAllEvents(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+
+        Map<String, RecordedEvent> eventsByName = new HashMap<String, RecordedEvent>();
+        for (RecordedEvent event : events) {
+            eventsByName.put(event.getEventType().getName(), event);
+        }
+
+        RecordedEvent event = eventsByName.get("org.linqs.psl.ParallelRegion");
+        assertNotNull(event);
+        assertEquals("count", event.getString("method"));
+        assertEquals(10, event.getLong("iterations"));
+
+        event = eventsByName.get("org.linqs.psl.GroundingQuery");
+        assertNotNull(event);
+        assertEquals("rule", event.getString("rule"));
+        assertEquals("SELECT 1", event.getString("query"));
+        assertEquals(2, event.getLong("rows"));
+        assertEquals(3, event.getLong("terms"));
+
+        event = eventsByName.get("org.linqs.psl.CommitBatch");
+        assertNotNull(event);
+        assertEquals("Predicate", event.getString("predicate"));
+        assertEquals(4, event.getLong("atoms"));
+
+        event = eventsByName.get("org.linqs.psl.ReasonerIteration");
+        assertNotNull(event);
+        assertEquals("Reasoner", event.getString("reasoner"));
+        assertEquals(5, event.getInt("iteration"));
+        assertEquals(7.0, event.getDouble("objective"));
+    }
+
+    /**
+     * Without a recording, nothing should be allocated.
+     */
+    @Test
+    public void testDisabled() {
+        assertNull(FlightRecorder.beginGroundingQuery());
+        assertNull(FlightRecorder.beginParallelRegion());
+        assertNull(FlightRecorder.beginCommitBatch());
+
+        // Null tokens are ignored.
+        FlightRecorder.endGroundingQuery(null, "rule", "SELECT 1", 0, 0);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.util;
+
+import org.linqs.psl.test.PSLBaseTest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetricsTest extends PSLBaseTest {
+    @Before
+    public void setup() {
+        Metrics.clear();
+    }
+
+    @After
+    public void cleanup() {
+        Metrics.clear();
+    }
+
+    @Test
+    public void testBase() {
+        Metrics.counter("test_counter", "rule", "a").add(3);
+        Metrics.counter("test_counter", "rule", "a").increment();
+        Metrics.counter("test_counter", "rule", "b").increment();
+        assertEquals(4, Metrics.counter("test_counter", "rule", "a").get());
+        assertEquals(1, Metrics.counter("test_counter", "rule", "b").get());
+
+        Metrics.gauge("test_gauge").set(1.5);
+        Metrics.gauge("test_gauge").set(2.5);
+        assertEquals(2.5, Metrics.gauge("test_gauge").get(), MathUtils.EPSILON);
+
+        Metrics.Histogram histogram = Metrics.histogram("test_histogram");
+        histogram.observe(5.0);
+        histogram.observe(50.0);
+        assertEquals(2, histogram.getCount());
+        assertEquals(55.0, histogram.getSum(), MathUtils.EPSILON);
+
+        assertEquals(4, Metrics.snapshot().size());
+    }
+
+    @Test
+    public void testPrometheus() {
+        Metrics.counter("test_counter", "rule", "a \"quoted\" rule").add(2);
+        Metrics.histogram("test_histogram").observe(5.0);
+
+        String output = Metrics.toPrometheus();
+
+        assertTrue(output, output.contains("# TYPE psl_test_counter counter\n"));
+        assertTrue(output, output.contains("psl_test_counter{rule=\"a \\\"quoted\\\" rule\"} 2\n"));
+
+        assertTrue(output, output.contains("# TYPE psl_test_histogram histogram\n"));
+        assertTrue(output, output.contains("psl_test_histogram_bucket{le=\"1\"} 0\n"));
+        assertTrue(output, output.contains("psl_test_histogram_bucket{le=\"10\"} 1\n"));
+        assertTrue(output, output.contains("psl_test_histogram_bucket{le=\"+Inf\"} 1\n"));
+        assertTrue(output, output.contains("psl_test_histogram_sum 5\n"));
+        assertTrue(output, output.contains("psl_test_histogram_count 1\n"));
+    }
+
+    @Test
+    public void testJSON() {
+        Metrics.counter("test_counter", "rule", "a").add(2);
+        Metrics.gauge("test_gauge").set(Double.POSITIVE_INFINITY);
+
+        JSONArray json = new JSONArray(Metrics.toJSON());
+        assertEquals(2, json.length());
+
+        JSONObject counter = json.getJSONObject(0);
+        assertEquals("psl_test_counter", counter.getString("name"));
+        assertEquals("counter", counter.getString("type"));
+        assertEquals("a", counter.getJSONObject("labels").getString("rule"));
+        assertEquals(2, counter.getLong("value"));
+
+        JSONObject gauge = json.getJSONObject(1);
+        assertEquals("psl_test_gauge", gauge.getString("name"));
+        assertEquals("+Inf", gauge.getString("value"));
+    }
+
+    @Test
+    public void testBadLabels() {
+        try {
+            Metrics.counter("test_counter", "rule");
+            fail("Odd number of labels did not throw.");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testTypeMismatch() {
+        Metrics.counter("test_metric");
+
+        try {
+            Metrics.gauge("test_metric");
+            fail("Type mismatch did not throw.");
+        } catch (IllegalStateException ex) {
+            // Expected.
+        }
+    }
+}
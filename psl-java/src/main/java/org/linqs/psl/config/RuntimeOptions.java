@@ -20,6 +20,7 @@ package org.linqs.psl.config;
 import org.linqs.psl.application.inference.mpe.ADMMInference;
 import org.linqs.psl.application.learning.weight.gradient.optimalvalue.StructuredPerceptron;
 import org.linqs.psl.runtime.Runtime;
+import org.linqs.psl.runtime.generator.WorkloadGenerator;
 
 import org.linqs.psl.util.SystemUtils;
 
@@ -70,6 +71,78 @@ public class RuntimeOptions {
         "The type of database to use. See the Runtime.DatabaseType enum."
     );
 
+    public static final Option GENERATOR_ARITY = new Option(
+        "runtime.generator.arity",
+        2,
+        "The arity of the evidence predicates in generated workloads."
+        + " Arguments past the target arguments range over a small set of views,"
+        + " so each additional argument doubles the evidence and its groundings.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option GENERATOR_DEGREE = new Option(
+        "runtime.generator.degree",
+        10.0,
+        "The mean degree of the entity graph (or mean block/candidate size) in generated workloads.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option GENERATOR_DEGREE_DISTRIBUTION = new Option(
+        "runtime.generator.degree.distribution",
+        WorkloadGenerator.DegreeDistribution.POWER_LAW.toString(),
+        "The degree distribution of generated workloads."
+        + " See WorkloadGenerator.DegreeDistribution."
+    );
+
+    public static final Option GENERATOR_DEGREE_EXPONENT = new Option(
+        "runtime.generator.degree.exponent",
+        2.5,
+        "The exponent of the power-law degree distribution in generated workloads.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option GENERATOR_ENTITIES = new Option(
+        "runtime.generator.entities",
+        1000,
+        "The number of primary entities (nodes, records, or tasks) in generated workloads.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option GENERATOR_FAMILY = new Option(
+        "runtime.generator.family",
+        WorkloadGenerator.Family.COLLECTIVE_CLASSIFICATION.toString(),
+        "The family of workload to generate. See WorkloadGenerator.Family."
+    );
+
+    public static final Option GENERATOR_LABELS = new Option(
+        "runtime.generator.labels",
+        5,
+        "The number of labels in generated collective classification workloads.",
+        Option.FLAG_POSITIVE
+    );
+
+    public static final Option GENERATOR_OBSERVED_RATIO = new Option(
+        "runtime.generator.observed",
+        0.5,
+        "The fraction of target atoms (grouped by entity or pair) that are observed instead of inferred"
+        + " in generated workloads.",
+        Option.FLAG_NON_NEGATIVE | Option.FLAG_LT_ONE
+    );
+
+    public static final Option GENERATOR_OUTPUT_DIR = new Option(
+        "runtime.generator.output.dir",
+        SystemUtils.getTempDir("psl_workload"),
+        "The directory to write generated rules, data, and the runtime config to."
+    );
+
+    public static final Option GENERATOR_RULES = new Option(
+        "runtime.generator.rules",
+        2,
+        "The number of evidence rules in generated workloads (in addition to each family's structural rules)."
+        + " Each evidence rule gets its own observed predicate.",
+        Option.FLAG_NON_NEGATIVE
+    );
+
     public static final Option HELP = new Option(
         "runtime.help",
         false,
@@ -126,6 +199,13 @@ public class RuntimeOptions {
         + " The " + INFERENCE_OUTPUT_GROUNDRULES_PATH.name() + " option controls where ground rules are output."
     );
 
+    public static final Option INFERENCE_OUTPUT_GROUNDRULES_BINARY = new Option(
+        "runtime.inference.output.groundrules.binary",
+        false,
+        "Output ground rules in the streaming binary format (see GroundRuleExporter) instead of text."
+        + " Requires " + INFERENCE_OUTPUT_GROUNDRULES_PATH.name() + "."
+    );
+
     public static final Option INFERENCE_CLEAR_RULES = new Option(
         "runtime.inference.clearrules",
         false,
@@ -169,6 +249,27 @@ public class RuntimeOptions {
         + " The exact semantics depends on the process outputting atoms, e.g., inference of the grounding API."
     );
 
+    public static final Option SERVER_HOST = new Option(
+        "runtime.server.host",
+        "127.0.0.1",
+        "The address for the inference server (see InferenceServer) to listen on."
+    );
+
+    public static final Option SERVER_PORT = new Option(
+        "runtime.server.port",
+        0,
+        "The port for the inference server (see InferenceServer) to listen on."
+        + " Zero will pick any free port (the chosen port is logged).",
+        Option.FLAG_NON_NEGATIVE
+    );
+
+    public static final Option SHARE_GROUNDING = new Option(
+        "runtime.sharegrounding",
+        true,
+        "When running both learning and inference over the same data, rules, and options,"
+        + " reuse the ground model from learning for inference instead of grounding again."
+    );
+
     public static final Option VERSION = new Option(
         "runtime.version",
         false,
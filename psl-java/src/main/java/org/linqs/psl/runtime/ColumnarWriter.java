@@ -0,0 +1,548 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.grounding.Grounding;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write atoms and ground rules as a binary columnar file.
+ * Clients (like pslpython) can memory-map the file and view each column as a typed array
+ * without parsing or copying, which matters when a result has millions of atoms or ground rules.
+ *
+ * File layout (all numbers are little-endian):
+ *  - 8 bytes: the magic string MAGIC.
+ *  - 8 bytes: the length of the header in bytes.
+ *  - The header: UTF-8 JSON with the keys:
+ *     - "version": FORMAT_VERSION.
+ *     - "predicates": predicate names, referenced by position from the atom_predicate column.
+ *     - "operators": ground rule operators, referenced by position from the rule_operator column.
+ *     - "columns": a list of {"name", "dtype", "offset", "length"}.
+ *       The dtype is a numpy type string, the offset is the position of the column relative to the start of the data,
+ *       and the length is the number of values (not bytes).
+ *  - Padding up to the next COLUMN_ALIGNMENT byte boundary, where the data starts.
+ *  - The columns, each starting on a COLUMN_ALIGNMENT byte boundary (the alignment Arrow uses for buffers).
+ *
+ * Variable-length values use Arrow's offsets layout:
+ * the values of row i are [offsets[i], offsets[i + 1]) in the values column, so offsets have one more entry than rows.
+ *
+ * Atom columns (one row per atom):
+ *  - atom_index (int32): the index of the atom in the atom store (what rule_atoms refers to).
+ *  - atom_predicate (int32), atom_value (float32), atom_observed (uint8).
+ *  - atom_argument_offsets (int64): offsets into the atom's arguments.
+ *  - atom_argument_string_offsets (int64) and atom_argument_bytes (uint8): the UTF-8 arguments.
+ *
+ * Ground rule columns (one row per ground rule, only present for ground programs):
+ *  - rule_index (int32): the index of the rule in the model.
+ *  - rule_operator (uint8), rule_weight (float32, -1 for unweighted), rule_constant (float32).
+ *  - rule_atom_offsets (int64): offsets into rule_atoms and rule_coefficients.
+ *  - rule_atoms (int32), rule_coefficients (float32).
+ *
+ * Columns are built in memory (the header needs every column's length), and each column is a Java array.
+ * So a column can hold at most MAX_COLUMN_SIZE values, e.g. about 2 GiB of atom arguments.
+ * Larger groundings should be streamed with GroundRuleExporter instead.
+ *
+ * A writer can be used as the ground rule callback during grounding (see Grounding.setGroundRuleCallback()),
+ * so ground rules go straight into columns instead of being collected into a GroundingAPI.GroundProgram first.
+ */
+public final class ColumnarWriter implements Grounding.GroundRuleCallback {
+    public static final String MAGIC = "PSLCOLS1";
+    public static final int FORMAT_VERSION = 1;
+    public static final int COLUMN_ALIGNMENT = 64;
+
+    /**
+     * The most values a single column can hold (the largest array most JVMs will allocate).
+     */
+    public static final int MAX_COLUMN_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private List<String> predicates;
+    private Map<String, Integer> predicateIndexes;
+
+    private List<String> operators;
+    private Map<String, Integer> operatorIndexes;
+
+    private List<Column> columns;
+
+    private IntColumn atomIndexes;
+    private IntColumn atomPredicates;
+    private FloatColumn atomValues;
+    private ByteColumn atomObserved;
+    private LongColumn atomArgumentOffsets;
+    private LongColumn atomArgumentStringOffsets;
+    private ByteColumn atomArgumentBytes;
+
+    private IntColumn ruleIndexes;
+    private ByteColumn ruleOperators;
+    private FloatColumn ruleWeights;
+    private FloatColumn ruleConstants;
+    private LongColumn ruleAtomOffsets;
+    private IntColumn ruleAtoms;
+    private FloatColumn ruleCoefficients;
+
+    private Map<Rule, Integer> ruleIndexMap;
+    private AtomStore atomStore;
+    private BitSet usedAtoms;
+
+    /**
+     * Make a writer that collects a ground program as it is grounded (see call()).
+     * If |allAtoms| is true, then every atom in the store is written (see RuntimeOptions.OUTPUT_ALL_ATOMS),
+     * otherwise only the atoms that appear in ground rules are.
+     */
+    public ColumnarWriter(List<Rule> rules, AtomStore atomStore, boolean allAtoms) {
+        this(true);
+
+        this.atomStore = atomStore;
+
+        ruleIndexMap = new IdentityHashMap<Rule, Integer>();
+        for (int i = 0; i < rules.size(); i++) {
+            ruleIndexMap.put(rules.get(i), Integer.valueOf(i));
+        }
+
+        if (!allAtoms) {
+            usedAtoms = new BitSet();
+        }
+    }
+
+    private ColumnarWriter(boolean includeRules) {
+        predicates = new ArrayList<String>();
+        predicateIndexes = new HashMap<String, Integer>();
+
+        operators = new ArrayList<String>();
+        operatorIndexes = new HashMap<String, Integer>();
+
+        columns = new ArrayList<Column>();
+
+        atomIndexes = addColumn(new IntColumn("atom_index"));
+        atomPredicates = addColumn(new IntColumn("atom_predicate"));
+        atomValues = addColumn(new FloatColumn("atom_value"));
+        atomObserved = addColumn(new ByteColumn("atom_observed"));
+        atomArgumentOffsets = addColumn(new LongColumn("atom_argument_offsets"));
+        atomArgumentStringOffsets = addColumn(new LongColumn("atom_argument_string_offsets"));
+        atomArgumentBytes = addColumn(new ByteColumn("atom_argument_bytes"));
+
+        atomArgumentOffsets.add(0);
+        atomArgumentStringOffsets.add(0);
+
+        if (!includeRules) {
+            return;
+        }
+
+        ruleIndexes = addColumn(new IntColumn("rule_index"));
+        ruleOperators = addColumn(new ByteColumn("rule_operator"));
+        ruleWeights = addColumn(new FloatColumn("rule_weight"));
+        ruleConstants = addColumn(new FloatColumn("rule_constant"));
+        ruleAtomOffsets = addColumn(new LongColumn("rule_atom_offsets"));
+        ruleAtoms = addColumn(new IntColumn("rule_atoms"));
+        ruleCoefficients = addColumn(new FloatColumn("rule_coefficients"));
+
+        ruleAtomOffsets.add(0);
+    }
+
+    @Override
+    public synchronized void call(GroundRule groundRule) {
+        if (atomStore == null) {
+            throw new IllegalStateException("This writer was not made to collect a grounding.");
+        }
+
+        Integer ruleIndex = ruleIndexMap.get(groundRule.getRule());
+        if (ruleIndex == null) {
+            throw new IllegalStateException("Ground rule from an unknown rule: " + groundRule.getRule());
+        }
+
+        GroundingAPI.GroundRuleInfo info = GroundingAPI.mapGroundRule(ruleIndex.intValue(), atomStore, groundRule, null);
+        addGroundRule(info);
+
+        if (usedAtoms != null) {
+            for (int atomIndex : info.atoms) {
+                usedAtoms.set(atomIndex);
+            }
+        }
+    }
+
+    /**
+     * Write the collected ground program (see call()) along with its atoms (in order of their atom index).
+     * Should only be called once grounding is complete.
+     */
+    public void writeGrounding(String path) {
+        if (atomStore == null) {
+            throw new IllegalStateException("This writer was not made to collect a grounding.");
+        }
+
+        if (usedAtoms == null) {
+            for (GroundAtom atom : atomStore) {
+                addAtom(atom.getIndex(), new GroundingAPI.AtomInfo(atom));
+            }
+        } else {
+            for (int atomIndex = usedAtoms.nextSetBit(0); atomIndex >= 0; atomIndex = usedAtoms.nextSetBit(atomIndex + 1)) {
+                addAtom(atomIndex, new GroundingAPI.AtomInfo(atomStore.getAtom(atomIndex)));
+            }
+        }
+
+        write(path);
+    }
+
+    /**
+     * Write atoms (e.g. the results of inference).
+     */
+    public static void writeAtoms(Iterable<? extends GroundAtom> atoms, String path) {
+        ColumnarWriter writer = new ColumnarWriter(false);
+
+        for (GroundAtom atom : atoms) {
+            writer.addAtom(atom.getIndex(), new GroundingAPI.AtomInfo(atom));
+        }
+
+        writer.write(path);
+    }
+
+    /**
+     * Write a ground program.
+     * Atoms are written in order of their atom index.
+     */
+    public static void writeGroundProgram(GroundingAPI.GroundProgram program, String path) {
+        ColumnarWriter writer = new ColumnarWriter(true);
+
+        int[] atomIndexes = new int[program.atoms.size()];
+        int count = 0;
+        for (Integer atomIndex : program.atoms.keySet()) {
+            atomIndexes[count++] = atomIndex.intValue();
+        }
+        Arrays.sort(atomIndexes);
+
+        for (int atomIndex : atomIndexes) {
+            writer.addAtom(atomIndex, program.atoms.get(Integer.valueOf(atomIndex)));
+        }
+
+        for (GroundingAPI.GroundRuleInfo groundRule : program.groundRules) {
+            writer.addGroundRule(groundRule);
+        }
+
+        writer.write(path);
+    }
+
+    private void addAtom(int atomIndex, GroundingAPI.AtomInfo atom) {
+        atomIndexes.add(atomIndex);
+        atomPredicates.add(getIndex(atom.predicate, predicates, predicateIndexes));
+        atomValues.add(atom.value);
+        atomObserved.add((byte)(atom.observed ? 1 : 0));
+
+        for (String argument : atom.arguments) {
+            byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+            for (byte value : bytes) {
+                atomArgumentBytes.add(value);
+            }
+
+            atomArgumentStringOffsets.add(atomArgumentBytes.size());
+        }
+
+        atomArgumentOffsets.add(atomArgumentStringOffsets.size() - 1);
+    }
+
+    private void addGroundRule(GroundingAPI.GroundRuleInfo groundRule) {
+        ruleIndexes.add(groundRule.ruleIndex);
+        ruleOperators.add((byte)getIndex(groundRule.operator, operators, operatorIndexes));
+        ruleWeights.add(groundRule.weight);
+        ruleConstants.add(groundRule.constant);
+
+        for (int i = 0; i < groundRule.atoms.length; i++) {
+            ruleAtoms.add(groundRule.atoms[i]);
+            ruleCoefficients.add(groundRule.coefficients[i]);
+        }
+
+        ruleAtomOffsets.add(ruleAtoms.size());
+    }
+
+    private void write(String path) {
+        byte[] header = buildHeader();
+        long dataStart = align(MAGIC.length() + Long.BYTES + header.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            buffer.putLong(header.length);
+            flush(channel, buffer);
+
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                channel.write(headerBuffer);
+            }
+
+            for (Column column : columns) {
+                pad(channel, buffer, dataStart + column.offset);
+                column.write(channel, buffer);
+                flush(channel, buffer);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write columnar output to: " + path, ex);
+        }
+    }
+
+    /**
+     * Build the header (and assign each column its offset in the data).
+     */
+    private byte[] buildHeader() {
+        List<Map<String, Object>> columnInfos = new ArrayList<Map<String, Object>>(columns.size());
+
+        long offset = 0;
+        for (Column column : columns) {
+            column.offset = offset;
+
+            Map<String, Object> info = new LinkedHashMap<String, Object>();
+            info.put("name", column.name);
+            info.put("dtype", column.dtype);
+            info.put("offset", Long.valueOf(column.offset));
+            info.put("length", Long.valueOf(column.size()));
+            columnInfos.add(info);
+
+            offset = align(offset + (long)column.size() * column.width);
+        }
+
+        Map<String, Object> header = new LinkedHashMap<String, Object>();
+        header.put("version", Integer.valueOf(FORMAT_VERSION));
+        header.put("predicates", predicates);
+        header.put("operators", operators);
+        header.put("columns", columnInfos);
+
+        try {
+            return (new ObjectMapper()).writeValueAsBytes(header);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to build columnar header.", ex);
+        }
+    }
+
+    private <T extends Column> T addColumn(T column) {
+        columns.add(column);
+        return column;
+    }
+
+    private static int getIndex(String value, List<String> values, Map<String, Integer> indexes) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = Integer.valueOf(values.size());
+            values.add(value);
+            indexes.put(value, index);
+        }
+
+        return index.intValue();
+    }
+
+    private static long align(long offset) {
+        return ((offset + COLUMN_ALIGNMENT - 1) / COLUMN_ALIGNMENT) * COLUMN_ALIGNMENT;
+    }
+
+    private static void pad(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long padding = offset - channel.position();
+        for (long i = 0; i < padding; i++) {
+            buffer.put((byte)0);
+        }
+
+        flush(channel, buffer);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static abstract class Column {
+        public final String name;
+        public final String dtype;
+        public final int width;
+        public long offset;
+
+        public Column(String name, String dtype, int width) {
+            this.name = name;
+            this.dtype = dtype;
+            this.width = width;
+            this.offset = 0;
+        }
+
+        public abstract int size();
+
+        /**
+         * Get the capacity to grow a full column of |capacity| values to.
+         */
+        protected int grow(int capacity) {
+            if (capacity >= MAX_COLUMN_SIZE) {
+                throw new IllegalStateException(String.format(
+                        "Column %s is full (%d values), the output is too large for the columnar format.",
+                        name, MAX_COLUMN_SIZE));
+            }
+
+            return (int)Math.min(2L * capacity, MAX_COLUMN_SIZE);
+        }
+
+        /**
+         * Put all values into the buffer, flushing whenever it fills.
+         */
+        public void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            for (int i = 0; i < size(); i++) {
+                if (buffer.remaining() < width) {
+                    flush(channel, buffer);
+                }
+
+                put(buffer, i);
+            }
+        }
+
+        protected abstract void put(ByteBuffer buffer, int index);
+    }
+
+    private static class IntColumn extends Column {
+        private int[] values;
+        private int size;
+
+        public IntColumn(String name) {
+            super(name, "<i4", Integer.BYTES);
+            values = new int[16];
+            size = 0;
+        }
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+
+            values[size++] = value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        protected void put(ByteBuffer buffer, int index) {
+            buffer.putInt(values[index]);
+        }
+    }
+
+    private static class LongColumn extends Column {
+        private long[] values;
+        private int size;
+
+        public LongColumn(String name) {
+            super(name, "<i8", Long.BYTES);
+            values = new long[16];
+            size = 0;
+        }
+
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+
+            values[size++] = value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        protected void put(ByteBuffer buffer, int index) {
+            buffer.putLong(values[index]);
+        }
+    }
+
+    private static class FloatColumn extends Column {
+        private float[] values;
+        private int size;
+
+        public FloatColumn(String name) {
+            super(name, "<f4", Float.BYTES);
+            values = new float[16];
+            size = 0;
+        }
+
+        public void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+
+            values[size++] = value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        protected void put(ByteBuffer buffer, int index) {
+            buffer.putFloat(values[index]);
+        }
+    }
+
+    private static class ByteColumn extends Column {
+        private byte[] values;
+        private int size;
+
+        public ByteColumn(String name) {
+            super(name, "|u1", Byte.BYTES);
+            values = new byte[16];
+            size = 0;
+        }
+
+        public void add(byte value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(values.length));
+            }
+
+            values[size++] = value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        protected void put(ByteBuffer buffer, int index) {
+            buffer.put(values[index]);
+        }
+    }
+}
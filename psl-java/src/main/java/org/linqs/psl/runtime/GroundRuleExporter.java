@@ -0,0 +1,616 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.grounding.Grounding;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stream ground rules to a compact binary file as they are grounded,
+ * so a grounding never has to be held in memory (like it is in a GroundingAPI.GroundProgram).
+ *
+ * Each grounding thread fills its own batch, and full batches are encoded and handed to a single writer thread.
+ * The hand-off queue is bounded, so grounding slows down instead of buffering when the disk falls behind.
+ * Atoms are written when the exporter is closed (with their values at that time).
+ *
+ * File layout (all numbers are little-endian):
+ *  - 8 bytes: the magic string MAGIC.
+ *  - Blocks, each with a 16 byte header (int32 type, int32 row count, int64 payload length) and then the payload.
+ *    Within a payload, columns are laid out back-to-back in the order below.
+ *    Variable-length values use Arrow's offsets layout (row i is [offsets[i], offsets[i + 1]) of the values),
+ *    with offsets starting at zero in each block.
+ *     - BLOCK_GROUND_RULES: rule_index (int32), rule_weight (float32, -1 for unweighted), rule_constant (float32),
+ *       rule_atom_offsets (int32, rows + 1), rule_atoms (int32), rule_coefficients (float32), rule_operator (uint8).
+ *     - BLOCK_ATOMS: atom_index (int32), atom_predicate (int32), atom_value (float32),
+ *       atom_argument_offsets (int32, rows + 1), atom_argument_string_offsets (int32),
+ *       atom_observed (uint8), atom_argument_bytes (uint8, UTF-8).
+ *     - BLOCK_FOOTER: UTF-8 JSON with "version", "rules", "predicates", "operators", "groundRules", and "atoms".
+ *  - 8 bytes: the position of the footer block.
+ *
+ * Ground rules use the same representation as GroundingAPI.GroundRuleInfo,
+ * where rule_atoms are atom indexes (atom_index) and rule_operator indexes into OPERATORS.
+ */
+public class GroundRuleExporter implements Grounding.GroundRuleCallback {
+    private static final Logger log = Logger.getLogger(GroundRuleExporter.class);
+
+    public static final String MAGIC = "PSLGRND1";
+    public static final int FORMAT_VERSION = 1;
+
+    public static final int BLOCK_GROUND_RULES = 1;
+    public static final int BLOCK_ATOMS = 2;
+    public static final int BLOCK_FOOTER = 3;
+
+    public static final int BLOCK_HEADER_BYTES = 16;
+
+    public static final String[] OPERATORS = new String[]{"|", "=", "<=", ">="};
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final String path;
+    private final int batchSize;
+    private final List<Rule> rules;
+    private final Map<Rule, Integer> ruleIndexes;
+    private final AtomStore atomStore;
+
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> queue;
+    private final Thread writer;
+    private volatile IOException writeException;
+    private volatile boolean aborted;
+
+    private final ThreadLocal<GroundRuleBatch> threadBatches;
+    private final List<GroundRuleBatch> allBatches;
+    private final AtomicLong groundRuleCount;
+
+    private boolean closed;
+
+    public GroundRuleExporter(String path, List<Rule> rules, AtomStore atomStore) {
+        this(path, rules, atomStore, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the number of ground rules (or atoms) in each block.
+     */
+    public GroundRuleExporter(String path, List<Rule> rules, AtomStore atomStore, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        }
+
+        this.path = path;
+        this.batchSize = batchSize;
+        this.rules = new ArrayList<Rule>(rules);
+        this.atomStore = atomStore;
+
+        ruleIndexes = new IdentityHashMap<Rule, Integer>();
+        for (int i = 0; i < rules.size(); i++) {
+            ruleIndexes.put(rules.get(i), Integer.valueOf(i));
+        }
+
+        try {
+            channel = FileChannel.open(Paths.get(path),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            writeFully(ByteBuffer.wrap(MAGIC.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to open ground rule export: " + path, ex);
+        }
+
+        queue = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+        writeException = null;
+        aborted = false;
+
+        allBatches = new ArrayList<GroundRuleBatch>();
+        threadBatches = new ThreadLocal<GroundRuleBatch>() {
+            @Override
+            protected GroundRuleBatch initialValue() {
+                GroundRuleBatch batch = new GroundRuleBatch(batchSize);
+                synchronized (allBatches) {
+                    allBatches.add(batch);
+                }
+                return batch;
+            }
+        };
+
+        groundRuleCount = new AtomicLong(0);
+        closed = false;
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "psl-ground-rule-exporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void call(GroundRule groundRule) {
+        Integer ruleIndex = ruleIndexes.get(groundRule.getRule());
+        if (ruleIndex == null) {
+            throw new IllegalStateException("Ground rule from an unknown rule: " + groundRule.getRule());
+        }
+
+        GroundRuleBatch batch = threadBatches.get();
+        batch.add(GroundingAPI.mapGroundRule(ruleIndex.intValue(), atomStore, groundRule, null));
+
+        if (batch.size() >= batchSize) {
+            flush(batch);
+        }
+    }
+
+    public long getGroundRuleCount() {
+        return groundRuleCount.get();
+    }
+
+    /**
+     * Flush any partial batches, write the atoms and footer, and wait for the writer to finish.
+     * Should only be called once grounding is complete (see abort() for when grounding fails).
+     * If the export cannot be finished, then the file is deleted.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            finish();
+        } catch (RuntimeException ex) {
+            stopWriter();
+            discard();
+            throw ex;
+        }
+    }
+
+    /**
+     * Give up on the export (e.g. because grounding failed):
+     * stop the writer thread and delete the file, so no export without a footer is left behind.
+     * Does nothing if the exporter was already closed (or aborted), so it is safe to call from a finally block.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        stopWriter();
+        discard();
+        log.debug("Aborted ground rule export to {}.", path);
+    }
+
+    private void finish() {
+        synchronized (allBatches) {
+            for (GroundRuleBatch batch : allBatches) {
+                if (batch.size() > 0) {
+                    flush(batch);
+                }
+            }
+        }
+
+        List<String> predicates = new ArrayList<String>();
+        long atomCount = writeAtoms(predicates);
+
+        submit(END_OF_STREAM);
+
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the ground rule export to finish.", ex);
+        }
+
+        try {
+            if (writeException != null) {
+                throw writeException;
+            }
+
+            long footerPosition = channel.position();
+            writeFully(encodeFooter(predicates, atomCount));
+
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putLong(footerPosition);
+            trailer.flip();
+            writeFully(trailer);
+
+            channel.close();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write ground rule export: " + path, ex);
+        }
+
+        Metrics.counter("export_ground_rules_total").add(groundRuleCount.get());
+        log.debug("Exported {} ground rules and {} atoms to {}.", groundRuleCount.get(), atomCount, path);
+    }
+
+    /**
+     * Stop the writer thread without writing anything else, whether it is waiting on the queue or writing.
+     * Any blocks still in the queue are dropped, and later submissions are ignored.
+     */
+    private void stopWriter() {
+        aborted = true;
+        queue.clear();
+        writer.interrupt();
+
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Close the file (ignoring errors) and delete it.
+     */
+    private void discard() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.debug("Failed to close ground rule export: {}.", path);
+        }
+
+        try {
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException ex) {
+            log.warn("Failed to delete incomplete ground rule export: {}.", path);
+        }
+    }
+
+    /**
+     * Write all the atoms in the atom store, and collect the predicates (in the order they are referenced).
+     */
+    private long writeAtoms(List<String> predicates) {
+        Map<String, Integer> predicateIndexes = new HashMap<String, Integer>();
+        AtomBatch batch = new AtomBatch(batchSize);
+        long count = 0;
+
+        for (GroundAtom atom : atomStore) {
+            GroundingAPI.AtomInfo info = new GroundingAPI.AtomInfo(atom);
+
+            Integer predicateIndex = predicateIndexes.get(info.predicate);
+            if (predicateIndex == null) {
+                predicateIndex = Integer.valueOf(predicates.size());
+                predicates.add(info.predicate);
+                predicateIndexes.put(info.predicate, predicateIndex);
+            }
+
+            batch.add(atom.getIndex(), predicateIndex.intValue(), info);
+            count++;
+
+            if (batch.size() >= batchSize) {
+                submit(batch.encode());
+                batch.clear();
+            }
+        }
+
+        if (batch.size() > 0) {
+            submit(batch.encode());
+        }
+
+        return count;
+    }
+
+    private ByteBuffer encodeFooter(List<String> predicates, long atomCount) throws IOException {
+        List<String> ruleStrings = new ArrayList<String>(rules.size());
+        for (Rule rule : rules) {
+            ruleStrings.add(rule.toString());
+        }
+
+        Map<String, Object> footer = new LinkedHashMap<String, Object>();
+        footer.put("version", Integer.valueOf(FORMAT_VERSION));
+        footer.put("rules", ruleStrings);
+        footer.put("predicates", predicates);
+        footer.put("operators", Arrays.asList(OPERATORS));
+        footer.put("groundRules", Long.valueOf(groundRuleCount.get()));
+        footer.put("atoms", Long.valueOf(atomCount));
+
+        byte[] payload = (new ObjectMapper()).writeValueAsBytes(footer);
+
+        ByteBuffer buffer = allocateBlock(BLOCK_FOOTER, 0, payload.length);
+        buffer.put(payload);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private void flush(GroundRuleBatch batch) {
+        groundRuleCount.addAndGet(batch.size());
+        submit(batch.encode());
+        batch.clear();
+    }
+
+    private void submit(ByteBuffer block) {
+        if (aborted) {
+            return;
+        }
+
+        try {
+            queue.put(block);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while exporting ground rules.", ex);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer block = null;
+            try {
+                block = queue.take();
+            } catch (InterruptedException ex) {
+                writeException = new IOException("Ground rule export writer was interrupted.", ex);
+                return;
+            }
+
+            if (block == END_OF_STREAM) {
+                return;
+            }
+
+            // Keep draining after a failure so that producers never block, the error is reported on close.
+            if (writeException != null) {
+                continue;
+            }
+
+            try {
+                writeFully(block);
+            } catch (IOException ex) {
+                writeException = ex;
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer allocateBlock(int type, int rows, long payloadBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate((int)(BLOCK_HEADER_BYTES + payloadBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(type);
+        buffer.putInt(rows);
+        buffer.putLong(payloadBytes);
+        return buffer;
+    }
+
+    private static int operatorIndex(String operator) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (OPERATORS[i].equals(operator)) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("Unknown ground rule operator: " + operator);
+    }
+
+    /**
+     * A single thread's pending ground rules, held in primitive columns.
+     */
+    private static class GroundRuleBatch {
+        private int size;
+        private int[] ruleIndexes;
+        private float[] weights;
+        private float[] constants;
+        private byte[] operators;
+        private int[] atomOffsets;
+        private int[] atoms;
+        private float[] coefficients;
+
+        public GroundRuleBatch(int capacity) {
+            ruleIndexes = new int[capacity];
+            weights = new float[capacity];
+            constants = new float[capacity];
+            operators = new byte[capacity];
+            atomOffsets = new int[capacity + 1];
+            atoms = new int[capacity * 4];
+            coefficients = new float[capacity * 4];
+
+            clear();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void add(GroundingAPI.GroundRuleInfo groundRule) {
+            ruleIndexes[size] = groundRule.ruleIndex;
+            weights[size] = groundRule.weight;
+            constants[size] = groundRule.constant;
+            operators[size] = (byte)operatorIndex(groundRule.operator);
+
+            int start = atomOffsets[size];
+            int end = start + groundRule.atoms.length;
+            if (end > atoms.length) {
+                atoms = Arrays.copyOf(atoms, Math.max(end, atoms.length * 2));
+                coefficients = Arrays.copyOf(coefficients, atoms.length);
+            }
+
+            System.arraycopy(groundRule.atoms, 0, atoms, start, groundRule.atoms.length);
+            System.arraycopy(groundRule.coefficients, 0, coefficients, start, groundRule.coefficients.length);
+
+            size++;
+            atomOffsets[size] = end;
+        }
+
+        public ByteBuffer encode() {
+            int atomCount = atomOffsets[size];
+            long payloadBytes = (long)Integer.BYTES * size
+                    + (long)Float.BYTES * size * 2
+                    + (long)Integer.BYTES * (size + 1)
+                    + (long)(Integer.BYTES + Float.BYTES) * atomCount
+                    + size;
+
+            ByteBuffer buffer = allocateBlock(BLOCK_GROUND_RULES, size, payloadBytes);
+
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(ruleIndexes[i]);
+            }
+
+            for (int i = 0; i < size; i++) {
+                buffer.putFloat(weights[i]);
+            }
+
+            for (int i = 0; i < size; i++) {
+                buffer.putFloat(constants[i]);
+            }
+
+            for (int i = 0; i <= size; i++) {
+                buffer.putInt(atomOffsets[i]);
+            }
+
+            for (int i = 0; i < atomCount; i++) {
+                buffer.putInt(atoms[i]);
+            }
+
+            for (int i = 0; i < atomCount; i++) {
+                buffer.putFloat(coefficients[i]);
+            }
+
+            buffer.put(operators, 0, size);
+
+            buffer.flip();
+            return buffer;
+        }
+
+        public void clear() {
+            size = 0;
+            atomOffsets[0] = 0;
+        }
+    }
+
+    /**
+     * Pending atoms, held in primitive columns.
+     */
+    private static class AtomBatch {
+        private int size;
+        private int[] atomIndexes;
+        private int[] predicates;
+        private float[] values;
+        private byte[] observed;
+        private int[] argumentOffsets;
+        private List<byte[]> arguments;
+        private int argumentBytes;
+
+        public AtomBatch(int capacity) {
+            atomIndexes = new int[capacity];
+            predicates = new int[capacity];
+            values = new float[capacity];
+            observed = new byte[capacity];
+            argumentOffsets = new int[capacity + 1];
+            arguments = new ArrayList<byte[]>();
+
+            clear();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void add(int atomIndex, int predicate, GroundingAPI.AtomInfo atom) {
+            atomIndexes[size] = atomIndex;
+            predicates[size] = predicate;
+            values[size] = atom.value;
+            observed[size] = (byte)(atom.observed ? 1 : 0);
+
+            for (String argument : atom.arguments) {
+                byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+                arguments.add(bytes);
+                argumentBytes += bytes.length;
+            }
+
+            size++;
+            argumentOffsets[size] = arguments.size();
+        }
+
+        public ByteBuffer encode() {
+            long payloadBytes = (long)(Integer.BYTES * 2 + Float.BYTES) * size
+                    + (long)Integer.BYTES * (size + 1)
+                    + (long)Integer.BYTES * (arguments.size() + 1)
+                    + size
+                    + argumentBytes;
+
+            ByteBuffer buffer = allocateBlock(BLOCK_ATOMS, size, payloadBytes);
+
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(atomIndexes[i]);
+            }
+
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(predicates[i]);
+            }
+
+            for (int i = 0; i < size; i++) {
+                buffer.putFloat(values[i]);
+            }
+
+            for (int i = 0; i <= size; i++) {
+                buffer.putInt(argumentOffsets[i]);
+            }
+
+            int stringOffset = 0;
+            buffer.putInt(stringOffset);
+            for (byte[] argument : arguments) {
+                stringOffset += argument.length;
+                buffer.putInt(stringOffset);
+            }
+
+            buffer.put(observed, 0, size);
+
+            for (byte[] argument : arguments) {
+                buffer.put(argument);
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+
+        public void clear() {
+            size = 0;
+            argumentOffsets[0] = 0;
+            arguments = new ArrayList<byte[]>();
+            argumentBytes = 0;
+        }
+    }
+}
@@ -78,6 +78,38 @@ public final class GroundingAPI extends Runtime {
         return program.toJSON();
     }
 
+    /**
+     * Like serializedGround(), but the ground program is written to |outputPath| in the binary columnar format
+     * (see ColumnarWriter) instead of being returned as JSON.
+     * Ground rules are collected straight into columns (no GroundProgram is built).
+     */
+    public static void serializedGroundColumnar(String jsonConfig, String basePath, String outputPath) {
+        GroundingAPI api = new GroundingAPI();
+        api.groundColumnar(RuntimeConfig.fromJSON(jsonConfig, basePath), outputPath);
+    }
+
+    /**
+     * Ground a config and stream the ground rules to |outputPath| (see GroundRuleExporter),
+     * instead of collecting them into a GroundProgram.
+     * Returns the number of ground rules exported.
+     */
+    public static long exportStatic(String configPath, String outputPath) {
+        GroundingAPI api = new GroundingAPI();
+        return api.export(RuntimeConfig.fromFile(configPath), outputPath);
+    }
+
+    public static long exportStatic(RuntimeConfig config, String outputPath) {
+        GroundingAPI api = new GroundingAPI();
+        return api.export(config, outputPath);
+    }
+
+    /**
+     * A static interface for methods that provide a serialized (JSON) config and will read the export themselves.
+     */
+    public static long serializedExport(String jsonConfig, String basePath, String outputPath) {
+        return exportStatic(RuntimeConfig.fromJSON(jsonConfig, basePath), outputPath);
+    }
+
     public GroundProgram ground(String configPath) {
         RuntimeConfig config = RuntimeConfig.fromFile(configPath);
         return ground(config);
@@ -94,40 +126,112 @@ public final class GroundingAPI extends Runtime {
         }
     }
 
-    private GroundProgram groundInternal(RuntimeConfig config) {
-        // Apply any top-level options found in the config.
-        for (Map.Entry<String, String> entry : config.options.entrySet()) {
-            Config.setProperty(entry.getKey(), entry.getValue(), false);
+    public void groundColumnar(RuntimeConfig config, String outputPath) {
+        Config.pushLayer();
+
+        try {
+            groundColumnarInternal(config, outputPath);
+        } finally {
+            Config.popLayer();
+            cleanup();
         }
+    }
 
-        // Specially check if we need to re-init the logger.
-        initLogger();
+    public long export(RuntimeConfig config, String outputPath) {
+        return export(config, outputPath, GroundRuleExporter.DEFAULT_BATCH_SIZE);
+    }
 
-        log.info("PSL Grounding API Version {}", Version.getFull());
-        config.validate();
+    public long export(RuntimeConfig config, String outputPath, int batchSize) {
+        Config.pushLayer();
 
-        // Ensure that all atoms are stored (unless overwritten).
-        Options.ATOM_STORE_STORE_ALL_ATOMS.set(true);
+        try {
+            return exportInternal(config, outputPath, batchSize);
+        } finally {
+            Config.popLayer();
+            cleanup();
+        }
+    }
 
-        // Apply top-level options again after validation (since options may have been changed or added).
-        for (Map.Entry<String, String> entry : config.options.entrySet()) {
-            Config.setProperty(entry.getKey(), entry.getValue(), false);
+    private long exportInternal(RuntimeConfig config, String outputPath, int batchSize) {
+        List<Rule> rules = initGrounding(config);
+
+        DataStore dataStore = null;
+        Database database = null;
+        TermStore store = null;
+        GroundRuleExporter exporter = null;
+
+        try {
+            dataStore = initDataStore(config);
+            database = getDatabase(dataStore, config);
+            store = new DummyTermStore(database.getAtomStore());
+
+            exporter = new GroundRuleExporter(outputPath, rules, database.getAtomStore(), batchSize);
+
+            Grounding.setGroundRuleCallback(exporter);
+            Grounding.groundAll(rules, store, database);
+            Grounding.setGroundRuleCallback(null);
+
+            exporter.close();
+            return exporter.getGroundRuleCount();
+        } finally {
+            Grounding.setGroundRuleCallback(null);
+
+            // Only does anything if the export was not finished, so the original failure is the one that is thrown.
+            if (exporter != null) {
+                exporter.abort();
+            }
+
+            closeGrounding(store, database, dataStore);
         }
+    }
 
-        List<Rule> rules = new ArrayList<Rule>();
-        for (Rule rule : config.rules.getRules()) {
-            rules.add(rule);
+    private void groundColumnarInternal(RuntimeConfig config, String outputPath) {
+        List<Rule> rules = initGrounding(config);
+
+        DataStore dataStore = null;
+        Database database = null;
+        TermStore store = null;
+
+        try {
+            dataStore = initDataStore(config);
+            database = getDatabase(dataStore, config);
+            store = new DummyTermStore(database.getAtomStore());
+
+            ColumnarWriter writer = new ColumnarWriter(rules, database.getAtomStore(), RuntimeOptions.OUTPUT_ALL_ATOMS.getBoolean());
+
+            Grounding.setGroundRuleCallback(writer);
+            Grounding.groundAll(rules, store, database);
+            Grounding.setGroundRuleCallback(null);
+
+            writer.writeGrounding(outputPath);
+        } finally {
+            Grounding.setGroundRuleCallback(null);
+            closeGrounding(store, database, dataStore);
         }
+    }
 
-        DataStore dataStore = initDataStore(config);
-        loadData(dataStore, config, RuntimeConfig.KEY_INFER);
+    /**
+     * Close whichever of the grounding resources were opened.
+     */
+    private void closeGrounding(TermStore store, Database database, DataStore dataStore) {
+        if (store != null) {
+            store.close();
+        }
 
-        Set<StandardPredicate> closedPredicates = config.getClosedPredicates(RuntimeConfig.KEY_INFER);
+        if (database != null) {
+            database.close();
+        }
 
-        Partition targetPartition = dataStore.getPartition(Runtime.PARTITION_NAME_TARGET);
-        Partition observationsPartition = dataStore.getPartition(Runtime.PARTITION_NAME_OBSERVATIONS);
+        if (dataStore != null) {
+            dataStore.close();
+        }
+    }
+
+    private GroundProgram groundInternal(RuntimeConfig config) {
+        List<Rule> rules = initGrounding(config);
 
-        Database database = dataStore.getDatabase(targetPartition, closedPredicates, observationsPartition);
+        DataStore dataStore = initDataStore(config);
+        Database database = getDatabase(dataStore, config);
         AtomStore atomStore = database.getAtomStore();
         TermStore store = new DummyTermStore(database.getAtomStore());
 
@@ -162,7 +266,56 @@ public final class GroundingAPI extends Runtime {
         return new GroundProgram(groundAtoms, groundRules);
     }
 
-    private GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, GroundRule groundRule, Map<Integer, AtomInfo> usedAtoms) {
+    /**
+     * Apply the config's options, validate it, and get the rules to ground.
+     */
+    private List<Rule> initGrounding(RuntimeConfig config) {
+        // Apply any top-level options found in the config.
+        for (Map.Entry<String, String> entry : config.options.entrySet()) {
+            Config.setProperty(entry.getKey(), entry.getValue(), false);
+        }
+
+        // Specially check if we need to re-init the logger.
+        initLogger();
+
+        log.info("PSL Grounding API Version {}", Version.getFull());
+        config.validate();
+
+        // Ensure that all atoms are stored (unless overwritten).
+        Options.ATOM_STORE_STORE_ALL_ATOMS.set(true);
+
+        // Apply top-level options again after validation (since options may have been changed or added).
+        for (Map.Entry<String, String> entry : config.options.entrySet()) {
+            Config.setProperty(entry.getKey(), entry.getValue(), false);
+        }
+
+        List<Rule> rules = new ArrayList<Rule>();
+        for (Rule rule : config.rules.getRules()) {
+            rules.add(rule);
+        }
+
+        return rules;
+    }
+
+    /**
+     * Load the inference data and get a database over it.
+     */
+    private Database getDatabase(DataStore dataStore, RuntimeConfig config) {
+        loadData(dataStore, config, RuntimeConfig.KEY_INFER);
+
+        Set<StandardPredicate> closedPredicates = config.getClosedPredicates(RuntimeConfig.KEY_INFER);
+
+        Partition targetPartition = dataStore.getPartition(Runtime.PARTITION_NAME_TARGET);
+        Partition observationsPartition = dataStore.getPartition(Runtime.PARTITION_NAME_OBSERVATIONS);
+
+        return dataStore.getDatabase(targetPartition, closedPredicates, observationsPartition);
+    }
+
+    /**
+     * Map a ground rule into its atom indexes and coefficients.
+     * If |usedAtoms| is not null, then any atom in the ground rule will be added to it.
+     */
+    static GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, GroundRule groundRule, Map<Integer, AtomInfo> usedAtoms) {
         float weight = -1.0f;
         if (groundRule.getRule().isWeighted()) {
             weight = ((WeightedRule)groundRule.getRule()).getWeight();
@@ -177,7 +330,7 @@ public final class GroundingAPI extends Runtime {
         throw new IllegalStateException("Unknown rule type: " + groundRule.getClass());
     }
 
-    private GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, AbstractGroundLogicalRule groundRule, float weight,
+    private static GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, AbstractGroundLogicalRule groundRule, float weight,
             Map<Integer, AtomInfo> usedAtoms) {
         int currentAtom = 0;
         float[] coefficients = new float[groundRule.size()];
@@ -218,7 +371,7 @@ public final class GroundingAPI extends Runtime {
         return new GroundRuleInfo(ruleIndex, "|", weight, 0.0f, coefficients, atoms);
     }
 
-    private GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, AbstractGroundArithmeticRule groundRule, float weight,
+    private static GroundRuleInfo mapGroundRule(int ruleIndex, AtomStore store, AbstractGroundArithmeticRule groundRule, float weight,
             Map<Integer, AtomInfo> usedAtoms) {
         GroundAtom[] rawAtoms = groundRule.getOrderedAtoms();
         int[] atoms = new int[rawAtoms.length];
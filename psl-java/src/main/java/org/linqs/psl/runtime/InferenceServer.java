@@ -0,0 +1,371 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP front end for a long-lived InferenceSession.
+ * The model stays grounded (and the previous solution stays warm) between requests.
+ *
+ * Endpoints (request and response bodies are JSON unless noted):
+ *  - POST /upsert: {"predicate": "Knows", "partition": "observations", "data": [["Alice", "Bob", 1.0], ...]}
+ *  - POST /delete: {"predicate": "Knows", "partition": "observations", "data": [["Alice", "Bob"], ...]}
+ *  - POST /infer: {"predicates": ["Knows"]} (the body is optional). Responds with the same format as Runtime results.
+ *  - GET /metrics: all metrics in the Prometheus text format.
+ *  - GET /health
+ *
+ * Requests are handled one at a time, in order.
+ * Request latency is tracked in the server_request_seconds metric,
+ * and the number of requests waiting or running in the server_queue_depth metric.
+ */
+public class InferenceServer {
+    private static final Logger log = Logger.getLogger(InferenceServer.class);
+
+    public static final String ENDPOINT_UPSERT = "/upsert";
+    public static final String ENDPOINT_DELETE = "/delete";
+    public static final String ENDPOINT_INFER = "/infer";
+    public static final String ENDPOINT_METRICS = "/metrics";
+    public static final String ENDPOINT_HEALTH = "/health";
+
+    public static final String KEY_PREDICATE = "predicate";
+    public static final String KEY_PREDICATES = "predicates";
+    public static final String KEY_PARTITION = "partition";
+    public static final String KEY_DATA = "data";
+    public static final String KEY_COUNT = "count";
+    public static final String KEY_ERROR = "error";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_ERROR = 500;
+
+    private final InferenceSession session;
+    private final ObjectMapper mapper;
+    private final AtomicInteger queueDepth;
+
+    private HttpServer server;
+    private ExecutorService worker;
+    private CountDownLatch stopped;
+
+    public InferenceServer(InferenceSession session) {
+        this.session = session;
+        mapper = new ObjectMapper();
+        queueDepth = new AtomicInteger(0);
+        server = null;
+        worker = null;
+        stopped = new CountDownLatch(1);
+    }
+
+    /**
+     * Start the server using the host and port options.
+     */
+    public void start() {
+        start(RuntimeOptions.SERVER_HOST.getString(), RuntimeOptions.SERVER_PORT.getInt());
+    }
+
+    /**
+     * Start serving in the background.
+     * A port of zero will pick any free port (see getPort()).
+     */
+    public synchronized void start(String host, int port) {
+        if (server != null) {
+            throw new IllegalStateException("Server already started.");
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException ex) {
+            throw new RuntimeException(String.format("Could not start server on %s:%d.", host, port), ex);
+        }
+
+        server.createContext(ENDPOINT_UPSERT, new Endpoint(ENDPOINT_UPSERT, true) {
+            @Override
+            protected Object process(Map<String, Object> request) {
+                int count = session.upsert(getString(request, KEY_PREDICATE), getString(request, KEY_PARTITION), getRows(request));
+                return Collections.singletonMap(KEY_COUNT, count);
+            }
+        });
+
+        server.createContext(ENDPOINT_DELETE, new Endpoint(ENDPOINT_DELETE, true) {
+            @Override
+            protected Object process(Map<String, Object> request) {
+                int count = session.delete(getString(request, KEY_PREDICATE), getString(request, KEY_PARTITION), getRows(request));
+                return Collections.singletonMap(KEY_COUNT, count);
+            }
+        });
+
+        server.createContext(ENDPOINT_INFER, new Endpoint(ENDPOINT_INFER, true) {
+            @Override
+            protected Object process(Map<String, Object> request) {
+                return session.infer(getStrings(request, KEY_PREDICATES)).toJSON();
+            }
+        });
+
+        server.createContext(ENDPOINT_METRICS, new Endpoint(ENDPOINT_METRICS, false) {
+            @Override
+            protected Object process(Map<String, Object> request) {
+                return Metrics.toPrometheus();
+            }
+        });
+
+        server.createContext(ENDPOINT_HEALTH, new Endpoint(ENDPOINT_HEALTH, false) {
+            @Override
+            protected Object process(Map<String, Object> request) {
+                return Collections.singletonMap("status", "ok");
+            }
+        });
+
+        // A single worker keeps requests in order and off of the (not thread-safe) session concurrently.
+        worker = Executors.newSingleThreadExecutor();
+        server.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable task) {
+                Metrics.gauge("server_queue_depth").set(queueDepth.incrementAndGet());
+
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            Metrics.gauge("server_queue_depth").set(queueDepth.decrementAndGet());
+                        }
+                    }
+                });
+            }
+        });
+
+        server.start();
+        log.info("Inference server listening on {}:{}.", host, getPort());
+    }
+
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Server not started.");
+        }
+
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving (finishing any in-flight requests) and close the session.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+
+            worker.shutdown();
+            try {
+                worker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+
+        session.close();
+        stopped.countDown();
+    }
+
+    /**
+     * Block until the server has been stopped.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    private static String getString(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (value == null) {
+            return null;
+        }
+
+        return value.toString();
+    }
+
+    private static List<String> getStrings(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (value == null) {
+            return new ArrayList<String>();
+        }
+
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(String.format("Expecting a list for '%s'.", key));
+        }
+
+        List<String> strings = new ArrayList<String>();
+        for (Object item : (List<?>)value) {
+            strings.add(String.valueOf(item));
+        }
+
+        return strings;
+    }
+
+    private static List<List<String>> getRows(Map<String, Object> request) {
+        Object value = request.get(KEY_DATA);
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(String.format("Expecting a list of rows for '%s'.", KEY_DATA));
+        }
+
+        List<List<String>> rows = new ArrayList<List<String>>();
+        for (Object row : (List<?>)value) {
+            if (!(row instanceof List)) {
+                throw new IllegalArgumentException(String.format("Expecting each row in '%s' to be a list, found: %s.", KEY_DATA, row));
+            }
+
+            List<String> stringRow = new ArrayList<String>();
+            for (Object item : (List<?>)row) {
+                stringRow.add(String.valueOf(item));
+            }
+
+            rows.add(stringRow);
+        }
+
+        return rows;
+    }
+
+    /**
+     * A single endpoint.
+     * Results that are strings are sent as-is, everything else is serialized as JSON.
+     */
+    private abstract class Endpoint implements HttpHandler {
+        private final String name;
+        private final boolean post;
+
+        public Endpoint(String name, boolean post) {
+            this.name = name;
+            this.post = post;
+        }
+
+        protected abstract Object process(Map<String, Object> request);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            int status = HTTP_OK;
+            String response = null;
+
+            try {
+                if (!exchange.getRequestURI().getPath().equals(name)) {
+                    status = HTTP_NOT_FOUND;
+                    response = toJSON(Collections.singletonMap(KEY_ERROR, "Unknown endpoint: " + exchange.getRequestURI().getPath()));
+                } else if (!exchange.getRequestMethod().equals(post ? "POST" : "GET")) {
+                    status = HTTP_BAD_METHOD;
+                    response = toJSON(Collections.singletonMap(KEY_ERROR, String.format("Expecting a %s request.", post ? "POST" : "GET")));
+                } else {
+                    Object result = process(readRequest(exchange));
+                    response = (result instanceof String) ? (String)result : toJSON(result);
+                }
+            } catch (IllegalArgumentException ex) {
+                status = HTTP_BAD_REQUEST;
+                response = toJSON(Collections.singletonMap(KEY_ERROR, String.valueOf(ex.getMessage())));
+            } catch (RuntimeException ex) {
+                log.error("Error handling request to " + name + ".", ex);
+                status = HTTP_ERROR;
+                response = toJSON(Collections.singletonMap(KEY_ERROR, String.valueOf(ex.getMessage())));
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+
+            Metrics.timer("server_request_seconds", "endpoint", name).observeSince(start);
+            Metrics.counter("server_requests_total", "endpoint", name, "status", String.valueOf(status)).increment();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> readRequest(HttpExchange exchange) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] chunk = new byte[4096];
+                int length = 0;
+                while ((length = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, length);
+                }
+            }
+
+            String body = new String(buffer.toByteArray(), StandardCharsets.UTF_8).trim();
+            if (body.isEmpty()) {
+                return new HashMap<String, Object>();
+            }
+
+            try {
+                return mapper.readValue(body, Map.class);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Request body is not a JSON object: " + ex.getMessage(), ex);
+            }
+        }
+
+        private String toJSON(Object object) {
+            try {
+                return mapper.writeValueAsString(object);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args == null || args.length != 1) {
+            System.out.println("USAGE: " + InferenceServer.class + " <path to JSON config>");
+            return;
+        }
+
+        final InferenceServer server = new InferenceServer(new InferenceSession(RuntimeConfig.fromFile(args[0])));
+        server.start();
+
+        java.lang.Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        });
+
+        server.awaitStop();
+    }
+}
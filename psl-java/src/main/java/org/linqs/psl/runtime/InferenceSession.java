@@ -0,0 +1,318 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.application.inference.InferenceApplication;
+import org.linqs.psl.config.Config;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.database.DataStore;
+import org.linqs.psl.database.Database;
+import org.linqs.psl.database.Partition;
+import org.linqs.psl.model.Model;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.DeepPredicate;
+import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A long-lived inference session over a single runtime config.
+ *
+ * The data is loaded and the model grounded once, when the session is constructed.
+ * After that, evidence and targets can be upserted and deleted,
+ * and each call to infer() brings the grounding up-to-date incrementally (see InferenceApplication.updateGrounding())
+ * and warm-starts inference from the previous solution.
+ *
+ * Only inference is supported (no learning, evaluation, or deep predicates).
+ * The options in the config are applied for the life of the session (until close()).
+ * Sessions are not meant to be shared between threads, but all public methods are synchronized.
+ */
+public class InferenceSession {
+    private static final Logger log = Logger.getLogger(InferenceSession.class);
+
+    private final Runtime runtime;
+
+    private DataStore dataStore;
+    private Database targetDatabase;
+    private InferenceApplication inferenceApplication;
+
+    private Partition observationsPartition;
+    private Partition targetPartition;
+
+    /**
+     * If the data has changed since the last grounding update.
+     */
+    private boolean dirty;
+
+    private boolean closed;
+
+    public InferenceSession(RuntimeConfig config) {
+        runtime = new Runtime();
+        dirty = false;
+        closed = false;
+
+        // The layer is popped in close().
+        Config.pushLayer();
+
+        try {
+            init(config);
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    private void init(RuntimeConfig config) {
+        long start = System.nanoTime();
+
+        for (Map.Entry<String, String> entry : config.options.entrySet()) {
+            Config.setProperty(entry.getKey(), entry.getValue(), false);
+        }
+
+        runtime.initLogger();
+        config.validate();
+
+        // Apply top-level options again after validation (since options may have been changed or added).
+        for (Map.Entry<String, String> entry : config.options.entrySet()) {
+            Config.setProperty(entry.getKey(), entry.getValue(), false);
+        }
+
+        Config.setProperty("runtime.relativebasepath", config.relativeBasePath, false);
+
+        for (RuntimeConfig.PredicateConfigInfo info : config.predicates.values()) {
+            Predicate predicate = Predicate.get(info.name);
+            if (predicate instanceof DeepPredicate) {
+                throw new IllegalArgumentException("Inference sessions do not support deep predicates: " + predicate.getName());
+            }
+
+            for (Map.Entry<String, String> entry : info.options.entrySet()) {
+                predicate.setPredicateOption(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Map.Entry<String, String> entry : config.infer.options.entrySet()) {
+            Config.setProperty(entry.getKey(), entry.getValue(), false);
+        }
+
+        // Updates are applied to the existing grounding.
+        Options.GROUNDING_INCREMENTAL.set(true);
+
+        Model model = new Model();
+        for (Rule rule : config.rules.getRules()) {
+            model.addRule(rule);
+        }
+
+        for (Rule rule : config.infer.rules.getRules()) {
+            model.addRule(rule);
+        }
+
+        if (model.getRules().size() == 0) {
+            throw new RuntimeException("No rules found for inference.");
+        }
+
+        dataStore = runtime.initDataStore(config);
+        runtime.loadData(dataStore, config, RuntimeConfig.KEY_INFER);
+
+        Set<StandardPredicate> closedPredicates = config.getClosedPredicates(RuntimeConfig.KEY_INFER);
+
+        targetPartition = dataStore.getPartition(Runtime.PARTITION_NAME_TARGET);
+        observationsPartition = dataStore.getPartition(Runtime.PARTITION_NAME_OBSERVATIONS);
+
+        targetDatabase = dataStore.getDatabase(targetPartition, closedPredicates, observationsPartition);
+
+        inferenceApplication = InferenceApplication.getInferenceApplication(
+                RuntimeOptions.INFERENCE_METHOD.getString(), model.getRules(), targetDatabase);
+
+        Metrics.timer("session_init_seconds").observeSince(start);
+        log.info("Inference session ready ({} terms).", inferenceApplication.getTermStore().size());
+    }
+
+    /**
+     * Insert (or update the value of) atoms.
+     * Each row holds the atom's arguments, optionally followed by its value (which defaults to 1.0).
+     * Rows in the targets partition become random variables (unless the predicate is closed),
+     * their value is only used as the initial value for new atoms.
+     *
+     * @param partitionName either Runtime.PARTITION_NAME_OBSERVATIONS or Runtime.PARTITION_NAME_TARGET.
+     * @return the number of rows upserted.
+     */
+    public synchronized int upsert(String predicateName, String partitionName, List<List<String>> rows) {
+        List<GroundAtom> atoms = parseAtoms(predicateName, partitionName, rows, true);
+        targetDatabase.commit(atoms);
+
+        dirty |= (atoms.size() > 0);
+        return atoms.size();
+    }
+
+    /**
+     * Delete atoms.
+     * Each row holds the atom's arguments (any trailing value is ignored).
+     *
+     * @param partitionName either Runtime.PARTITION_NAME_OBSERVATIONS or Runtime.PARTITION_NAME_TARGET.
+     * @return the number of atoms deleted.
+     */
+    public synchronized int delete(String predicateName, String partitionName, List<List<String>> rows) {
+        List<GroundAtom> atoms = parseAtoms(predicateName, partitionName, rows, false);
+        int count = targetDatabase.delete(atoms);
+
+        dirty |= (count > 0);
+        return count;
+    }
+
+    /**
+     * Bring the grounding up-to-date with any changes and run inference,
+     * starting from the previous solution.
+     *
+     * @param predicateNames if non-empty, only include random variables from these predicates in the result.
+     */
+    public synchronized RuntimeResult infer(List<String> predicateNames) {
+        checkOpen();
+
+        if (dirty) {
+            long start = System.nanoTime();
+            long termCount = inferenceApplication.updateGrounding();
+            Metrics.timer("session_grounding_update_seconds").observeSince(start);
+            log.debug("Updated grounding, {} new terms.", termCount);
+
+            dirty = false;
+        }
+
+        inferenceApplication.inference(RuntimeOptions.INFERENCE_COMMIT.getBoolean(), false);
+
+        List<StandardPredicate> predicates = new ArrayList<StandardPredicate>();
+        for (String predicateName : predicateNames) {
+            predicates.add(getPredicate(predicateName));
+        }
+
+        RuntimeResult result = new RuntimeResult();
+        for (RandomVariableAtom atom : targetDatabase.getAtomStore().getRandomVariableAtoms()) {
+            if (predicates.isEmpty() || predicates.contains(atom.getPredicate())) {
+                result.addAtom(atom);
+            }
+        }
+
+        return result;
+    }
+
+    public synchronized InferenceApplication getInferenceApplication() {
+        return inferenceApplication;
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (inferenceApplication != null) {
+            inferenceApplication.close();
+            inferenceApplication = null;
+        }
+
+        if (targetDatabase != null) {
+            targetDatabase.close();
+            targetDatabase = null;
+        }
+
+        if (dataStore != null) {
+            dataStore.close();
+            dataStore = null;
+        }
+
+        Config.popLayer();
+    }
+
+    private List<GroundAtom> parseAtoms(String predicateName, String partitionName, List<List<String>> rows, boolean hasValues) {
+        checkOpen();
+
+        StandardPredicate predicate = getPredicate(predicateName);
+        int arity = predicate.getArity();
+
+        Partition partition = null;
+        if (Runtime.PARTITION_NAME_OBSERVATIONS.equals(partitionName)) {
+            partition = observationsPartition;
+        } else if (Runtime.PARTITION_NAME_TARGET.equals(partitionName)) {
+            partition = targetPartition;
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Unknown partition: '%s'. Expecting '%s' or '%s'.",
+                    partitionName, Runtime.PARTITION_NAME_OBSERVATIONS, Runtime.PARTITION_NAME_TARGET));
+        }
+
+        boolean randomVariable = (partition == targetPartition) && !targetDatabase.isClosed(predicate);
+
+        List<GroundAtom> atoms = new ArrayList<GroundAtom>(rows.size());
+        for (List<String> row : rows) {
+            if (row.size() < arity || row.size() > (arity + 1)) {
+                throw new IllegalArgumentException(String.format(
+                        "Provided data point for predicate %s does not have the correct number of arguments. Expecting %d or %d arguments. Offending data point: %s.",
+                        predicate.getName(), arity, arity + 1, row));
+            }
+
+            Constant[] arguments = new Constant[arity];
+            for (int i = 0; i < arity; i++) {
+                arguments[i] = ConstantType.getConstant(row.get(i), predicate.getArgumentType(i));
+            }
+
+            float value = 1.0f;
+            if (hasValues && row.size() == (arity + 1)) {
+                value = Float.parseFloat(row.get(arity));
+            }
+
+            if (randomVariable) {
+                atoms.add(new RandomVariableAtom(predicate, arguments, value, partition.getID()));
+            } else {
+                atoms.add(new ObservedAtom(predicate, arguments, value, partition.getID()));
+            }
+        }
+
+        return atoms;
+    }
+
+    private StandardPredicate getPredicate(String predicateName) {
+        if (predicateName == null) {
+            throw new IllegalArgumentException("No predicate specified.");
+        }
+
+        Predicate predicate = Predicate.get(predicateName);
+        if (!(predicate instanceof StandardPredicate)) {
+            throw new IllegalArgumentException("Unknown predicate: " + predicateName);
+        }
+
+        return (StandardPredicate)predicate;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Inference session is closed.");
+        }
+    }
+}
@@ -43,9 +43,11 @@ import org.linqs.psl.model.predicate.Predicate;
 import org.linqs.psl.model.predicate.StandardPredicate;
 import org.linqs.psl.model.rule.GroundRule;
 import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.RuleProfiler;
 import org.linqs.psl.model.rule.WeightedGroundRule;
 import org.linqs.psl.util.FileUtils;
 import org.linqs.psl.util.Logger;
+import org.linqs.psl.util.Metrics;
 import org.linqs.psl.util.Parallel;
 import org.linqs.psl.util.Reflection;
 import org.linqs.psl.util.StringUtils;
@@ -79,8 +81,14 @@ public class Runtime {
         PARTITION_NAME_TRUTH
     };
 
+    /**
+     * The ground model that learning left open for inference to reuse (see RuntimeOptions.SHARE_GROUNDING).
+     */
+    private SharedGrounding sharedGrounding;
+
     public Runtime() {
         initLogger();
+        sharedGrounding = null;
     }
 
     public RuntimeResult run() {
@@ -111,6 +119,20 @@ public class Runtime {
         return result.toJSON();
     }
 
+    /**
+     * Like serializedRun(), but the resulting atoms are written to |outputPath| in the binary columnar format
+     * (see ColumnarWriter) instead of being included in the returned JSON.
+     */
+    public static String serializedRunColumnar(String jsonConfig, String basePath, String outputPath) {
+        Runtime runtime = new Runtime();
+        RuntimeResult result = runtime.run(RuntimeConfig.fromJSON(jsonConfig, basePath), true);
+        runtime.cleanup();
+
+        ColumnarWriter.writeAtoms(result.getAtoms(), outputPath);
+
+        return result.toJSON(false);
+    }
+
     /**
      * The primary interface into a PSL runtime.
      * Options specified in the config will be applied during the runtime, and reset after.
@@ -147,6 +169,9 @@ public class Runtime {
         log.info("PSL Runtime Version {}", Version.getFull());
         config.validate();
 
+        // Metrics are process-wide, only report on this run.
+        Metrics.clear();
+
         // Apply top-level options again after validation (since options may have been changed or added).
         for (Map.Entry<String, String> entry : config.options.entrySet()) {
             Config.setProperty(entry.getKey(), entry.getValue(), false);
@@ -155,6 +180,9 @@ public class Runtime {
         // Set the relative base path for all other paths.
         Config.setProperty("runtime.relativebasepath", config.relativeBasePath, false);
 
+        // Profiles are process-wide, only report on this run (and pick up the profiling options).
+        RuleProfiler.init();
+
         // Set all predicate options inside each predicate.
         for (RuntimeConfig.PredicateConfigInfo info : config.predicates.values()) {
             Predicate predicate = Predicate.get(info.name);
@@ -178,6 +206,12 @@ public class Runtime {
             }
         }
 
+        if (result != null) {
+            result.setMetrics(Metrics.snapshot());
+        }
+        Metrics.output();
+        RuleProfiler.output();
+
         return result;
     }
 
@@ -209,6 +243,11 @@ public class Runtime {
     }
 
     protected void cleanup() {
+        if (sharedGrounding != null) {
+            sharedGrounding.close();
+            sharedGrounding = null;
+        }
+
         Parallel.close();
     }
 
@@ -269,6 +308,7 @@ public class Runtime {
 
     protected void loadData(DataStore dataStore, RuntimeConfig config, String splitName) {
         log.debug("Data loading start");
+        long start = System.nanoTime();
 
         for (RuntimeConfig.PredicateConfigInfo predicateInfo : config.predicates.values()) {
             if (predicateInfo.dataSize() == 0) {
@@ -302,6 +342,7 @@ public class Runtime {
             }
         }
 
+        Metrics.timer("data_load_seconds", "split", splitName).observeSince(start);
         log.debug("Data loading complete");
     }
 
@@ -404,75 +445,124 @@ public class Runtime {
             log.debug("   " + rule);
         }
 
-        DataStore dataStore = initDataStore(config);
-        loadData(dataStore, config, RuntimeConfig.KEY_INFER);
+        DataStore dataStore = null;
+        Database targetDatabase = null;
+        Database truthDatabase = null;
+        InferenceApplication inferenceApplication = null;
+
+        // The shared ground model was left in its learned state, so its atoms and terms need to be reset.
+        boolean resetAtoms = false;
+
+        if (sharedGrounding != null) {
+            log.info("Reusing the ground model from learning for inference.");
+
+            dataStore = sharedGrounding.dataStore;
+            targetDatabase = sharedGrounding.targetDatabase;
+            truthDatabase = sharedGrounding.truthDatabase;
+            inferenceApplication = sharedGrounding.inferenceApplication;
+            sharedGrounding = null;
+
+            resetAtoms = true;
+        } else {
+            dataStore = initDataStore(config);
+            loadData(dataStore, config, RuntimeConfig.KEY_INFER);
 
-        Set<StandardPredicate> closedPredicates = config.getClosedPredicates(RuntimeConfig.KEY_INFER);
+            Set<StandardPredicate> closedPredicates = config.getClosedPredicates(RuntimeConfig.KEY_INFER);
 
-        Partition targetPartition = dataStore.getPartition(PARTITION_NAME_TARGET);
-        Partition observationsPartition = dataStore.getPartition(PARTITION_NAME_OBSERVATIONS);
-        Partition truthPartition = dataStore.getPartition(PARTITION_NAME_TRUTH);
+            Partition targetPartition = dataStore.getPartition(PARTITION_NAME_TARGET);
+            Partition observationsPartition = dataStore.getPartition(PARTITION_NAME_OBSERVATIONS);
+            Partition truthPartition = dataStore.getPartition(PARTITION_NAME_TRUTH);
 
-        Database targetDatabase = dataStore.getDatabase(targetPartition, closedPredicates, observationsPartition);
-        Database truthDatabase = dataStore.getDatabase(truthPartition, dataStore.getRegisteredPredicates());
+            targetDatabase = dataStore.getDatabase(targetPartition, closedPredicates, observationsPartition);
+            truthDatabase = dataStore.getDatabase(truthPartition, dataStore.getRegisteredPredicates());
+        }
 
         List<EvaluationInstance> evaluations = getEvaluations(config);
 
         GroundRuleOutputter groundingCallback = null;
+        GroundRuleExporter groundingExporter = null;
         if (RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES.getBoolean()) {
             String path = RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_PATH.getString();
-            groundingCallback = new GroundRuleOutputter(path);
-            Grounding.setGroundRuleCallback(groundingCallback);
-        }
-
-        InferenceApplication inferenceApplication = InferenceApplication.getInferenceApplication(
-                RuntimeOptions.INFERENCE_METHOD.getString(), model.getRules(), targetDatabase);
 
-        log.info("Loading deep predicates.");
-        DeepPredicate.initAllDeepPredicates(inferenceApplication.getDatabase().getAtomStore(), "inference");
-        DeepPredicate.evalModeAllDeepPredicates();
-        DeepPredicate.epochStartAllDeepPredicates();
-
-        // Run inference.
-        boolean runInference = true;
-        int batch = 0;
-        String outputDir = RuntimeOptions.INFERENCE_OUTPUT_RESULTS_DIR.getString();
-        while (runInference) {
-            DeepPredicate.predictAllDeepPredicates();
+            if (RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_BINARY.getBoolean()) {
+                if (path == null) {
+                    throw new IllegalArgumentException(String.format("Option %s requires %s.",
+                            RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_BINARY.name(), RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_PATH.name()));
+                }
 
-            log.info("Beginning inference.");
-            inferenceApplication.inference(RuntimeOptions.INFERENCE_COMMIT.getBoolean(), false, evaluations, truthDatabase);
-            log.info("Inference complete.");
+                groundingExporter = new GroundRuleExporter(path, model.getRules(), targetDatabase.getAtomStore());
+                Grounding.setGroundRuleCallback(groundingExporter);
+            } else {
+                groundingCallback = new GroundRuleOutputter(path);
+                Grounding.setGroundRuleCallback(groundingCallback);
+            }
+        }
 
-            if (RuntimeOptions.INFERENCE_OUTPUT_RESULTS.getBoolean()) {
-                if (outputDir == null) {
-                    log.info("Writing inferred predicates to stdout.");
-                    targetDatabase.outputRandomVariableAtoms();
-                } else {
-                    if (RuntimeOptions.INFERENCE_OUTPUT_BATCHED_RESULTS.getBoolean()) {
-                        String batchOutputDir = FileUtils.makePath(outputDir, String.format("batch_%d", batch));
+        try {
+            if (inferenceApplication == null) {
+                inferenceApplication = InferenceApplication.getInferenceApplication(
+                        RuntimeOptions.INFERENCE_METHOD.getString(), model.getRules(), targetDatabase);
+            }
 
-                        log.info("Writing inferred predicates to directory: " + batchOutputDir);
-                        targetDatabase.outputRandomVariableAtoms(batchOutputDir);
+            log.info("Loading deep predicates.");
+            DeepPredicate.initAllDeepPredicates(inferenceApplication.getDatabase().getAtomStore(), "inference");
+            DeepPredicate.evalModeAllDeepPredicates();
+            DeepPredicate.epochStartAllDeepPredicates();
+
+            // Run inference.
+            boolean runInference = true;
+            int batch = 0;
+            String outputDir = RuntimeOptions.INFERENCE_OUTPUT_RESULTS_DIR.getString();
+            while (runInference) {
+                DeepPredicate.predictAllDeepPredicates();
+
+                log.info("Beginning inference.");
+                inferenceApplication.inference(RuntimeOptions.INFERENCE_COMMIT.getBoolean(), resetAtoms, evaluations, truthDatabase);
+                resetAtoms = false;
+                log.info("Inference complete.");
+
+                if (RuntimeOptions.INFERENCE_OUTPUT_RESULTS.getBoolean()) {
+                    if (outputDir == null) {
+                        log.info("Writing inferred predicates to stdout.");
+                        targetDatabase.outputRandomVariableAtoms();
                     } else {
-                        log.info("Writing inferred predicates to directory: " + outputDir);
-                        targetDatabase.outputRandomVariableAtoms(outputDir);
+                        if (RuntimeOptions.INFERENCE_OUTPUT_BATCHED_RESULTS.getBoolean()) {
+                            String batchOutputDir = FileUtils.makePath(outputDir, String.format("batch_%d", batch));
+
+                            log.info("Writing inferred predicates to directory: " + batchOutputDir);
+                            targetDatabase.outputRandomVariableAtoms(batchOutputDir);
+                        } else {
+                            log.info("Writing inferred predicates to directory: " + outputDir);
+                            targetDatabase.outputRandomVariableAtoms(outputDir);
+                        }
                     }
                 }
-            }
 
-            DeepPredicate.evalAllDeepPredicates();
+                DeepPredicate.evalAllDeepPredicates();
 
-            DeepPredicate.nextBatchAllDeepPredicates();
-            runInference = !DeepPredicate.isEpochCompleteAllDeepPredicates();
+                DeepPredicate.nextBatchAllDeepPredicates();
+                runInference = !DeepPredicate.isEpochCompleteAllDeepPredicates();
 
-            batch++;
-        }
-        DeepPredicate.epochEndAllDeepPredicates();
+                batch++;
+            }
+            DeepPredicate.epochEndAllDeepPredicates();
 
-        if (groundingCallback != null) {
-            groundingCallback.close();
-            Grounding.setGroundRuleCallback(null);
+            if (groundingCallback != null) {
+                groundingCallback.close();
+                Grounding.setGroundRuleCallback(null);
+            }
+
+            if (groundingExporter != null) {
+                groundingExporter.close();
+                Grounding.setGroundRuleCallback(null);
+            }
+        } finally {
+            if (groundingExporter != null) {
+                Grounding.setGroundRuleCallback(null);
+
+                // Only does anything if inference failed before the export was closed.
+                groundingExporter.abort();
+            }
         }
 
         if (result != null) {
@@ -573,15 +663,25 @@ public class Runtime {
         learner.setEvaluation(primaryEvaluation);
         learner.learn();
 
-        learner.close();
+        InferenceApplication sharedInferenceApplication = null;
+        if (canShareGrounding(config) && learner.canShareGroundModel()) {
+            sharedInferenceApplication = learner.releaseTrainInferenceApplication();
+        }
 
-        trainTargetDatabase.close();
-        trainTruthDatabase.close();
+        learner.close();
 
         validationTargetDatabase.close();
         validationTruthDatabase.close();
 
-        dataStore.close();
+        if (sharedInferenceApplication != null) {
+            log.debug("Keeping the ground model from learning for inference.");
+            sharedGrounding = new SharedGrounding(dataStore, trainTargetDatabase, trainTruthDatabase, sharedInferenceApplication);
+        } else {
+            trainTargetDatabase.close();
+            trainTruthDatabase.close();
+
+            dataStore.close();
+        }
 
         log.info("Learned Model:");
         for (Rule rule : model.getRules()) {
@@ -611,6 +711,36 @@ public class Runtime {
         return model;
     }
 
+    /**
+     * Check if inference (which runs after learning) would build exactly the same ground model as learning.
+     * Called while the learning options are applied,
+     * which are the same options inference will see when hasSameLearnAndInfer() holds.
+     */
+    protected boolean canShareGrounding(RuntimeConfig config) {
+        if (!RuntimeOptions.SHARE_GROUNDING.getBoolean() || !RuntimeOptions.INFERENCE.getBoolean()) {
+            return false;
+        }
+
+        if (!config.hasSameLearnAndInfer()) {
+            log.debug("Not sharing grounding between learning and inference: the splits differ in data, rules, or options.");
+            return false;
+        }
+
+        // Both of these options change the inference ground model.
+        if (RuntimeOptions.INFERENCE_CLEAR_RULES.getBoolean() || RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES.getBoolean()) {
+            return false;
+        }
+
+        String learnInference = Reflection.resolveClassName(Options.WLA_INFERENCE.getString());
+        String inference = Reflection.resolveClassName(RuntimeOptions.INFERENCE_METHOD.getString());
+        if (!learnInference.equals(inference)) {
+            log.debug("Not sharing grounding between learning and inference: different inference methods ({} and {}).", learnInference, inference);
+            return false;
+        }
+
+        return true;
+    }
+
     protected List<EvaluationInstance> getEvaluations(RuntimeConfig config) {
         boolean hasPrimaryEval = false;
 
@@ -668,6 +798,31 @@ public class Runtime {
         SQLite,
     }
 
+    /**
+     * Everything that needs to stay open for inference to reuse the ground model from learning.
+     */
+    private static class SharedGrounding {
+        public final DataStore dataStore;
+        public final Database targetDatabase;
+        public final Database truthDatabase;
+        public final InferenceApplication inferenceApplication;
+
+        public SharedGrounding(DataStore dataStore, Database targetDatabase, Database truthDatabase,
+                InferenceApplication inferenceApplication) {
+            this.dataStore = dataStore;
+            this.targetDatabase = targetDatabase;
+            this.truthDatabase = truthDatabase;
+            this.inferenceApplication = inferenceApplication;
+        }
+
+        public void close() {
+            inferenceApplication.close();
+            targetDatabase.close();
+            truthDatabase.close();
+            dataStore.close();
+        }
+    }
+
     public static class GroundRuleOutputter implements Grounding.GroundRuleCallback {
         private volatile boolean headerWritten;
         private PrintWriter out;
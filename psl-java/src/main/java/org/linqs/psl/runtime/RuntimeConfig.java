@@ -223,6 +223,28 @@ public class RuntimeConfig {
         return closedPredicates;
     }
 
+    /**
+     * Check if inference would ground the same model as learning:
+     * no inference-only rules (inference uses the learned model), the same split-specific options and data,
+     * and the same closed predicates.
+     * Should only be called after validation.
+     */
+    public boolean hasSameLearnAndInfer() {
+        if (infer.rules.size() != 0 || !learn.options.equals(infer.options)) {
+            return false;
+        }
+
+        for (PredicateConfigInfo predicateInfo : predicates.values()) {
+            if (!predicateInfo.observations.learn.equals(predicateInfo.observations.infer)
+                    || !predicateInfo.targets.learn.equals(predicateInfo.targets.infer)
+                    || !predicateInfo.truth.learn.equals(predicateInfo.truth.infer)) {
+                return false;
+            }
+        }
+
+        return getClosedPredicates(KEY_LEARN).equals(getClosedPredicates(KEY_INFER));
+    }
+
     private void validateRules(RuleSource ruleSource) {
         ruleSource.resolvePaths(relativeBasePath);
         for (Rule rule : ruleSource.getRules()) {
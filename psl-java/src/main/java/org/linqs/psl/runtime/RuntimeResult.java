@@ -32,6 +32,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A struct containing the result of a PSL Runtime invocation.
@@ -41,11 +42,13 @@ public class RuntimeResult {
     private List<Rule> rules;
     private List<GroundAtom> atoms;
     private List<String> evaluations;
+    private List<Map<String, Object>> metrics;
 
     public RuntimeResult() {
         rules = new ArrayList<Rule>();
         atoms = new ArrayList<GroundAtom>();
         evaluations = new ArrayList<String>();
+        metrics = new ArrayList<Map<String, Object>>();
     }
 
     public void addRule(Rule rule) {
@@ -56,17 +59,39 @@ public class RuntimeResult {
         atoms.add(atom);
     }
 
+    public List<GroundAtom> getAtoms() {
+        return atoms;
+    }
+
     public void addEvaluation(String evaluation) {
         evaluations.add(evaluation);
     }
 
+    /**
+     * Set the metrics for this run (see Metrics.snapshot()).
+     */
+    public void setMetrics(List<Map<String, Object>> metrics) {
+        this.metrics = metrics;
+    }
+
+    public List<Map<String, Object>> getMetrics() {
+        return metrics;
+    }
+
     @Override
     public String toString() {
         return toJSON();
     }
 
     public String toJSON() {
-        JSONRuntimeResult result = new JSONRuntimeResult(this);
+        return toJSON(true);
+    }
+
+    /**
+     * Serialize to JSON, optionally leaving out the atoms (e.g. when they are passed along through ColumnarWriter).
+     */
+    public String toJSON(boolean includeAtoms) {
+        JSONRuntimeResult result = new JSONRuntimeResult(this, includeAtoms);
 
         ObjectMapper mapper = new ObjectMapper();
 
@@ -86,14 +111,15 @@ public class RuntimeResult {
         public JSONRule[] rules;
         public JSONAtom[] atoms;
         public String[] evaluations;
+        public List<Map<String, Object>> metrics;
 
-        public JSONRuntimeResult(RuntimeResult result) {
+        public JSONRuntimeResult(RuntimeResult result, boolean includeAtoms) {
             rules = new JSONRule[result.rules.size()];
             for (int i = 0; i < rules.length; i++) {
                 rules[i] = new JSONRule(result.rules.get(i), i);
             }
 
-            atoms = new JSONAtom[result.atoms.size()];
+            atoms = new JSONAtom[includeAtoms ? result.atoms.size() : 0];
             for (int i = 0; i < atoms.length; i++) {
                 atoms[i] = new JSONAtom(result.atoms.get(i));
             }
@@ -102,6 +128,8 @@ public class RuntimeResult {
             for (int i = 0; i < evaluations.length; i++) {
                 evaluations[i] = result.evaluations.get(i);
             }
+
+            metrics = result.metrics;
         }
     }
 
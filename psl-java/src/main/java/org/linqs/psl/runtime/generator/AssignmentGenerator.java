@@ -0,0 +1,101 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An assignment problem with Sum constraints.
+ * Every task must be assigned to exactly one of its eligible workers, and no worker can take more than its capacity.
+ * Each task has (on average) |degree| eligible workers, and workers are picked following the degree distribution
+ * (so under a power law a few workers are eligible for most tasks).
+ *
+ * Tasks use ids [0, numEntities) and workers use ids starting at numEntities.
+ *
+ * Predicates:
+ *  - Assign(W, T): whether worker W gets task T, either observed or a target.
+ *  - Evidence*(W, T, ...): noisy evidence of a good match.
+ */
+public class AssignmentGenerator extends WorkloadGenerator {
+    public static final String ASSIGN = "Assign";
+
+    /**
+     * The expected number of tasks for each worker.
+     */
+    public static final int TASKS_PER_WORKER = 5;
+
+    /**
+     * How much more than the average load each worker can take.
+     */
+    public static final double CAPACITY_SLACK = 1.5;
+
+    public AssignmentGenerator() {
+        super();
+    }
+
+    @Override
+    public String getName() {
+        return "assignment";
+    }
+
+    @Override
+    protected void generateWorkload() {
+        int numWorkers = Math.max(2, (int)Math.ceil((double)numEntities / TASKS_PER_WORKER));
+        int capacity = (int)Math.ceil(CAPACITY_SLACK * numEntities / numWorkers);
+        int numEligible = Math.max(1, Math.min(numWorkers, (int)Math.round(degree)));
+
+        addPredicate(ASSIGN, 2, true);
+
+        addEvidenceRules(ASSIGN, new String[]{"W", "T"}, null);
+        addRule("Assign(+W, T) = 1 .");
+        addRule(String.format("Assign(W, +T) <= %d .", capacity));
+        addRule("0.1: !Assign(W, T) ^2");
+
+        double[] workerDistribution = buildSamplingDistribution(numWorkers);
+        int[] loads = new int[numWorkers];
+
+        for (int task = 0; task < numEntities; task++) {
+            Set<Integer> eligible = new LinkedHashSet<Integer>();
+            for (int attempt = 0; attempt < numEligible * MAX_EDGE_ATTEMPTS && eligible.size() < numEligible; attempt++) {
+                eligible.add(Integer.valueOf(sample(workerDistribution)));
+            }
+
+            // The true assignment is the first eligible worker with room (or the first eligible worker if all are full).
+            List<Integer> workers = new ArrayList<Integer>(eligible);
+            int assigned = workers.get(0).intValue();
+            for (Integer worker : workers) {
+                if (loads[worker.intValue()] < capacity) {
+                    assigned = worker.intValue();
+                    break;
+                }
+            }
+            loads[assigned]++;
+
+            boolean observed = nextObserved();
+            for (Integer worker : workers) {
+                float truth = (worker.intValue() == assigned) ? 1.0f : 0.0f;
+
+                addObservedOrTarget(ASSIGN, truth, observed, numEntities + worker.intValue(), task);
+                addEvidence(truth, numEntities + worker.intValue(), task);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import org.linqs.psl.config.RuntimeOptions;
+
+import java.util.List;
+
+/**
+ * Collective classification over a homophilous graph.
+ * Each entity has one hidden label, and entities with the same label are more likely to be linked.
+ *
+ * Predicates:
+ *  - Link(A, B): observed (symmetric) edges.
+ *  - Label(E, L): the label of each entity, either observed or a target.
+ *  - Evidence*(E, L, ...): noisy local evidence for each label.
+ */
+public class CollectiveClassificationGenerator extends WorkloadGenerator {
+    public static final String LINK = "Link";
+    public static final String LABEL = "Label";
+
+    /**
+     * The probability that an edge between entities with different labels is dropped.
+     */
+    public static final double HOMOPHILY = 0.8;
+
+    private final int numLabels;
+    private int[] labels;
+
+    public CollectiveClassificationGenerator() {
+        super();
+
+        numLabels = RuntimeOptions.GENERATOR_LABELS.getInt();
+        labels = null;
+    }
+
+    @Override
+    public String getName() {
+        return "collective-classification";
+    }
+
+    @Override
+    protected void generateWorkload() {
+        addPredicate(LINK, 2, false);
+        addPredicate(LABEL, 2, true);
+
+        addEvidenceRules(LABEL, new String[]{"E", "L"}, null);
+        addRule("1.0: Link(A, B) & Label(A, L) -> Label(B, L) ^2");
+        addRule("Label(E, +L) = 1 .");
+        addRule("0.1: !Label(E, L) ^2");
+
+        labels = new int[numEntities];
+        for (int i = 0; i < numEntities; i++) {
+            labels[i] = rng.nextInt(numLabels);
+        }
+
+        List<int[]> edges = sampleEdges(numEntities, (long)(numEntities * degree / 2.0));
+        for (int[] edge : edges) {
+            addObservation(LINK, 1.0f, edge[0], edge[1]);
+            addObservation(LINK, 1.0f, edge[1], edge[0]);
+        }
+
+        for (int entity = 0; entity < numEntities; entity++) {
+            boolean observed = nextObserved();
+
+            for (int label = 0; label < numLabels; label++) {
+                float truth = (labels[entity] == label) ? 1.0f : 0.0f;
+
+                addObservedOrTarget(LABEL, truth, observed, entity, label);
+                addEvidence(truth, entity, label);
+            }
+        }
+    }
+
+    @Override
+    protected boolean acceptEdge(int source, int target) {
+        return labels[source] == labels[target] || rng.nextDouble() >= HOMOPHILY;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entity resolution with blocking.
+ * Records are noisy references to hidden entities, and every record is placed in one block
+ * (its hidden entity's block, or a random block for a small fraction of records).
+ * Only pairs of records in the same block are candidates,
+ * so block sizes (driven by the degree options) control the size of the problem.
+ *
+ * Predicates:
+ *  - Block(R, K): the observed blocking key of each record.
+ *  - Same(R1, R2): the symmetric relation to predict, either observed or a target.
+ *  - Evidence*(R1, R2, ...): noisy pairwise similarities.
+ */
+public class EntityResolutionGenerator extends WorkloadGenerator {
+    public static final String BLOCK = "Block";
+    public static final String SAME = "Same";
+
+    /**
+     * The expected number of records for each hidden entity.
+     */
+    public static final int RECORDS_PER_ENTITY = 2;
+
+    /**
+     * The probability that a record is put in a random block instead of its entity's block.
+     */
+    public static final double BLOCK_NOISE = 0.05;
+
+    public EntityResolutionGenerator() {
+        super();
+    }
+
+    @Override
+    public String getName() {
+        return "entity-resolution";
+    }
+
+    @Override
+    protected void generateWorkload() {
+        addPredicate(BLOCK, 2, false);
+        addPredicate(SAME, 2, true);
+
+        addEvidenceRules(SAME, new String[]{"A", "B"}, "Block(A, K) & Block(B, K) & (A != B)");
+        addRule("1.0: Same(A, B) & Same(B, C) & (A != C) -> Same(A, C) ^2");
+        addRule("Same(A, B) = Same(B, A) .");
+        addRule("0.1: !Same(A, B) ^2");
+
+        int numHiddenEntities = Math.max(1, numEntities / RECORDS_PER_ENTITY);
+        int numBlocks = Math.max(1, (int)(numEntities / degree));
+        double[] blockDistribution = buildSamplingDistribution(numBlocks);
+
+        int[] entityBlocks = new int[numHiddenEntities];
+        for (int i = 0; i < numHiddenEntities; i++) {
+            entityBlocks[i] = sample(blockDistribution);
+        }
+
+        int[] recordEntities = new int[numEntities];
+        List<List<Integer>> blocks = new ArrayList<List<Integer>>(numBlocks);
+        for (int i = 0; i < numBlocks; i++) {
+            blocks.add(new ArrayList<Integer>());
+        }
+
+        for (int record = 0; record < numEntities; record++) {
+            recordEntities[record] = rng.nextInt(numHiddenEntities);
+
+            int block = entityBlocks[recordEntities[record]];
+            if (rng.nextDouble() < BLOCK_NOISE) {
+                block = sample(blockDistribution);
+            }
+
+            addObservation(BLOCK, 1.0f, record, block);
+            blocks.get(block).add(Integer.valueOf(record));
+        }
+
+        for (List<Integer> block : blocks) {
+            for (int i = 0; i < block.size(); i++) {
+                int first = block.get(i).intValue();
+
+                for (int j = i + 1; j < block.size(); j++) {
+                    int second = block.get(j).intValue();
+
+                    float truth = (recordEntities[first] == recordEntities[second]) ? 1.0f : 0.0f;
+                    boolean observed = nextObserved();
+
+                    addObservedOrTarget(SAME, truth, observed, first, second);
+                    addObservedOrTarget(SAME, truth, observed, second, first);
+
+                    addEvidence(truth, first, second);
+                    addEvidence(truth, second, first);
+                }
+            }
+        }
+    }
+}
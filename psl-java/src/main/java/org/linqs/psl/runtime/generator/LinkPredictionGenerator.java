@@ -0,0 +1,144 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Link prediction with transitivity over a graph with hidden communities.
+ * Candidate links are the observed edges and (a bounded number of) two-hop neighbors,
+ * and a candidate link is true when both entities share a community.
+ * The transitivity rule is blocked on candidates so it only reaches target atoms.
+ *
+ * Predicates:
+ *  - Link(A, B): observed (symmetric) edges.
+ *  - Candidate(A, B): observed (symmetric) candidate links.
+ *  - Friend(A, B): the symmetric relation to predict, either observed or a target.
+ *  - Evidence*(A, B, ...): noisy pairwise evidence.
+ */
+public class LinkPredictionGenerator extends WorkloadGenerator {
+    public static final String LINK = "Link";
+    public static final String FRIEND = "Friend";
+    public static final String CANDIDATE = "Candidate";
+
+    /**
+     * The expected number of entities in each community.
+     */
+    public static final int COMMUNITY_SIZE = 20;
+
+    /**
+     * The probability that an edge between entities in different communities is dropped.
+     */
+    public static final double HOMOPHILY = 0.9;
+
+    private int[] communities;
+
+    public LinkPredictionGenerator() {
+        super();
+
+        communities = null;
+    }
+
+    @Override
+    public String getName() {
+        return "link-prediction";
+    }
+
+    @Override
+    protected void generateWorkload() {
+        addPredicate(LINK, 2, false);
+        addPredicate(FRIEND, 2, true);
+        addPredicate(CANDIDATE, 2, false);
+
+        addEvidenceRules(FRIEND, new String[]{"A", "B"}, null);
+        addRule("1.0: Link(A, B) -> Friend(A, B) ^2");
+        addRule("1.0: Candidate(A, C) & Friend(A, B) & Friend(B, C) & (A != C) -> Friend(A, C) ^2");
+        addRule("Friend(A, B) = Friend(B, A) .");
+        addRule("0.1: !Friend(A, B) ^2");
+
+        int numCommunities = Math.max(2, numEntities / COMMUNITY_SIZE);
+        communities = new int[numEntities];
+        for (int i = 0; i < numEntities; i++) {
+            communities[i] = rng.nextInt(numCommunities);
+        }
+
+        List<List<Integer>> neighbors = new ArrayList<List<Integer>>(numEntities);
+        for (int i = 0; i < numEntities; i++) {
+            neighbors.add(new ArrayList<Integer>());
+        }
+
+        // Candidates are kept as unordered pairs (smaller id first) in a stable order.
+        Set<Long> candidates = new LinkedHashSet<Long>();
+
+        for (int[] edge : sampleEdges(numEntities, (long)(numEntities * degree / 2.0))) {
+            addObservation(LINK, 1.0f, edge[0], edge[1]);
+            addObservation(LINK, 1.0f, edge[1], edge[0]);
+
+            neighbors.get(edge[0]).add(Integer.valueOf(edge[1]));
+            neighbors.get(edge[1]).add(Integer.valueOf(edge[0]));
+
+            candidates.add(pairKey(edge[0], edge[1]));
+        }
+
+        // Limit the two-hop candidates per entity so hubs do not make the candidate set quadratic.
+        int maxTwoHop = (int)Math.ceil(degree);
+        for (int entity = 0; entity < numEntities; entity++) {
+            int count = 0;
+            for (Integer neighbor : neighbors.get(entity)) {
+                for (Integer twoHop : neighbors.get(neighbor.intValue())) {
+                    if (count >= maxTwoHop) {
+                        break;
+                    }
+
+                    if (twoHop.intValue() != entity && candidates.add(pairKey(entity, twoHop.intValue()))) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        for (Long key : candidates) {
+            int first = (int)(key.longValue() / numEntities);
+            int second = (int)(key.longValue() % numEntities);
+
+            float truth = (communities[first] == communities[second]) ? 1.0f : 0.0f;
+            boolean observed = nextObserved();
+
+            addObservation(CANDIDATE, 1.0f, first, second);
+            addObservation(CANDIDATE, 1.0f, second, first);
+
+            addObservedOrTarget(FRIEND, truth, observed, first, second);
+            addObservedOrTarget(FRIEND, truth, observed, second, first);
+
+            addEvidence(truth, first, second);
+            addEvidence(truth, second, first);
+        }
+    }
+
+    @Override
+    protected boolean acceptEdge(int source, int target) {
+        return communities[source] == communities[target] || rng.nextDouble() >= HOMOPHILY;
+    }
+
+    private Long pairKey(int first, int second) {
+        return Long.valueOf((long)Math.min(first, second) * numEntities + Math.max(first, second));
+    }
+}
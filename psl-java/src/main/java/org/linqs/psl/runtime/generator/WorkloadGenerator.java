@@ -0,0 +1,515 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.evaluation.statistics.DiscreteEvaluator;
+import org.linqs.psl.runtime.RuntimeConfig;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The base for synthetic workload generators.
+ * A generator writes a PSL rule file, tab-separated data files, and a runtime config (JSON) that ties them together,
+ * so the output can be run directly with the runtime or CLI.
+ *
+ * Each family of workload is a child that adds its rules and data through the helpers here.
+ * All randomness comes from a generator-owned RNG seeded with random.seed (and re-seeded on every call to generate()),
+ * so the output only depends on the seed and the runtime.generator.* options.
+ *
+ * All identifiers are integers, and the generated config turns on runtime.db.intids.
+ */
+public abstract class WorkloadGenerator {
+    private static final Logger log = Logger.getLogger(WorkloadGenerator.class);
+
+    public static final String EVIDENCE_PREDICATE_PREFIX = "Evidence";
+
+    /**
+     * Evidence arguments past the target's arguments range over this many views.
+     */
+    public static final int NUM_VIEWS = 2;
+
+    /**
+     * Give up on finding unique edges after this many attempts per requested edge.
+     */
+    public static final int MAX_EDGE_ATTEMPTS = 20;
+
+    public static final String OBSERVATIONS_SUFFIX = "_obs.txt";
+    public static final String TARGETS_SUFFIX = "_targets.txt";
+    public static final String TRUTH_SUFFIX = "_truth.txt";
+
+    public static enum Family {
+        COLLECTIVE_CLASSIFICATION,
+        LINK_PREDICTION,
+        ENTITY_RESOLUTION,
+        ASSIGNMENT
+    }
+
+    public static enum DegreeDistribution {
+        POWER_LAW,
+        UNIFORM
+    }
+
+    protected final Random rng;
+    private final long seed;
+
+    protected final int numEntities;
+    protected final double degree;
+    protected final DegreeDistribution degreeDistribution;
+    protected final double degreeExponent;
+    protected final int numEvidenceRules;
+    protected final int evidenceArity;
+    protected final double observedRatio;
+
+    private final List<String> rules;
+    private final Map<String, PredicateData> predicates;
+    private String outDir;
+
+    protected WorkloadGenerator() {
+        seed = Options.RANDOM_SEED.getLong();
+        rng = new Random(seed);
+
+        numEntities = RuntimeOptions.GENERATOR_ENTITIES.getInt();
+        degree = RuntimeOptions.GENERATOR_DEGREE.getDouble();
+        degreeDistribution = DegreeDistribution.valueOf(RuntimeOptions.GENERATOR_DEGREE_DISTRIBUTION.getString().toUpperCase());
+        degreeExponent = RuntimeOptions.GENERATOR_DEGREE_EXPONENT.getDouble();
+        numEvidenceRules = RuntimeOptions.GENERATOR_RULES.getInt();
+        evidenceArity = RuntimeOptions.GENERATOR_ARITY.getInt();
+        observedRatio = RuntimeOptions.GENERATOR_OBSERVED_RATIO.getDouble();
+
+        if (degreeDistribution == DegreeDistribution.POWER_LAW && degreeExponent <= 1.0) {
+            throw new IllegalArgumentException(String.format(
+                    "Power-law degree exponent must be greater than one, found: %f.", degreeExponent));
+        }
+
+        if (evidenceArity < 2) {
+            throw new IllegalArgumentException(String.format(
+                    "Evidence arity must be at least two (the arity of all generated targets), found: %d.", evidenceArity));
+        }
+
+        rules = new ArrayList<String>();
+        predicates = new LinkedHashMap<String, PredicateData>();
+        outDir = null;
+    }
+
+    /**
+     * Get a generator for the family specified by runtime.generator.family.
+     */
+    public static WorkloadGenerator getGenerator() {
+        return getGenerator(RuntimeOptions.GENERATOR_FAMILY.getString());
+    }
+
+    public static WorkloadGenerator getGenerator(String family) {
+        return getGenerator(Family.valueOf(family.toUpperCase().replace('-', '_')));
+    }
+
+    public static WorkloadGenerator getGenerator(Family family) {
+        switch (family) {
+            case COLLECTIVE_CLASSIFICATION:
+                return new CollectiveClassificationGenerator();
+            case LINK_PREDICTION:
+                return new LinkPredictionGenerator();
+            case ENTITY_RESOLUTION:
+                return new EntityResolutionGenerator();
+            case ASSIGNMENT:
+                return new AssignmentGenerator();
+            default:
+                throw new IllegalStateException("Unknown workload family: " + family);
+        }
+    }
+
+    /**
+     * The name of this workload, used to name the rule and config files.
+     */
+    public abstract String getName();
+
+    /**
+     * Add all the rules and data for this workload.
+     */
+    protected abstract void generateWorkload();
+
+    /**
+     * Decide if an edge sampled by sampleEdges() should be kept.
+     * Children can override this to bias the graph (e.g., towards homophily).
+     */
+    protected boolean acceptEdge(int source, int target) {
+        return true;
+    }
+
+    /**
+     * Generate the workload into the given directory (which will be created if necessary).
+     * Returns the path to the runtime config describing the workload.
+     */
+    public String generate(String outDir) {
+        FileUtils.mkdir(outDir);
+
+        this.outDir = outDir;
+        rng.setSeed(seed);
+        rules.clear();
+        predicates.clear();
+
+        try {
+            generateWorkload();
+        } finally {
+            for (PredicateData data : predicates.values()) {
+                data.close();
+            }
+        }
+
+        String rulesFilename = getName() + ".psl";
+        try (BufferedWriter writer = FileUtils.getBufferedWriter(new File(outDir, rulesFilename))) {
+            for (String rule : rules) {
+                writer.write(rule);
+                writer.newLine();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write rules for workload: " + getName(), ex);
+        }
+
+        Map<String, Object> config = new LinkedHashMap<String, Object>();
+        config.put(RuntimeConfig.KEY_RULES, rulesFilename);
+
+        Map<String, Object> predicateConfigs = new LinkedHashMap<String, Object>();
+        long numAtoms = 0;
+        for (PredicateData data : predicates.values()) {
+            predicateConfigs.put(data.name + "/" + data.arity, data.toConfig());
+            numAtoms += data.numObservations + data.numTargets;
+        }
+        config.put("predicates", predicateConfigs);
+
+        config.put(RuntimeConfig.KEY_OPTIONS, Collections.singletonMap(RuntimeOptions.DB_INT_IDS.name(), "true"));
+
+        File configFile = new File(outDir, getName() + ".json");
+        try {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(configFile, config);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write config for workload: " + getName(), ex);
+        }
+
+        log.info("Generated {} workload with {} rules and {} atoms in {}.", getName(), rules.size(), numAtoms, outDir);
+
+        return configFile.getPath();
+    }
+
+    protected void addRule(String rule) {
+        rules.add(rule);
+    }
+
+    /**
+     * Declare a predicate.
+     * Predicates that are evaluated will get a DiscreteEvaluator on their truth data.
+     */
+    protected void addPredicate(String name, int arity, boolean evaluate) {
+        predicates.put(name, new PredicateData(name, arity, evaluate));
+    }
+
+    protected void addObservation(String predicate, float value, int... args) {
+        PredicateData data = getPredicate(predicate, args);
+        data.observations = write(data.observations, data.name + OBSERVATIONS_SUFFIX, value, args);
+        data.numObservations++;
+    }
+
+    protected void addTarget(String predicate, int... args) {
+        PredicateData data = getPredicate(predicate, args);
+        data.targets = write(data.targets, data.name + TARGETS_SUFFIX, Float.NaN, args);
+        data.numTargets++;
+    }
+
+    protected void addTruth(String predicate, float value, int... args) {
+        PredicateData data = getPredicate(predicate, args);
+        data.truth = write(data.truth, data.name + TRUTH_SUFFIX, value, args);
+        data.numTruth++;
+    }
+
+    /**
+     * Add an atom as either an observation or a target with a truth value.
+     */
+    protected void addObservedOrTarget(String predicate, float truth, boolean observed, int... args) {
+        if (observed) {
+            addObservation(predicate, truth, args);
+        } else {
+            addTarget(predicate, args);
+            addTruth(predicate, truth, args);
+        }
+    }
+
+    /**
+     * Decide if the next entity (or pair) should be observed, following observedRatio.
+     */
+    protected boolean nextObserved() {
+        return rng.nextDouble() < observedRatio;
+    }
+
+    /**
+     * Declare the evidence predicates and add one evidence rule per predicate for the given target.
+     * |body| is an optional (may be null) conjunction that is prepended to the evidence atom.
+     */
+    protected void addEvidenceRules(String targetPredicate, String[] variables, String body) {
+        int numViewArgs = evidenceArity - variables.length;
+
+        StringBuilder arguments = new StringBuilder();
+        arguments.append(String.join(", ", variables));
+        for (int i = 0; i < numViewArgs; i++) {
+            arguments.append(", V").append(i);
+        }
+
+        for (int i = 0; i < numEvidenceRules; i++) {
+            String name = EVIDENCE_PREDICATE_PREFIX + i;
+            addPredicate(name, evidenceArity, false);
+
+            String evidence = String.format("%s(%s)", name, arguments.toString());
+            if (body != null) {
+                evidence = body + " & " + evidence;
+            }
+
+            addRule(String.format("1.0: %s -> %s(%s) ^2", evidence, targetPredicate, String.join(", ", variables)));
+        }
+    }
+
+    /**
+     * Add a noisy observation of |truth| to every evidence predicate for every view.
+     * Evidence for a true atom is drawn from [0.4, 1.0] and for a false atom from [0.0, 0.6].
+     */
+    protected void addEvidence(float truth, int... args) {
+        int numViewArgs = evidenceArity - args.length;
+        int numViewCombinations = 1 << numViewArgs;
+
+        int[] evidenceArgs = Arrays.copyOf(args, evidenceArity);
+        for (int i = 0; i < numEvidenceRules; i++) {
+            String name = EVIDENCE_PREDICATE_PREFIX + i;
+
+            for (int combination = 0; combination < numViewCombinations; combination++) {
+                for (int view = 0; view < numViewArgs; view++) {
+                    evidenceArgs[args.length + view] = (combination >> view) & 1;
+                }
+
+                addObservation(name, (float)(0.4 * truth + 0.6 * rng.nextDouble()), evidenceArgs);
+            }
+        }
+    }
+
+    /**
+     * Build a cumulative distribution over |count| items following the configured degree distribution.
+     * Under a power law, lower indexes are the heavier items.
+     */
+    protected double[] buildSamplingDistribution(int count) {
+        double[] cumulative = new double[count];
+
+        double total = 0.0;
+        for (int i = 0; i < count; i++) {
+            if (degreeDistribution == DegreeDistribution.POWER_LAW) {
+                total += Math.pow(i + 1, -1.0 / (degreeExponent - 1.0));
+            } else {
+                total += 1.0;
+            }
+
+            cumulative[i] = total;
+        }
+
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= total;
+        }
+
+        return cumulative;
+    }
+
+    /**
+     * Sample an index from a distribution built by buildSamplingDistribution().
+     */
+    protected int sample(double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, rng.nextDouble());
+        if (index < 0) {
+            index = -(index + 1);
+        }
+
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    /**
+     * Sample unique undirected edges (without self loops) over |numNodes| nodes
+     * whose expected degrees follow the configured degree distribution (a Chung-Lu style graph).
+     * Each edge is returned once as {source, target} with source &lt; target.
+     * Fewer edges may be returned if the graph is too dense to find enough unique edges.
+     */
+    protected List<int[]> sampleEdges(int numNodes, long numEdges) {
+        double[] distribution = buildSamplingDistribution(numNodes);
+
+        List<int[]> edges = new ArrayList<int[]>();
+        Set<Long> seen = new HashSet<Long>();
+
+        long maxAttempts = numEdges * MAX_EDGE_ATTEMPTS;
+        for (long attempt = 0; attempt < maxAttempts && edges.size() < numEdges; attempt++) {
+            int source = sample(distribution);
+            int target = sample(distribution);
+
+            if (source == target) {
+                continue;
+            }
+
+            if (source > target) {
+                int temp = source;
+                source = target;
+                target = temp;
+            }
+
+            if (!seen.add(Long.valueOf((long)source * numNodes + target))) {
+                continue;
+            }
+
+            if (!acceptEdge(source, target)) {
+                continue;
+            }
+
+            edges.add(new int[]{source, target});
+        }
+
+        if (edges.size() < numEdges) {
+            log.warn("Could only find {} of {} requested edges.", edges.size(), numEdges);
+        }
+
+        return edges;
+    }
+
+    private PredicateData getPredicate(String name, int[] args) {
+        PredicateData data = predicates.get(name);
+        if (data == null) {
+            throw new IllegalStateException("Unknown predicate: " + name);
+        }
+
+        if (data.arity != args.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Predicate %s has arity %d, but got %d arguments.", name, data.arity, args.length));
+        }
+
+        return data;
+    }
+
+    private BufferedWriter write(BufferedWriter writer, String filename, float value, int[] args) {
+        if (writer == null) {
+            writer = FileUtils.getBufferedWriter(new File(outDir, filename));
+        }
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) {
+                    writer.write('\t');
+                }
+                writer.write(Integer.toString(args[i]));
+            }
+
+            if (!Float.isNaN(value)) {
+                writer.write('\t');
+                writer.write(Float.toString(Math.round(value * 1000.0f) / 1000.0f));
+            }
+
+            writer.newLine();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write data file: " + filename, ex);
+        }
+
+        return writer;
+    }
+
+    private static class PredicateData {
+        public final String name;
+        public final int arity;
+        public final boolean evaluate;
+
+        public BufferedWriter observations;
+        public BufferedWriter targets;
+        public BufferedWriter truth;
+
+        public long numObservations;
+        public long numTargets;
+        public long numTruth;
+
+        public PredicateData(String name, int arity, boolean evaluate) {
+            this.name = name;
+            this.arity = arity;
+            this.evaluate = evaluate;
+
+            observations = null;
+            targets = null;
+            truth = null;
+
+            numObservations = 0;
+            numTargets = 0;
+            numTruth = 0;
+        }
+
+        public Map<String, Object> toConfig() {
+            Map<String, Object> config = new LinkedHashMap<String, Object>();
+
+            if (numObservations > 0) {
+                config.put("observations", Collections.singletonList(name + OBSERVATIONS_SUFFIX));
+            }
+
+            if (numTargets > 0) {
+                config.put("targets", Collections.singletonList(name + TARGETS_SUFFIX));
+            }
+
+            if (numTruth > 0) {
+                config.put("truth", Collections.singletonList(name + TRUTH_SUFFIX));
+
+                if (evaluate) {
+                    config.put("evaluations", Collections.singletonList(DiscreteEvaluator.class.getName()));
+                }
+            }
+
+            return config;
+        }
+
+        public void close() {
+            try {
+                if (observations != null) {
+                    observations.close();
+                    observations = null;
+                }
+
+                if (targets != null) {
+                    targets.close();
+                    targets = null;
+                }
+
+                if (truth != null) {
+                    truth.close();
+                    truth = null;
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to close data files for predicate: " + name, ex);
+            }
+        }
+    }
+}
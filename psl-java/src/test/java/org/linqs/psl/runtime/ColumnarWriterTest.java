@@ -0,0 +1,227 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.config.Options;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ColumnarWriterTest extends RuntimeTest {
+    @Test
+    public void testGroundProgram() {
+        String configPath = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        String path = Paths.get(outDir, "ground_program.columnar").toString();
+
+        GroundingAPI.GroundProgram program = GroundingAPI.groundStatic(configPath);
+        ColumnarWriter.writeGroundProgram(program, path);
+
+        checkGroundProgram(program, new ColumnarFile(path));
+    }
+
+    /**
+     * Collecting the ground rules during grounding should give the same file as writing a GroundProgram.
+     */
+    @Test
+    public void testGroundColumnar() {
+        String configPath = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        String path = Paths.get(outDir, "ground_columnar.columnar").toString();
+
+        // Ground on one thread so both groundings assign the same atom indexes and ground rule order.
+        Options.PARALLEL_NUM_THREADS.set(1);
+
+        GroundingAPI.GroundProgram program = GroundingAPI.groundStatic(configPath);
+        (new GroundingAPI()).groundColumnar(RuntimeConfig.fromFile(configPath), path);
+
+        checkGroundProgram(program, new ColumnarFile(path));
+    }
+
+    private void checkGroundProgram(GroundingAPI.GroundProgram program, ColumnarFile file) {
+        Assert.assertEquals(program.atoms.size(), file.getLength("atom_index"));
+        Assert.assertEquals(program.groundRules.size(), file.getLength("rule_index"));
+        Assert.assertEquals(program.atoms.size() + 1, file.getLength("atom_argument_offsets"));
+        Assert.assertEquals(program.groundRules.size() + 1, file.getLength("rule_atom_offsets"));
+
+        int previousIndex = -1;
+        for (int i = 0; i < program.atoms.size(); i++) {
+            int atomIndex = file.getInt("atom_index", i);
+            Assert.assertTrue(atomIndex > previousIndex);
+            previousIndex = atomIndex;
+
+            GroundingAPI.AtomInfo atom = program.atoms.get(Integer.valueOf(atomIndex));
+            Assert.assertEquals(atom.predicate, file.predicates.getString(file.getInt("atom_predicate", i)));
+            Assert.assertEquals(atom.value, file.getFloat("atom_value", i), 0.0f);
+            Assert.assertEquals(atom.observed ? 1 : 0, file.getByte("atom_observed", i));
+            Assert.assertArrayEquals(atom.arguments, file.getArguments(i));
+        }
+
+        for (int i = 0; i < program.groundRules.size(); i++) {
+            GroundingAPI.GroundRuleInfo groundRule = program.groundRules.get(i);
+
+            Assert.assertEquals(groundRule.ruleIndex, file.getInt("rule_index", i));
+            Assert.assertEquals(groundRule.operator, file.operators.getString(file.getByte("rule_operator", i)));
+            Assert.assertEquals(groundRule.weight, file.getFloat("rule_weight", i), 0.0f);
+            Assert.assertEquals(groundRule.constant, file.getFloat("rule_constant", i), 0.0f);
+
+            long start = file.getLong("rule_atom_offsets", i);
+            long end = file.getLong("rule_atom_offsets", i + 1);
+            Assert.assertEquals(groundRule.atoms.length, end - start);
+
+            for (int j = 0; j < groundRule.atoms.length; j++) {
+                Assert.assertEquals(groundRule.atoms[j], file.getInt("rule_atoms", (int)start + j));
+                Assert.assertEquals(groundRule.coefficients[j], file.getFloat("rule_coefficients", (int)start + j), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testRuntimeResult() {
+        String configPath = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        String path = Paths.get(outDir, "results.columnar").toString();
+
+        RuntimeResult result = (new Runtime()).run(configPath, true);
+        ColumnarWriter.writeAtoms(result.getAtoms(), path);
+
+        // Atoms are left out of the JSON when they are passed along in columns.
+        Assert.assertEquals(0, new JSONObject(result.toJSON(false)).getJSONArray("atoms").length());
+
+        ColumnarFile file = new ColumnarFile(path);
+        Assert.assertFalse(file.columns.containsKey("rule_index"));
+
+        JSONArray atoms = new JSONObject(result.toJSON()).getJSONArray("atoms");
+        Assert.assertEquals(atoms.length(), file.getLength("atom_index"));
+
+        for (int i = 0; i < atoms.length(); i++) {
+            JSONObject atom = atoms.getJSONObject(i);
+
+            Assert.assertEquals(atom.getString("predicate"), file.predicates.getString(file.getInt("atom_predicate", i)));
+            Assert.assertEquals(atom.getDouble("value"), file.getFloat("atom_value", i), 1e-6);
+
+            JSONArray arguments = atom.getJSONArray("arguments");
+            String[] expected = new String[arguments.length()];
+            for (int j = 0; j < expected.length; j++) {
+                expected[j] = arguments.getString(j);
+            }
+
+            Assert.assertArrayEquals(expected, file.getArguments(i));
+        }
+    }
+
+    /**
+     * A minimal reader for the layout documented in ColumnarWriter.
+     */
+    private static class ColumnarFile {
+        public ByteBuffer buffer;
+        public JSONArray predicates;
+        public JSONArray operators;
+        public Map<String, JSONObject> columns;
+
+        public ColumnarFile(String path) {
+            try {
+                buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))).order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            byte[] magic = new byte[ColumnarWriter.MAGIC.length()];
+            buffer.get(magic);
+            Assert.assertEquals(ColumnarWriter.MAGIC, new String(magic, StandardCharsets.US_ASCII));
+
+            int headerLength = (int)buffer.getLong();
+            byte[] rawHeader = new byte[headerLength];
+            buffer.get(rawHeader);
+            JSONObject header = new JSONObject(new String(rawHeader, StandardCharsets.UTF_8));
+
+            Assert.assertEquals(ColumnarWriter.FORMAT_VERSION, header.getInt("version"));
+
+            int headerEnd = magic.length + Long.BYTES + headerLength;
+            int dataStart = ((headerEnd + ColumnarWriter.COLUMN_ALIGNMENT - 1) / ColumnarWriter.COLUMN_ALIGNMENT) * ColumnarWriter.COLUMN_ALIGNMENT;
+
+            predicates = header.getJSONArray("predicates");
+            operators = header.getJSONArray("operators");
+
+            columns = new HashMap<String, JSONObject>();
+            JSONArray rawColumns = header.getJSONArray("columns");
+            for (int i = 0; i < rawColumns.length(); i++) {
+                JSONObject column = rawColumns.getJSONObject(i);
+                column.put("offset", dataStart + column.getLong("offset"));
+                Assert.assertEquals(0, column.getLong("offset") % ColumnarWriter.COLUMN_ALIGNMENT);
+
+                columns.put(column.getString("name"), column);
+            }
+        }
+
+        public long getLength(String name) {
+            return columns.get(name).getLong("length");
+        }
+
+        public int getInt(String name, int index) {
+            return buffer.getInt(getPosition(name, index, Integer.BYTES));
+        }
+
+        public long getLong(String name, int index) {
+            return buffer.getLong(getPosition(name, index, Long.BYTES));
+        }
+
+        public float getFloat(String name, int index) {
+            return buffer.getFloat(getPosition(name, index, Float.BYTES));
+        }
+
+        public int getByte(String name, int index) {
+            return buffer.get(getPosition(name, index, Byte.BYTES)) & 0xFF;
+        }
+
+        public String[] getArguments(int atom) {
+            int start = (int)getLong("atom_argument_offsets", atom);
+            int end = (int)getLong("atom_argument_offsets", atom + 1);
+
+            String[] arguments = new String[end - start];
+            for (int i = 0; i < arguments.length; i++) {
+                int stringStart = (int)getLong("atom_argument_string_offsets", start + i);
+                int stringEnd = (int)getLong("atom_argument_string_offsets", start + i + 1);
+
+                byte[] bytes = new byte[stringEnd - stringStart];
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = (byte)getByte("atom_argument_bytes", stringStart + j);
+                }
+
+                arguments[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            return arguments;
+        }
+
+        private int getPosition(String name, int index, int width) {
+            JSONObject column = columns.get(name);
+            Assert.assertTrue(index < column.getLong("length"));
+
+            return (int)column.getLong("offset") + index * width;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.database.AtomStore;
+import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.rule.AbstractRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.util.StringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class GroundRuleExporterTest extends RuntimeTest {
+    @Test
+    public void testExport() {
+        // Small batches so there are many blocks from each thread.
+        checkExport(7);
+        checkExport(GroundRuleExporter.DEFAULT_BATCH_SIZE);
+    }
+
+    @Test
+    public void testInferenceOutput() {
+        String configPath = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        String path = Paths.get(outDir, "inference.groundrules").toString();
+
+        RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES.set(true);
+        RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_BINARY.set(true);
+        RuntimeOptions.INFERENCE_OUTPUT_GROUNDRULES_PATH.set(path);
+
+        RuntimeResult result = (new Runtime()).run(configPath, true);
+
+        ExportFile export = new ExportFile(path);
+        Assert.assertTrue(export.groundRules.size() > 0);
+        Assert.assertEquals(export.footer.getLong("groundRules"), export.groundRules.size());
+
+        // Atoms are written at the end, so they have their inferred values.
+        JSONArray atoms = new JSONObject(result.toJSON()).getJSONArray("atoms");
+        for (int i = 0; i < atoms.length(); i++) {
+            JSONObject atom = atoms.getJSONObject(i);
+            String key = atom.getString("predicate") + atom.getJSONArray("arguments").toString();
+            Assert.assertTrue(export.atomValues.containsKey(key));
+            Assert.assertEquals(atom.getDouble("value"), export.atomValues.get(key).doubleValue(), 1e-6);
+        }
+    }
+
+    /**
+     * An aborted export (e.g. grounding failed) should not leave a file without a footer behind.
+     */
+    @Test
+    public void testAbort() {
+        String path = Paths.get(outDir, "aborted.groundrules").toString();
+
+        GroundRuleExporter exporter = new GroundRuleExporter(path, new ArrayList<Rule>(), new AtomStore());
+        Assert.assertTrue(Files.exists(Paths.get(path)));
+
+        exporter.abort();
+        Assert.assertFalse(Files.exists(Paths.get(path)));
+
+        // Closing (or aborting) again does nothing.
+        exporter.close();
+        exporter.abort();
+        Assert.assertFalse(Files.exists(Paths.get(path)));
+    }
+
+    private void checkExport(int batchSize) {
+        String configPath = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        String path = Paths.get(outDir, "export.groundrules").toString();
+
+        GroundingAPI.GroundProgram program = GroundingAPI.groundStatic(configPath);
+
+        Predicate.clearForTesting();
+        AbstractRule.unregisterAllRulesForTesting();
+
+        long count = (new GroundingAPI()).export(RuntimeConfig.fromFile(configPath), path, batchSize);
+        Assert.assertEquals(program.groundRules.size(), count);
+
+        ExportFile export = new ExportFile(path);
+        Assert.assertEquals(count, export.footer.getLong("groundRules"));
+        Assert.assertEquals(count, export.groundRules.size());
+        Assert.assertEquals(export.footer.getLong("atoms"), export.atoms.size());
+
+        // Grounding is parallel, so ground rules may come in any order.
+        List<String> expected = new ArrayList<String>();
+        for (GroundingAPI.GroundRuleInfo groundRule : program.groundRules) {
+            expected.add(formatGroundRule(groundRule.ruleIndex, groundRule.operator, groundRule.weight, groundRule.constant,
+                    StringUtils.join(", ", groundRule.atoms), StringUtils.join(", ", groundRule.coefficients)));
+        }
+
+        Collections.sort(expected);
+        Collections.sort(export.groundRules);
+        Assert.assertEquals(expected, export.groundRules);
+
+        for (Map.Entry<Integer, GroundingAPI.AtomInfo> entry : program.atoms.entrySet()) {
+            GroundingAPI.AtomInfo atom = entry.getValue();
+            String expectedAtom = atom.predicate + StringUtils.join(",", atom.arguments) + ":" + atom.value;
+            Assert.assertEquals(expectedAtom, export.atoms.get(entry.getKey()));
+        }
+    }
+
+    private static String formatGroundRule(int ruleIndex, String operator, float weight, float constant, String atoms, String coefficients) {
+        return String.format("%d %s %f %f [%s] [%s]", ruleIndex, operator, weight, constant, atoms, coefficients);
+    }
+
+    /**
+     * A minimal reader for the layout documented in GroundRuleExporter.
+     */
+    private static class ExportFile {
+        public List<String> groundRules;
+        public Map<Integer, String> atoms;
+        public Map<String, Float> atomValues;
+        public JSONObject footer;
+
+        public ExportFile(String path) {
+            ByteBuffer buffer = null;
+            try {
+                buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path))).order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+
+            byte[] magic = new byte[GroundRuleExporter.MAGIC.length()];
+            buffer.get(magic);
+            Assert.assertEquals(GroundRuleExporter.MAGIC, new String(magic, StandardCharsets.US_ASCII));
+
+            int footerPosition = (int)buffer.getLong(buffer.limit() - Long.BYTES);
+
+            groundRules = new ArrayList<String>();
+            atoms = new HashMap<Integer, String>();
+            atomValues = new HashMap<String, Float>();
+
+            List<String> predicates = null;
+            List<int[]> atomBlocks = new ArrayList<int[]>();
+
+            while (footer == null) {
+                int blockStart = buffer.position();
+                int type = buffer.getInt();
+                int rows = buffer.getInt();
+                int payloadBytes = (int)buffer.getLong();
+                int payloadStart = buffer.position();
+
+                if (type == GroundRuleExporter.BLOCK_GROUND_RULES) {
+                    readGroundRules(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), rows);
+                } else if (type == GroundRuleExporter.BLOCK_ATOMS) {
+                    // Atoms reference predicates in the footer.
+                    atomBlocks.add(new int[]{payloadStart, rows});
+                } else if (type == GroundRuleExporter.BLOCK_FOOTER) {
+                    Assert.assertEquals(footerPosition, blockStart);
+
+                    byte[] rawFooter = new byte[payloadBytes];
+                    buffer.get(rawFooter);
+                    footer = new JSONObject(new String(rawFooter, StandardCharsets.UTF_8));
+                } else {
+                    Assert.fail("Unknown block type: " + type);
+                }
+
+                buffer.position(payloadStart + payloadBytes);
+            }
+
+            Assert.assertEquals(GroundRuleExporter.FORMAT_VERSION, footer.getInt("version"));
+            Assert.assertEquals(buffer.limit() - Long.BYTES, buffer.position());
+
+            for (int[] atomBlock : atomBlocks) {
+                buffer.position(atomBlock[0]);
+                readAtoms(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), atomBlock[1], footer.getJSONArray("predicates"));
+            }
+        }
+
+        private void readGroundRules(ByteBuffer buffer, int rows) {
+            int[] ruleIndexes = new int[rows];
+            float[] weights = new float[rows];
+            float[] constants = new float[rows];
+            int[] offsets = new int[rows + 1];
+
+            for (int i = 0; i < rows; i++) {
+                ruleIndexes[i] = buffer.getInt();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                weights[i] = buffer.getFloat();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                constants[i] = buffer.getFloat();
+            }
+
+            for (int i = 0; i <= rows; i++) {
+                offsets[i] = buffer.getInt();
+            }
+
+            int[] ruleAtoms = new int[offsets[rows]];
+            for (int i = 0; i < ruleAtoms.length; i++) {
+                ruleAtoms[i] = buffer.getInt();
+            }
+
+            float[] coefficients = new float[offsets[rows]];
+            for (int i = 0; i < coefficients.length; i++) {
+                coefficients[i] = buffer.getFloat();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                String operator = GroundRuleExporter.OPERATORS[buffer.get()];
+
+                List<String> atomStrings = new ArrayList<String>();
+                List<String> coefficientStrings = new ArrayList<String>();
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    atomStrings.add("" + ruleAtoms[j]);
+                    coefficientStrings.add("" + coefficients[j]);
+                }
+
+                groundRules.add(formatGroundRule(ruleIndexes[i], operator, weights[i], constants[i],
+                        String.join(", ", atomStrings), String.join(", ", coefficientStrings)));
+            }
+        }
+
+        private void readAtoms(ByteBuffer buffer, int rows, JSONArray predicates) {
+            int[] atomIndexes = new int[rows];
+            int[] predicateIndexes = new int[rows];
+            float[] values = new float[rows];
+            int[] argumentOffsets = new int[rows + 1];
+
+            for (int i = 0; i < rows; i++) {
+                atomIndexes[i] = buffer.getInt();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                predicateIndexes[i] = buffer.getInt();
+            }
+
+            for (int i = 0; i < rows; i++) {
+                values[i] = buffer.getFloat();
+            }
+
+            for (int i = 0; i <= rows; i++) {
+                argumentOffsets[i] = buffer.getInt();
+            }
+
+            int[] stringOffsets = new int[argumentOffsets[rows] + 1];
+            for (int i = 0; i < stringOffsets.length; i++) {
+                stringOffsets[i] = buffer.getInt();
+            }
+
+            // Observed flags.
+            buffer.position(buffer.position() + rows);
+
+            byte[] argumentBytes = new byte[stringOffsets[stringOffsets.length - 1]];
+            buffer.get(argumentBytes);
+
+            for (int i = 0; i < rows; i++) {
+                List<String> arguments = new ArrayList<String>();
+                for (int j = argumentOffsets[i]; j < argumentOffsets[i + 1]; j++) {
+                    arguments.add(new String(argumentBytes, stringOffsets[j], stringOffsets[j + 1] - stringOffsets[j], StandardCharsets.UTF_8));
+                }
+
+                String predicate = predicates.getString(predicateIndexes[i]);
+                atoms.put(Integer.valueOf(atomIndexes[i]), predicate + String.join(",", arguments) + ":" + values[i]);
+                atomValues.put(predicate + new JSONArray(arguments).toString(), Float.valueOf(values[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime;
+
+import org.linqs.psl.util.Metrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+public class InferenceServerTest extends RuntimeTest {
+    private static final String[] PEOPLE = new String[]{"Alex", "Arti", "Ben", "Dhanya", "Elena", "Jay", "Sabina", "Steve"};
+
+    private InferenceServer server;
+
+    @Before
+    public void startServer() {
+        Metrics.clear();
+
+        String path = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        server = new InferenceServer(new InferenceSession(RuntimeConfig.fromFile(path)));
+        server.start("127.0.0.1", 0);
+    }
+
+    @After
+    public void stopServer() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+
+        Metrics.clear();
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws IOException {
+        Map<String, Float> initial = infer();
+        Assert.assertTrue(initial.containsKey("Elena,Steve"));
+        Assert.assertFalse(initial.containsKey("Zed,Elena"));
+
+        // A new person who lived in the same place as Elena.
+        JSONObject response = request("POST", InferenceServer.ENDPOINT_UPSERT,
+                "{\"predicate\": \"Lived\", \"partition\": \"observations\", \"data\": [[\"Zed\", \"Maryland\"]]}");
+        Assert.assertEquals(1, response.getInt(InferenceServer.KEY_COUNT));
+
+        // The model needs targets for every pair of people.
+        String targets = getTargets("Zed");
+        response = request("POST", InferenceServer.ENDPOINT_UPSERT,
+                "{\"predicate\": \"Knows\", \"partition\": \"targets\", \"data\": " + targets + "}");
+        Assert.assertEquals(2 * PEOPLE.length, response.getInt(InferenceServer.KEY_COUNT));
+
+        Map<String, Float> updated = infer();
+        Assert.assertEquals(initial.size() + 2 * PEOPLE.length, updated.size());
+        Assert.assertTrue(updated.get("Zed,Elena") > updated.get("Zed,Dhanya"));
+
+        // Remove everything again.
+        response = request("POST", InferenceServer.ENDPOINT_DELETE,
+                "{\"predicate\": \"Knows\", \"partition\": \"targets\", \"data\": " + targets + "}");
+        Assert.assertEquals(2 * PEOPLE.length, response.getInt(InferenceServer.KEY_COUNT));
+
+        response = request("POST", InferenceServer.ENDPOINT_DELETE,
+                "{\"predicate\": \"Lived\", \"partition\": \"observations\", \"data\": [[\"Zed\", \"Maryland\"]]}");
+        Assert.assertEquals(1, response.getInt(InferenceServer.KEY_COUNT));
+
+        Map<String, Float> reverted = infer();
+        Assert.assertEquals(initial.keySet(), reverted.keySet());
+        for (Map.Entry<String, Float> entry : initial.entrySet()) {
+            Assert.assertEquals(entry.getValue(), reverted.get(entry.getKey()), 0.05f);
+        }
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        Assert.assertEquals(400, getStatus("POST", InferenceServer.ENDPOINT_UPSERT,
+                "{\"predicate\": \"Unknown\", \"partition\": \"observations\", \"data\": [[\"A\"]]}"));
+
+        Assert.assertEquals(400, getStatus("POST", InferenceServer.ENDPOINT_UPSERT,
+                "{\"predicate\": \"Lived\", \"partition\": \"truth\", \"data\": [[\"A\", \"B\"]]}"));
+
+        Assert.assertEquals(400, getStatus("POST", InferenceServer.ENDPOINT_UPSERT, "not json"));
+        Assert.assertEquals(405, getStatus("GET", InferenceServer.ENDPOINT_INFER, null));
+        Assert.assertEquals(404, getStatus("GET", "/unknown", null));
+
+        // The session is still usable.
+        Assert.assertTrue(infer().size() > 0);
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        infer();
+        infer();
+
+        Assert.assertEquals(200, getStatus("GET", InferenceServer.ENDPOINT_HEALTH, null));
+
+        String metrics = send("GET", InferenceServer.ENDPOINT_METRICS, null).body;
+        Assert.assertTrue(metrics.contains("server_request_seconds_count{endpoint=\"/infer\"} 2"));
+        Assert.assertTrue(metrics.contains("server_queue_depth"));
+    }
+
+    private String getTargets(String person) {
+        JSONArray targets = new JSONArray();
+        for (String other : PEOPLE) {
+            targets.put(new JSONArray(new String[]{person, other}));
+            targets.put(new JSONArray(new String[]{other, person}));
+        }
+
+        return targets.toString();
+    }
+
+    private Map<String, Float> infer() throws IOException {
+        JSONObject response = request("POST", InferenceServer.ENDPOINT_INFER, "{\"predicates\": [\"Knows\"]}");
+
+        Map<String, Float> values = new HashMap<String, Float>();
+        JSONArray atoms = response.getJSONArray("atoms");
+        for (int i = 0; i < atoms.length(); i++) {
+            JSONObject atom = atoms.getJSONObject(i);
+            JSONArray arguments = atom.getJSONArray("arguments");
+            values.put(arguments.getString(0) + "," + arguments.getString(1), (float)atom.getDouble("value"));
+        }
+
+        return values;
+    }
+
+    private JSONObject request(String method, String endpoint, String body) throws IOException {
+        Response response = send(method, endpoint, body);
+        Assert.assertEquals(response.body, 200, response.status);
+        return new JSONObject(response.body);
+    }
+
+    private int getStatus(String method, String endpoint, String body) throws IOException {
+        return send(method, endpoint, body).status;
+    }
+
+    private Response send(String method, String endpoint, String body) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getPort(), endpoint);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setRequestMethod(method);
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+
+        InputStream in = (response.status < 400) ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            byte[] chunk = new byte[4096];
+            int length = 0;
+            while ((length = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+
+        response.body = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        connection.disconnect();
+
+        return response;
+    }
+
+    private static class Response {
+        public int status;
+        public String body;
+    }
+}
@@ -17,9 +17,23 @@
  */
 package org.linqs.psl.runtime;
 
+import org.linqs.psl.application.inference.mpe.DualBCDInference;
+import org.linqs.psl.config.Options;
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.model.predicate.Predicate;
+import org.linqs.psl.model.rule.AbstractRule;
+import org.linqs.psl.reasoner.InitialValue;
+import org.linqs.psl.util.FileUtils;
+import org.linqs.psl.util.Metrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 
 public class SimpleAcquaintancesTest extends RuntimeTest {
     @Test
@@ -39,4 +53,93 @@ public class SimpleAcquaintancesTest extends RuntimeTest {
         String path = Paths.get(resourceDir, "simple-acquaintances", "types.json").toString();
         run(path);
     }
+
+    @Test
+    public void testRuleProfile() {
+        checkRuleProfile();
+    }
+
+    @Test
+    public void testRuleProfileDualBCD() {
+        RuntimeOptions.INFERENCE_METHOD.set(DualBCDInference.class.getName());
+        checkRuleProfile();
+    }
+
+    private void checkRuleProfile() {
+        String profilePath = Paths.get(outDir, "rule_profile.json").toString();
+        Options.PROFILER_RULES.set(true);
+        Options.PROFILER_RULES_OUTPUT_PATH.set(profilePath);
+        Options.PROFILER_RULES_SAMPLE_PERIOD.set(1);
+
+        String path = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        run(path);
+
+        JSONObject profile = new JSONObject(FileUtils.readFileAsString(profilePath));
+        Assert.assertTrue(profile.getLong("sampledIterations") > 0);
+
+        JSONArray rules = profile.getJSONArray("rules");
+        Assert.assertTrue(rules.length() > 0);
+
+        long totalTerms = 0;
+        long totalOptimizationNanos = 0;
+        for (int i = 0; i < rules.length(); i++) {
+            JSONObject rule = rules.getJSONObject(i);
+            totalTerms += rule.getLong("terms");
+            totalOptimizationNanos += rule.getLong("sampledOptimizationNanos");
+
+            if (rule.getLong("terms") > 0) {
+                Assert.assertTrue(rule.getLong("termBytes") > 0);
+            }
+        }
+
+        Assert.assertTrue(totalTerms > 0);
+        Assert.assertTrue(totalOptimizationNanos > 0);
+    }
+
+    @Test
+    public void testSharedGrounding() {
+        String path = Paths.get(resourceDir, "simple-acquaintances", "base.json").toString();
+        RuntimeOptions.LEARN.set(true);
+        RuntimeOptions.INFERENCE.set(true);
+
+        // Start every inference from the same place and converge tightly,
+        // so both runs land on the same optimum within the reasoner's tolerance.
+        Options.INFERENCE_INITIAL_VARIABLE_VALUE.set(InitialValue.ZERO.toString());
+        Options.ADMM_EPSILON_ABS.set(1e-8);
+        Options.ADMM_EPSILON_REL.set(1e-8);
+
+        RuntimeOptions.SHARE_GROUNDING.set(false);
+        Map<String, Double> separateValues = getAtomValues((new Runtime()).run(path, true));
+        long separateTerms = Metrics.counter("terms_generated_total").get();
+
+        Predicate.clearForTesting();
+        AbstractRule.unregisterAllRulesForTesting();
+
+        RuntimeOptions.SHARE_GROUNDING.set(true);
+        Map<String, Double> sharedValues = getAtomValues((new Runtime()).run(path, true));
+        long sharedTerms = Metrics.counter("terms_generated_total").get();
+
+        // Inference did not ground again.
+        Assert.assertTrue(sharedTerms > 0);
+        Assert.assertTrue(sharedTerms < separateTerms);
+
+        Assert.assertEquals(separateValues.size(), sharedValues.size());
+        for (Map.Entry<String, Double> entry : separateValues.entrySet()) {
+            Assert.assertTrue(sharedValues.containsKey(entry.getKey()));
+            Assert.assertEquals(entry.getValue().doubleValue(), sharedValues.get(entry.getKey()).doubleValue(),
+                    Options.REASONER_VARIABLE_MOVEMENT_TOLERANCE.getFloat());
+        }
+    }
+
+    private Map<String, Double> getAtomValues(RuntimeResult result) {
+        Map<String, Double> values = new HashMap<String, Double>();
+
+        JSONArray atoms = new JSONObject(result.toJSON()).getJSONArray("atoms");
+        for (int i = 0; i < atoms.length(); i++) {
+            JSONObject atom = atoms.getJSONObject(i);
+            values.put(atom.getString("predicate") + atom.getJSONArray("arguments").toString(), Double.valueOf(atom.getDouble("value")));
+        }
+
+        return values;
+    }
 }
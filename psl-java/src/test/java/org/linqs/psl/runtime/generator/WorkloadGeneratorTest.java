@@ -0,0 +1,131 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2024 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.runtime.generator;
+
+import org.linqs.psl.config.Options;
+import org.linqs.psl.config.RuntimeOptions;
+import org.linqs.psl.runtime.RuntimeTest;
+import org.linqs.psl.util.FileUtils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class WorkloadGeneratorTest extends RuntimeTest {
+    @Override
+    public void setUp() {
+        super.setUp();
+
+        Options.RANDOM_SEED.set(4);
+        RuntimeOptions.GENERATOR_ENTITIES.set(40);
+        RuntimeOptions.GENERATOR_DEGREE.set(4.0);
+        RuntimeOptions.INFERENCE.set(true);
+        RuntimeOptions.INFERENCE_OUTPUT_RESULTS.set(false);
+    }
+
+    @Test
+    public void testCollectiveClassification() {
+        generateAndRun(WorkloadGenerator.Family.COLLECTIVE_CLASSIFICATION);
+    }
+
+    @Test
+    public void testLinkPrediction() {
+        generateAndRun(WorkloadGenerator.Family.LINK_PREDICTION);
+    }
+
+    @Test
+    public void testEntityResolution() {
+        generateAndRun(WorkloadGenerator.Family.ENTITY_RESOLUTION);
+    }
+
+    @Test
+    public void testAssignment() {
+        generateAndRun(WorkloadGenerator.Family.ASSIGNMENT);
+    }
+
+    @Test
+    public void testUniformHighArity() {
+        RuntimeOptions.GENERATOR_DEGREE_DISTRIBUTION.set(WorkloadGenerator.DegreeDistribution.UNIFORM.toString());
+        RuntimeOptions.GENERATOR_ARITY.set(4);
+        RuntimeOptions.GENERATOR_RULES.set(3);
+
+        String configPath = generateAndRun(WorkloadGenerator.Family.COLLECTIVE_CLASSIFICATION);
+
+        // Two extra view arguments means four evidence atoms per label atom.
+        String dir = new File(configPath).getParent();
+        int numLabelAtoms = countLines(Paths.get(dir, "Label_obs.txt").toString()) + countLines(Paths.get(dir, "Label_targets.txt").toString());
+        assertEquals(numLabelAtoms * 4, countLines(Paths.get(dir, "Evidence2_obs.txt").toString()));
+    }
+
+    @Test
+    public void testDeterminism() {
+        String first = generate(WorkloadGenerator.Family.LINK_PREDICTION, "first");
+        String second = generate(WorkloadGenerator.Family.LINK_PREDICTION, "second");
+        assertEquals(first, second);
+
+        Options.RANDOM_SEED.set(5);
+        String third = generate(WorkloadGenerator.Family.LINK_PREDICTION, "third");
+        assertNotEquals(first, third);
+    }
+
+    private String generateAndRun(WorkloadGenerator.Family family) {
+        String dir = Paths.get(outDir, family.toString()).toString();
+        String configPath = WorkloadGenerator.getGenerator(family).generate(dir);
+
+        assertTrue(FileUtils.isFile(configPath));
+        run(configPath);
+
+        return configPath;
+    }
+
+    /**
+     * Generate a workload and return the contents of its rules and all its data.
+     */
+    private String generate(WorkloadGenerator.Family family, String name) {
+        String dir = Paths.get(outDir, name).toString();
+        WorkloadGenerator.getGenerator(family).generate(dir);
+
+        String[] filenames = new File(dir).list();
+        Arrays.sort(filenames);
+
+        StringBuilder contents = new StringBuilder();
+        for (String filename : filenames) {
+            contents.append(filename).append("\n");
+            contents.append(FileUtils.readFileAsString(Paths.get(dir, filename).toString()));
+        }
+
+        FileUtils.recursiveDelete(dir);
+
+        return contents.toString();
+    }
+
+    private int countLines(String path) {
+        String contents = FileUtils.readFileAsString(path);
+        if (contents.isEmpty()) {
+            return 0;
+        }
+
+        return contents.split("\n").length;
+    }
+}
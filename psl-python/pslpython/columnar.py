@@ -0,0 +1,156 @@
+"""
+This file is part of the PSL software.
+Copyright 2011-2015 University of Maryland
+Copyright 2013-2024 The Regents of the University of California
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+"""
+
+import json
+import mmap
+import os
+import struct
+
+import numpy
+
+MAGIC = b'PSLCOLS1'
+FORMAT_VERSION = 1
+COLUMN_ALIGNMENT = 64
+
+class ColumnarResult(object):
+    """
+    A read-only, memory-mapped view of a binary columnar file written by PSL
+    (see org.linqs.psl.runtime.ColumnarWriter for the layout).
+
+    Columns are returned as numpy arrays that view the mapped file directly (no parsing or copying).
+    Atoms are in the atom_* columns, and ground rules (for ground programs) are in the rule_* columns.
+    Variable-length values (atom arguments, ground rule atoms) use Arrow-style offsets:
+    the values for row i are values[offsets[i]:offsets[i + 1]].
+    """
+
+    def __init__(self, path, delete = False):
+        """
+        Args:
+            path: The path to the columnar file.
+            delete: Remove the file when this result is closed.
+        """
+
+        self._path = path
+        self._delete = delete
+
+        with open(path, 'rb') as file:
+            self._mmap = mmap.mmap(file.fileno(), 0, access = mmap.ACCESS_READ)
+
+        if (self._mmap[0:len(MAGIC)] != MAGIC):
+            self._mmap.close()
+            raise ValueError("File is not in the PSL columnar format: " + path)
+
+        header_length = struct.unpack_from('<q', self._mmap, len(MAGIC))[0]
+        header_start = len(MAGIC) + 8
+
+        header = json.loads(self._mmap[header_start:(header_start + header_length)].decode('utf-8'))
+        if (header['version'] != FORMAT_VERSION):
+            self._mmap.close()
+            raise ValueError("Unsupported PSL columnar format version (%d) in %s." % (header['version'], path))
+
+        data_start = _align(header_start + header_length)
+
+        self._predicates = header['predicates']
+        self._operators = header['operators']
+
+        self._columns = {}
+        for info in header['columns']:
+            self._columns[info['name']] = (numpy.dtype(info['dtype']), data_start + info['offset'], info['length'])
+
+    def column(self, name):
+        """
+        Get a column as a read-only numpy array backed by the mapped file.
+        """
+
+        if (name not in self._columns):
+            raise KeyError("Unknown column: '%s'. Known columns: %s." % (name, sorted(self._columns.keys())))
+
+        dtype, offset, length = self._columns[name]
+        return numpy.frombuffer(self._mmap, dtype = dtype, count = length, offset = offset)
+
+    def column_names(self):
+        return list(self._columns.keys())
+
+    def has_ground_rules(self):
+        return 'rule_index' in self._columns
+
+    def predicates(self):
+        """
+        The predicate names referenced (by position) from the atom_predicate column.
+        """
+
+        return self._predicates
+
+    def operators(self):
+        """
+        The ground rule operators referenced (by position) from the rule_operator column.
+        """
+
+        return self._operators
+
+    def num_atoms(self):
+        return self._columns['atom_index'][2]
+
+    def num_ground_rules(self):
+        if (not self.has_ground_rules()):
+            return 0
+
+        return self._columns['rule_index'][2]
+
+    def atom_arguments(self):
+        """
+        Decode the arguments of all atoms.
+        Unlike the columns, this copies (strings cannot be viewed in place).
+
+        Returns:
+            A list (one entry per atom) of lists of string arguments.
+        """
+
+        argument_offsets = self.column('atom_argument_offsets')
+        string_offsets = self.column('atom_argument_string_offsets')
+        raw_bytes = self.column('atom_argument_bytes').tobytes()
+
+        strings = [raw_bytes[string_offsets[i]:string_offsets[i + 1]].decode('utf-8') for i in range(len(string_offsets) - 1)]
+        return [strings[argument_offsets[i]:argument_offsets[i + 1]] for i in range(len(argument_offsets) - 1)]
+
+    def close(self):
+        """
+        Release the mapping (once no column arrays are still referenced) and remove the file if requested.
+        """
+
+        if (self._mmap is not None):
+            try:
+                self._mmap.close()
+            except BufferError:
+                # Column arrays still view the mapping, it will be released when they are collected.
+                pass
+
+            self._mmap = None
+
+        if (self._delete and os.path.exists(self._path)):
+            os.remove(self._path)
+            self._delete = False
+
+    def __enter__(self):
+        return self
+
+    def __exit__(self, exc_type, exc_value, traceback):
+        self.close()
+
+def _align(offset):
+    return ((offset + COLUMN_ALIGNMENT - 1) // COLUMN_ALIGNMENT) * COLUMN_ALIGNMENT
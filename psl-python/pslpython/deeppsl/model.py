@@ -31,6 +31,8 @@ class DeepModel(abc.ABC):
     def __init__(self):
         self._shared_file = None
         self._shared_buffer = None
+        self._buffer_offset = 0
+        self._buffer_sequence = None
 
         self._value_count = None
         self._data = None
@@ -174,7 +176,7 @@ class DeepModel(abc.ABC):
         return self.internal_init(application, options)
 
     def fit_predicate(self, options):
-        self._shared_buffer.seek(0)
+        self._seek_request_data()
 
         count = self._read_int()
         entity_indexes = self._read_values('>i4', count)
@@ -184,6 +186,14 @@ class DeepModel(abc.ABC):
 
         return self.internal_fit(data, gradients, options)
 
+    def set_buffer_region(self, offset, sequence):
+        """
+        Set the region of shared memory that the next request uses, and the sequence number of the request.
+        The region starts with the sequence number of the request that last wrote it.
+        """
+        self._buffer_offset = max(0, offset)
+        self._buffer_sequence = sequence
+
     def train_mode(self, options):
             return self.internal_train_mode(options)
 
@@ -206,7 +216,7 @@ class DeepModel(abc.ABC):
         self._predict_predicate(options)
 
     def _predict_predicate(self, options):
-        self._shared_buffer.seek(0)
+        self._seek_request_data()
 
         count = self._read_int()
         entity_indexes = self._read_values('>i4', count)
@@ -215,16 +225,21 @@ class DeepModel(abc.ABC):
 
         predictions, response = self.internal_predict(data, options)
 
-        self._shared_buffer.seek(0)
+        self._shared_buffer.seek(self._buffer_offset + INT_SIZE_BYTES)
 
         self._write_int(int(options['class-size']) * len(predictions))
         predictions = numpy.array(predictions, dtype='>f4', copy=False)
         self._shared_buffer.write(predictions.tobytes(order='C'))
 
+        # Mark the predictions as written (after they are in place).
+        if self._buffer_sequence is not None:
+            self._shared_buffer.seek(self._buffer_offset)
+            self._write_int(self._buffer_sequence)
+
         return response
 
     def eval_predicate(self, options):
-        self._shared_buffer.seek(0)
+        self._seek_request_data()
 
         count = self._read_int()
         entity_indexes = self._read_values('>i4', count)
@@ -252,6 +267,16 @@ class DeepModel(abc.ABC):
         self._value_count = None
         self._data = None
 
+    def _seek_request_data(self):
+        """
+        Seek to the data for the current request, and check that it was written for this request.
+        """
+        self._shared_buffer.seek(self._buffer_offset)
+
+        sequence = self._read_int()
+        if (self._buffer_sequence is not None) and (sequence != self._buffer_sequence):
+            raise ValueError("Stale data in shared memory (expected sequence %d, found %d)." % (self._buffer_sequence, sequence))
+
     def _read_values(self, value_type, count, byte_size = INT_SIZE_BYTES):
         values_buffer = self._shared_buffer.read(count * byte_size)
         values_buffer = numpy.frombuffer(values_buffer, dtype = value_type, count = count)
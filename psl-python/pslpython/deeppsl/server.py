@@ -27,17 +27,97 @@ import importlib
 import json
 import os
 import socket
+import struct
 import sys
 import traceback
 
 ENCODING = 'utf-8'
-MAX_MESSAGE_SIZE_BYTES = 2 ** 14
+
+# Binary framing (see org.linqs.psl.model.deep.BinaryProtocol).
+# All values are big-endian.
+BINARY_MAGIC = 0x50534C42
+BINARY_MAGIC_FIRST_BYTE = b'P'
+# Magic, opcode, sequence, buffer offset, payload length.
+BINARY_REQUEST_HEADER = struct.Struct('>IBiiI')
+# Magic, status, opcode, sequence, payload length.
+BINARY_RESPONSE_HEADER = struct.Struct('>IBBiI')
+BINARY_STATUS_SUCCESS = 0
+BINARY_STATUS_FAILURE = 1
+BINARY_TASKS = [
+    None,
+    'init',
+    'train_mode',
+    'eval_mode',
+    'fit',
+    'next_batch',
+    'epoch_start',
+    'epoch_end',
+    'is_epoch_complete',
+    'predict',
+    'eval',
+    'save',
+    'close',
+]
 
 
 class ConnectionHandler(object):
     def __init__(self):
         self._model = None
 
+        # Binary requests only carry these with init.
+        self._deep_model = None
+        self._options = {}
+
+    def handle_binary_request(self, connection, reader):
+        """
+        Read and handle a single binary request.
+        """
+
+        header = reader.read(BINARY_REQUEST_HEADER.size)
+        if len(header) < BINARY_REQUEST_HEADER.size:
+            return False
+
+        magic, opcode, sequence, buffer_offset, payload_length = BINARY_REQUEST_HEADER.unpack(header)
+        if magic != BINARY_MAGIC:
+            raise ValueError("Bad magic number in binary request: %08x." % (magic))
+
+        payload = reader.read(payload_length)
+        if len(payload) < payload_length:
+            return False
+
+        status = BINARY_STATUS_SUCCESS
+
+        try:
+            if (opcode <= 0) or (opcode >= len(BINARY_TASKS)):
+                raise ValueError("Unknown opcode: %d." % (opcode))
+
+            if payload_length > 0:
+                request = json.loads(payload.decode(ENCODING))
+            else:
+                request = {
+                    'deep_model': self._deep_model,
+                    'options': self._options,
+                }
+
+            request['task'] = BINARY_TASKS[opcode]
+            request['sequence'] = sequence
+            request['buffer_offset'] = buffer_offset
+
+            result, keep_open = self.dispatch(request)
+            response = json.dumps(result)
+        except Exception as ex:
+            keep_open = False
+            traceback.print_exc()
+
+            status = BINARY_STATUS_FAILURE
+            response = "Server encountered an error: '%s'" % (ex,)
+
+        response = response.encode(ENCODING)
+        header = BINARY_RESPONSE_HEADER.pack(BINARY_MAGIC, status, max(0, min(opcode, len(BINARY_TASKS) - 1)), sequence, len(response))
+        connection.sendall(header + response)
+
+        return keep_open
+
     def handle_request(self, connection, data):
         try:
             response, keep_open = self.handle_internal(connection, data)
@@ -61,8 +141,23 @@ class ConnectionHandler(object):
         except Exception as ex:
             raise ValueError("Payload is not valid json.", ex)
 
+        result, keep_open = self.dispatch(request)
+
+        response = {
+            'status': 'success',
+            'task': request['task'],
+            'result': result,
+        }
+
+        return response, keep_open
+
+    def dispatch(self, request):
         keep_open = True
 
+        # Data requests say which region of the shared memory they use.
+        if self._model is not None:
+            self._model.set_buffer_region(int(request.get('buffer_offset', 0)), request.get('sequence'))
+
         if request['task'] == 'init':
             result = self._init(request)
         elif request['task'] == 'train_mode':
@@ -91,13 +186,7 @@ class ConnectionHandler(object):
         else:
             raise ValueError("Unknown task: '%s'." % (request['task']))
 
-        response = {
-            'status': 'success',
-            'task': request['task'],
-            'result': result,
-        }
-
-        return response, keep_open
+        return result, keep_open
 
     def _init(self, request):
         deep_model = request['deep_model']
@@ -105,6 +194,9 @@ class ConnectionHandler(object):
         application = request['application']
         options = request.get('options', {})
 
+        self._deep_model = deep_model
+        self._options = options
+
         self._model = self._load_model(os.path.join(options['relative-dir'], options['model-path']))
         if deep_model == 'DeepModelPredicate':
             return self._model.init_predicate(shared_memory_path, application, options)
@@ -217,15 +309,31 @@ def main(port):
 
     handler = ConnectionHandler()
 
-    while True:
-        data = connection.recv(MAX_MESSAGE_SIZE_BYTES)
-        if not data:
+    # Requests are either binary frames or newline delimited JSON.
+    # Pipelined requests may arrive together, and a large request may take several reads.
+    reader = connection.makefile('rb')
+    keep_open = True
+
+    while keep_open:
+        first_byte = reader.peek(1)[:1]
+        if not first_byte:
             break
 
-        keep_open = handler.handle_request(connection, data)
-        if not keep_open:
+        if first_byte == BINARY_MAGIC_FIRST_BYTE:
+            keep_open = handler.handle_binary_request(connection, reader)
+            continue
+
+        line = reader.readline()
+        if not line:
             break
 
+        if len(line.strip()) == 0:
+            continue
+
+        keep_open = handler.handle_request(connection, line)
+
+    reader.close()
+
     connection.close()
     sock.close()
 
@@ -0,0 +1,208 @@
+"""
+This file is part of the PSL software.
+Copyright 2011-2015 University of Maryland
+Copyright 2013-2024 The Regents of the University of California
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+"""
+
+import json
+import mmap
+import os
+import struct
+
+import numpy
+
+MAGIC = b'PSLGRND1'
+FORMAT_VERSION = 1
+
+BLOCK_GROUND_RULES = 1
+BLOCK_ATOMS = 2
+BLOCK_FOOTER = 3
+
+BLOCK_HEADER = struct.Struct('<iiq')
+
+class GroundRuleReader(object):
+    """
+    A read-only, memory-mapped reader for the streaming ground rule files written by PSL
+    (see org.linqs.psl.runtime.GroundRuleExporter for the layout).
+
+    The file is read one block at a time, so a ground program does not need to fit in memory.
+    Each batch is a dict of numpy arrays that view the mapped file directly (no parsing or copying).
+    Variable-length values (ground rule atoms, atom arguments) use Arrow-style offsets:
+    the values for row i are values[offsets[i]:offsets[i + 1]], with offsets starting at zero in each batch.
+    """
+
+    def __init__(self, path, delete = False):
+        """
+        Args:
+            path: The path to the exported file.
+            delete: Remove the file when this reader is closed.
+        """
+
+        self._path = path
+        self._delete = delete
+
+        with open(path, 'rb') as file:
+            self._mmap = mmap.mmap(file.fileno(), 0, access = mmap.ACCESS_READ)
+
+        if (self._mmap[0:len(MAGIC)] != MAGIC):
+            self._mmap.close()
+            raise ValueError("File is not a PSL ground rule export: " + path)
+
+        self._footer_position = struct.unpack_from('<q', self._mmap, len(self._mmap) - 8)[0]
+
+        block_type, _, payload_length = BLOCK_HEADER.unpack_from(self._mmap, self._footer_position)
+        if (block_type != BLOCK_FOOTER):
+            self._mmap.close()
+            raise ValueError("PSL ground rule export has a bad footer (it may be incomplete): " + path)
+
+        footer_start = self._footer_position + BLOCK_HEADER.size
+        self._footer = json.loads(self._mmap[footer_start:(footer_start + payload_length)].decode('utf-8'))
+
+        if (self._footer['version'] != FORMAT_VERSION):
+            self._mmap.close()
+            raise ValueError("Unsupported PSL ground rule export version (%d) in %s." % (self._footer['version'], path))
+
+    def ground_rule_batches(self):
+        """
+        Iterate over the ground rules one batch at a time.
+
+        Yields:
+            A dict with the numpy arrays: rule_index, rule_weight, rule_constant,
+            rule_atom_offsets, rule_atoms, rule_coefficients, and rule_operator.
+        """
+
+        for offset, rows in self._blocks(BLOCK_GROUND_RULES):
+            batch = {}
+
+            offset = self._read(batch, 'rule_index', numpy.int32, offset, rows)
+            offset = self._read(batch, 'rule_weight', numpy.float32, offset, rows)
+            offset = self._read(batch, 'rule_constant', numpy.float32, offset, rows)
+            offset = self._read(batch, 'rule_atom_offsets', numpy.int32, offset, rows + 1)
+
+            num_atoms = int(batch['rule_atom_offsets'][-1])
+            offset = self._read(batch, 'rule_atoms', numpy.int32, offset, num_atoms)
+            offset = self._read(batch, 'rule_coefficients', numpy.float32, offset, num_atoms)
+            offset = self._read(batch, 'rule_operator', numpy.uint8, offset, rows)
+
+            yield batch
+
+    def atom_batches(self):
+        """
+        Iterate over the atoms one batch at a time.
+
+        Yields:
+            A dict with the numpy arrays: atom_index, atom_predicate, atom_value, atom_observed,
+            atom_argument_offsets, atom_argument_string_offsets, and atom_argument_bytes.
+            Use decode_arguments() to get the string arguments of a batch.
+        """
+
+        for offset, rows in self._blocks(BLOCK_ATOMS):
+            batch = {}
+
+            offset = self._read(batch, 'atom_index', numpy.int32, offset, rows)
+            offset = self._read(batch, 'atom_predicate', numpy.int32, offset, rows)
+            offset = self._read(batch, 'atom_value', numpy.float32, offset, rows)
+            offset = self._read(batch, 'atom_argument_offsets', numpy.int32, offset, rows + 1)
+
+            num_arguments = int(batch['atom_argument_offsets'][-1])
+            offset = self._read(batch, 'atom_argument_string_offsets', numpy.int32, offset, num_arguments + 1)
+            offset = self._read(batch, 'atom_observed', numpy.uint8, offset, rows)
+
+            num_bytes = int(batch['atom_argument_string_offsets'][-1])
+            offset = self._read(batch, 'atom_argument_bytes', numpy.uint8, offset, num_bytes)
+
+            yield batch
+
+    def rules(self):
+        """
+        The string form of the rules referenced (by position) from the rule_index column.
+        """
+
+        return self._footer['rules']
+
+    def predicates(self):
+        """
+        The predicate names referenced (by position) from the atom_predicate column.
+        """
+
+        return self._footer['predicates']
+
+    def operators(self):
+        """
+        The ground rule operators referenced (by position) from the rule_operator column.
+        """
+
+        return self._footer['operators']
+
+    def num_ground_rules(self):
+        return self._footer['groundRules']
+
+    def num_atoms(self):
+        return self._footer['atoms']
+
+    def close(self):
+        """
+        Release the mapping (once no batch arrays are still referenced) and remove the file if requested.
+        """
+
+        if (self._mmap is not None):
+            try:
+                self._mmap.close()
+            except BufferError:
+                # Batch arrays still view the mapping, it will be released when they are collected.
+                pass
+
+            self._mmap = None
+
+        if (self._delete and os.path.exists(self._path)):
+            os.remove(self._path)
+            self._delete = False
+
+    def _blocks(self, wanted_type):
+        offset = len(MAGIC)
+        while (offset < self._footer_position):
+            block_type, rows, payload_length = BLOCK_HEADER.unpack_from(self._mmap, offset)
+            offset += BLOCK_HEADER.size
+
+            if (block_type == wanted_type):
+                yield offset, rows
+
+            offset += payload_length
+
+    def _read(self, batch, name, dtype, offset, count):
+        batch[name] = numpy.frombuffer(self._mmap, dtype = numpy.dtype(dtype).newbyteorder('<'), count = count, offset = offset)
+        return offset + (count * batch[name].itemsize)
+
+    def __enter__(self):
+        return self
+
+    def __exit__(self, exc_type, exc_value, traceback):
+        self.close()
+
+def decode_arguments(batch):
+    """
+    Decode the arguments of all atoms in an atom batch (from GroundRuleReader.atom_batches()).
+    Unlike the batch columns, this copies (strings cannot be viewed in place).
+
+    Returns:
+        A list (one entry per atom) of lists of string arguments.
+    """
+
+    argument_offsets = batch['atom_argument_offsets']
+    string_offsets = batch['atom_argument_string_offsets']
+    raw_bytes = batch['atom_argument_bytes'].tobytes()
+
+    strings = [raw_bytes[string_offsets[i]:string_offsets[i + 1]].decode('utf-8') for i in range(len(string_offsets) - 1)]
+    return [strings[argument_offsets[i]:argument_offsets[i + 1]] for i in range(len(argument_offsets) - 1)]
@@ -18,6 +18,7 @@ limitations under the License.
 
 import uuid
 
+import numpy
 import pandas
 
 import pslpython.runtime
@@ -92,7 +93,7 @@ class Model(object):
         self._rules.append(rule)
         return self
 
-    def infer(self, method = '', psl_options = {}, jvm_options = [], transform_config = None):
+    def infer(self, method = '', psl_options = {}, jvm_options = [], transform_config = None, columnar = False):
         """
         Run inference on this model.
 
@@ -101,6 +102,8 @@ class Model(object):
             psl_options: Configuration options passed directly to PSL.
             jvm_options: Options passed to the JVM.
                          Most commonly '-Xmx' and '-Xms'.
+            columnar: Pass the results back from the JVM in the binary columnar format instead of JSON.
+                      Much faster for large results.
 
         Returns:
             The inferred values as a map to dataframe.
@@ -120,8 +123,13 @@ class Model(object):
         if (transform_config is not None):
             config = transform_config(config)
 
-        raw_results = pslpython.runtime.run(config, jvm_options = jvm_options)
-        results = self._collect_inference_results(raw_results)
+        raw_results = pslpython.runtime.run(config, jvm_options = jvm_options, columnar = columnar)
+
+        if (columnar):
+            with raw_results['atoms'] as atoms:
+                results = self._collect_columnar_inference_results(atoms)
+        else:
+            results = self._collect_inference_results(raw_results)
 
         return results
 
@@ -156,19 +164,37 @@ class Model(object):
 
         return self
 
-    def ground(self, psl_options = {}, jvm_options = [], transform_config = None):
+    def ground(self, psl_options = {}, jvm_options = [], transform_config = None, columnar = False):
         """
         Ground the model.
+
+        If columnar is true, then the ground program is returned as a pslpython.columnar.ColumnarResult
+        (a zero-copy numpy view of the atoms and ground rules, which should be closed when done).
         """
 
         config = self._prep_config(psl_options)
         if (transform_config is not None):
             config = transform_config(config)
 
-        ground_program = pslpython.runtime.ground(config, jvm_options = jvm_options)
+        ground_program = pslpython.runtime.ground(config, jvm_options = jvm_options, columnar = columnar)
 
         return ground_program
 
+    def export_ground(self, path, psl_options = {}, jvm_options = [], transform_config = None):
+        """
+        Ground the model, streaming the ground rules to a binary file at the given path as they are grounded.
+        Use this over ground() when the ground program is too large to hold in memory.
+
+        Returns:
+            A pslpython.export.GroundRuleReader over the file, which should be closed when done.
+        """
+
+        config = self._prep_config(psl_options)
+        if (transform_config is not None):
+            config = transform_config(config)
+
+        return pslpython.runtime.export_ground(config, path, jvm_options = jvm_options)
+
     def get_rules(self):
         return self._rules
 
@@ -242,6 +268,37 @@ class Model(object):
 
         return results
 
+    def _collect_columnar_inference_results(self, atoms):
+        """
+        The same as _collect_inference_results(), but for results passed back as a pslpython.columnar.ColumnarResult.
+        """
+
+        results = {}
+
+        predicate_codes = atoms.column('atom_predicate')
+        values = atoms.column('atom_value')
+        arguments = atoms.atom_arguments()
+
+        for code in numpy.unique(predicate_codes):
+            name = atoms.predicates()[code]
+            predicate = self._predicates[name]
+            if (predicate is None):
+                raise ModelError("Could not find predciate seen in results: " + name)
+
+            indexes = numpy.flatnonzero(predicate_codes == code)
+            frame = pandas.DataFrame([arguments[i] for i in indexes], columns = list(range(len(predicate))))
+
+            for i in range(len(predicate)):
+                if (predicate.types()[i] in Predicate.INT_TYPES):
+                    frame[i] = frame[i].astype(int)
+                elif (predicate.types()[i] in Predicate.FLOAT_TYPES):
+                    frame[i] = frame[i].astype(float)
+
+            frame[Model.TRUTH_COLUMN_NAME] = values[indexes].astype(float)
+            results[predicate] = frame
+
+        return results
+
     def _fetch_new_weights(self, raw_results):
         new_weights = []
 
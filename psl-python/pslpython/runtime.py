@@ -20,26 +20,72 @@ import atexit
 import json
 import os
 import sys
+import tempfile
 
 import jpype
 import jpype.imports
 
+import pslpython.columnar
+import pslpython.export
+
 THIS_DIR = os.path.abspath(os.path.dirname(os.path.realpath(__file__)))
 JAR_PATH = os.path.join(THIS_DIR, 'psl-runtime.jar')
 
-def run(config, base_path = '.', jvm_options = []):
+def run(config, base_path = '.', jvm_options = [], columnar = False):
+    """
+    Run PSL on a config.
+    If columnar is true, then the atoms are passed back through a binary columnar file instead of JSON,
+    and the 'atoms' entry of the result will be a pslpython.columnar.ColumnarResult
+    (which the caller should close when done).
+    """
+
     _init(jvm_options)
     from org.linqs.psl.runtime import Runtime
 
-    raw_output = Runtime.serializedRun(json.dumps(config), base_path)
-    return json.loads(str(raw_output))
+    if (not columnar):
+        raw_output = Runtime.serializedRun(json.dumps(config), base_path)
+        return json.loads(str(raw_output))
+
+    path = _columnar_path()
+    raw_output = Runtime.serializedRunColumnar(json.dumps(config), base_path, path)
+
+    output = json.loads(str(raw_output))
+    output['atoms'] = pslpython.columnar.ColumnarResult(path, delete = True)
+
+    return output
+
+def ground(config, base_path = '.', jvm_options = [], columnar = False):
+    """
+    Ground a config.
+    If columnar is true, then the ground program is returned as a pslpython.columnar.ColumnarResult
+    (which the caller should close when done) instead of parsed JSON.
+    """
 
-def ground(config, base_path = '.', jvm_options = []):
     _init(jvm_options)
     from org.linqs.psl.runtime import GroundingAPI
 
-    raw_output = GroundingAPI.serializedGround(json.dumps(config), base_path)
-    return json.loads(str(raw_output))
+    if (not columnar):
+        raw_output = GroundingAPI.serializedGround(json.dumps(config), base_path)
+        return json.loads(str(raw_output))
+
+    path = _columnar_path()
+    GroundingAPI.serializedGroundColumnar(json.dumps(config), base_path, path)
+
+    return pslpython.columnar.ColumnarResult(path, delete = True)
+
+def export_ground(config, output_path, base_path = '.', jvm_options = []):
+    """
+    Ground a config and stream the ground rules to a binary file as they are grounded
+    (instead of building the whole ground program in memory).
+    Returns a pslpython.export.GroundRuleReader over the file (which the caller should close when done).
+    """
+
+    _init(jvm_options)
+    from org.linqs.psl.runtime import GroundingAPI
+
+    GroundingAPI.serializedExport(json.dumps(config), base_path, output_path)
+
+    return pslpython.export.GroundRuleReader(output_path)
 
 @atexit.register
 def _shutdown():
@@ -50,6 +96,11 @@ def _init(jvm_options = []):
     if (not jpype.isJVMStarted()):
         jpype.startJVM(jpype.getDefaultJVMPath(), *jvm_options, classpath = [JAR_PATH])
 
+def _columnar_path():
+    handle, path = tempfile.mkstemp(prefix = 'psl-', suffix = '.columnar')
+    os.close(handle)
+    return path
+
 # A very rough loading of JSON that is more relaxed, like PSL's java parser.
 def _load_json(path):
     contents = []
@@ -112,6 +112,7 @@ def main():
 
         install_requires = [
             'JPype1>=1.4.0',
+            'numpy>=1.16.0',
             'pandas>=0.24.1',
         ],
 
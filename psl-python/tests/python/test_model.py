@@ -17,8 +17,10 @@ limitations under the License.
 '''
 
 import os
+import tempfile
 
 import tests.resources.models.psl.simpleacquaintances
+import pslpython.export
 from pslpython.model import Model
 from pslpython.predicate import Predicate
 from pslpython.predicate import PredicateError
@@ -34,6 +36,88 @@ class TestModel(PSLTest):
         self.assertEquals(predicate.name(), 'KNOWS')
         self.assertEquals(len(frame), 52)
 
+    def test_columnar_inference(self):
+        options = tests.resources.models.psl.simpleacquaintances.ADDITIONAL_PSL_OPTIONS
+        model = tests.resources.models.psl.simpleacquaintances.build_model()
+
+        json_results = model.infer(psl_options = options)
+        columnar_results = model.infer(psl_options = options, columnar = True)
+
+        self.assertEquals(len(json_results), len(columnar_results))
+
+        for predicate, json_frame in json_results.items():
+            columnar_frame = columnar_results[predicate]
+            self.assertEquals(len(json_frame), len(columnar_frame))
+
+            json_frame = json_frame.sort_values([0, 1]).reset_index(drop = True)
+            columnar_frame = columnar_frame.sort_values([0, 1]).reset_index(drop = True)
+
+            for i in range(len(json_frame)):
+                self.assertEquals(json_frame[0][i], columnar_frame[0][i])
+                self.assertEquals(json_frame[1][i], columnar_frame[1][i])
+                self.assertClose(json_frame[Model.TRUTH_COLUMN_NAME][i], columnar_frame[Model.TRUTH_COLUMN_NAME][i])
+
+    def test_columnar_ground(self):
+        options = tests.resources.models.psl.simpleacquaintances.ADDITIONAL_PSL_OPTIONS
+        model = tests.resources.models.psl.simpleacquaintances.build_model()
+
+        json_program = model.ground(psl_options = options)
+
+        with model.ground(psl_options = options, columnar = True) as program:
+            self.assertEquals(program.num_atoms(), len(json_program['atoms']))
+            self.assertEquals(program.num_ground_rules(), len(json_program['groundRules']))
+
+            values = program.column('atom_value')
+            arguments = program.atom_arguments()
+            for i, atom_index in enumerate(program.column('atom_index')):
+                json_atom = json_program['atoms'][str(atom_index)]
+                self.assertEquals(json_atom['predicate'], program.predicates()[program.column('atom_predicate')[i]])
+                self.assertEquals(json_atom['arguments'], arguments[i])
+                self.assertClose(json_atom['value'], values[i])
+
+            offsets = program.column('rule_atom_offsets')
+            rule_atoms = program.column('rule_atoms')
+            for i, json_rule in enumerate(json_program['groundRules']):
+                self.assertEquals(json_rule['ruleIndex'], program.column('rule_index')[i])
+                self.assertEquals(json_rule['operator'], program.operators()[program.column('rule_operator')[i]])
+                self.assertEquals(json_rule['atoms'], list(rule_atoms[offsets[i]:offsets[i + 1]]))
+
+    def test_export_ground(self):
+        options = tests.resources.models.psl.simpleacquaintances.ADDITIONAL_PSL_OPTIONS
+        model = tests.resources.models.psl.simpleacquaintances.build_model()
+
+        json_program = model.ground(psl_options = options)
+
+        with tempfile.TemporaryDirectory() as out_dir:
+            path = os.path.join(out_dir, 'export.groundrules')
+            with model.export_ground(path, psl_options = options) as export:
+                self.assertEquals(export.num_ground_rules(), len(json_program['groundRules']))
+                # All atoms in the atom store are exported, not just the ones used by ground rules.
+                self.assertTrue(export.num_atoms() >= len(json_program['atoms']))
+
+                # Ground rules are streamed from many threads, so compare them without order.
+                expected = sorted([(rule['ruleIndex'], rule['operator'], tuple(rule['atoms'])) for rule in json_program['groundRules']])
+
+                actual = []
+                for batch in export.ground_rule_batches():
+                    offsets = batch['rule_atom_offsets']
+                    for i in range(len(batch['rule_index'])):
+                        atoms = tuple([int(atom) for atom in batch['rule_atoms'][offsets[i]:offsets[i + 1]]])
+                        actual.append((int(batch['rule_index'][i]), export.operators()[batch['rule_operator'][i]], atoms))
+
+                self.assertEquals(expected, sorted(actual))
+
+                for batch in export.atom_batches():
+                    arguments = pslpython.export.decode_arguments(batch)
+                    for i, atom_index in enumerate(batch['atom_index']):
+                        if (str(atom_index) not in json_program['atoms']):
+                            continue
+
+                        json_atom = json_program['atoms'][str(atom_index)]
+                        self.assertEquals(json_atom['predicate'], export.predicates()[batch['atom_predicate'][i]])
+                        self.assertEquals(json_atom['arguments'], arguments[i])
+                        self.assertClose(json_atom['value'], batch['atom_value'][i])
+
     def test_duplicate_predicate_name(self):
         model = Model('test-predicate')
         predicate_name = 'Foo'
@@ -13,6 +13,14 @@ ADDITIONAL_PSL_OPTIONS = {'runtime.log.level': 'ERROR'}
 DEFAULT_DATA_DIR = os.path.abspath(os.path.join(os.path.dirname(__file__), '..', '..', 'data', 'simple-acquaintances', 'data'))
 
 def run(data_dir = DEFAULT_DATA_DIR):
+    model = build_model(data_dir)
+
+    # Run Inference
+    results = model.infer(psl_options = ADDITIONAL_PSL_OPTIONS)
+
+    return results
+
+def build_model(data_dir = DEFAULT_DATA_DIR):
     model = Model(MODEL_NAME)
 
     # Add Predicates
@@ -51,10 +59,7 @@ def run(data_dir = DEFAULT_DATA_DIR):
     model.add_rule(Rule('Knows(P1, P2) = Knows(P2, P1) .'))
     model.add_rule(Rule('5: !Knows(P1, P2) ^2'))
 
-    # Run Inference
-    results = model.infer(psl_options = ADDITIONAL_PSL_OPTIONS)
-
-    return results
+    return model
 
 if (__name__ == '__main__'):
     results = run()